@@ -16,10 +16,11 @@ import java.net.URL;
 import java.nio.file.Paths;
 import java.util.List;
 
-import com.personalbudgeting.dao.DatabaseConnection;
-import com.personalbudgeting.dao.DatabaseInitializer;
+import com.personalbudgeting.repository.Repositories;
 import com.personalbudgeting.service.ReminderService;
+import com.personalbudgeting.service.SummaryCache;
 import com.personalbudgeting.util.FXMLDiagnostics;
+import com.personalbudgeting.util.RequestScope;
 import javafx.fxml.JavaFXBuilderFactory;
 import com.personalbudgeting.controller.BudgetController;
 
@@ -76,7 +77,8 @@ public class Main extends Application {
             if (reminderService != null) {
                 reminderService.shutdownReminderService();
             }
-            DatabaseConnection.closeConnection();
+            System.out.println("Summary cache statistics: " + SummaryCache.getInstance().getStats());
+            Repositories.shutdown();
             Platform.exit();
         });
         
@@ -702,11 +704,59 @@ public class Main extends Application {
             // Add form and table+charts to content area
             contentArea.getChildren().addAll(formContainer, tableChartContainer);
             
-            // Add header and content to main container
-            mainContent.getChildren().addAll(header, contentArea);
+            // Spending trend: one stacked bar per month, one segment per category
+            javafx.scene.layout.VBox trendContainer = new javafx.scene.layout.VBox();
+            trendContainer.setPrefWidth(650);
+            trendContainer.setSpacing(5);
+            trendContainer.setPadding(new javafx.geometry.Insets(10, 10, 10, 10));
+            
+            javafx.scene.layout.HBox trendHeader = new javafx.scene.layout.HBox();
+            trendHeader.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
+            trendHeader.setSpacing(10);
+            
+            javafx.scene.control.Label trendLabel = new javafx.scene.control.Label("Spending Trend");
+            trendLabel.setFont(new javafx.scene.text.Font("System Bold", 14));
+            
+            javafx.scene.control.ComboBox<String> trendSpanComboBox = new javafx.scene.control.ComboBox<>();
+            trendSpanComboBox.getItems().addAll("Last 12 months", "Last 2 years", "Last 5 years");
+            trendSpanComboBox.setValue("Last 12 months");
+            
+            trendHeader.getChildren().addAll(trendLabel, trendSpanComboBox);
+            
+            javafx.scene.chart.CategoryAxis trendMonthAxis = new javafx.scene.chart.CategoryAxis();
+            javafx.scene.chart.NumberAxis trendAmountAxis = new javafx.scene.chart.NumberAxis();
+            trendAmountAxis.setLabel("Spent ($)");
+            javafx.scene.chart.StackedBarChart<String, Number> trendChart =
+                new javafx.scene.chart.StackedBarChart<>(trendMonthAxis, trendAmountAxis);
+            trendChart.setPrefHeight(300);
+            trendChart.setAnimated(false);
+            trendChart.setLegendSide(javafx.geometry.Side.RIGHT);
+            
+            trendContainer.getChildren().addAll(trendHeader, trendChart);
+            
+            // The whole span comes from one trend query; picking another span cancels the pending one
+            com.personalbudgeting.service.ExpenseService trendService = new com.personalbudgeting.service.ExpenseService();
+            RequestScope trendRequests = new RequestScope("budget trend");
+            Runnable loadTrend = () -> {
+                int months = "Last 5 years".equals(trendSpanComboBox.getValue()) ? 60
+                           : "Last 2 years".equals(trendSpanComboBox.getValue()) ? 24 : 12;
+                java.time.YearMonth last = java.time.YearMonth.now();
+                trendRequests.track("trend", trendService.getExpenseTrendAsync(last.minusMonths(months - 1), last))
+                    .thenAccept(trend -> showTrend(trendChart, trend));
+            };
+            trendSpanComboBox.valueProperty().addListener((obs, oldVal, newVal) -> loadTrend.run());
+            loadTrend.run();
+            
+            // Add header, content and trend to main container
+            mainContent.getChildren().addAll(header, contentArea, trendContainer);
+            
+            // Scroll to reach the trend below the form, table and charts
+            javafx.scene.control.ScrollPane mainScroll = new javafx.scene.control.ScrollPane(mainContent);
+            mainScroll.setFitToWidth(true);
+            javafx.scene.layout.HBox.setHgrow(mainScroll, javafx.scene.layout.Priority.ALWAYS);
             
             // Add sidebar and main content to root
-            root.getChildren().addAll(sidebar, mainContent);
+            root.getChildren().addAll(sidebar, mainScroll);
             
             // Set up button actions
             setBudgetButton.setOnAction(e -> {
@@ -949,11 +999,44 @@ public class Main extends Application {
         }
     }
     
+    /**
+     * Fill the budget view's trend chart with one series per category, largest first
+     */
+    private static void showTrend(javafx.scene.chart.StackedBarChart<String, Number> trendChart,
+                                  com.personalbudgeting.model.Trend trend) {
+        if (trend == null) {
+            return;
+        }
+        
+        java.time.format.DateTimeFormatter monthFormat = java.time.format.DateTimeFormatter.ofPattern("MMM yy");
+        List<java.time.YearMonth> months = trend.getMonths();
+        javafx.collections.ObservableList<String> monthNames = javafx.collections.FXCollections.observableArrayList();
+        for (java.time.YearMonth month : months) {
+            monthNames.add(month.format(monthFormat));
+        }
+        ((javafx.scene.chart.CategoryAxis) trendChart.getXAxis()).setCategories(monthNames);
+        
+        javafx.collections.ObservableList<javafx.scene.chart.XYChart.Series<String, Number>> seriesList =
+            javafx.collections.FXCollections.observableArrayList();
+        for (String category : trend.getCategories()) {
+            javafx.scene.chart.XYChart.Series<String, Number> series = new javafx.scene.chart.XYChart.Series<>();
+            series.setName(category);
+            double[] values = trend.getSeries(category);
+            for (int month = 0; month < values.length; month++) {
+                series.getData().add(new javafx.scene.chart.XYChart.Data<>(monthNames.get(month), values[month]));
+            }
+            seriesList.add(series);
+        }
+        trendChart.setData(seriesList);
+        trendChart.setTitle(trend.isEmpty() ? "No expenses in this period" : null);
+    }
+    
     /**
      * Special method to navigate to Budget page using the preloaded root
      */
     public static void navigateToBudget() {
         System.out.println("===== Main.navigateToBudget(): Starting navigation to Budget page =====");
+        RequestScope.cancelAllScopes();
         
         try {
             // If we have a preloaded root, use it
@@ -984,6 +1067,7 @@ public class Main extends Application {
      */
     public static void navigateToReminder() {
         System.out.println("===== Main.navigateToReminder(): Starting navigation to Reminder page =====");
+        RequestScope.cancelAllScopes();
         
         try {
             // If we have a preloaded root, use it
@@ -1050,6 +1134,9 @@ public class Main extends Application {
     public static void setRoot(String fxml) throws IOException {
         System.out.println("===== Main.setRoot(): Switching to view: " + fxml + " =====");
         
+        // Results still pending for the view being left would only update hidden controls
+        RequestScope.cancelAllScopes();
+        
         // Special direct navigation for problematic pages to use the most reliable method
         if ("budget".equals(fxml)) {
             System.out.println("Redirecting to special budget navigation method");
@@ -1213,8 +1300,8 @@ public class Main extends Application {
     }
     
     public static void main(String[] args) {
-        // Initialize database
-        DatabaseInitializer.initialize();
+        // Initialize the database (or the in-memory storage engine)
+        Repositories.initialize();
         
         // Create ReminderService instance
         reminderService = new ReminderService();
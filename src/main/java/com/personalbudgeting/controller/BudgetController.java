@@ -2,10 +2,13 @@ package com.personalbudgeting.controller;
 
 import com.personalbudgeting.Main;
 import com.personalbudgeting.model.Budget;
+import com.personalbudgeting.model.BudgetSummary;
 import com.personalbudgeting.service.BudgetService;
+import com.personalbudgeting.service.CategoryService;
 import com.personalbudgeting.service.NotificationService;
 import com.personalbudgeting.service.UserService;
 import com.personalbudgeting.util.FXMLNavigator;
+import com.personalbudgeting.util.RequestScope;
 
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -17,7 +20,9 @@ import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.chart.PieChart;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.DatePicker;
 import javafx.scene.control.Label;
@@ -37,10 +42,11 @@ import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
 
 public class BudgetController implements Initializable {
     
@@ -144,15 +150,11 @@ public class BudgetController implements Initializable {
     @FXML
     private Button logoutButton;
     
-    // Predefined expense categories
-    private final List<String> CATEGORIES = Arrays.asList(
-        "Food", "Rent", "Utilities", "Transportation", "Entertainment", 
-        "Healthcare", "Education", "Shopping", "Personal Care", "Travel", "Other"
-    );
-    
     private BudgetService budgetService;
+    private CategoryService categoryService;
     private NotificationService notificationService;
     private UserService userService;
+    private RequestScope requests;
     private ObservableList<Budget> budgetList;
     private Budget selectedBudget;
     private YearMonth currentPeriod;
@@ -191,16 +193,19 @@ public class BudgetController implements Initializable {
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         budgetService = new BudgetService();
+        categoryService = new CategoryService();
         notificationService = NotificationService.getInstance();
         userService = new UserService();
+        requests = new RequestScope("budget view");
         budgetList = FXCollections.observableArrayList();
         
         // Initialize date picker to current month
         monthPicker.setValue(LocalDate.now().withDayOfMonth(1));
         currentPeriod = YearMonth.from(LocalDate.now());
         
-        // Set up category combo box
-        categoryComboBox.getItems().addAll(CATEGORIES);
+        // Built-in and custom categories; typing a new name adds a custom category
+        categoryComboBox.setEditable(true);
+        loadCategories();
         
         // Set up table columns with proper cell value factories
         categoryColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getCategory()));
@@ -263,7 +268,6 @@ public class BudgetController implements Initializable {
         
         // Load budget data
         loadBudgetData();
-        updateBudgetAnalysis();
         
         // Add listener for table row selection
         budgetTable.getSelectionModel().selectedItemProperty().addListener((obs, oldSelection, newSelection) -> {
@@ -284,7 +288,6 @@ public class BudgetController implements Initializable {
             if (newVal != null) {
                 currentPeriod = YearMonth.from(newVal);
                 loadBudgetData();
-                updateBudgetAnalysis();
             }
         });
         
@@ -294,49 +297,46 @@ public class BudgetController implements Initializable {
     }
     
     private void loadBudgetData() {
-        List<Budget> budgets = budgetService.getBudgetsForPeriod(currentPeriod);
+        // Both queries run off the FX thread; picking another month cancels the pending ones
+        CompletableFuture<List<Budget>> budgets = requests.track("budgets", budgetService.getBudgetsForPeriodAsync(currentPeriod));
+        
+        // One summary query feeds the table columns, the labels and both charts
+        CompletableFuture<BudgetSummary> budgetSummary = requests.track("summary", budgetService.getBudgetSummaryAsync(currentPeriod));
+        
+        budgets.thenAcceptBoth(budgetSummary, this::showBudgetData);
+    }
+    
+    private void showBudgetData(List<Budget> budgets, BudgetSummary budgetSummary) {
         if (budgets != null) {
             budgetList.clear();
             budgetList.addAll(budgets);
             budgetTable.setItems(budgetList);
             
             // Update the spent, remaining, and percentage columns with actual data
-            Map<String, Object> budgetSummary = budgetService.getBudgetSummary(currentPeriod);
             if (budgetSummary != null) {
-                // Get the expenses by category
-                Map<String, Double> expensesByCategory = (Map<String, Double>) budgetSummary.get("expensesByCategory");
-                
-                // Manually update the cell values for the other columns
-                if (expensesByCategory != null) {
-                    for (Budget budget : budgetList) {
-                        double spent = expensesByCategory.getOrDefault(budget.getCategory(), 0.0);
-                        double remaining = budget.getAmount() - spent;
-                        double percentage = (spent / budget.getAmount()) * 100.0;
-                        
-                        // The actual update will happen via the cell factories we set up
-                        budget.setSpentAmount(spent);
-                        budget.setRemainingAmount(remaining);
-                        budget.setPercentage(percentage);
-                    }
+                for (Budget budget : budgetList) {
+                    double spent = budgetSummary.getSpent(budget.getCategory());
+                    double remaining = budget.getAmount() - spent;
+                    double percentage = (spent / budget.getAmount()) * 100.0;
+                    
+                    // The actual update will happen via the cell factories we set up
+                    budget.setSpentAmount(spent);
+                    budget.setRemainingAmount(remaining);
+                    budget.setPercentage(percentage);
                 }
             }
         }
+        
+        updateBudgetAnalysis(budgetSummary);
     }
     
-    private void updateBudgetAnalysis() {
-        Map<String, Object> budgetSummary = budgetService.getBudgetSummary(currentPeriod);
-        
+    private void updateBudgetAnalysis(BudgetSummary budgetSummary) {
         if (budgetSummary != null) {
             // Update summary labels
-            double totalIncome = (double) budgetSummary.get("totalIncome");
-            double totalBudget = (double) budgetSummary.get("totalBudget");
-            double totalExpenses = (double) budgetSummary.get("totalExpenses");
-            double savings = (double) budgetSummary.get("savings");
-            
-            totalIncomeLabel.setText(String.format("$%.2f", totalIncome));
-            totalBudgetLabel.setText(String.format("$%.2f", totalBudget));
-            totalExpensesLabel.setText(String.format("$%.2f", totalExpenses));
-            remainingIncomeLabel.setText(String.format("$%.2f", savings));
+            totalIncomeLabel.setText(String.format("$%.2f", budgetSummary.getTotalIncome()));
+            totalBudgetLabel.setText(String.format("$%.2f", budgetSummary.getTotalBudget()));
+            totalExpensesLabel.setText(String.format("$%.2f", budgetSummary.getTotalExpenses()));
+            remainingIncomeLabel.setText(String.format("$%.2f", budgetSummary.getSavings()));
             
             // Update pie charts
             updateBudgetPieChart(budgetSummary);
@@ -344,11 +344,11 @@ public class BudgetController implements Initializable {
         }
     }
     
-    private void updateBudgetPieChart(Map<String, Object> budgetSummary) {
+    private void updateBudgetPieChart(BudgetSummary budgetSummary) {
         ObservableList<PieChart.Data> pieChartData = FXCollections.observableArrayList();
-        Map<String, Double> budgetsByCategory = (Map<String, Double>) budgetSummary.get("budgetsByCategory");
+        Map<String, Double> budgetsByCategory = budgetSummary.getBudgetsByCategory();
         
-        if (budgetsByCategory != null && !budgetsByCategory.isEmpty()) {
+        if (!budgetsByCategory.isEmpty()) {
             for (Map.Entry<String, Double> entry : budgetsByCategory.entrySet()) {
                 pieChartData.add(new PieChart.Data(entry.getKey(), entry.getValue()));
             }
@@ -360,11 +360,11 @@ public class BudgetController implements Initializable {
         budgetPieChart.setTitle("Budget Allocation");
     }
     
-    private void updateExpensePieChart(Map<String, Object> budgetSummary) {
+    private void updateExpensePieChart(BudgetSummary budgetSummary) {
         ObservableList<PieChart.Data> pieChartData = FXCollections.observableArrayList();
-        Map<String, Double> expensesByCategory = (Map<String, Double>) budgetSummary.get("expensesByCategory");
+        Map<String, Double> expensesByCategory = budgetSummary.getExpensesByCategory();
         
-        if (expensesByCategory != null && !expensesByCategory.isEmpty()) {
+        if (!expensesByCategory.isEmpty()) {
             for (Map.Entry<String, Double> entry : expensesByCategory.entrySet()) {
                 pieChartData.add(new PieChart.Data(entry.getKey(), entry.getValue()));
             }
@@ -382,8 +382,15 @@ public class BudgetController implements Initializable {
         monthPicker.setValue(budget.getPeriod().atDay(1));
     }
     
+    private void loadCategories() {
+        categoryComboBox.getItems().setAll(categoryService.getCategoryNames());
+    }
+    
     private void clearFields() {
+        // A category typed in the last add or update may be new
+        loadCategories();
         categoryComboBox.getSelectionModel().clearSelection();
+        categoryComboBox.getEditor().clear();
         amountField.clear();
         monthPicker.setValue(LocalDate.now().withDayOfMonth(1));
         budgetTable.getSelectionModel().clearSelection();
@@ -394,7 +401,7 @@ public class BudgetController implements Initializable {
     
     @FXML
     private void handleSetBudgetButton(ActionEvent event) {
-        String category = categoryComboBox.getValue();
+        String category = categoryComboBox.getEditor().getText();
         String amountText = amountField.getText();
         LocalDate date = monthPicker.getValue();
         
@@ -417,17 +424,33 @@ public class BudgetController implements Initializable {
             return;
         }
         
-        // Set budget
-        boolean success = budgetService.setBudget(category, amount, YearMonth.from(date));
+        if (!confirmNewCategory(category)) {
+            return;
+        }
         
-        if (success) {
-            notificationService.showInfo("Success", "Budget set successfully.");
-            clearFields();
-            loadBudgetData();
-            updateBudgetAnalysis();
-        } else {
-            notificationService.showError("Error", "Failed to set budget.");
+        // Set budget
+        budgetService.setBudgetAsync(category, amount, YearMonth.from(date)).whenComplete((success, error) -> {
+            if (Boolean.TRUE.equals(success)) {
+                notificationService.showInfo("Success", "Budget set successfully.");
+                clearFields();
+                loadBudgetData();
+            } else {
+                notificationService.showError("Error", "Failed to set budget.");
+            }
+        });
+    }
+    
+    // A name that is not a category yet adds one, so a typo must not add it silently
+    private boolean confirmNewCategory(String category) {
+        if (categoryService.isKnownCategory(category)) {
+            return true;
         }
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("New Category");
+        alert.setHeaderText("\"" + category.trim() + "\" is not one of your categories.");
+        alert.setContentText("Add it as a new category?");
+        Optional<ButtonType> answer = alert.showAndWait();
+        return answer.isPresent() && answer.get() == ButtonType.OK;
     }
     
     @FXML
@@ -437,7 +460,7 @@ public class BudgetController implements Initializable {
             return;
         }
         
-        String category = categoryComboBox.getValue();
+        String category = categoryComboBox.getEditor().getText();
         String amountText = amountField.getText();
         LocalDate date = monthPicker.getValue();
         
@@ -460,18 +483,21 @@ public class BudgetController implements Initializable {
             return;
         }
         
+        if (!confirmNewCategory(category)) {
+            return;
+        }
+        
         // Update budget
         selectedBudget.setAmount(amount);
-        boolean success = budgetService.setBudget(category, amount, YearMonth.from(date));
-        
-        if (success) {
-            notificationService.showInfo("Success", "Budget updated successfully.");
-            clearFields();
-            loadBudgetData();
-            updateBudgetAnalysis();
-        } else {
-            notificationService.showError("Error", "Failed to update budget.");
-        }
+        budgetService.setBudgetAsync(category, amount, YearMonth.from(date)).whenComplete((success, error) -> {
+            if (Boolean.TRUE.equals(success)) {
+                notificationService.showInfo("Success", "Budget updated successfully.");
+                clearFields();
+                loadBudgetData();
+            } else {
+                notificationService.showError("Error", "Failed to update budget.");
+            }
+        });
     }
     
     @FXML
@@ -481,16 +507,15 @@ public class BudgetController implements Initializable {
             return;
         }
         
-        boolean success = budgetService.deleteBudget(selectedBudget.getId());
-        
-        if (success) {
-            notificationService.showInfo("Success", "Budget deleted successfully.");
-            clearFields();
-            loadBudgetData();
-            updateBudgetAnalysis();
-        } else {
-            notificationService.showError("Error", "Failed to delete budget.");
-        }
+        budgetService.deleteBudgetAsync(selectedBudget.getId()).whenComplete((success, error) -> {
+            if (Boolean.TRUE.equals(success)) {
+                notificationService.showInfo("Success", "Budget deleted successfully.");
+                clearFields();
+                loadBudgetData();
+            } else {
+                notificationService.showError("Error", "Failed to delete budget.");
+            }
+        });
     }
     
     @FXML
@@ -1,24 +1,35 @@
 package com.personalbudgeting.controller;
 
 import com.personalbudgeting.Main;
+import com.personalbudgeting.dao.ExportWriter;
 import com.personalbudgeting.model.Expense;
+import com.personalbudgeting.service.BankFileImporter;
+import com.personalbudgeting.service.CategoryService;
+import com.personalbudgeting.service.CsvImporter;
+import com.personalbudgeting.service.CsvProfile;
 import com.personalbudgeting.service.ExpenseService;
+import com.personalbudgeting.service.ExportService;
+import com.personalbudgeting.service.ImportStats;
 import com.personalbudgeting.service.NotificationService;
 import com.personalbudgeting.service.UserService;
 import com.personalbudgeting.util.FXMLNavigator;
+import com.personalbudgeting.util.LazyPagedList;
+import com.personalbudgeting.util.RequestScope;
 
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.DatePicker;
 import javafx.scene.control.TableColumn;
@@ -26,6 +37,8 @@ import javafx.scene.control.TableView;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
 import javafx.scene.Node;
 
 import java.io.File;
@@ -34,11 +47,15 @@ import java.net.URL;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
 
 public class ExpenseController implements Initializable {
+    // A search shows its best matches only; more words narrow it down
+    private static final int SEARCH_LIMIT = 200;
     
     @FXML
     private ComboBox<String> categoryComboBox;
@@ -67,6 +84,15 @@ public class ExpenseController implements Initializable {
     @FXML
     private TableView<Expense> expenseTable;
     
+    @FXML
+    private TextField searchField;
+    
+    @FXML
+    private Button importButton;
+    
+    @FXML
+    private Button exportButton;
+    
     @FXML
     private TableColumn<Expense, String> categoryColumn;
     
@@ -97,36 +123,34 @@ public class ExpenseController implements Initializable {
     @FXML
     private Button logoutButton;
     
-    // Predefined expense categories
-    private final List<String> CATEGORIES = Arrays.asList(
-        "Food", "Rent", "Utilities", "Transportation", "Entertainment", 
-        "Healthcare", "Education", "Shopping", "Personal Care", "Travel", "Other"
-    );
-    
     private ExpenseService expenseService;
+    private CategoryService categoryService;
     private NotificationService notificationService;
     private UserService userService;
-    private ObservableList<Expense> expenseList;
+    private RequestScope requests;
+    private LazyPagedList<Expense> expenseList;
     private Expense selectedExpense;
     
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         expenseService = new ExpenseService();
+        categoryService = new CategoryService();
         notificationService = NotificationService.getInstance();
         userService = new UserService();
-        expenseList = FXCollections.observableArrayList();
+        requests = new RequestScope("expense view");
         
         // Initialize date picker to current date
         datePicker.setValue(LocalDate.now());
         
-        // Set up category combo box
-        categoryComboBox.getItems().addAll(CATEGORIES);
+        // Built-in and custom categories; typing a new name adds a custom category
+        categoryComboBox.setEditable(true);
+        loadCategories();
         
-        // Set up table columns
-        categoryColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getCategory()));
-        amountColumn.setCellValueFactory(cellData -> new SimpleDoubleProperty(cellData.getValue().getAmount()).asObject());
-        dateColumn.setCellValueFactory(cellData -> new SimpleObjectProperty<>(cellData.getValue().getDate()));
-        descriptionColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getDescription()));
+        // Set up table columns; rows of pages still loading are null and show empty
+        categoryColumn.setCellValueFactory(cellData -> cellData.getValue() == null ? null : new SimpleStringProperty(cellData.getValue().getCategory()));
+        amountColumn.setCellValueFactory(cellData -> cellData.getValue() == null ? null : new SimpleDoubleProperty(cellData.getValue().getAmount()).asObject());
+        dateColumn.setCellValueFactory(cellData -> cellData.getValue() == null ? null : new SimpleObjectProperty<>(cellData.getValue().getDate()));
+        descriptionColumn.setCellValueFactory(cellData -> cellData.getValue() == null ? null : new SimpleStringProperty(cellData.getValue().getDescription()));
         
         // Format the amount column to show 2 decimal places
         amountColumn.setCellFactory(column -> new javafx.scene.control.TableCell<Expense, Double>() {
@@ -156,9 +180,18 @@ public class ExpenseController implements Initializable {
             }
         });
         
+        // Rows come from the database newest first; the paged list cannot be re-sorted in place
+        categoryColumn.setSortable(false);
+        amountColumn.setSortable(false);
+        dateColumn.setSortable(false);
+        descriptionColumn.setSortable(false);
+        
         // Load expense data
         loadExpenseData();
         
+        // Each keystroke replaces the pending search, so only results for the latest text are shown
+        searchField.textProperty().addListener((obs, oldText, newText) -> loadExpenseData());
+        
         // Add listener for table row selection
         expenseTable.getSelectionModel().selectedItemProperty().addListener((obs, oldSelection, newSelection) -> {
             if (newSelection != null) {
@@ -179,12 +212,38 @@ public class ExpenseController implements Initializable {
     }
     
     private void loadExpenseData() {
-        List<Expense> expenses = expenseService.getAllExpenses();
-        if (expenses != null) {
-            expenseList.clear();
-            expenseList.addAll(expenses);
-            expenseTable.setItems(expenseList);
+        String search = searchField.getText();
+        if (search != null && !search.trim().isEmpty()) {
+            // Ranked matches of the descriptions, from the full-text index
+            requests.track("rows", expenseService.searchExpensesAsync(search, 0, SEARCH_LIMIT)).thenAccept(results -> {
+                if (expenseList != null) {
+                    expenseList.cancelLoads();
+                    expenseList = null;
+                }
+                expenseTable.setItems(FXCollections.observableArrayList(results));
+            });
+            return;
         }
+        
+        // Rows are paged in from the database as the table scrolls, so the ledger is never fully loaded;
+        // the count and every page are fetched off the FX thread
+        requests.track("rows", expenseService.countExpensesAsync()).thenAccept(count -> {
+            if (expenseList != null) {
+                expenseList.cancelLoads();
+            }
+            expenseList = new LazyPagedList<>(count, new LazyPagedList.PageSource<Expense>() {
+                @Override
+                public CompletableFuture<List<Expense>> loadAfter(Expense last, int limit) {
+                    return requests.add(expenseService.getExpensesAfterAsync(last, limit));
+                }
+                
+                @Override
+                public CompletableFuture<List<Expense>> loadAt(int offset, int limit) {
+                    return requests.add(expenseService.getExpensesAtAsync(offset, limit));
+                }
+            });
+            expenseTable.setItems(expenseList);
+        });
     }
     
     private void populateFields(Expense expense) {
@@ -194,8 +253,15 @@ public class ExpenseController implements Initializable {
         descriptionArea.setText(expense.getDescription());
     }
     
+    private void loadCategories() {
+        categoryComboBox.getItems().setAll(categoryService.getCategoryNames());
+    }
+    
     private void clearFields() {
+        // A category typed in the last add or update may be new
+        loadCategories();
         categoryComboBox.getSelectionModel().clearSelection();
+        categoryComboBox.getEditor().clear();
         amountField.clear();
         datePicker.setValue(LocalDate.now());
         descriptionArea.clear();
@@ -207,7 +273,7 @@ public class ExpenseController implements Initializable {
     
     @FXML
     private void handleAddButton(ActionEvent event) {
-        String category = categoryComboBox.getValue();
+        String category = categoryComboBox.getEditor().getText();
         String amountText = amountField.getText();
         LocalDate date = datePicker.getValue();
         String description = descriptionArea.getText();
@@ -217,6 +283,11 @@ public class ExpenseController implements Initializable {
             notificationService.showError("Input Error", "Category, amount, and date are required.");
             return;
         }
+        if (!ExpenseService.isValidDate(date)) {
+            notificationService.showError("Input Error", "The date must be between " + ExpenseService.EARLIEST_DATE
+                                          + " and " + ExpenseService.LATEST_DATE + ".");
+            return;
+        }
         
         // Parse amount
         double amount;
@@ -231,16 +302,54 @@ public class ExpenseController implements Initializable {
             return;
         }
         
-        // Add expense
-        boolean success = expenseService.addExpense(category, amount, date, description);
+        if (!confirmNewCategory(category)) {
+            return;
+        }
         
-        if (success) {
-            notificationService.showInfo("Success", "Expense added successfully.");
-            clearFields();
-            loadExpenseData();
-        } else {
-            notificationService.showError("Error", "Failed to add expense.");
+        // Add expense, unless it is the same as one already stored and the user cancels;
+        // the button stays disabled meanwhile so a double click cannot add it twice
+        addButton.setDisable(true);
+        expenseService.isDuplicateAsync(amount, date, description).whenComplete((duplicate, checkError) -> {
+            if (Boolean.TRUE.equals(duplicate) && !confirmDuplicate(amount, date, description)) {
+                addButton.setDisable(false);
+                return;
+            }
+            
+            expenseService.addExpenseAsync(category, amount, date, description).whenComplete((success, error) -> {
+                addButton.setDisable(false);
+                if (Boolean.TRUE.equals(success)) {
+                    notificationService.showInfo("Success", "Expense added successfully.");
+                    clearFields();
+                    loadExpenseData();
+                } else {
+                    notificationService.showError("Error", "Failed to add expense.");
+                }
+            });
+        });
+    }
+    
+    private boolean confirmDuplicate(double amount, LocalDate date, String description) {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Possible Duplicate");
+        alert.setHeaderText("An expense of " + String.format("%.2f", amount) + " on " + date
+                            + (description == null || description.trim().isEmpty() ? "" : " for \"" + description.trim() + "\"")
+                            + " is already recorded.");
+        alert.setContentText("Add it again?");
+        Optional<ButtonType> answer = alert.showAndWait();
+        return answer.isPresent() && answer.get() == ButtonType.OK;
+    }
+    
+    // A name that is not a category yet adds one, so a typo must not add it silently
+    private boolean confirmNewCategory(String category) {
+        if (categoryService.isKnownCategory(category)) {
+            return true;
         }
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("New Category");
+        alert.setHeaderText("\"" + category.trim() + "\" is not one of your categories.");
+        alert.setContentText("Add it as a new category?");
+        Optional<ButtonType> answer = alert.showAndWait();
+        return answer.isPresent() && answer.get() == ButtonType.OK;
     }
     
     @FXML
@@ -250,7 +359,7 @@ public class ExpenseController implements Initializable {
             return;
         }
         
-        String category = categoryComboBox.getValue();
+        String category = categoryComboBox.getEditor().getText();
         String amountText = amountField.getText();
         LocalDate date = datePicker.getValue();
         String description = descriptionArea.getText();
@@ -260,6 +369,11 @@ public class ExpenseController implements Initializable {
             notificationService.showError("Input Error", "Category, amount, and date are required.");
             return;
         }
+        if (!ExpenseService.isValidDate(date)) {
+            notificationService.showError("Input Error", "The date must be between " + ExpenseService.EARLIEST_DATE
+                                          + " and " + ExpenseService.LATEST_DATE + ".");
+            return;
+        }
         
         // Parse amount
         double amount;
@@ -274,16 +388,20 @@ public class ExpenseController implements Initializable {
             return;
         }
         
-        // Update expense
-        boolean success = expenseService.updateExpense(selectedExpense.getId(), category, amount, date, description);
-        
-        if (success) {
-            notificationService.showInfo("Success", "Expense updated successfully.");
-            clearFields();
-            loadExpenseData();
-        } else {
-            notificationService.showError("Error", "Failed to update expense.");
+        if (!confirmNewCategory(category)) {
+            return;
         }
+        
+        // Update expense
+        expenseService.updateExpenseAsync(selectedExpense.getId(), category, amount, date, description).whenComplete((success, error) -> {
+            if (Boolean.TRUE.equals(success)) {
+                notificationService.showInfo("Success", "Expense updated successfully.");
+                clearFields();
+                loadExpenseData();
+            } else {
+                notificationService.showError("Error", "Failed to update expense.");
+            }
+        });
     }
     
     @FXML
@@ -293,15 +411,15 @@ public class ExpenseController implements Initializable {
             return;
         }
         
-        boolean success = expenseService.deleteExpense(selectedExpense.getId());
-        
-        if (success) {
-            notificationService.showInfo("Success", "Expense deleted successfully.");
-            clearFields();
-            loadExpenseData();
-        } else {
-            notificationService.showError("Error", "Failed to delete expense.");
-        }
+        expenseService.deleteExpenseAsync(selectedExpense.getId()).whenComplete((success, error) -> {
+            if (Boolean.TRUE.equals(success)) {
+                notificationService.showInfo("Success", "Expense deleted successfully.");
+                clearFields();
+                loadExpenseData();
+            } else {
+                notificationService.showError("Error", "Failed to delete expense.");
+            }
+        });
     }
     
     @FXML
@@ -309,6 +427,84 @@ public class ExpenseController implements Initializable {
         clearFields();
     }
     
+    @FXML
+    private void handleImportButton(ActionEvent event) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Import");
+        chooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("CSV files and bank statements", "*.csv", "*.txt", "*.ofx", "*.qfx", "*.qif"),
+                                             new FileChooser.ExtensionFilter("Bank statements", "*.ofx", "*.qfx", "*.qif"));
+        File file = chooser.showOpenDialog(importButton.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        
+        if (BankFileImporter.supports(file.toPath())) {
+            importButton.setDisable(true);
+            new BankFileImporter().importFileAsync(file.toPath()).whenComplete((stats, error) -> showImported(file, stats, error));
+            return;
+        }
+        
+        // bank: signed amounts, negative ones are expenses; expenses and income: the export columns
+        ChoiceDialog<String> dialog = new ChoiceDialog<>("bank", "bank", "expenses", "income");
+        dialog.setTitle("Import CSV");
+        dialog.setHeaderText("Columns of " + file.getName());
+        dialog.setContentText("Profile:");
+        Optional<String> profile = dialog.showAndWait();
+        if (!profile.isPresent()) {
+            return;
+        }
+        
+        importButton.setDisable(true);
+        new CsvImporter().importFileAsync(file.toPath(), CsvProfile.forName(profile.get()))
+            .whenComplete((stats, error) -> showImported(file, stats, error));
+    }
+    
+    private void showImported(File file, ImportStats stats, Throwable error) {
+        importButton.setDisable(false);
+        if (error != null || stats == null) {
+            notificationService.showError("Import Error", "Failed to import " + file.getName()
+                    + (error == null ? "." : ": " + error.getMessage()));
+            return;
+        }
+        notificationService.showInfo("Import Complete", String.format("Imported %d expenses and %d income entries; %d rows rejected, %d duplicates skipped.",
+                                                                     stats.getExpenses(), stats.getIncomes(), stats.getRejected(),
+                                                                     stats.getDuplicates()));
+        loadCategories();
+        loadExpenseData();
+    }
+    
+    @FXML
+    private void handleExportButton(ActionEvent event) {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Export to Folder");
+        File directory = chooser.showDialog(exportButton.getScene().getWindow());
+        if (directory == null) {
+            return;
+        }
+        
+        ChoiceDialog<String> dialog = new ChoiceDialog<>("CSV", "CSV", "JSON");
+        dialog.setTitle("Export");
+        dialog.setHeaderText("Expenses, income, budgets and reminders into " + directory.getName());
+        dialog.setContentText("Format:");
+        Optional<String> format = dialog.showAndWait();
+        if (!format.isPresent()) {
+            return;
+        }
+        
+        exportButton.setDisable(true);
+        ExportWriter.Format chosen = ExportWriter.Format.valueOf(format.get().toUpperCase(Locale.ROOT));
+        new ExportService().exportAllAsync(chosen, directory.toPath()).whenComplete((files, error) -> {
+            exportButton.setDisable(false);
+            if (error != null || files == null) {
+                notificationService.showError("Export Error", "Failed to export to " + directory.getName() + ".");
+                return;
+            }
+            long rows = files.stream().mapToLong(ExportService.ExportStats::getRows).sum();
+            notificationService.showInfo("Export Complete", String.format("Exported %d rows into %d files in %s.",
+                                                                         rows, files.size(), directory.getName()));
+        });
+    }
+    
     @FXML
     private void handleIncomeNavButton(ActionEvent event) {
         try {
@@ -2,23 +2,27 @@ package com.personalbudgeting.controller;
 
 import com.personalbudgeting.Main;
 import com.personalbudgeting.model.Income;
+import com.personalbudgeting.service.ExpenseService;
 import com.personalbudgeting.service.IncomeService;
 import com.personalbudgeting.service.NotificationService;
 import com.personalbudgeting.service.UserService;
 import com.personalbudgeting.util.FXMLNavigator;
+import com.personalbudgeting.util.LazyPagedList;
+import com.personalbudgeting.util.RequestScope;
 
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.DatePicker;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
@@ -34,9 +38,13 @@ import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
 
 public class IncomeController implements Initializable {
+    // A search shows its best matches only; more words narrow it down
+    private static final int SEARCH_LIMIT = 200;
     
     @FXML
     private TextField sourceField;
@@ -65,6 +73,9 @@ public class IncomeController implements Initializable {
     @FXML
     private TableView<Income> incomeTable;
     
+    @FXML
+    private TextField searchField;
+    
     @FXML
     private TableColumn<Income, String> sourceColumn;
     
@@ -98,7 +109,8 @@ public class IncomeController implements Initializable {
     private IncomeService incomeService;
     private NotificationService notificationService;
     private UserService userService;
-    private ObservableList<Income> incomeList;
+    private RequestScope requests;
+    private LazyPagedList<Income> incomeList;
     private Income selectedIncome;
     
     @Override
@@ -106,16 +118,16 @@ public class IncomeController implements Initializable {
         incomeService = new IncomeService();
         notificationService = NotificationService.getInstance();
         userService = new UserService();
-        incomeList = FXCollections.observableArrayList();
+        requests = new RequestScope("income view");
         
         // Initialize date picker to current date
         datePicker.setValue(LocalDate.now());
         
-        // Set up table columns
-        sourceColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getSource()));
-        amountColumn.setCellValueFactory(cellData -> new SimpleDoubleProperty(cellData.getValue().getAmount()).asObject());
-        dateColumn.setCellValueFactory(cellData -> new SimpleObjectProperty<>(cellData.getValue().getDate()));
-        descriptionColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getDescription()));
+        // Set up table columns; rows of pages still loading are null and show empty
+        sourceColumn.setCellValueFactory(cellData -> cellData.getValue() == null ? null : new SimpleStringProperty(cellData.getValue().getSource()));
+        amountColumn.setCellValueFactory(cellData -> cellData.getValue() == null ? null : new SimpleDoubleProperty(cellData.getValue().getAmount()).asObject());
+        dateColumn.setCellValueFactory(cellData -> cellData.getValue() == null ? null : new SimpleObjectProperty<>(cellData.getValue().getDate()));
+        descriptionColumn.setCellValueFactory(cellData -> cellData.getValue() == null ? null : new SimpleStringProperty(cellData.getValue().getDescription()));
         
         // Format the amount column to show 2 decimal places
         amountColumn.setCellFactory(column -> new javafx.scene.control.TableCell<Income, Double>() {
@@ -145,9 +157,18 @@ public class IncomeController implements Initializable {
             }
         });
         
+        // Rows come from the database newest first; the paged list cannot be re-sorted in place
+        sourceColumn.setSortable(false);
+        amountColumn.setSortable(false);
+        dateColumn.setSortable(false);
+        descriptionColumn.setSortable(false);
+        
         // Load income data
         loadIncomeData();
         
+        // Each keystroke replaces the pending search, so only results for the latest text are shown
+        searchField.textProperty().addListener((obs, oldText, newText) -> loadIncomeData());
+        
         // Add listener for table row selection
         incomeTable.getSelectionModel().selectedItemProperty().addListener((obs, oldSelection, newSelection) -> {
             if (newSelection != null) {
@@ -168,12 +189,38 @@ public class IncomeController implements Initializable {
     }
     
     private void loadIncomeData() {
-        List<Income> incomes = incomeService.getAllIncome();
-        if (incomes != null) {
-            incomeList.clear();
-            incomeList.addAll(incomes);
-            incomeTable.setItems(incomeList);
+        String search = searchField.getText();
+        if (search != null && !search.trim().isEmpty()) {
+            // Ranked matches of the sources and descriptions, from the full-text index
+            requests.track("rows", incomeService.searchIncomeAsync(search, 0, SEARCH_LIMIT)).thenAccept(results -> {
+                if (incomeList != null) {
+                    incomeList.cancelLoads();
+                    incomeList = null;
+                }
+                incomeTable.setItems(FXCollections.observableArrayList(results));
+            });
+            return;
         }
+        
+        // Rows are paged in from the database as the table scrolls, so the ledger is never fully loaded;
+        // the count and every page are fetched off the FX thread
+        requests.track("rows", incomeService.countIncomeAsync()).thenAccept(count -> {
+            if (incomeList != null) {
+                incomeList.cancelLoads();
+            }
+            incomeList = new LazyPagedList<>(count, new LazyPagedList.PageSource<Income>() {
+                @Override
+                public CompletableFuture<List<Income>> loadAfter(Income last, int limit) {
+                    return requests.add(incomeService.getIncomeAfterAsync(last, limit));
+                }
+                
+                @Override
+                public CompletableFuture<List<Income>> loadAt(int offset, int limit) {
+                    return requests.add(incomeService.getIncomeAtAsync(offset, limit));
+                }
+            });
+            incomeTable.setItems(incomeList);
+        });
     }
     
     private void populateFields(Income income) {
@@ -206,6 +253,11 @@ public class IncomeController implements Initializable {
             notificationService.showError("Input Error", "Source, amount, and date are required.");
             return;
         }
+        if (!ExpenseService.isValidDate(date)) {
+            notificationService.showError("Input Error", "The date must be between " + ExpenseService.EARLIEST_DATE
+                                          + " and " + ExpenseService.LATEST_DATE + ".");
+            return;
+        }
         
         // Parse amount
         double amount;
@@ -220,16 +272,35 @@ public class IncomeController implements Initializable {
             return;
         }
         
-        // Add income
-        boolean success = incomeService.addIncome(source, amount, date, description);
-        
-        if (success) {
-            notificationService.showInfo("Success", "Income added successfully.");
-            clearFields();
-            loadIncomeData();
-        } else {
-            notificationService.showError("Error", "Failed to add income.");
-        }
+        // Add income, asking first if the same entry is already stored (see ExpenseController)
+        addButton.setDisable(true);
+        incomeService.isDuplicateAsync(source, amount, date, description).whenComplete((duplicate, checkError) -> {
+            if (Boolean.TRUE.equals(duplicate) && !confirmDuplicate(source, amount, date)) {
+                addButton.setDisable(false);
+                return;
+            }
+            
+            incomeService.addIncomeAsync(source, amount, date, description).whenComplete((success, error) -> {
+                addButton.setDisable(false);
+                if (Boolean.TRUE.equals(success)) {
+                    notificationService.showInfo("Success", "Income added successfully.");
+                    clearFields();
+                    loadIncomeData();
+                } else {
+                    notificationService.showError("Error", "Failed to add income.");
+                }
+            });
+        });
+    }
+    
+    private boolean confirmDuplicate(String source, double amount, LocalDate date) {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Possible Duplicate");
+        alert.setHeaderText("Income of " + String.format("%.2f", amount) + " from " + source + " on " + date
+                            + " is already recorded.");
+        alert.setContentText("Add it again?");
+        Optional<ButtonType> answer = alert.showAndWait();
+        return answer.isPresent() && answer.get() == ButtonType.OK;
     }
     
     @FXML
@@ -249,6 +320,11 @@ public class IncomeController implements Initializable {
             notificationService.showError("Input Error", "Source, amount, and date are required.");
             return;
         }
+        if (!ExpenseService.isValidDate(date)) {
+            notificationService.showError("Input Error", "The date must be between " + ExpenseService.EARLIEST_DATE
+                                          + " and " + ExpenseService.LATEST_DATE + ".");
+            return;
+        }
         
         // Parse amount
         double amount;
@@ -264,15 +340,15 @@ public class IncomeController implements Initializable {
         }
         
         // Update income
-        boolean success = incomeService.updateIncome(selectedIncome.getId(), source, amount, date, description);
-        
-        if (success) {
-            notificationService.showInfo("Success", "Income updated successfully.");
-            clearFields();
-            loadIncomeData();
-        } else {
-            notificationService.showError("Error", "Failed to update income.");
-        }
+        incomeService.updateIncomeAsync(selectedIncome.getId(), source, amount, date, description).whenComplete((success, error) -> {
+            if (Boolean.TRUE.equals(success)) {
+                notificationService.showInfo("Success", "Income updated successfully.");
+                clearFields();
+                loadIncomeData();
+            } else {
+                notificationService.showError("Error", "Failed to update income.");
+            }
+        });
     }
     
     @FXML
@@ -282,15 +358,15 @@ public class IncomeController implements Initializable {
             return;
         }
         
-        boolean success = incomeService.deleteIncome(selectedIncome.getId());
-        
-        if (success) {
-            notificationService.showInfo("Success", "Income deleted successfully.");
-            clearFields();
-            loadIncomeData();
-        } else {
-            notificationService.showError("Error", "Failed to delete income.");
-        }
+        incomeService.deleteIncomeAsync(selectedIncome.getId()).whenComplete((success, error) -> {
+            if (Boolean.TRUE.equals(success)) {
+                notificationService.showInfo("Success", "Income deleted successfully.");
+                clearFields();
+                loadIncomeData();
+            } else {
+                notificationService.showError("Error", "Failed to delete income.");
+            }
+        });
     }
     
     @FXML
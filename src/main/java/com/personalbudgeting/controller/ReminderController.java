@@ -6,6 +6,7 @@ import com.personalbudgeting.service.NotificationService;
 import com.personalbudgeting.service.ReminderService;
 import com.personalbudgeting.service.UserService;
 import com.personalbudgeting.util.FXMLNavigator;
+import com.personalbudgeting.util.RequestScope;
 
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -111,6 +112,7 @@ public class ReminderController implements Initializable {
     private ReminderService reminderService;
     private NotificationService notificationService;
     private UserService userService;
+    private RequestScope requests;
     private ObservableList<Reminder> reminderList;
     private Reminder selectedReminder;
     
@@ -119,6 +121,7 @@ public class ReminderController implements Initializable {
         reminderService = new ReminderService();
         notificationService = NotificationService.getInstance();
         userService = new UserService();
+        requests = new RequestScope("reminder view");
         reminderList = FXCollections.observableArrayList();
         
         // Register callback for UI refresh when reminders are marked as completed
@@ -209,14 +212,15 @@ public class ReminderController implements Initializable {
                         completeButton.setOnAction(event -> {
                             Reminder reminder = getTableView().getItems().get(getIndex());
                             if (!reminder.isCompleted()) {
-                                boolean success = reminderService.markReminderAsCompleted(reminder.getId());
-                                if (success) {
-                                    notificationService.showInfo("Success", "Reminder marked as completed.");
-                                    loadReminderData();
-                                    updateUpcomingRemindersLabel();
-                                } else {
-                                    notificationService.showError("Error", "Failed to mark reminder as completed.");
-                                }
+                                reminderService.markReminderAsCompletedAsync(reminder.getId()).whenComplete((success, error) -> {
+                                    if (Boolean.TRUE.equals(success)) {
+                                        notificationService.showInfo("Success", "Reminder marked as completed.");
+                                        loadReminderData();
+                                        updateUpcomingRemindersLabel();
+                                    } else {
+                                        notificationService.showError("Error", "Failed to mark reminder as completed.");
+                                    }
+                                });
                             }
                         });
                     }
@@ -240,21 +244,23 @@ public class ReminderController implements Initializable {
     }
     
     private void loadReminderData() {
-        List<Reminder> reminders = reminderService.getAllReminders();
-        if (reminders != null) {
-            reminderList.clear();
-            reminderList.addAll(reminders);
-            reminderTable.setItems(reminderList);
-        }
+        requests.track("reminders", reminderService.getAllRemindersAsync()).thenAccept(reminders -> {
+            if (reminders != null) {
+                reminderList.clear();
+                reminderList.addAll(reminders);
+                reminderTable.setItems(reminderList);
+            }
+        });
     }
     
     private void updateUpcomingRemindersLabel() {
-        List<Reminder> activeReminders = reminderService.getActiveReminders();
-        if (activeReminders != null && !activeReminders.isEmpty()) {
-            upcomingRemindersLabel.setText("You have " + activeReminders.size() + " active reminders.");
-        } else {
-            upcomingRemindersLabel.setText("You have no active reminders.");
-        }
+        requests.track("active", reminderService.getActiveRemindersAsync()).thenAccept(activeReminders -> {
+            if (activeReminders != null && !activeReminders.isEmpty()) {
+                upcomingRemindersLabel.setText("You have " + activeReminders.size() + " active reminders.");
+            } else {
+                upcomingRemindersLabel.setText("You have no active reminders.");
+            }
+        });
     }
     
     private void populateFields(Reminder reminder) {
@@ -307,16 +313,16 @@ public class ReminderController implements Initializable {
         }
         
         // Add reminder
-        boolean success = reminderService.addReminder(title, description, dueDate);
-        
-        if (success) {
-            notificationService.showInfo("Success", "Reminder added successfully.");
-            clearFields();
-            loadReminderData();
-            updateUpcomingRemindersLabel();
-        } else {
-            notificationService.showError("Error", "Failed to add reminder.");
-        }
+        reminderService.addReminderAsync(title, description, dueDate).whenComplete((success, error) -> {
+            if (Boolean.TRUE.equals(success)) {
+                notificationService.showInfo("Success", "Reminder added successfully.");
+                clearFields();
+                loadReminderData();
+                updateUpcomingRemindersLabel();
+            } else {
+                notificationService.showError("Error", "Failed to add reminder.");
+            }
+        });
     }
     
     @FXML
@@ -350,16 +356,16 @@ public class ReminderController implements Initializable {
         LocalDateTime dueDate = LocalDateTime.of(date, time);
         
         // Update reminder
-        boolean success = reminderService.updateReminder(selectedReminder.getId(), title, description, dueDate);
-        
-        if (success) {
-            notificationService.showInfo("Success", "Reminder updated successfully.");
-            clearFields();
-            loadReminderData();
-            updateUpcomingRemindersLabel();
-        } else {
-            notificationService.showError("Error", "Failed to update reminder.");
-        }
+        reminderService.updateReminderAsync(selectedReminder.getId(), title, description, dueDate).whenComplete((success, error) -> {
+            if (Boolean.TRUE.equals(success)) {
+                notificationService.showInfo("Success", "Reminder updated successfully.");
+                clearFields();
+                loadReminderData();
+                updateUpcomingRemindersLabel();
+            } else {
+                notificationService.showError("Error", "Failed to update reminder.");
+            }
+        });
     }
     
     @FXML
@@ -369,16 +375,16 @@ public class ReminderController implements Initializable {
             return;
         }
         
-        boolean success = reminderService.deleteReminder(selectedReminder.getId());
-        
-        if (success) {
-            notificationService.showInfo("Success", "Reminder deleted successfully.");
-            clearFields();
-            loadReminderData();
-            updateUpcomingRemindersLabel();
-        } else {
-            notificationService.showError("Error", "Failed to delete reminder.");
-        }
+        reminderService.deleteReminderAsync(selectedReminder.getId()).whenComplete((success, error) -> {
+            if (Boolean.TRUE.equals(success)) {
+                notificationService.showInfo("Success", "Reminder deleted successfully.");
+                clearFields();
+                loadReminderData();
+                updateUpcomingRemindersLabel();
+            } else {
+                notificationService.showError("Error", "Failed to delete reminder.");
+            }
+        });
     }
     
     @FXML
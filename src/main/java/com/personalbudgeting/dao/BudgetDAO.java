@@ -1,6 +1,7 @@
 package com.personalbudgeting.dao;
 
 import com.personalbudgeting.model.Budget;
+import com.personalbudgeting.repository.BudgetRepository;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -13,32 +14,40 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class BudgetDAO {
-    private Connection connection;
-    
+public class BudgetDAO implements BudgetRepository {
     public BudgetDAO() {
-        this.connection = DatabaseConnection.getConnection();
+        DatabaseConnection.getConnection();
     }
     
     public boolean add(Budget budget) {
-        String sql = "INSERT INTO budget (user_id, category, amount, period) VALUES (?, ?, ?, ?)";
+        String sql = "INSERT INTO budget (user_id, category_id, amount, period) VALUES (?, ?, ?, ?)";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setInt(1, budget.getUserId());
-            stmt.setString(2, budget.getCategory());
-            stmt.setDouble(3, budget.getAmount());
-            stmt.setString(4, budget.getPeriod().toString());
-            
-            int rowsAffected = stmt.executeUpdate();
+        try {
+            int categoryId = CategoryDAO.resolve(budget.getUserId(), budget.getCategory());
+            if (categoryId < 0) {
+                return false;
+            }
             
-            if (rowsAffected > 0) {
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        budget.setId(rs.getInt(1));
+            return DatabaseConnection.write(budget.getUserId(), conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    stmt.setInt(1, budget.getUserId());
+                    stmt.setInt(2, categoryId);
+                    StorageFormat.current().setAmount(stmt, 3, budget.getAmount());
+                    stmt.setString(4, budget.getPeriod().toString());
+                    
+                    int rowsAffected = stmt.executeUpdate();
+                    
+                    if (rowsAffected > 0) {
+                        try (ResultSet rs = stmt.getGeneratedKeys()) {
+                            if (rs.next()) {
+                                budget.setId(rs.getInt(1));
+                            }
+                        }
+                        return true;
                     }
+                    return false;
                 }
-                return true;
-            }
+            });
         } catch (SQLException e) {
             System.err.println("Error adding budget: " + e.getMessage());
             e.printStackTrace();
@@ -49,12 +58,16 @@ public class BudgetDAO {
     public boolean update(Budget budget) {
         String sql = "UPDATE budget SET amount = ? WHERE id = ? AND user_id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setDouble(1, budget.getAmount());
-            stmt.setInt(2, budget.getId());
-            stmt.setInt(3, budget.getUserId());
-            
-            return stmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.write(budget.getUserId(), conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    StorageFormat.current().setAmount(stmt, 1, budget.getAmount());
+                    stmt.setInt(2, budget.getId());
+                    stmt.setInt(3, budget.getUserId());
+                    
+                    return stmt.executeUpdate() > 0;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Error updating budget: " + e.getMessage());
             e.printStackTrace();
@@ -65,11 +78,15 @@ public class BudgetDAO {
     public boolean delete(int budgetId, int userId) {
         String sql = "DELETE FROM budget WHERE id = ? AND user_id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, budgetId);
-            stmt.setInt(2, userId);
-            
-            return stmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.write(userId, conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, budgetId);
+                    stmt.setInt(2, userId);
+                    
+                    return stmt.executeUpdate() > 0;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Error deleting budget: " + e.getMessage());
             e.printStackTrace();
@@ -80,7 +97,8 @@ public class BudgetDAO {
     public Budget findById(int budgetId, int userId) {
         String sql = "SELECT * FROM budget WHERE id = ? AND user_id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, budgetId);
             stmt.setInt(2, userId);
             
@@ -97,11 +115,16 @@ public class BudgetDAO {
     }
     
     public Budget findByCategory(int userId, String category, YearMonth period) {
-        String sql = "SELECT * FROM budget WHERE user_id = ? AND category = ? AND period = ?";
+        String sql = "SELECT * FROM budget WHERE user_id = ? AND category_id = ? AND period = ?";
+        int categoryId = CategoryDictionary.findId(userId, category);
+        if (categoryId < 0) {
+            return null;
+        }
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
-            stmt.setString(2, category);
+            stmt.setInt(2, categoryId);
             stmt.setString(3, period.toString());
             
             try (ResultSet rs = stmt.executeQuery()) {
@@ -120,7 +143,8 @@ public class BudgetDAO {
         List<Budget> budgets = new ArrayList<>();
         String sql = "SELECT * FROM budget WHERE user_id = ? AND period = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
             stmt.setString(2, period.toString());
             
@@ -139,16 +163,17 @@ public class BudgetDAO {
     
     public Map<String, Double> getBudgetsByCategory(int userId, YearMonth period) {
         Map<String, Double> categoryBudgets = new HashMap<>();
-        String sql = "SELECT category, amount FROM budget WHERE user_id = ? AND period = ?";
+        String sql = "SELECT category_id, amount FROM budget WHERE user_id = ? AND period = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
             stmt.setString(2, period.toString());
             
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    String category = rs.getString("category");
-                    double amount = rs.getDouble("amount");
+                    String category = CategoryDictionary.getName(rs.getInt("category_id"));
+                    double amount = StorageFormat.current().getAmount(rs, "amount");
                     categoryBudgets.put(category, amount);
                 }
             }
@@ -162,13 +187,14 @@ public class BudgetDAO {
     public double getTotalBudget(int userId, YearMonth period) {
         String sql = "SELECT SUM(amount) AS total FROM budget WHERE user_id = ? AND period = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
             stmt.setString(2, period.toString());
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getDouble("total");
+                    return StorageFormat.current().getAmount(rs, "total");
                 }
             }
         } catch (SQLException e) {
@@ -178,12 +204,35 @@ public class BudgetDAO {
         return 0.0;
     }
     
+    /**
+     * All budget amounts of a user, keyed "period|category".
+     * Failures are thrown rather than logged so callers can keep their previous state.
+     */
+    public Map<String, Double> loadBudgetAmounts(int userId) throws SQLException {
+        Map<String, Double> amounts = new HashMap<>();
+        String sql = "SELECT period, category_id, amount FROM budget WHERE user_id = ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    amounts.put(rs.getString("period") + "|" + CategoryDictionary.getName(rs.getInt("category_id")),
+                                StorageFormat.current().getAmount(rs, "amount"));
+                }
+            }
+        }
+        return amounts;
+    }
+    
     private Budget extractBudgetFromResultSet(ResultSet rs) throws SQLException {
+        StorageFormat format = StorageFormat.current();
         Budget budget = new Budget();
         budget.setId(rs.getInt("id"));
         budget.setUserId(rs.getInt("user_id"));
-        budget.setCategory(rs.getString("category"));
-        budget.setAmount(rs.getDouble("amount"));
+        budget.setCategory(CategoryDictionary.getName(rs.getInt("category_id")));
+        budget.setAmount(format.getAmount(rs, "amount"));
         budget.setPeriod(YearMonth.parse(rs.getString("period")));
         return budget;
     }
@@ -0,0 +1,81 @@
+package com.personalbudgeting.dao;
+
+import com.personalbudgeting.model.BudgetSummary;
+import com.personalbudgeting.repository.BudgetSummaryRepository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Computes a whole {@link BudgetSummary} with a single statement.
+ *
+ * The CTEs read the maintained monthly aggregates and the month's budgets and
+ * the result is one row per category spent, one per category budgeted and one
+ * income row, so the budget screen costs one round trip instead of five queries.
+ */
+public class BudgetSummaryDAO implements BudgetSummaryRepository {
+    private static final String SUMMARY_SQL =
+        "WITH spent AS (" +
+        "  SELECT category_id, total_cents FROM expense_monthly_agg WHERE user_id = ?1 AND period = ?2" +
+        "), planned AS (" +
+        "  SELECT category_id, amount FROM budget WHERE user_id = ?1 AND period = ?2" +
+        "), earned AS (" +
+        "  SELECT COALESCE(SUM(total_cents), 0) AS total_cents FROM income_monthly_agg WHERE user_id = ?1 AND period = ?2" +
+        ") " +
+        "SELECT 'expense' AS kind, category_id, total_cents, NULL AS amount FROM spent " +
+        "UNION ALL SELECT 'budget', category_id, NULL, amount FROM planned " +
+        "UNION ALL SELECT 'income', NULL, total_cents, NULL FROM earned " +
+        "ORDER BY 1, 2";
+    
+    public BudgetSummaryDAO() {
+        DatabaseConnection.getConnection();
+    }
+    
+    public BudgetSummary getSummary(int userId, YearMonth period) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(SUMMARY_SQL)) {
+            stmt.setInt(1, userId);
+            stmt.setString(2, period.toString());
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                return extractSummary(rs, period);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error computing budget summary: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return null;
+    }
+    
+    private BudgetSummary extractSummary(ResultSet rs, YearMonth period) throws SQLException {
+        StorageFormat format = StorageFormat.current();
+        Map<String, Double> expensesByCategory = new LinkedHashMap<>();
+        Map<String, Double> budgetsByCategory = new LinkedHashMap<>();
+        long incomeCents = 0;
+        long expenseCents = 0;
+        double totalBudget = 0.0;
+        
+        while (rs.next()) {
+            String kind = rs.getString("kind");
+            if ("expense".equals(kind)) {
+                long cents = rs.getLong("total_cents");
+                expensesByCategory.put(CategoryDictionary.getName(rs.getInt("category_id")), StorageFormat.fromCents(cents));
+                expenseCents += cents;
+            } else if ("budget".equals(kind)) {
+                double amount = format.getAmount(rs, "amount");
+                budgetsByCategory.put(CategoryDictionary.getName(rs.getInt("category_id")), amount);
+                totalBudget += amount;
+            } else {
+                incomeCents = rs.getLong("total_cents");
+            }
+        }
+        
+        return new BudgetSummary(period, StorageFormat.fromCents(incomeCents), StorageFormat.fromCents(expenseCents),
+                                 totalBudget, expensesByCategory, budgetsByCategory);
+    }
+}
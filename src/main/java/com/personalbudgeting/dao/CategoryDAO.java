@@ -0,0 +1,120 @@
+package com.personalbudgeting.dao;
+
+import com.personalbudgeting.model.Category;
+import com.personalbudgeting.repository.CategoryRepository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * The category table of the main database, read through {@link CategoryDictionary}.
+ * Changes are written to the main database first and then to the dictionary.
+ */
+public class CategoryDAO implements CategoryRepository {
+    public CategoryDAO() {
+        DatabaseConnection.getConnection();
+    }
+    
+    public List<Category> findByUserId(int userId) {
+        return CategoryDictionary.getCategories(userId);
+    }
+    
+    public Category findOrAdd(int userId, String name) {
+        try {
+            int id = resolve(userId, name);
+            return id < 0 ? null : CategoryDictionary.find(id);
+        } catch (SQLException e) {
+            System.err.println("Error adding category: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return null;
+    }
+    
+    /**
+     * The id of the category a user knows by this name, adding it as one of the user's
+     * own if there is none. Must not be called on the writer of the main database, so
+     * the DAOs resolve their categories before they submit a write.
+     *
+     * @return -1 if the name is blank
+     */
+    static synchronized int resolve(int userId, String name) throws SQLException {
+        String trimmed = name == null ? "" : name.trim();
+        if (trimmed.isEmpty()) {
+            return -1;
+        }
+        int id = CategoryDictionary.findId(userId, trimmed);
+        if (id >= 0) {
+            return id;
+        }
+        
+        String sql = "INSERT INTO category (user_id, name) VALUES (?, ?)";
+        Category category = new Category(userId, trimmed);
+        DatabaseConnection.write(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setInt(1, userId);
+                stmt.setString(2, trimmed);
+                stmt.executeUpdate();
+                
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    if (!rs.next()) {
+                        throw new SQLException("No id generated for category " + trimmed);
+                    }
+                    category.setId(rs.getInt(1));
+                }
+            }
+            return null;
+        });
+        CategoryDictionary.put(category);
+        return category.getId();
+    }
+    
+    public boolean delete(int categoryId, int userId) {
+        // Under the same lock as resolve, so the category cannot be handed out meanwhile
+        synchronized (CategoryDAO.class) {
+            return deleteUnused(categoryId, userId);
+        }
+    }
+    
+    private static boolean deleteUnused(int categoryId, int userId) {
+        Category category = CategoryDictionary.find(categoryId);
+        if (category == null || !category.isCustom() || category.getUserId() != userId) {
+            return false;
+        }
+        
+        // The ledger lives in the user's home database, the category in the main one
+        String usedSql = "SELECT EXISTS (SELECT 1 FROM expense WHERE user_id = ?1 AND category_id = ?2) " +
+                         "OR EXISTS (SELECT 1 FROM budget WHERE user_id = ?1 AND category_id = ?2)";
+        try {
+            try (Connection conn = DatabaseConnection.getReadConnection(userId);
+                 PreparedStatement stmt = conn.prepareStatement(usedSql)) {
+                stmt.setInt(1, userId);
+                stmt.setInt(2, categoryId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next() && rs.getBoolean(1)) {
+                        return false;
+                    }
+                }
+            }
+            
+            boolean deleted = DatabaseConnection.write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM category WHERE id = ? AND user_id = ?")) {
+                    stmt.setInt(1, categoryId);
+                    stmt.setInt(2, userId);
+                    return stmt.executeUpdate() > 0;
+                }
+            });
+            if (deleted) {
+                CategoryDictionary.remove(category);
+            }
+            return deleted;
+        } catch (SQLException e) {
+            System.err.println("Error deleting category: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return false;
+    }
+}
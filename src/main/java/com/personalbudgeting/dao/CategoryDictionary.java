@@ -0,0 +1,118 @@
+package com.personalbudgeting.dao;
+
+import com.personalbudgeting.model.Category;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process copy of the category table, mapping category ids to names and back.
+ *
+ * Ledger rows store only a category id; the DAOs bind ids through {@link #findId}
+ * and turn them back into names with {@link #getName}, so reads need no join. Names
+ * are interned, so every row of a category shares one String. A user sees the
+ * built-in categories plus their own; a custom category never has the name of a
+ * built-in one, so a name identifies one category per user.
+ *
+ * The table is small and only changed through {@link CategoryDAO}, so it is loaded
+ * once at startup from the main database and kept up to date from then on.
+ */
+public final class CategoryDictionary {
+    private static final Map<Integer, Category> byId = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> byOwnerAndName = new ConcurrentHashMap<>();
+    
+    private CategoryDictionary() {
+    }
+    
+    /**
+     * Read the category table of the main database.
+     */
+    public static void load(Connection main) throws SQLException {
+        byId.clear();
+        byOwnerAndName.clear();
+        
+        try (Statement stmt = main.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, user_id, name FROM category")) {
+            while (rs.next()) {
+                Category category = new Category(rs.getInt("user_id"), rs.getString("name"));
+                category.setId(rs.getInt("id"));
+                put(category);
+            }
+        }
+    }
+    
+    static void put(Category category) {
+        category.setName(category.getName().intern());
+        byId.put(category.getId(), category);
+        byOwnerAndName.put(key(category.getUserId(), category.getName()), category.getId());
+    }
+    
+    static void remove(Category category) {
+        byId.remove(category.getId());
+        byOwnerAndName.remove(key(category.getUserId(), category.getName()));
+    }
+    
+    /**
+     * The name of a category id, or null if there is no such category.
+     */
+    public static String getName(int categoryId) {
+        Category category = byId.get(categoryId);
+        return category == null ? null : category.getName();
+    }
+    
+    /**
+     * The id of the category a user knows by this name: a built-in category or one of
+     * the user's own, or -1 if there is none.
+     */
+    public static int findId(int userId, String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer id = byOwnerAndName.get(key(Category.BUILT_IN, name));
+        if (id == null) {
+            id = byOwnerAndName.get(key(userId, name));
+        }
+        return id == null ? -1 : id;
+    }
+    
+    public static Category find(int categoryId) {
+        Category category = byId.get(categoryId);
+        return category == null ? null : copy(category);
+    }
+    
+    /**
+     * The built-in categories in display order followed by the user's own, by name.
+     */
+    public static List<Category> getCategories(int userId) {
+        List<Category> builtIn = new ArrayList<>();
+        List<Category> custom = new ArrayList<>();
+        for (Category category : byId.values()) {
+            if (category.getUserId() == Category.BUILT_IN) {
+                builtIn.add(copy(category));
+            } else if (category.getUserId() == userId) {
+                custom.add(copy(category));
+            }
+        }
+        builtIn.sort(Comparator.comparingInt(Category::getId));
+        custom.sort(Comparator.comparing(Category::getName, String.CASE_INSENSITIVE_ORDER));
+        builtIn.addAll(custom);
+        return builtIn;
+    }
+    
+    private static String key(int userId, String name) {
+        return userId + "|" + name;
+    }
+    
+    private static Category copy(Category category) {
+        Category copy = new Category(category.getUserId(), category.getName());
+        copy.setId(category.getId());
+        return copy;
+    }
+}
@@ -0,0 +1,309 @@
+package com.personalbudgeting.dao;
+
+import com.personalbudgeting.model.Category;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves the category names of the expense, budget and expense_monthly_agg tables
+ * into the category table and replaces them with a category_id column.
+ *
+ * The category table of the main database holds every category, so ids are the
+ * same in every file; shard files get an empty copy. The built-in categories are
+ * seeded with the ids 1, 2, 3, ... of {@link Category#DEFAULTS}, and every other
+ * name a user has used becomes one of that user's own categories.
+ *
+ * Like {@link IntegerStorageMigrator}, expense and budget are rebuilt online: one
+ * transaction maps every (user, name) pair to an id and creates the shadow tables
+ * with triggers that mirror writes into them, the rows are copied in chunks, and
+ * each shadow table replaces its original in one short transaction. A write with
+ * a name that was not mapped fails while the copy runs. expense_monthly_agg has
+ * no rowid to chunk by but only a row per user, month and category, so it is
+ * copied in its swap transaction. An interrupted run can simply be started again.
+ */
+class CategoryMigrator {
+    private static final String[] CHUNKED_TABLES = { "expense", "budget" };
+    private static final String AGGREGATE_TABLE = "expense_monthly_agg";
+    
+    private final Connection connection;
+    private final Connection main;
+    private final int chunkSize;
+    
+    /**
+     * @param connection the database to migrate
+     * @param main the main database, which may be the same connection
+     */
+    CategoryMigrator(Connection connection, Connection main, int chunkSize) {
+        this.connection = connection;
+        this.main = main;
+        this.chunkSize = chunkSize;
+    }
+    
+    void migrate() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS category (" +
+                         "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                         "user_id INTEGER NOT NULL DEFAULT 0, " +
+                         "name TEXT NOT NULL, " +
+                         "UNIQUE(user_id, name)" +
+                         ")");
+            
+            // A conversion to the INTEGER format that was interrupted restarts from scratch afterwards
+            for (String table : CHUNKED_TABLES) {
+                stmt.execute("DROP TABLE IF EXISTS " + table + "_int");
+            }
+        }
+        
+        if (connection == main) {
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "INSERT OR IGNORE INTO category (id, user_id, name) VALUES (?, " + Category.BUILT_IN + ", ?)")) {
+                for (int i = 0; i < Category.DEFAULTS.size(); i++) {
+                    stmt.setInt(1, i + 1);
+                    stmt.setString(2, Category.DEFAULTS.get(i));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+        
+        List<String> remaining = new ArrayList<>();
+        for (String table : CHUNKED_TABLES) {
+            if (hasCategoryName(table)) {
+                remaining.add(table);
+            }
+        }
+        boolean aggregates = hasCategoryName(AGGREGATE_TABLE);
+        if (aggregates) {
+            remaining.add(AGGREGATE_TABLE);
+        }
+        
+        if (!remaining.isEmpty()) {
+            inTransaction(() -> {
+                fillCategoryMap(remaining);
+                for (String table : remaining) {
+                    if (!AGGREGATE_TABLE.equals(table)) {
+                        createShadowTable(table);
+                    }
+                }
+            });
+        }
+        
+        for (String table : remaining) {
+            if (!AGGREGATE_TABLE.equals(table)) {
+                System.out.println("Moving the categories of " + table + " to the category table...");
+                copyRows(table);
+                inTransaction(() -> swapTable(table));
+            }
+        }
+        if (aggregates) {
+            inTransaction(() -> {
+                createShadowTable(AGGREGATE_TABLE);
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute(copySql(AGGREGATE_TABLE, ""));
+                }
+                swapTable(AGGREGATE_TABLE);
+            });
+        }
+        
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS category_map");
+        }
+    }
+    
+    // Resolve every (user, name) pair of the tables to a category id of the main database
+    private void fillCategoryMap(List<String> tables) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS category_map (user_id INTEGER NOT NULL, name TEXT NOT NULL, " +
+                         "id INTEGER NOT NULL, PRIMARY KEY (user_id, name))");
+        }
+        
+        List<String> selects = new ArrayList<>();
+        for (String table : tables) {
+            selects.add("SELECT user_id, category FROM " + table);
+        }
+        List<Object[]> pairs = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(String.join(" UNION ", selects))) {
+            while (rs.next()) {
+                pairs.add(new Object[] { rs.getInt(1), rs.getString(2) });
+            }
+        }
+        
+        try (PreparedStatement insertCustom = main.prepareStatement(
+                 "INSERT OR IGNORE INTO category (user_id, name) VALUES (?, ?)");
+             PreparedStatement findCustom = main.prepareStatement(
+                 "SELECT id FROM category WHERE user_id = ? AND name = ?");
+             PreparedStatement insertMapping = connection.prepareStatement(
+                 "INSERT OR IGNORE INTO category_map (user_id, name, id) VALUES (?, ?, ?)")) {
+            for (Object[] pair : pairs) {
+                int userId = (Integer) pair[0];
+                String name = (String) pair[1];
+                int id = Category.DEFAULTS.indexOf(name) + 1;
+                
+                if (id == 0) {
+                    insertCustom.setInt(1, userId);
+                    insertCustom.setString(2, name);
+                    insertCustom.executeUpdate();
+                    findCustom.setInt(1, userId);
+                    findCustom.setString(2, name);
+                    try (ResultSet rs = findCustom.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new SQLException("Category not stored: " + name);
+                        }
+                        id = rs.getInt(1);
+                    }
+                }
+                
+                insertMapping.setInt(1, userId);
+                insertMapping.setString(2, name);
+                insertMapping.setInt(3, id);
+                insertMapping.executeUpdate();
+            }
+        }
+    }
+    
+    // The shadow table, and for a chunked table the triggers that mirror writes into it
+    private void createShadowTable(String table) throws SQLException {
+        String shadow = table + "_new";
+        List<String> columns = getColumns(table);
+        
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createRebuiltTableSql(table, shadow));
+            if (AGGREGATE_TABLE.equals(table)) {
+                return;
+            }
+            
+            List<String> mirrored = new ArrayList<>();
+            for (String column : columns) {
+                mirrored.add("category".equalsIgnoreCase(column)
+                             ? "(SELECT id FROM category_map WHERE user_id = NEW.user_id AND name = NEW.category)"
+                             : "NEW." + column);
+            }
+            String insert = "INSERT OR REPLACE INTO " + shadow + " (" + String.join(", ", rebuiltColumns(columns)) + ") " +
+                            "VALUES (" + String.join(", ", mirrored) + "); END";
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS " + shadow + "_ai AFTER INSERT ON " + table + " BEGIN " + insert);
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS " + shadow + "_au AFTER UPDATE ON " + table + " BEGIN " + insert);
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS " + shadow + "_ad AFTER DELETE ON " + table + " BEGIN " +
+                         "DELETE FROM " + shadow + " WHERE id = OLD.id; END");
+        }
+    }
+    
+    private void copyRows(String table) throws SQLException {
+        // Rows already mirrored by the triggers are newer than the copy, so keep them
+        SchemaMigrator.executeInChunks(connection, table, copySql(table, " WHERE t.rowid >= ? AND t.rowid < ?"), chunkSize);
+    }
+    
+    private String copySql(String table, String where) throws SQLException {
+        List<String> columns = getColumns(table);
+        List<String> values = new ArrayList<>();
+        for (String column : columns) {
+            values.add("category".equalsIgnoreCase(column) ? "m.id" : "t." + column);
+        }
+        return "INSERT OR IGNORE INTO " + table + "_new (" + String.join(", ", rebuiltColumns(columns)) + ") " +
+               "SELECT " + String.join(", ", values) + " FROM " + table + " t " +
+               "JOIN category_map m ON m.user_id = t.user_id AND m.name = t.category" + where;
+    }
+    
+    private void swapTable(String table) throws SQLException {
+        String shadow = table + "_new";
+        List<String> indexes = getIndexes(table);
+        
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TRIGGER IF EXISTS " + shadow + "_ai");
+            stmt.execute("DROP TRIGGER IF EXISTS " + shadow + "_au");
+            stmt.execute("DROP TRIGGER IF EXISTS " + shadow + "_ad");
+            stmt.execute("DROP TABLE " + table);
+            stmt.execute("ALTER TABLE " + shadow + " RENAME TO " + table);
+            for (String sql : indexes) {
+                stmt.execute(sql);
+            }
+        }
+    }
+    
+    private interface Step {
+        void run() throws SQLException;
+    }
+    
+    private void inTransaction(Step step) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            step.run();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+    
+    private boolean hasCategoryName(String table) throws SQLException {
+        for (String column : getColumns(table)) {
+            if ("category".equalsIgnoreCase(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static List<String> rebuiltColumns(List<String> columns) {
+        List<String> rebuilt = new ArrayList<>();
+        for (String column : columns) {
+            rebuilt.add("category".equalsIgnoreCase(column) ? "category_id" : column);
+        }
+        return rebuilt;
+    }
+    
+    // The table's own definition, whatever its storage format, with category_id for category
+    private String createRebuiltTableSql(String table, String rebuilt) throws SQLException {
+        String sql;
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Table not found: " + table);
+                }
+                sql = rs.getString(1);
+            }
+        }
+        
+        sql = sql.replaceFirst("(?i)^CREATE TABLE\\s+(IF NOT EXISTS\\s+)?\"?" + table + "\"?", "CREATE TABLE IF NOT EXISTS " + rebuilt);
+        // Renames the column and its uses in UNIQUE and PRIMARY KEY constraints
+        sql = sql.replaceAll("(?i)\\bcategory\\b", "category_id");
+        return sql.replaceFirst("(?i)\\bcategory_id\\s+TEXT\\s+NOT\\s+NULL",
+                                "category_id INTEGER NOT NULL REFERENCES category(id)");
+    }
+    
+    private List<String> getIndexes(String table) throws SQLException {
+        List<String> indexes = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT sql FROM sqlite_master WHERE type = 'index' AND tbl_name = ? AND sql IS NOT NULL")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    indexes.add(rs.getString(1).replaceAll("(?i)\\bcategory\\b", "category_id"));
+                }
+            }
+        }
+        return indexes;
+    }
+    
+    private List<String> getColumns(String table) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                columns.add(rs.getString("name"));
+            }
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,282 @@
+package com.personalbudgeting.dao;
+
+import org.sqlite.SQLiteConfig;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connections to one SQLite database file: a single dedicated writer plus a
+ * small pool of read-only connections.
+ *
+ * The database is switched to WAL mode when the writer is opened, so readers
+ * see the last committed state and never queue behind a running write.
+ * Read connections are handed out as proxies whose close() returns them to the pool.
+ */
+public class ConnectionPool {
+    private final String databaseUrl;
+    private final int maxReadConnections;
+    private final int busyTimeoutMillis;
+    private final long maxWaitMillis;
+    
+    private final BlockingQueue<Connection> idleReaders;
+    private final AtomicInteger openReaders = new AtomicInteger();
+    private Connection writer;
+    private volatile boolean closed;
+    
+    // Checkout metrics
+    private final AtomicLong checkouts = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    
+    public ConnectionPool(String databasePath, int maxReadConnections, int busyTimeoutMillis, long maxWaitMillis) {
+        this.databaseUrl = "jdbc:sqlite:" + databasePath;
+        this.maxReadConnections = Math.max(1, maxReadConnections);
+        this.busyTimeoutMillis = busyTimeoutMillis;
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleReaders = new ArrayBlockingQueue<>(this.maxReadConnections);
+    }
+    
+    public String getDatabaseUrl() {
+        return databaseUrl;
+    }
+    
+    /**
+     * Get the dedicated writer connection, opening (or reopening) it if needed.
+     * The writer stays in autocommit mode and must not be closed by callers.
+     */
+    public synchronized Connection getWriteConnection() throws SQLException {
+        if (writer == null || writer.isClosed()) {
+            SQLiteConfig config = new SQLiteConfig();
+            config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+            config.setBusyTimeout(busyTimeoutMillis);
+            
+            writer = DriverManager.getConnection(databaseUrl, config.toProperties());
+            writer.setAutoCommit(true);
+            closed = false;
+        }
+        return writer;
+    }
+    
+    /**
+     * Borrow a read-only connection. Closing the returned connection gives it
+     * back to the pool; it must not be used after that.
+     *
+     * @throws SQLException if no connection became free within the configured wait time
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed: " + databaseUrl);
+        }
+        
+        // Make sure the file exists and is in WAL mode before opening readers
+        getWriteConnection();
+        
+        checkouts.incrementAndGet();
+        Connection connection = idleReaders.poll();
+        
+        if (connection == null) {
+            connection = openReaderIfBelowLimit();
+        }
+        
+        if (connection == null) {
+            long start = System.nanoTime();
+            try {
+                connection = idleReaders.poll(maxWaitMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a read connection", e);
+            }
+            recordWait(System.nanoTime() - start);
+            
+            if (connection == null) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Timed out after " + maxWaitMillis + " ms waiting for a read connection");
+            }
+        }
+        
+        return wrap(connection);
+    }
+    
+    private Connection openReaderIfBelowLimit() throws SQLException {
+        while (true) {
+            int current = openReaders.get();
+            if (current >= maxReadConnections) {
+                return null;
+            }
+            if (openReaders.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        
+        try {
+            SQLiteConfig config = new SQLiteConfig();
+            config.setReadOnly(true);
+            config.setBusyTimeout(busyTimeoutMillis);
+            return DriverManager.getConnection(databaseUrl, config.toProperties());
+        } catch (SQLException e) {
+            openReaders.decrementAndGet();
+            throw e;
+        }
+    }
+    
+    private void recordWait(long nanos) {
+        waits.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+    
+    private void release(Connection connection) {
+        try {
+            if (closed || connection.isClosed() || !idleReaders.offer(connection)) {
+                discard(connection);
+            }
+        } catch (SQLException e) {
+            discard(connection);
+        }
+    }
+    
+    private void discard(Connection connection) {
+        openReaders.decrementAndGet();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing read connection: " + e.getMessage());
+        }
+    }
+    
+    private Connection wrap(Connection target) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean returned;
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ("close".equals(name)) {
+                    if (!returned) {
+                        returned = true;
+                        release(target);
+                    }
+                    return null;
+                }
+                if ("isClosed".equals(name)) {
+                    return returned || target.isClosed();
+                }
+                if (returned) {
+                    throw new SQLException("Read connection already returned to the pool");
+                }
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, handler);
+    }
+    
+    public PoolStats getStats() {
+        return new PoolStats(maxReadConnections, openReaders.get(), idleReaders.size(),
+                             checkouts.get(), waits.get(), timeouts.get(),
+                             totalWaitNanos.get(), maxWaitNanos.get());
+    }
+    
+    public synchronized void close() {
+        closed = true;
+        
+        Connection connection;
+        while ((connection = idleReaders.poll()) != null) {
+            discard(connection);
+        }
+        
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing write connection: " + e.getMessage());
+            }
+            writer = null;
+        }
+    }
+    
+    /**
+     * Snapshot of the pool's checkout metrics, used to size the pool under load.
+     */
+    public static final class PoolStats {
+        private final int maxReadConnections;
+        private final int openReadConnections;
+        private final int idleReadConnections;
+        private final long checkouts;
+        private final long waits;
+        private final long timeouts;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+        
+        PoolStats(int maxReadConnections, int openReadConnections, int idleReadConnections,
+                  long checkouts, long waits, long timeouts, long totalWaitNanos, long maxWaitNanos) {
+            this.maxReadConnections = maxReadConnections;
+            this.openReadConnections = openReadConnections;
+            this.idleReadConnections = idleReadConnections;
+            this.checkouts = checkouts;
+            this.waits = waits;
+            this.timeouts = timeouts;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+        
+        public int getMaxReadConnections() {
+            return maxReadConnections;
+        }
+        
+        public int getOpenReadConnections() {
+            return openReadConnections;
+        }
+        
+        public int getIdleReadConnections() {
+            return idleReadConnections;
+        }
+        
+        public long getCheckouts() {
+            return checkouts;
+        }
+        
+        // Number of checkouts that found no free connection and had to wait
+        public long getWaits() {
+            return waits;
+        }
+        
+        public long getTimeouts() {
+            return timeouts;
+        }
+        
+        public double getAverageWaitMillis() {
+            return waits == 0 ? 0.0 : (totalWaitNanos / (double) waits) / 1_000_000.0;
+        }
+        
+        public double getMaxWaitMillis() {
+            return maxWaitNanos / 1_000_000.0;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("PoolStats{readers=%d/%d (idle %d), checkouts=%d, waits=%d, timeouts=%d, avgWait=%.2fms, maxWait=%.2fms}",
+                                 openReadConnections, maxReadConnections, idleReadConnections,
+                                 checkouts, waits, timeouts, getAverageWaitMillis(), getMaxWaitMillis());
+        }
+    }
+}
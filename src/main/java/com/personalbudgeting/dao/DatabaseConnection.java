@@ -1,71 +1,237 @@
 package com.personalbudgeting.dao;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class DatabaseConnection {
-    private static final String DATABASE_URL = "jdbc:sqlite:budget.db";
-    private static Connection connection;
+    private static final String DATABASE_PATH = System.getProperty("budget.db.path", "budget.db");
+    private static final int READ_POOL_SIZE = Integer.getInteger("budget.db.readPoolSize", 4);
+    private static final int BUSY_TIMEOUT_MILLIS = Integer.getInteger("budget.db.busyTimeoutMs", 5000);
+    private static final long POOL_WAIT_MILLIS = Long.getLong("budget.db.poolWaitMs", 10000L);
+    private static final long GROUP_COMMIT_WINDOW_MILLIS = Long.getLong("budget.db.groupCommitWindowMs", 0L);
+    private static final int GROUP_COMMIT_MAX_BATCH = Integer.getInteger("budget.db.groupCommitMaxBatch", 256);
+    private static final int WRITE_QUEUE_CAPACITY = Integer.getInteger("budget.db.writeQueueCapacity", 1024);
+    
+    private static ConnectionPool pool;
+    private static WriteQueue writeQueue;
+    
+    // Shard databases, opened on first use; see ShardRouter
+    private static final Map<Integer, ConnectionPool> shardPools = new HashMap<>();
+    private static final Map<Integer, WriteQueue> shardQueues = new HashMap<>();
     
     // Private constructor to prevent instantiation
     private DatabaseConnection() {}
     
-    public static synchronized Connection getConnection() {
-        if (connection == null) {
+    private static synchronized ConnectionPool getPool() {
+        if (pool == null) {
             try {
                 // Load the SQLite JDBC driver
                 Class.forName("org.sqlite.JDBC");
-                
-                // Create a connection to the database
-                connection = DriverManager.getConnection(DATABASE_URL);
-                
-                // Set some database properties for better performance
-                connection.setAutoCommit(true);
-                
-                System.out.println("Database connection established successfully.");
-            } catch (ClassNotFoundException | SQLException e) {
+            } catch (ClassNotFoundException e) {
                 System.err.println("Database connection error: " + e.getMessage());
                 e.printStackTrace();
             }
-        } else {
-            // Check if connection is still valid
+            pool = new ConnectionPool(DATABASE_PATH, READ_POOL_SIZE, BUSY_TIMEOUT_MILLIS, POOL_WAIT_MILLIS);
+        }
+        return pool;
+    }
+    
+    public static String getDatabasePath() {
+        return DATABASE_PATH;
+    }
+    
+    /**
+     * Get the dedicated writer connection. It is shared by all DAOs and must not be closed by callers.
+     */
+    public static synchronized Connection getConnection() {
+        boolean firstOpen = pool == null;
+        try {
+            Connection connection = getPool().getWriteConnection();
+            if (firstOpen) {
+                System.out.println("Database connection established successfully (WAL mode, " + READ_POOL_SIZE + " readers).");
+            }
+            return connection;
+        } catch (SQLException e) {
+            System.err.println("Database connection error: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return null;
+    }
+    
+    /**
+     * Borrow a read-only connection from the pool. Use it in a try-with-resources
+     * block; closing it returns it to the pool.
+     */
+    public static Connection getReadConnection() throws SQLException {
+        return getPool().getReadConnection();
+    }
+    
+    /**
+     * Borrow a read-only connection to the database holding the user's ledger.
+     */
+    public static Connection getReadConnection(int userId) throws SQLException {
+        return getShardReadConnection(ShardRouter.shardOf(userId));
+    }
+    
+    /**
+     * Borrow a read-only connection to a shard, or to the main database for ShardRouter.MAIN.
+     */
+    public static Connection getShardReadConnection(int shard) throws SQLException {
+        return shard == ShardRouter.MAIN ? getReadConnection() : getShardPool(shard).getReadConnection();
+    }
+    
+    private static synchronized ConnectionPool getShardPool(int shard) {
+        getPool(); // Loads the driver
+        return shardPools.computeIfAbsent(shard, s ->
+            new ConnectionPool(ShardRouter.getShardPath(s), READ_POOL_SIZE, BUSY_TIMEOUT_MILLIS, POOL_WAIT_MILLIS));
+    }
+    
+    /**
+     * Get the writer connection of a shard, or of the main database for ShardRouter.MAIN.
+     */
+    public static synchronized Connection getShardConnection(int shard) throws SQLException {
+        return shard == ShardRouter.MAIN ? getPool().getWriteConnection() : getShardPool(shard).getWriteConnection();
+    }
+    
+    /**
+     * Run work on the writer connection inside a single transaction. The work is
+     * committed if it returns normally and rolled back if it throws.
+     */
+    public static <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        Connection connection = getConnection();
+        if (connection == null) {
+            throw new SQLException("No database connection available");
+        }
+        
+        // Only one transaction at a time on the shared writer
+        synchronized (connection) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
             try {
-                if (connection.isClosed()) {
-                    // Reconnect if connection is closed
-                    connection = DriverManager.getConnection(DATABASE_URL);
-                    connection.setAutoCommit(true);
-                    System.out.println("Database reconnection established successfully.");
-                }
-            } catch (SQLException e) {
-                System.err.println("Database reconnection error: " + e.getMessage());
-                e.printStackTrace();
-                
-                // Try to create a new connection
-                try {
-                    connection = DriverManager.getConnection(DATABASE_URL);
-                    connection.setAutoCommit(true);
-                    System.out.println("New database connection established successfully.");
-                } catch (SQLException ex) {
-                    System.err.println("Failed to establish new connection: " + ex.getMessage());
-                    ex.printStackTrace();
-                }
+                T result = work.execute(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
             }
         }
-        return connection;
+    }
+    
+    private static synchronized WriteQueue getWriteQueue() throws SQLException {
+        if (writeQueue == null) {
+            Connection connection = getConnection();
+            if (connection == null) {
+                throw new SQLException("No database connection available");
+            }
+            writeQueue = new WriteQueue(connection, GROUP_COMMIT_WINDOW_MILLIS, GROUP_COMMIT_MAX_BATCH, WRITE_QUEUE_CAPACITY);
+        }
+        return writeQueue;
+    }
+    
+    /**
+     * Run a ledger mutation through the group-commit write queue and wait until
+     * it is committed. The work runs in a transaction shared with other queued
+     * mutations, under its own savepoint: if it throws, only its changes are
+     * rolled back and the exception is rethrown here.
+     */
+    public static <T> T write(SqlWork<T> work) throws SQLException {
+        return getWriteQueue().execute(work);
+    }
+    
+    /**
+     * Queue a ledger mutation without waiting; the future completes when its batch commits.
+     */
+    public static <T> CompletableFuture<T> submitWrite(SqlWork<T> work) {
+        try {
+            return getWriteQueue().submit(work);
+        } catch (SQLException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+    
+    private static synchronized WriteQueue getShardQueue(int shard) throws SQLException {
+        if (shard == ShardRouter.MAIN) {
+            return getWriteQueue();
+        }
+        WriteQueue queue = shardQueues.get(shard);
+        if (queue == null) {
+            // Every shard has its own writer, so writes to different shards commit in parallel
+            queue = new WriteQueue(getShardConnection(shard), "db-writer-shard-" + shard,
+                                   GROUP_COMMIT_WINDOW_MILLIS, GROUP_COMMIT_MAX_BATCH, WRITE_QUEUE_CAPACITY);
+            shardQueues.put(shard, queue);
+        }
+        return queue;
+    }
+    
+    /**
+     * Like {@link #write(SqlWork)}, on the database holding the user's ledger.
+     */
+    public static <T> T write(int userId, SqlWork<T> work) throws SQLException {
+        return getShardQueue(ShardRouter.shardOf(userId)).execute(work);
+    }
+    
+    /**
+     * Like {@link #submitWrite(SqlWork)}, on the database holding the user's ledger.
+     */
+    public static <T> CompletableFuture<T> submitWrite(int userId, SqlWork<T> work) {
+        try {
+            return getShardQueue(ShardRouter.shardOf(userId)).submit(work);
+        } catch (SQLException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+    
+    public static synchronized WriteQueue.WriteStats getWriteStats() {
+        return writeQueue == null ? null : writeQueue.getStats();
+    }
+    
+    public static ConnectionPool.PoolStats getPoolStats() {
+        return getPool().getStats();
     }
     
     // This method should only be called when the application is shutting down
     public static void closeConnection() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                connection = null;
+        WriteQueue queue;
+        Map<Integer, WriteQueue> shardQueuesToClose;
+        synchronized (DatabaseConnection.class) {
+            queue = writeQueue;
+            writeQueue = null;
+            shardQueuesToClose = new HashMap<>(shardQueues);
+            shardQueues.clear();
+        }
+        if (queue != null) {
+            // Commit whatever is still queued before the writer connection goes away.
+            // Not under the class lock: queued work may still need getConnection()
+            queue.shutdown();
+            System.out.println("Database write queue statistics: " + queue.getStats());
+        }
+        for (Map.Entry<Integer, WriteQueue> entry : shardQueuesToClose.entrySet()) {
+            entry.getValue().shutdown();
+            System.out.println("Shard " + entry.getKey() + " write queue statistics: " + entry.getValue().getStats());
+        }
+        
+        synchronized (DatabaseConnection.class) {
+            for (ConnectionPool shardPool : shardPools.values()) {
+                shardPool.close();
+            }
+            shardPools.clear();
+            
+            if (pool != null) {
+                System.out.println("Database pool statistics: " + pool.getStats());
+                pool.close();
+                pool = null;
                 System.out.println("Database connection closed successfully.");
             }
-        } catch (SQLException e) {
-            System.err.println("Error closing database connection: " + e.getMessage());
-            e.printStackTrace();
         }
     }
-} 
\ No newline at end of file
+}
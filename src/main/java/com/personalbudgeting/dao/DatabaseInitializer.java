@@ -3,25 +3,154 @@ package com.personalbudgeting.dao;
 import java.sql.Connection;
 import java.sql.Statement;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
 
 public class DatabaseInitializer {
     
     public static void initialize() {
-        try (Connection connection = DatabaseConnection.getConnection()) {
-            // Create tables if they don't exist
-            createUserTable(connection);
-            createIncomeTable(connection);
-            createExpenseTable(connection);
-            createBudgetTable(connection);
-            createReminderTable(connection);
+        // The writer connection is shared with the DAOs, so it must stay open here
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) {
+            System.err.println("Error initializing database: no connection available");
+            return;
+        }
+        
+        try {
+            SchemaMigrator migrator = new SchemaMigrator(getMigrations());
+            int applied = migrator.migrate(connection);
+            
+            // The INTEGER storage format is opt-in; once a database has (partly) switched it stays switched
+            StorageFormat format = StorageFormat.detect(connection);
+            if (StorageFormat.requested() == StorageFormat.INTEGER || format == StorageFormat.INTEGER) {
+                new IntegerStorageMigrator(connection, SchemaMigrator.DEFAULT_CHUNK_SIZE).migrate();
+                format = StorageFormat.INTEGER;
+            }
+            StorageFormat.setCurrent(format);
+            System.out.println("Ledger storage format: " + format);
             
-            System.out.println("Database initialized successfully.");
+            // Shards share the main schema and storage format
+            ShardRouter.load(connection);
+            for (int shard : ShardRouter.getShards()) {
+                Connection shardConnection = DatabaseConnection.getShardConnection(shard);
+                int shardApplied = migrator.migrate(shardConnection);
+                if (format == StorageFormat.INTEGER) {
+                    new IntegerStorageMigrator(shardConnection, SchemaMigrator.DEFAULT_CHUNK_SIZE).migrate();
+                }
+                System.out.println("Shard " + shard + " initialized (" + shardApplied + " migrations applied).");
+            }
+            CategoryDictionary.load(connection);
+            
+            System.out.println("Database initialized successfully (schema version " + migrator.getLatestVersion() +
+                               ", " + applied + " migrations applied).");
         } catch (SQLException e) {
             System.err.println("Error initializing database: " + e.getMessage());
             e.printStackTrace();
         }
     }
     
+    /**
+     * The schema history, in order. Never edit a migration that has shipped; add a new one instead.
+     */
+    public static List<Migration> getMigrations() {
+        return Arrays.asList(
+            new Migration(1, "Create base tables") {
+                @Override
+                public void apply(Connection connection) throws SQLException {
+                    // Tables may already exist in databases created before versioning
+                    createUserTable(connection);
+                    createIncomeTable(connection);
+                    createExpenseTable(connection);
+                    createBudgetTable(connection);
+                    createReminderTable(connection);
+                }
+            },
+            new Migration(2, "Add covering indexes for DAO access paths") {
+                @Override
+                public void apply(Connection connection) throws SQLException {
+                    // Each index is built in its own transaction so the writer lock is released in between
+                    SchemaMigrator.executeEach(connection,
+                        // ExpenseDAO.findByPeriod, getTotalExpenseByPeriod, getExpensesByCategory
+                        "CREATE INDEX IF NOT EXISTS idx_expense_user_date ON expense (user_id, date, category, amount)",
+                        // ExpenseDAO.findByCategory (budget-exceeded checks)
+                        "CREATE INDEX IF NOT EXISTS idx_expense_user_category_date ON expense (user_id, category, date, amount)",
+                        // IncomeDAO.findByPeriod, getTotalIncomeByPeriod
+                        "CREATE INDEX IF NOT EXISTS idx_income_user_date ON income (user_id, date, amount)",
+                        // BudgetDAO.findByPeriod, getBudgetsByCategory, getTotalBudget
+                        "CREATE INDEX IF NOT EXISTS idx_budget_user_period ON budget (user_id, period, category, amount)",
+                        // ReminderDAO.findActiveReminders, findDueReminders
+                        "CREATE INDEX IF NOT EXISTS idx_reminder_user_due ON reminder (user_id, is_completed, due_date)");
+                }
+                
+                @Override
+                public boolean isChunked() {
+                    return true;
+                }
+            },
+            new Migration(3, "Add keyset pagination indexes") {
+                @Override
+                public void apply(Connection connection) throws SQLException {
+                    // findPageByUserId seeks on (date, id); the covering indexes above order ties by category/amount instead
+                    SchemaMigrator.executeEach(connection,
+                        "CREATE INDEX IF NOT EXISTS idx_expense_user_date_id ON expense (user_id, date, id)",
+                        "CREATE INDEX IF NOT EXISTS idx_income_user_date_id ON income (user_id, date, id)");
+                }
+                
+                @Override
+                public boolean isChunked() {
+                    return true;
+                }
+            },
+            new Migration(4, "Add maintained monthly aggregate tables") {
+                @Override
+                public void apply(Connection connection) throws SQLException {
+                    MonthlyAggregateDAO.createTables(connection);
+                    MonthlyAggregateDAO.backfill(connection, SchemaMigrator.DEFAULT_CHUNK_SIZE);
+                }
+                
+                @Override
+                public boolean isChunked() {
+                    return true;
+                }
+            },
+            new Migration(5, "Add user shard directory") {
+                @Override
+                public void apply(Connection connection) throws SQLException {
+                    // Only read in the main database; shard files get an empty copy
+                    ShardRouter.createDirectoryTable(connection);
+                }
+            },
+            new Migration(6, "Move category names into a category table") {
+                @Override
+                public void apply(Connection connection) throws SQLException {
+                    // Shards register their users' categories in the main database, which is migrated first
+                    new CategoryMigrator(connection, DatabaseConnection.getConnection(),
+                                         SchemaMigrator.DEFAULT_CHUNK_SIZE).migrate();
+                }
+                
+                @Override
+                public boolean isChunked() {
+                    return true;
+                }
+            },
+            new Migration(7, "Add full-text search over ledger descriptions") {
+                @Override
+                public void apply(Connection connection) throws SQLException {
+                    // Indexes, triggers and backfill in one transaction, so no write goes unindexed
+                    TextSearch.createTables(connection);
+                    TextSearch.backfill(connection);
+                }
+            },
+            new Migration(8, "Add month-end statement tables") {
+                @Override
+                public void apply(Connection connection) throws SQLException {
+                    // Filled by StatementTool; nothing to backfill
+                    StatementDAO.createTables(connection);
+                }
+            }
+        );
+    }
+    
     private static void createUserTable(Connection connection) throws SQLException {
         String sql = "CREATE TABLE IF NOT EXISTS users (" +
                      "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
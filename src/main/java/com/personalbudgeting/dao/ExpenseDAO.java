@@ -1,6 +1,7 @@
 package com.personalbudgeting.dao;
 
 import com.personalbudgeting.model.Expense;
+import com.personalbudgeting.repository.ExpenseRepository;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -10,37 +11,53 @@ import java.sql.Statement;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-public class ExpenseDAO {
-    private Connection connection;
+public class ExpenseDAO implements ExpenseRepository {
+    private MonthlyAggregateDAO aggregateDAO;
     
     public ExpenseDAO() {
-        this.connection = DatabaseConnection.getConnection();
+        this.aggregateDAO = new MonthlyAggregateDAO();
     }
     
     public boolean add(Expense expense) {
-        String sql = "INSERT INTO expense (user_id, category, amount, date, description) VALUES (?, ?, ?, ?, ?)";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setInt(1, expense.getUserId());
-            stmt.setString(2, expense.getCategory());
-            stmt.setDouble(3, expense.getAmount());
-            stmt.setString(4, expense.getDate().toString());
-            stmt.setString(5, expense.getDescription());
-            
-            int rowsAffected = stmt.executeUpdate();
+        String sql = "INSERT INTO expense (user_id, category_id, amount, date, description) VALUES (?, ?, ?, ?, ?)";
+        
+        try {
+            int categoryId = CategoryDAO.resolve(expense.getUserId(), expense.getCategory());
+            if (categoryId < 0) {
+                return false;
+            }
             
-            if (rowsAffected > 0) {
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        expense.setId(rs.getInt(1));
+            // The row and its monthly aggregate are written in one transaction
+            return DatabaseConnection.write(expense.getUserId(), conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    stmt.setInt(1, expense.getUserId());
+                    stmt.setInt(2, categoryId);
+                    StorageFormat.current().setAmount(stmt, 3, expense.getAmount());
+                    StorageFormat.current().setDate(stmt, 4, expense.getDate());
+                    stmt.setString(5, expense.getDescription());
+                    
+                    if (stmt.executeUpdate() == 0) {
+                        return false;
+                    }
+                    
+                    try (ResultSet rs = stmt.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            expense.setId(rs.getInt(1));
+                        }
                     }
                 }
+                
+                aggregateDAO.applyExpense(conn, expense.getUserId(), expense.getDate(), categoryId, expense.getAmount(), 1);
                 return true;
-            }
+            });
         } catch (SQLException e) {
             System.err.println("Error adding expense: " + e.getMessage());
             e.printStackTrace();
@@ -48,18 +65,128 @@ public class ExpenseDAO {
         return false;
     }
     
+    /**
+     * Insert many expense rows in one transaction (one per shard when the users live on
+     * different shards) using JDBC batches of the given size.
+     * The generated ids are set on the expense objects and returned in the same order.
+     * The rows of one shard are stored or rolled back together; when some shards fail,
+     * the rows of those shards get the id 0.
+     *
+     * @return the generated ids, or null if nothing was stored
+     */
+    public int[] addAll(Collection<Expense> expenses, int batchSize) {
+        if (expenses.isEmpty()) {
+            return new int[0];
+        }
+        
+        // Each shard is written in its own transaction, so rows of users on different shards are not atomic together
+        Map<Integer, List<Expense>> byShard = ShardRouter.partition(expenses, Expense::getUserId);
+        if (byShard.size() > 1) {
+            boolean stored = false;
+            for (List<Expense> shardRows : byShard.values()) {
+                stored |= addAll(shardRows, batchSize) != null;
+            }
+            return stored ? expenses.stream().mapToInt(Expense::getId).toArray() : null;
+        }
+        
+        String sql = "INSERT INTO expense (user_id, category_id, amount, date, description) VALUES (?, ?, ?, ?, ?)";
+        List<Expense> rows = new ArrayList<>(expenses);
+        int chunkSize = Math.max(1, batchSize);
+        
+        try {
+            // Categories are resolved up front; a new one is written to the main database
+            int[] categoryIds = new int[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                categoryIds[i] = CategoryDAO.resolve(rows.get(i).getUserId(), rows.get(i).getCategory());
+                if (categoryIds[i] < 0) {
+                    throw new SQLException("Could not resolve category " + rows.get(i).getCategory());
+                }
+            }
+            
+            return DatabaseConnection.write(rows.get(0).getUserId(), conn -> {
+                StorageFormat format = StorageFormat.current();
+                int[] ids = new int[rows.size()];
+                
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (int start = 0; start < rows.size(); start += chunkSize) {
+                        int end = Math.min(start + chunkSize, rows.size());
+                        for (int i = start; i < end; i++) {
+                            Expense expense = rows.get(i);
+                            stmt.setInt(1, expense.getUserId());
+                            stmt.setInt(2, categoryIds[i]);
+                            format.setAmount(stmt, 3, expense.getAmount());
+                            format.setDate(stmt, 4, expense.getDate());
+                            stmt.setString(5, expense.getDescription());
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                        
+                        // AUTOINCREMENT ids are consecutive within our write transaction,
+                        // so the ids of the chunk end at the last inserted rowid
+                        int lastId = lastInsertRowId(conn);
+                        for (int i = end - 1; i >= start; i--) {
+                            ids[i] = lastId - (end - 1 - i);
+                            rows.get(i).setId(ids[i]);
+                        }
+                    }
+                }
+                
+                // One aggregate update per (user, month, category) rather than per row
+                Map<String, long[]> deltas = new HashMap<>();
+                for (int i = 0; i < rows.size(); i++) {
+                    Expense expense = rows.get(i);
+                    long[] delta = deltas.computeIfAbsent(MonthlyAggregateDAO.expenseKey(expense.getUserId(), expense.getDate(), categoryIds[i]), k -> new long[2]);
+                    delta[0] += StorageFormat.toCents(expense.getAmount());
+                    delta[1]++;
+                }
+                aggregateDAO.applyExpenseDeltas(conn, deltas);
+                return ids;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error adding expenses in bulk: " + e.getMessage());
+            e.printStackTrace();
+            
+            // Nothing was stored, so don't leave ids from the rolled back transaction behind
+            for (Expense expense : rows) {
+                expense.setId(0);
+            }
+        }
+        return null;
+    }
+    
     public boolean update(Expense expense) {
-        String sql = "UPDATE expense SET category = ?, amount = ?, date = ?, description = ? WHERE id = ? AND user_id = ?";
-        
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, expense.getCategory());
-            stmt.setDouble(2, expense.getAmount());
-            stmt.setString(3, expense.getDate().toString());
-            stmt.setString(4, expense.getDescription());
-            stmt.setInt(5, expense.getId());
-            stmt.setInt(6, expense.getUserId());
+        String sql = "UPDATE expense SET category_id = ?, amount = ?, date = ?, description = ? WHERE id = ? AND user_id = ?";
+        
+        try {
+            int categoryId = CategoryDAO.resolve(expense.getUserId(), expense.getCategory());
+            if (categoryId < 0) {
+                return false;
+            }
             
-            return stmt.executeUpdate() > 0;
+            return DatabaseConnection.write(expense.getUserId(), conn -> {
+                // The old values are needed to move the row's amount between aggregates
+                Expense previous = findById(conn, expense.getId(), expense.getUserId());
+                if (previous == null) {
+                    return false;
+                }
+                
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, categoryId);
+                    StorageFormat.current().setAmount(stmt, 2, expense.getAmount());
+                    StorageFormat.current().setDate(stmt, 3, expense.getDate());
+                    stmt.setString(4, expense.getDescription());
+                    stmt.setInt(5, expense.getId());
+                    stmt.setInt(6, expense.getUserId());
+                    
+                    if (stmt.executeUpdate() == 0) {
+                        return false;
+                    }
+                }
+                
+                aggregateDAO.applyExpense(conn, previous.getUserId(), previous.getDate(), categoryIdOf(previous), previous.getAmount(), -1);
+                aggregateDAO.applyExpense(conn, expense.getUserId(), expense.getDate(), categoryId, expense.getAmount(), 1);
+                return true;
+            });
         } catch (SQLException e) {
             System.err.println("Error updating expense: " + e.getMessage());
             e.printStackTrace();
@@ -70,11 +197,25 @@ public class ExpenseDAO {
     public boolean delete(int expenseId, int userId) {
         String sql = "DELETE FROM expense WHERE id = ? AND user_id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, expenseId);
-            stmt.setInt(2, userId);
-            
-            return stmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.write(userId, conn -> {
+                Expense previous = findById(conn, expenseId, userId);
+                if (previous == null) {
+                    return false;
+                }
+                
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, expenseId);
+                    stmt.setInt(2, userId);
+                    
+                    if (stmt.executeUpdate() == 0) {
+                        return false;
+                    }
+                }
+                
+                aggregateDAO.applyExpense(conn, previous.getUserId(), previous.getDate(), categoryIdOf(previous), previous.getAmount(), -1);
+                return true;
+            });
         } catch (SQLException e) {
             System.err.println("Error deleting expense: " + e.getMessage());
             e.printStackTrace();
@@ -83,9 +224,19 @@ public class ExpenseDAO {
     }
     
     public Expense findById(int expenseId, int userId) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId)) {
+            return findById(conn, expenseId, userId);
+        } catch (SQLException e) {
+            System.err.println("Error finding expense by ID: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return null;
+    }
+    
+    private Expense findById(Connection conn, int expenseId, int userId) throws SQLException {
         String sql = "SELECT * FROM expense WHERE id = ? AND user_id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, expenseId);
             stmt.setInt(2, userId);
             
@@ -94,9 +245,6 @@ public class ExpenseDAO {
                     return extractExpenseFromResultSet(rs);
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("Error finding expense by ID: " + e.getMessage());
-            e.printStackTrace();
         }
         return null;
     }
@@ -105,7 +253,8 @@ public class ExpenseDAO {
         List<Expense> expenses = new ArrayList<>();
         String sql = "SELECT * FROM expense WHERE user_id = ? ORDER BY date DESC";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
             
             try (ResultSet rs = stmt.executeQuery()) {
@@ -121,6 +270,183 @@ public class ExpenseDAO {
         return expenses;
     }
     
+    public int countByUserId(int userId) {
+        String sql = "SELECT COUNT(*) FROM expense WHERE user_id = ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error counting expenses by user ID: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return 0;
+    }
+    
+    /**
+     * Keyset pagination over a user's expenses, newest first (date DESC, id DESC).
+     * Returns the page that follows the row identified by (afterDate, afterId),
+     * or the first page when afterDate is null. Cost does not grow with the page's position.
+     */
+    public List<Expense> findPageByUserId(int userId, LocalDate afterDate, int afterId, int limit) {
+        List<Expense> expenses = new ArrayList<>();
+        StorageFormat format = StorageFormat.current();
+        String sql = afterDate == null
+            ? "SELECT * FROM expense WHERE user_id = ? ORDER BY date DESC, id DESC LIMIT ?"
+            // Row-value comparison lets SQLite seek straight to (afterDate, afterId) in idx_expense_user_date_id
+            : "SELECT * FROM expense WHERE user_id = ? AND (date, id) < (?, ?) ORDER BY date DESC, id DESC LIMIT ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            stmt.setInt(index++, userId);
+            if (afterDate != null) {
+                format.setDate(stmt, index++, afterDate);
+                stmt.setInt(index++, afterId);
+            }
+            stmt.setInt(index, limit);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    expenses.add(extractExpenseFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error finding expenses page by user ID: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return expenses;
+    }
+    
+    /**
+     * Same ordering as {@link #findPageByUserId(int, LocalDate, int, int)} but positioned by row offset.
+     * Only used to jump to a page whose predecessor is unknown; the offset is skipped row by row.
+     */
+    public List<Expense> findPageAtOffset(int userId, int offset, int limit) {
+        List<Expense> expenses = new ArrayList<>();
+        String sql = "SELECT * FROM expense WHERE user_id = ? ORDER BY date DESC, id DESC LIMIT ? OFFSET ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setInt(2, limit);
+            stmt.setInt(3, offset);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    expenses.add(extractExpenseFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error finding expenses page at offset: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return expenses;
+    }
+    
+    /**
+     * Full-text search of a user's expenses through expense_fts (see TextSearch), ranked by
+     * bm25 with the newest first among equal ranks. Only the matching rows of this user
+     * are read, so the cost follows the number of matches rather than the ledger size.
+     */
+    public List<Expense> search(int userId, String text, int offset, int limit) {
+        List<Expense> expenses = new ArrayList<>();
+        List<String> terms = TextSearch.terms(text);
+        if (terms.isEmpty()) {
+            return expenses;
+        }
+        
+        // The user_id column only narrows the match, so it gets no weight in the rank
+        String sql = "SELECT e.* FROM expense_fts JOIN expense e ON e.id = expense_fts.rowid " +
+                     "WHERE expense_fts MATCH ? AND e.user_id = ? " +
+                     "ORDER BY bm25(expense_fts, 0.0, 1.0), e.date DESC, e.id DESC LIMIT ? OFFSET ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, TextSearch.matchExpression(userId, terms, "description"));
+            stmt.setInt(2, userId);
+            stmt.setInt(3, limit);
+            stmt.setInt(4, offset);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    expenses.add(extractExpenseFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error searching expenses: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return expenses;
+    }
+    
+    /**
+     * Stream all expenses of a user, newest first, mapping rows lazily as they are consumed.
+     * The stream holds a pooled read connection until it is closed, so use it in try-with-resources.
+     */
+    public Stream<Expense> streamAllByUserId(int userId) {
+        String sql = "SELECT * FROM expense WHERE user_id = ? ORDER BY date DESC";
+        
+        try {
+            return ResultSetStream.query(DatabaseConnection.getReadConnection(userId), sql,
+                                         this::extractExpenseFromResultSet, userId);
+        } catch (SQLException e) {
+            System.err.println("Error streaming expenses by user ID: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return Stream.empty();
+    }
+    
+    /**
+     * Visit all expenses of a user in constant memory.
+     *
+     * @return the number of expenses visited
+     */
+    public long forEachByUserId(int userId, Consumer<Expense> visitor) {
+        long count = 0;
+        try (Stream<Expense> expenses = streamAllByUserId(userId)) {
+            Iterator<Expense> iterator = expenses.iterator();
+            while (iterator.hasNext()) {
+                visitor.accept(iterator.next());
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Visit the expenses of a user stored after the one with the given id.
+     *
+     * @return the number of expenses visited
+     */
+    public long forEachAfterId(int userId, int afterId, Consumer<Expense> visitor) {
+        // A catch-up walks the id range instead of all of the user's index entries
+        String sql = afterId > 0
+            ? "SELECT * FROM expense WHERE id > ? AND +user_id = ?"
+            : "SELECT * FROM expense WHERE user_id = ? AND id > ?";
+        Object[] params = afterId > 0 ? new Object[] { afterId, userId } : new Object[] { userId, afterId };
+        
+        long count = 0;
+        try (Stream<Expense> rows = ResultSetStream.query(DatabaseConnection.getReadConnection(userId), sql,
+                                                     this::extractExpenseFromResultSet, params)) {
+            Iterator<Expense> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                visitor.accept(iterator.next());
+                count++;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading expenses after ID: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return count;
+    }
+    
     public List<Expense> findByPeriod(int userId, YearMonth period) {
         List<Expense> expenses = new ArrayList<>();
         
@@ -130,10 +456,11 @@ public class ExpenseDAO {
         
         String sql = "SELECT * FROM expense WHERE user_id = ? AND date >= ? AND date <= ? ORDER BY date DESC";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
-            stmt.setString(2, startDate.toString());
-            stmt.setString(3, endDate.toString());
+            StorageFormat.current().setDate(stmt, 2, startDate);
+            StorageFormat.current().setDate(stmt, 3, endDate);
             
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -156,13 +483,18 @@ public class ExpenseDAO {
         LocalDate startDate = period.atDay(1);
         LocalDate endDate = period.atEndOfMonth();
         
-        String sql = "SELECT * FROM expense WHERE user_id = ? AND category = ? AND date >= ? AND date <= ? ORDER BY date DESC";
+        String sql = "SELECT * FROM expense WHERE user_id = ? AND category_id = ? AND date >= ? AND date <= ? ORDER BY date DESC";
+        int categoryId = CategoryDictionary.findId(userId, category);
+        if (categoryId < 0) {
+            return expenses;
+        }
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
-            stmt.setString(2, category);
-            stmt.setString(3, startDate.toString());
-            stmt.setString(4, endDate.toString());
+            stmt.setInt(2, categoryId);
+            StorageFormat.current().setDate(stmt, 3, startDate);
+            StorageFormat.current().setDate(stmt, 4, endDate);
             
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -178,49 +510,43 @@ public class ExpenseDAO {
         return expenses;
     }
     
-    public double getTotalExpenseByPeriod(int userId, YearMonth period) {
-        // Calculate start and end dates for the month
-        LocalDate startDate = period.atDay(1);
-        LocalDate endDate = period.atEndOfMonth();
-        
+    public double getTotalExpenseBetween(int userId, LocalDate from, LocalDate to) {
         String sql = "SELECT SUM(amount) AS total FROM expense WHERE user_id = ? AND date >= ? AND date <= ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
-            stmt.setString(2, startDate.toString());
-            stmt.setString(3, endDate.toString());
+            StorageFormat.current().setDate(stmt, 2, from);
+            StorageFormat.current().setDate(stmt, 3, to);
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getDouble("total");
+                    return StorageFormat.current().getAmount(rs, "total");
                 }
             }
         } catch (SQLException e) {
-            System.err.println("Error calculating total expense by period: " + e.getMessage());
+            System.err.println("Error calculating total expense by date range: " + e.getMessage());
             e.printStackTrace();
         }
         
         return 0.0;
     }
     
-    public Map<String, Double> getExpensesByCategory(int userId, YearMonth period) {
+    public Map<String, Double> getExpensesByCategoryBetween(int userId, LocalDate from, LocalDate to) {
         Map<String, Double> categoryExpenses = new HashMap<>();
         
-        // Calculate start and end dates for the month
-        LocalDate startDate = period.atDay(1);
-        LocalDate endDate = period.atEndOfMonth();
-        
-        String sql = "SELECT category, SUM(amount) AS total FROM expense WHERE user_id = ? AND date >= ? AND date <= ? GROUP BY category";
+        String sql = "SELECT category_id, SUM(amount) AS total FROM expense WHERE user_id = ? AND date >= ? AND date <= ? GROUP BY category_id";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
-            stmt.setString(2, startDate.toString());
-            stmt.setString(3, endDate.toString());
+            StorageFormat.current().setDate(stmt, 2, from);
+            StorageFormat.current().setDate(stmt, 3, to);
             
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    String category = rs.getString("category");
-                    double amount = rs.getDouble("total");
+                    String category = CategoryDictionary.getName(rs.getInt("category_id"));
+                    double amount = StorageFormat.current().getAmount(rs, "total");
                     categoryExpenses.put(category, amount);
                 }
             }
@@ -232,13 +558,40 @@ public class ExpenseDAO {
         return categoryExpenses;
     }
     
+    // These read the maintained monthly aggregates instead of the ledger
+    
+    public Map<String, double[]> getMonthlyExpensesByCategory(int userId, YearMonth first, YearMonth last) {
+        return aggregateDAO.getMonthlyExpensesByCategory(userId, first, last);
+    }
+    
+    public double getExpenseTotal(int userId, String category, YearMonth period) {
+        return aggregateDAO.getExpenseTotal(userId, category, period);
+    }
+    
+    public Map<String, long[]> loadMonthlyTotals(int userId) throws SQLException {
+        return aggregateDAO.loadExpenseAggregates(userId);
+    }
+    
+    // A name read back from the ledger maps to exactly one of the user's categories
+    private static int categoryIdOf(Expense expense) {
+        return CategoryDictionary.findId(expense.getUserId(), expense.getCategory());
+    }
+    
+    private int lastInsertRowId(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+    
     private Expense extractExpenseFromResultSet(ResultSet rs) throws SQLException {
+        StorageFormat format = StorageFormat.current();
         Expense expense = new Expense();
         expense.setId(rs.getInt("id"));
         expense.setUserId(rs.getInt("user_id"));
-        expense.setCategory(rs.getString("category"));
-        expense.setAmount(rs.getDouble("amount"));
-        expense.setDate(LocalDate.parse(rs.getString("date")));
+        expense.setCategory(CategoryDictionary.getName(rs.getInt("category_id")));
+        expense.setAmount(format.getAmount(rs, "amount"));
+        expense.setDate(format.getDate(rs, "date"));
         expense.setDescription(rs.getString("description"));
         return expense;
     }
@@ -0,0 +1,142 @@
+package com.personalbudgeting.dao;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Streams one user's ledger tables into an {@link ExportWriter}, row by row from the
+ * ResultSet. Text columns are read as their stored UTF-8 bytes and amounts are
+ * selected as whole cents in either storage format, so no model objects or
+ * per-field Strings are created; only the open cursor and the writer's buffer are
+ * held in memory.
+ *
+ * Expenses and income are written oldest first, in the order of the (user_id, date, id)
+ * indexes, budgets by period and reminders by due date. The CSV columns of expenses
+ * and income are those the importer's expenses and income profiles read back.
+ */
+public class ExportDAO {
+    public static final int PROGRESS_INTERVAL_ROWS = 10000;
+    
+    public enum Dataset {
+        EXPENSES("expenses", "date", "category", "amount", "description"),
+        INCOME("income", "date", "source", "amount", "description"),
+        BUDGETS("budgets", "period", "category", "amount"),
+        REMINDERS("reminders", "due_date", "title", "description", "completed");
+        
+        private final String fileName;
+        private final String[] columns;
+        
+        Dataset(String fileName, String... columns) {
+            this.fileName = fileName;
+            this.columns = columns;
+        }
+        
+        public String getFileName() {
+            return fileName;
+        }
+        
+        public String[] getColumns() {
+            return columns.clone();
+        }
+    }
+    
+    public ExportDAO() {
+        // Make sure the writer, and with it the database, is open
+        DatabaseConnection.getConnection();
+    }
+    
+    /**
+     * Write every row of one dataset of a user.
+     *
+     * @param progress told the number of rows written every {@link #PROGRESS_INTERVAL_ROWS} rows, may be null
+     * @return the number of rows written
+     */
+    public long export(int userId, Dataset dataset, ExportWriter out, LongConsumer progress) throws SQLException, IOException {
+        StorageFormat format = StorageFormat.current();
+        String sql;
+        switch (dataset) {
+            case EXPENSES:
+                sql = "SELECT date, category_id, " + format.centsSql("amount") + ", description FROM expense " +
+                      "WHERE user_id = ? ORDER BY date, id";
+                break;
+            case INCOME:
+                sql = "SELECT date, source, " + format.centsSql("amount") + ", description FROM income " +
+                      "WHERE user_id = ? ORDER BY date, id";
+                break;
+            case BUDGETS:
+                sql = "SELECT period, category_id, " + format.centsSql("amount") + " FROM budget " +
+                      "WHERE user_id = ? ORDER BY period, category_id";
+                break;
+            default:
+                sql = "SELECT due_date, title, description, is_completed FROM reminder WHERE user_id = ? ORDER BY due_date, id";
+                break;
+        }
+        
+        // Category names as UTF-8, encoded once per export
+        Map<Integer, byte[]> categories = new HashMap<>();
+        long rows = 0;
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setFetchSize(ResultSetStream.DEFAULT_FETCH_SIZE);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    switch (dataset) {
+                        case EXPENSES:
+                            writeDate(out, rs, format);
+                            out.text(categories.computeIfAbsent(rs.getInt(2), ExportDAO::categoryBytes));
+                            out.cents(rs.getLong(3));
+                            out.text(rs.getBytes(4));
+                            break;
+                        case INCOME:
+                            writeDate(out, rs, format);
+                            out.text(rs.getBytes(2));
+                            out.cents(rs.getLong(3));
+                            out.text(rs.getBytes(4));
+                            break;
+                        case BUDGETS:
+                            out.text(rs.getBytes(1));
+                            out.text(categories.computeIfAbsent(rs.getInt(2), ExportDAO::categoryBytes));
+                            out.cents(rs.getLong(3));
+                            break;
+                        default:
+                            out.text(rs.getBytes(1));
+                            out.text(rs.getBytes(2));
+                            out.text(rs.getBytes(3));
+                            out.bool(rs.getInt(4) != 0);
+                            break;
+                    }
+                    out.endRow();
+                    
+                    if (++rows % PROGRESS_INTERVAL_ROWS == 0 && progress != null) {
+                        progress.accept(rows);
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+    
+    // The first column: an ISO date string in the TEXT format, epoch days in the INTEGER one
+    private static void writeDate(ExportWriter out, ResultSet rs, StorageFormat format) throws SQLException, IOException {
+        if (format == StorageFormat.INTEGER) {
+            out.date(LocalDate.ofEpochDay(rs.getLong(1)));
+        } else {
+            out.text(rs.getBytes(1));
+        }
+    }
+    
+    private static byte[] categoryBytes(int categoryId) {
+        String name = CategoryDictionary.getName(categoryId);
+        return (name == null ? "" : name).getBytes(StandardCharsets.UTF_8);
+    }
+}
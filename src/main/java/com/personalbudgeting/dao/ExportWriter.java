@@ -0,0 +1,351 @@
+package com.personalbudgeting.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Writes rows as CSV or JSON straight into one reusable direct buffer, which is
+ * drained into a FileChannel whenever it fills up.
+ *
+ * Fields are appended one at a time: text arrives as the UTF-8 bytes read from the
+ * database (or as a String, encoded in place), numbers, amounts in cents and dates
+ * are printed digit by digit, so no String is built per field or per row and the
+ * heap stays flat however many rows are written.
+ *
+ * CSV output has a header row and quotes only the fields that need it; JSON output
+ * is an array with one object per line.
+ */
+public final class ExportWriter implements Closeable {
+    public enum Format {
+        CSV("csv"), JSON("json");
+        
+        private final String extension;
+        
+        Format(String extension) {
+            this.extension = extension;
+        }
+        
+        public String getExtension() {
+            return extension;
+        }
+    }
+    
+    public static final int DEFAULT_BUFFER_BYTES = 256 * 1024;
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    
+    private final FileChannel channel;
+    private final Format format;
+    private final ByteBuffer buffer;
+    // JSON: '{"name":' for the first column and ',"name":' for the others
+    private final byte[][] keys;
+    private final byte[] digits = new byte[20];
+    private int column;
+    private long rows;
+    private long bytesWritten;
+    private boolean closed;
+    
+    public ExportWriter(FileChannel channel, Format format, String... columns) throws IOException {
+        this(channel, format, DEFAULT_BUFFER_BYTES, columns);
+    }
+    
+    public ExportWriter(FileChannel channel, Format format, int bufferBytes, String... columns) throws IOException {
+        this.channel = channel;
+        this.format = format;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(64, bufferBytes));
+        this.keys = new byte[columns.length][];
+        
+        if (format == Format.CSV) {
+            for (String name : columns) {
+                text(name);
+            }
+            endRow();
+            rows = 0;
+        } else {
+            for (int i = 0; i < columns.length; i++) {
+                keys[i] = ((i == 0 ? "{\"" : ",\"") + columns[i] + "\":").getBytes(StandardCharsets.UTF_8);
+            }
+            put((byte) '[');
+        }
+    }
+    
+    /**
+     * UTF-8 text exactly as stored, null for a NULL column.
+     */
+    public ExportWriter text(byte[] utf8) throws IOException {
+        if (utf8 == null) {
+            return nullValue();
+        }
+        beginField();
+        if (format == Format.JSON) {
+            put((byte) '"');
+            for (byte b : utf8) {
+                escapeJson(b);
+            }
+            put((byte) '"');
+        } else if (needsQuotes(utf8)) {
+            put((byte) '"');
+            for (byte b : utf8) {
+                if (b == '"') {
+                    put((byte) '"');
+                }
+                put(b);
+            }
+            put((byte) '"');
+        } else {
+            put(utf8, 0, utf8.length);
+        }
+        return this;
+    }
+    
+    /**
+     * Text from a String, encoded into the buffer character by character.
+     */
+    public ExportWriter text(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beginField();
+        boolean quoted = format == Format.JSON || needsQuotes(value);
+        if (quoted) {
+            put((byte) '"');
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (format == Format.JSON) {
+                    escapeJson((byte) c);
+                } else {
+                    if (c == '"') {
+                        put((byte) '"');
+                    }
+                    put((byte) c);
+                }
+            } else if (c < 0x800) {
+                put((byte) (0xC0 | (c >> 6)));
+                put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                put((byte) (0xF0 | (cp >> 18)));
+                put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                put((byte) (0xE0 | (c >> 12)));
+                put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        if (quoted) {
+            put((byte) '"');
+        }
+        return this;
+    }
+    
+    public ExportWriter integer(long value) throws IOException {
+        beginField();
+        putLong(value, 1);
+        return this;
+    }
+    
+    /**
+     * An amount in whole cents, printed with two decimals.
+     */
+    public ExportWriter cents(long cents) throws IOException {
+        beginField();
+        if (cents < 0) {
+            put((byte) '-');
+            cents = -cents;
+        }
+        putLong(cents / 100, 1);
+        put((byte) '.');
+        putLong(cents % 100, 2);
+        return this;
+    }
+    
+    /**
+     * A date as yyyy-MM-dd, quoted in JSON.
+     */
+    public ExportWriter date(LocalDate date) throws IOException {
+        if (date == null) {
+            return nullValue();
+        }
+        beginField();
+        if (format == Format.JSON) {
+            put((byte) '"');
+        }
+        putLong(date.getYear(), 4);
+        put((byte) '-');
+        putLong(date.getMonthValue(), 2);
+        put((byte) '-');
+        putLong(date.getDayOfMonth(), 2);
+        if (format == Format.JSON) {
+            put((byte) '"');
+        }
+        return this;
+    }
+    
+    public ExportWriter bool(boolean value) throws IOException {
+        beginField();
+        byte[] bytes = value ? TRUE : FALSE;
+        put(bytes, 0, bytes.length);
+        return this;
+    }
+    
+    public ExportWriter nullValue() throws IOException {
+        beginField();
+        if (format == Format.JSON) {
+            put(NULL, 0, NULL.length);
+        }
+        return this;
+    }
+    
+    public void endRow() throws IOException {
+        if (format == Format.JSON) {
+            put((byte) '}');
+        } else {
+            put((byte) '\r');
+            put((byte) '\n');
+        }
+        column = 0;
+        rows++;
+    }
+    
+    public long getRows() {
+        return rows;
+    }
+    
+    // Bytes handed to the channel so far, the buffered rest not included
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+    
+    /**
+     * Finish the document and write out the buffer. The channel stays open.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (format == Format.JSON) {
+            if (rows > 0) {
+                put((byte) '\n');
+            }
+            put((byte) ']');
+            put((byte) '\n');
+        }
+        flush();
+    }
+    
+    private void beginField() throws IOException {
+        if (format == Format.JSON) {
+            if (column == 0 && rows > 0) {
+                put((byte) ',');
+                put((byte) '\n');
+            }
+            byte[] key = keys[column];
+            put(key, 0, key.length);
+        } else if (column > 0) {
+            put((byte) ',');
+        }
+        column++;
+    }
+    
+    private static boolean needsQuotes(byte[] utf8) {
+        for (byte b : utf8) {
+            if (b == ',' || b == '"' || b == '\n' || b == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Bytes of multi-byte UTF-8 sequences are all >= 0x80 and pass through
+    private void escapeJson(byte b) throws IOException {
+        if (b == '"' || b == '\\') {
+            put((byte) '\\');
+            put(b);
+        } else if (b >= 0 && b < 0x20) {
+            put((byte) '\\');
+            if (b == '\n') {
+                put((byte) 'n');
+            } else if (b == '\r') {
+                put((byte) 'r');
+            } else if (b == '\t') {
+                put((byte) 't');
+            } else {
+                put((byte) 'u');
+                put((byte) '0');
+                put((byte) '0');
+                put(HEX[b >> 4]);
+                put(HEX[b & 0xF]);
+            }
+        } else {
+            put(b);
+        }
+    }
+    
+    // Decimal digits of a non-negative value, left-padded with zeros to minDigits
+    private void putLong(long value, int minDigits) throws IOException {
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (count < minDigits) {
+            digits[count++] = '0';
+        }
+        while (count > 0) {
+            put(digits[--count]);
+        }
+    }
+    
+    private void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put(b);
+    }
+    
+    private void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+    
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
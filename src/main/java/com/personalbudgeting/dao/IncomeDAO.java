@@ -1,6 +1,7 @@
 package com.personalbudgeting.dao;
 
 import com.personalbudgeting.model.Income;
+import com.personalbudgeting.repository.IncomeRepository;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -9,36 +10,50 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-public class IncomeDAO {
-    private Connection connection;
+public class IncomeDAO implements IncomeRepository {
+    private MonthlyAggregateDAO aggregateDAO;
     
     public IncomeDAO() {
-        this.connection = DatabaseConnection.getConnection();
+        this.aggregateDAO = new MonthlyAggregateDAO();
     }
     
     public boolean add(Income income) {
         String sql = "INSERT INTO income (user_id, source, amount, date, description) VALUES (?, ?, ?, ?, ?)";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setInt(1, income.getUserId());
-            stmt.setString(2, income.getSource());
-            stmt.setDouble(3, income.getAmount());
-            stmt.setString(4, income.getDate().toString());
-            stmt.setString(5, income.getDescription());
-            
-            int rowsAffected = stmt.executeUpdate();
-            
-            if (rowsAffected > 0) {
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        income.setId(rs.getInt(1));
+        try {
+            // The row and its monthly aggregate are written in one transaction
+            return DatabaseConnection.write(income.getUserId(), conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    stmt.setInt(1, income.getUserId());
+                    stmt.setString(2, income.getSource());
+                    StorageFormat.current().setAmount(stmt, 3, income.getAmount());
+                    StorageFormat.current().setDate(stmt, 4, income.getDate());
+                    stmt.setString(5, income.getDescription());
+                    
+                    if (stmt.executeUpdate() == 0) {
+                        return false;
+                    }
+                    
+                    try (ResultSet rs = stmt.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            income.setId(rs.getInt(1));
+                        }
                     }
                 }
+                
+                aggregateDAO.applyIncome(conn, income.getUserId(), income.getDate(), income.getAmount(), 1);
                 return true;
-            }
+            });
         } catch (SQLException e) {
             System.err.println("Error adding income: " + e.getMessage());
             e.printStackTrace();
@@ -46,18 +61,113 @@ public class IncomeDAO {
         return false;
     }
     
+    /**
+     * Insert many income rows in one transaction (one per shard when the users live on
+     * different shards) using JDBC batches of the given size.
+     * The generated ids are set on the income objects and returned in the same order.
+     * The rows of one shard are stored or rolled back together; when some shards fail,
+     * the rows of those shards get the id 0.
+     *
+     * @return the generated ids, or null if nothing was stored
+     */
+    public int[] addAll(Collection<Income> incomes, int batchSize) {
+        if (incomes.isEmpty()) {
+            return new int[0];
+        }
+        
+        // Each shard is written in its own transaction, so rows of users on different shards are not atomic together
+        Map<Integer, List<Income>> byShard = ShardRouter.partition(incomes, Income::getUserId);
+        if (byShard.size() > 1) {
+            boolean stored = false;
+            for (List<Income> shardRows : byShard.values()) {
+                stored |= addAll(shardRows, batchSize) != null;
+            }
+            return stored ? incomes.stream().mapToInt(Income::getId).toArray() : null;
+        }
+        
+        String sql = "INSERT INTO income (user_id, source, amount, date, description) VALUES (?, ?, ?, ?, ?)";
+        List<Income> rows = new ArrayList<>(incomes);
+        int chunkSize = Math.max(1, batchSize);
+        
+        try {
+            return DatabaseConnection.write(rows.get(0).getUserId(), conn -> {
+                StorageFormat format = StorageFormat.current();
+                int[] ids = new int[rows.size()];
+                
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (int start = 0; start < rows.size(); start += chunkSize) {
+                        int end = Math.min(start + chunkSize, rows.size());
+                        for (int i = start; i < end; i++) {
+                            Income income = rows.get(i);
+                            stmt.setInt(1, income.getUserId());
+                            stmt.setString(2, income.getSource());
+                            format.setAmount(stmt, 3, income.getAmount());
+                            format.setDate(stmt, 4, income.getDate());
+                            stmt.setString(5, income.getDescription());
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                        
+                        // AUTOINCREMENT ids are consecutive within our write transaction,
+                        // so the ids of the chunk end at the last inserted rowid
+                        int lastId = lastInsertRowId(conn);
+                        for (int i = end - 1; i >= start; i--) {
+                            ids[i] = lastId - (end - 1 - i);
+                            rows.get(i).setId(ids[i]);
+                        }
+                    }
+                }
+                
+                // One aggregate update per (user, month) rather than per row
+                Map<String, long[]> deltas = new HashMap<>();
+                for (Income income : rows) {
+                    long[] delta = deltas.computeIfAbsent(MonthlyAggregateDAO.incomeKey(income.getUserId(), income.getDate()), k -> new long[2]);
+                    delta[0] += StorageFormat.toCents(income.getAmount());
+                    delta[1]++;
+                }
+                aggregateDAO.applyIncomeDeltas(conn, deltas);
+                return ids;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error adding incomes in bulk: " + e.getMessage());
+            e.printStackTrace();
+            
+            // Nothing was stored, so don't leave ids from the rolled back transaction behind
+            for (Income income : rows) {
+                income.setId(0);
+            }
+        }
+        return null;
+    }
+    
     public boolean update(Income income) {
         String sql = "UPDATE income SET source = ?, amount = ?, date = ?, description = ? WHERE id = ? AND user_id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, income.getSource());
-            stmt.setDouble(2, income.getAmount());
-            stmt.setString(3, income.getDate().toString());
-            stmt.setString(4, income.getDescription());
-            stmt.setInt(5, income.getId());
-            stmt.setInt(6, income.getUserId());
-            
-            return stmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.write(income.getUserId(), conn -> {
+                // The old values are needed to move the row's amount between aggregates
+                Income previous = findById(conn, income.getId(), income.getUserId());
+                if (previous == null) {
+                    return false;
+                }
+                
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, income.getSource());
+                    StorageFormat.current().setAmount(stmt, 2, income.getAmount());
+                    StorageFormat.current().setDate(stmt, 3, income.getDate());
+                    stmt.setString(4, income.getDescription());
+                    stmt.setInt(5, income.getId());
+                    stmt.setInt(6, income.getUserId());
+                    
+                    if (stmt.executeUpdate() == 0) {
+                        return false;
+                    }
+                }
+                
+                aggregateDAO.applyIncome(conn, previous.getUserId(), previous.getDate(), previous.getAmount(), -1);
+                aggregateDAO.applyIncome(conn, income.getUserId(), income.getDate(), income.getAmount(), 1);
+                return true;
+            });
         } catch (SQLException e) {
             System.err.println("Error updating income: " + e.getMessage());
             e.printStackTrace();
@@ -68,11 +178,25 @@ public class IncomeDAO {
     public boolean delete(int incomeId, int userId) {
         String sql = "DELETE FROM income WHERE id = ? AND user_id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, incomeId);
-            stmt.setInt(2, userId);
-            
-            return stmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.write(userId, conn -> {
+                Income previous = findById(conn, incomeId, userId);
+                if (previous == null) {
+                    return false;
+                }
+                
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, incomeId);
+                    stmt.setInt(2, userId);
+                    
+                    if (stmt.executeUpdate() == 0) {
+                        return false;
+                    }
+                }
+                
+                aggregateDAO.applyIncome(conn, previous.getUserId(), previous.getDate(), previous.getAmount(), -1);
+                return true;
+            });
         } catch (SQLException e) {
             System.err.println("Error deleting income: " + e.getMessage());
             e.printStackTrace();
@@ -81,9 +205,19 @@ public class IncomeDAO {
     }
     
     public Income findById(int incomeId, int userId) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId)) {
+            return findById(conn, incomeId, userId);
+        } catch (SQLException e) {
+            System.err.println("Error finding income by ID: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return null;
+    }
+    
+    private Income findById(Connection conn, int incomeId, int userId) throws SQLException {
         String sql = "SELECT * FROM income WHERE id = ? AND user_id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, incomeId);
             stmt.setInt(2, userId);
             
@@ -92,9 +226,6 @@ public class IncomeDAO {
                     return extractIncomeFromResultSet(rs);
                 }
             }
-        } catch (SQLException e) {
-            System.err.println("Error finding income by ID: " + e.getMessage());
-            e.printStackTrace();
         }
         return null;
     }
@@ -103,7 +234,8 @@ public class IncomeDAO {
         List<Income> incomes = new ArrayList<>();
         String sql = "SELECT * FROM income WHERE user_id = ? ORDER BY date DESC";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
             
             try (ResultSet rs = stmt.executeQuery()) {
@@ -119,6 +251,183 @@ public class IncomeDAO {
         return incomes;
     }
     
+    public int countByUserId(int userId) {
+        String sql = "SELECT COUNT(*) FROM income WHERE user_id = ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error counting income entries by user ID: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return 0;
+    }
+    
+    /**
+     * Keyset pagination over a user's income entries, newest first (date DESC, id DESC).
+     * Returns the page that follows the row identified by (afterDate, afterId),
+     * or the first page when afterDate is null. Cost does not grow with the page's position.
+     */
+    public List<Income> findPageByUserId(int userId, LocalDate afterDate, int afterId, int limit) {
+        List<Income> incomes = new ArrayList<>();
+        StorageFormat format = StorageFormat.current();
+        String sql = afterDate == null
+            ? "SELECT * FROM income WHERE user_id = ? ORDER BY date DESC, id DESC LIMIT ?"
+            // Row-value comparison lets SQLite seek straight to (afterDate, afterId) in idx_income_user_date_id
+            : "SELECT * FROM income WHERE user_id = ? AND (date, id) < (?, ?) ORDER BY date DESC, id DESC LIMIT ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            stmt.setInt(index++, userId);
+            if (afterDate != null) {
+                format.setDate(stmt, index++, afterDate);
+                stmt.setInt(index++, afterId);
+            }
+            stmt.setInt(index, limit);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    incomes.add(extractIncomeFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error finding income entries page by user ID: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return incomes;
+    }
+    
+    /**
+     * Same ordering as {@link #findPageByUserId(int, LocalDate, int, int)} but positioned by row offset.
+     * Only used to jump to a page whose predecessor is unknown; the offset is skipped row by row.
+     */
+    public List<Income> findPageAtOffset(int userId, int offset, int limit) {
+        List<Income> incomes = new ArrayList<>();
+        String sql = "SELECT * FROM income WHERE user_id = ? ORDER BY date DESC, id DESC LIMIT ? OFFSET ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setInt(2, limit);
+            stmt.setInt(3, offset);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    incomes.add(extractIncomeFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error finding income entries page at offset: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return incomes;
+    }
+    
+    /**
+     * Full-text search of a user's income entries through income_fts (see TextSearch), ranked by
+     * bm25 with the newest first among equal ranks. Only the matching rows of this user
+     * are read, so the cost follows the number of matches rather than the ledger size.
+     */
+    public List<Income> search(int userId, String text, int offset, int limit) {
+        List<Income> incomes = new ArrayList<>();
+        List<String> terms = TextSearch.terms(text);
+        if (terms.isEmpty()) {
+            return incomes;
+        }
+        
+        // The user_id column only narrows the match, so it gets no weight in the rank
+        String sql = "SELECT i.* FROM income_fts JOIN income i ON i.id = income_fts.rowid " +
+                     "WHERE income_fts MATCH ? AND i.user_id = ? " +
+                     "ORDER BY bm25(income_fts, 0.0, 1.0, 1.0), i.date DESC, i.id DESC LIMIT ? OFFSET ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, TextSearch.matchExpression(userId, terms, "source", "description"));
+            stmt.setInt(2, userId);
+            stmt.setInt(3, limit);
+            stmt.setInt(4, offset);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    incomes.add(extractIncomeFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error searching income entries: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return incomes;
+    }
+    
+    /**
+     * Stream all incomes of a user, newest first, mapping rows lazily as they are consumed.
+     * The stream holds a pooled read connection until it is closed, so use it in try-with-resources.
+     */
+    public Stream<Income> streamAllByUserId(int userId) {
+        String sql = "SELECT * FROM income WHERE user_id = ? ORDER BY date DESC";
+        
+        try {
+            return ResultSetStream.query(DatabaseConnection.getReadConnection(userId), sql,
+                                         this::extractIncomeFromResultSet, userId);
+        } catch (SQLException e) {
+            System.err.println("Error streaming incomes by user ID: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return Stream.empty();
+    }
+    
+    /**
+     * Visit all incomes of a user in constant memory.
+     *
+     * @return the number of incomes visited
+     */
+    public long forEachByUserId(int userId, Consumer<Income> visitor) {
+        long count = 0;
+        try (Stream<Income> incomes = streamAllByUserId(userId)) {
+            Iterator<Income> iterator = incomes.iterator();
+            while (iterator.hasNext()) {
+                visitor.accept(iterator.next());
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Visit the incomes of a user stored after the one with the given id.
+     *
+     * @return the number of incomes visited
+     */
+    public long forEachAfterId(int userId, int afterId, Consumer<Income> visitor) {
+        // A catch-up walks the id range instead of all of the user's index entries
+        String sql = afterId > 0
+            ? "SELECT * FROM income WHERE id > ? AND +user_id = ?"
+            : "SELECT * FROM income WHERE user_id = ? AND id > ?";
+        Object[] params = afterId > 0 ? new Object[] { afterId, userId } : new Object[] { userId, afterId };
+        
+        long count = 0;
+        try (Stream<Income> rows = ResultSetStream.query(DatabaseConnection.getReadConnection(userId), sql,
+                                                     this::extractIncomeFromResultSet, params)) {
+            Iterator<Income> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                visitor.accept(iterator.next());
+                count++;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading incomes after ID: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return count;
+    }
+    
     public List<Income> findByPeriod(int userId, YearMonth period) {
         List<Income> incomes = new ArrayList<>();
         
@@ -128,10 +437,11 @@ public class IncomeDAO {
         
         String sql = "SELECT * FROM income WHERE user_id = ? AND date >= ? AND date <= ? ORDER BY date DESC";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
-            stmt.setString(2, startDate.toString());
-            stmt.setString(3, endDate.toString());
+            StorageFormat.current().setDate(stmt, 2, startDate);
+            StorageFormat.current().setDate(stmt, 3, endDate);
             
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -147,38 +457,74 @@ public class IncomeDAO {
         return incomes;
     }
     
-    public double getTotalIncomeByPeriod(int userId, YearMonth period) {
-        // Calculate start and end dates for the month
-        LocalDate startDate = period.atDay(1);
-        LocalDate endDate = period.atEndOfMonth();
-        
+    public double getTotalIncomeBetween(int userId, LocalDate from, LocalDate to) {
         String sql = "SELECT SUM(amount) AS total FROM income WHERE user_id = ? AND date >= ? AND date <= ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
-            stmt.setString(2, startDate.toString());
-            stmt.setString(3, endDate.toString());
+            StorageFormat.current().setDate(stmt, 2, from);
+            StorageFormat.current().setDate(stmt, 3, to);
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getDouble("total");
+                    return StorageFormat.current().getAmount(rs, "total");
                 }
             }
         } catch (SQLException e) {
-            System.err.println("Error calculating total income by period: " + e.getMessage());
+            System.err.println("Error calculating total income by date range: " + e.getMessage());
             e.printStackTrace();
         }
         
         return 0.0;
     }
     
+    public Map<String, double[]> getMonthlyIncomeBySource(int userId, YearMonth first, YearMonth last) {
+        int months = (int) first.until(last, ChronoUnit.MONTHS) + 1;
+        Map<String, long[]> cents = new HashMap<>();
+        
+        // The aggregates have no source, so group the ledger rows of the span in one pass
+        StorageFormat format = StorageFormat.current();
+        String sql = "SELECT " + format.periodSql("date") + " AS period, source, SUM(" + format.centsSql("amount") + ") AS total_cents " +
+                     "FROM income WHERE user_id = ? AND date >= ? AND date <= ? GROUP BY 1, 2";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            format.setDate(stmt, 2, first.atDay(1));
+            format.setDate(stmt, 3, last.atEndOfMonth());
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int month = (int) first.until(YearMonth.parse(rs.getString("period")), ChronoUnit.MONTHS);
+                    cents.computeIfAbsent(rs.getString("source"), source -> new long[months])[month] += rs.getLong("total_cents");
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error calculating monthly income by source: " + e.getMessage());
+            e.printStackTrace();
+        }
+        
+        Map<String, double[]> monthlyIncome = new HashMap<>();
+        cents.forEach((source, totals) -> monthlyIncome.put(source, StorageFormat.fromCents(totals)));
+        return monthlyIncome;
+    }
+    
+    private int lastInsertRowId(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+    
     private Income extractIncomeFromResultSet(ResultSet rs) throws SQLException {
+        StorageFormat format = StorageFormat.current();
         Income income = new Income();
         income.setId(rs.getInt("id"));
         income.setUserId(rs.getInt("user_id"));
         income.setSource(rs.getString("source"));
-        income.setAmount(rs.getDouble("amount"));
-        income.setDate(LocalDate.parse(rs.getString("date")));
+        income.setAmount(format.getAmount(rs, "amount"));
+        income.setDate(format.getDate(rs, "date"));
         income.setDescription(rs.getString("description"));
         return income;
     }
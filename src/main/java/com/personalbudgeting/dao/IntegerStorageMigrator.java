@@ -0,0 +1,182 @@
+package com.personalbudgeting.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts the expense, income and budget tables from the TEXT storage format
+ * to the INTEGER one (epoch-day dates, amounts in cents).
+ *
+ * Each table is rebuilt online: a shadow table is created, triggers mirror every
+ * write on the live table into it, existing rows are copied over in small chunks,
+ * and finally the shadow table replaces the original in one short transaction.
+ * Indexes and triggers defined on the original table are recreated on the new one.
+ * An interrupted run can simply be started again.
+ */
+public class IntegerStorageMigrator {
+    // julianday() of 1970-01-01, used to turn ISO dates into epoch days inside SQLite
+    private static final String UNIX_EPOCH_JULIAN_DAY = "2440587.5";
+    
+    private static final String[][] TABLES = {
+        // table, converted columns
+        { "expense", "amount", "date" },
+        { "income", "amount", "date" },
+        { "budget", "amount" }
+    };
+    
+    private final Connection connection;
+    private final int chunkSize;
+    
+    public IntegerStorageMigrator(Connection connection, int chunkSize) {
+        this.connection = connection;
+        this.chunkSize = chunkSize;
+    }
+    
+    public void migrate() throws SQLException {
+        long start = System.currentTimeMillis();
+        
+        for (String[] table : TABLES) {
+            List<String> converted = new ArrayList<>();
+            for (int i = 1; i < table.length; i++) {
+                converted.add(table[i]);
+            }
+            
+            // Tables finished by an earlier, interrupted run are skipped
+            if (!"INTEGER".equalsIgnoreCase(getColumnType(table[0], converted.get(0)))) {
+                System.out.println("Converting " + table[0] + " to the INTEGER storage format...");
+                migrateTable(table[0], converted);
+            }
+        }
+        
+        StorageFormat.setCurrent(StorageFormat.INTEGER);
+        System.out.println("INTEGER storage format ready in " + (System.currentTimeMillis() - start) + " ms");
+    }
+    
+    private void migrateTable(String table, List<String> convertedColumns) throws SQLException {
+        String shadow = table + "_int";
+        List<String> columns = getColumns(table);
+        
+        // Remember the indexes and triggers so they can be recreated after the swap
+        List<String> dependentObjects = getDependentObjects(table);
+        
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createShadowTableSql(table, shadow, convertedColumns));
+            
+            // Mirror concurrent writes into the shadow table while the copy is running
+            String mirroredValues = selectList(columns, convertedColumns, "NEW.");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS " + shadow + "_ai AFTER INSERT ON " + table + " BEGIN " +
+                         "INSERT OR REPLACE INTO " + shadow + " (" + String.join(", ", columns) + ") VALUES (" + mirroredValues + "); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS " + shadow + "_au AFTER UPDATE ON " + table + " BEGIN " +
+                         "INSERT OR REPLACE INTO " + shadow + " (" + String.join(", ", columns) + ") VALUES (" + mirroredValues + "); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS " + shadow + "_ad AFTER DELETE ON " + table + " BEGIN " +
+                         "DELETE FROM " + shadow + " WHERE id = OLD.id; END");
+        }
+        
+        // Rows already mirrored by the triggers are newer than the copy, so keep them
+        SchemaMigrator.executeInChunks(connection, table,
+            "INSERT OR IGNORE INTO " + shadow + " (" + String.join(", ", columns) + ") " +
+            "SELECT " + selectList(columns, convertedColumns, "") + " FROM " + table + " WHERE rowid >= ? AND rowid < ?",
+            chunkSize);
+        
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TRIGGER IF EXISTS " + shadow + "_ai");
+            stmt.execute("DROP TRIGGER IF EXISTS " + shadow + "_au");
+            stmt.execute("DROP TRIGGER IF EXISTS " + shadow + "_ad");
+            stmt.execute("DROP TABLE " + table);
+            stmt.execute("ALTER TABLE " + shadow + " RENAME TO " + table);
+            for (String sql : dependentObjects) {
+                stmt.execute(sql);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+    
+    private String createShadowTableSql(String table, String shadow, List<String> convertedColumns) throws SQLException {
+        String sql;
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Table not found: " + table);
+                }
+                sql = rs.getString(1);
+            }
+        }
+        
+        sql = sql.replaceFirst("(?i)^CREATE TABLE\\s+(IF NOT EXISTS\\s+)?\"?" + table + "\"?",
+                               "CREATE TABLE IF NOT EXISTS " + shadow);
+        for (String column : convertedColumns) {
+            sql = sql.replaceFirst("(?i)\\b" + column + "\\s+(REAL|TEXT)\\b", column + " INTEGER");
+        }
+        return sql;
+    }
+    
+    private String selectList(List<String> columns, List<String> convertedColumns, String prefix) {
+        List<String> values = new ArrayList<>();
+        for (String column : columns) {
+            String value = prefix + column;
+            if (convertedColumns.contains(column)) {
+                if ("date".equals(column)) {
+                    value = "CAST(julianday(" + value + ") - " + UNIX_EPOCH_JULIAN_DAY + " AS INTEGER)";
+                } else {
+                    value = "CAST(ROUND(" + value + " * 100) AS INTEGER)";
+                }
+            }
+            values.add(value);
+        }
+        return String.join(", ", values);
+    }
+    
+    private String getColumnType(String table, String column) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return rs.getString("type");
+                }
+            }
+        }
+        return null;
+    }
+    
+    private List<String> getColumns(String table) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                columns.add(rs.getString("name"));
+            }
+        }
+        return columns;
+    }
+    
+    private List<String> getDependentObjects(String table) throws SQLException {
+        List<String> objects = new ArrayList<>();
+        String sql = "SELECT sql FROM sqlite_master WHERE type IN ('index', 'trigger') AND tbl_name = ? " +
+                     "AND sql IS NOT NULL AND name NOT LIKE ? ESCAPE '\\'";
+        
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, table);
+            stmt.setString(2, table + "\\_int\\_%");
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    objects.add(rs.getString(1));
+                }
+            }
+        }
+        return objects;
+    }
+}
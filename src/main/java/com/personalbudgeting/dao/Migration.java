@@ -0,0 +1,42 @@
+package com.personalbudgeting.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * One step of the schema history. Migrations are applied in version order by
+ * {@link SchemaMigrator} and the database's PRAGMA user_version records the last one applied.
+ */
+public abstract class Migration {
+    private final int version;
+    private final String description;
+    
+    protected Migration(int version, String description) {
+        this.version = version;
+        this.description = description;
+    }
+    
+    public int getVersion() {
+        return version;
+    }
+    
+    public String getDescription() {
+        return description;
+    }
+    
+    public abstract void apply(Connection connection) throws SQLException;
+    
+    /**
+     * Chunked migrations commit their own work in short transactions (see
+     * {@link SchemaMigrator#executeInChunks}) instead of running inside one big
+     * transaction, so they must be safe to re-run after an interruption.
+     */
+    public boolean isChunked() {
+        return false;
+    }
+    
+    @Override
+    public String toString() {
+        return "Migration{version=" + version + ", description='" + description + "'}";
+    }
+}
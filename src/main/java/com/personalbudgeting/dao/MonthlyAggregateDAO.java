@@ -0,0 +1,478 @@
+package com.personalbudgeting.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Maintained monthly totals of the expense and income tables.
+ *
+ * expense_monthly_agg holds the sum (in cents) and row count per (user_id, period, category_id),
+ * income_monthly_agg per (user_id, period). ExpenseDAO and IncomeDAO apply a delta here in the
+ * same transaction as every insert, update and delete, so the summary queries can read a
+ * handful of rows instead of aggregating the ledger. Amounts are kept in cents in both
+ * storage formats, so the totals are exact.
+ */
+public class MonthlyAggregateDAO {
+    
+    public MonthlyAggregateDAO() {
+        // Make sure the writer, and with it the database, is open
+        DatabaseConnection.getConnection();
+    }
+    
+    static void createTables(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS expense_monthly_agg (" +
+                         "user_id INTEGER NOT NULL, " +
+                         "period TEXT NOT NULL, " +
+                         "category TEXT NOT NULL, " +
+                         "total_cents INTEGER NOT NULL, " +
+                         "row_count INTEGER NOT NULL, " +
+                         "PRIMARY KEY (user_id, period, category)" +
+                         ") WITHOUT ROWID");
+            stmt.execute("CREATE TABLE IF NOT EXISTS income_monthly_agg (" +
+                         "user_id INTEGER NOT NULL, " +
+                         "period TEXT NOT NULL, " +
+                         "total_cents INTEGER NOT NULL, " +
+                         "row_count INTEGER NOT NULL, " +
+                         "PRIMARY KEY (user_id, period)" +
+                         ") WITHOUT ROWID");
+        }
+    }
+    
+    /**
+     * Fill both tables from the ledger in rowid chunks, each committed on its own like
+     * {@link SchemaMigrator#executeInChunks}. This runs during schema migration, before the
+     * current storage format is known, so the format of each table is detected here.
+     * Like {@link #createTables}, it uses the schema of migration 4, before category ids.
+     *
+     * While the copy runs, temporary triggers apply writes to rows below the copied range,
+     * so a write from another process is counted once whichever side of the range it lands.
+     * The progress is kept in monthly_agg_backfill, and an interrupted run resumes from it.
+     */
+    static void backfill(Connection connection, int chunkSize) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS monthly_agg_backfill (ledger TEXT PRIMARY KEY, next_id INTEGER NOT NULL)");
+        }
+        backfillLedger(connection, "expense", "user_id, period, category", chunkSize);
+        backfillLedger(connection, "income", "user_id, period", chunkSize);
+    }
+    
+    private static void backfillLedger(Connection connection, String ledger, String keys, int chunkSize) throws SQLException {
+        StorageFormat format = StorageFormat.detect(connection, ledger);
+        String table = ledger + "_monthly_agg";
+        String columns = " (" + keys + ", total_cents, row_count) ";
+        String upsert = " ON CONFLICT (" + keys + ") DO UPDATE SET " +
+                        "total_cents = total_cents + excluded.total_cents, row_count = row_count + excluded.row_count";
+        String progress = "(SELECT next_id FROM monthly_agg_backfill WHERE ledger = '" + ledger + "')";
+        boolean categorized = keys.endsWith("category");
+        
+        // Trigger bodies adding the new row's contribution and taking out the old one's
+        String add = "INSERT INTO " + table + columns + "VALUES (NEW.user_id, " + format.periodSql("NEW.date") +
+                     (categorized ? ", NEW.category" : "") + ", " + format.centsSql("NEW.amount") + ", 1)" + upsert + ";";
+        String subtract = "INSERT INTO " + table + columns + "VALUES (OLD.user_id, " + format.periodSql("OLD.date") +
+                          (categorized ? ", OLD.category" : "") + ", -" + format.centsSql("OLD.amount") + ", -1)" + upsert + "; " +
+                          "DELETE FROM " + table + " WHERE user_id = OLD.user_id AND period = " + format.periodSql("OLD.date") +
+                          (categorized ? " AND category = OLD.category" : "") + " AND row_count <= 0;";
+        
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS " + table + "_backfill_ai AFTER INSERT ON " + ledger +
+                         " WHEN NEW.rowid < " + progress + " BEGIN " + add + " END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS " + table + "_backfill_au AFTER UPDATE ON " + ledger +
+                         " WHEN OLD.rowid < " + progress + " BEGIN " + subtract + " " + add + " END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS " + table + "_backfill_ad AFTER DELETE ON " + ledger +
+                         " WHEN OLD.rowid < " + progress + " BEGIN " + subtract + " END");
+            
+            // A first run starts from empty tables; a resumed one keeps what it copied
+            boolean started;
+            try (ResultSet rs = stmt.executeQuery("SELECT " + progress + " IS NOT NULL")) {
+                started = rs.next() && rs.getBoolean(1);
+            }
+            if (!started) {
+                stmt.execute("DELETE FROM " + table);
+                stmt.execute("INSERT INTO monthly_agg_backfill (ledger, next_id) " +
+                             "SELECT '" + ledger + "', COALESCE(MIN(rowid), 0) FROM " + ledger);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        
+        // Every chunk starts with a write, so its reads see the latest commit of any other process
+        String copy = "INSERT INTO " + table + columns +
+                      "SELECT user_id, " + format.periodSql("date") + (categorized ? ", category" : "") + ", " +
+                      "SUM(" + format.centsSql("amount") + "), COUNT(*) FROM " + ledger + " " +
+                      "WHERE rowid >= " + progress + " AND rowid < " + progress + " + " + chunkSize + " " +
+                      "GROUP BY 1, 2" + (categorized ? ", 3" : "") + upsert;
+        int chunks = 0;
+        try (Statement stmt = connection.createStatement()) {
+            boolean done = false;
+            while (!done) {
+                connection.setAutoCommit(false);
+                try {
+                    stmt.executeUpdate(copy);
+                    stmt.executeUpdate("UPDATE monthly_agg_backfill SET next_id = next_id + " + chunkSize + " WHERE ledger = '" + ledger + "'");
+                    try (ResultSet rs = stmt.executeQuery("SELECT " + progress + " > COALESCE(MAX(rowid), -1) FROM " + ledger)) {
+                        done = rs.next() && rs.getBoolean(1);
+                    }
+                    if (done) {
+                        // Everything is copied; from here on the writers maintain the table
+                        stmt.execute("DROP TRIGGER IF EXISTS " + table + "_backfill_ai");
+                        stmt.execute("DROP TRIGGER IF EXISTS " + table + "_backfill_au");
+                        stmt.execute("DROP TRIGGER IF EXISTS " + table + "_backfill_ad");
+                    }
+                    connection.commit();
+                    chunks++;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            }
+        }
+        System.out.println("Backfilled " + table + " in " + chunks + " chunks of " + chunkSize + " rows");
+    }
+    
+    // Keys of the delta maps used for bulk changes
+    public static String expenseKey(int userId, LocalDate date, int categoryId) {
+        return userId + "|" + YearMonth.from(date) + "|" + categoryId;
+    }
+    
+    public static String incomeKey(int userId, LocalDate date) {
+        return userId + "|" + YearMonth.from(date);
+    }
+    
+    /**
+     * Add (sign 1) or remove (sign -1) one expense row's contribution. Must run on the
+     * writer inside the transaction that changes the expense row.
+     */
+    void applyExpense(Connection conn, int userId, LocalDate date, int categoryId, double amount, int sign) throws SQLException {
+        applyExpenseDelta(conn, userId, YearMonth.from(date).toString(), categoryId, sign * StorageFormat.toCents(amount), sign);
+    }
+    
+    void applyIncome(Connection conn, int userId, LocalDate date, double amount, int sign) throws SQLException {
+        applyIncomeDelta(conn, userId, YearMonth.from(date).toString(), sign * StorageFormat.toCents(amount), sign);
+    }
+    
+    /**
+     * Apply deltas collected with {@link #expenseKey}; each value is { cents, rows }.
+     */
+    void applyExpenseDeltas(Connection conn, Map<String, long[]> deltas) throws SQLException {
+        for (Map.Entry<String, long[]> entry : deltas.entrySet()) {
+            String[] key = entry.getKey().split("\\|", 3);
+            applyExpenseDelta(conn, Integer.parseInt(key[0]), key[1], Integer.parseInt(key[2]), entry.getValue()[0], entry.getValue()[1]);
+        }
+    }
+    
+    /**
+     * Apply deltas collected with {@link #incomeKey}; each value is { cents, rows }.
+     */
+    void applyIncomeDeltas(Connection conn, Map<String, long[]> deltas) throws SQLException {
+        for (Map.Entry<String, long[]> entry : deltas.entrySet()) {
+            String[] key = entry.getKey().split("\\|", 2);
+            applyIncomeDelta(conn, Integer.parseInt(key[0]), key[1], entry.getValue()[0], entry.getValue()[1]);
+        }
+    }
+    
+    private void applyExpenseDelta(Connection conn, int userId, String period, int categoryId, long cents, long rows) throws SQLException {
+        String sql = "INSERT INTO expense_monthly_agg (user_id, period, category_id, total_cents, row_count) VALUES (?, ?, ?, ?, ?) " +
+                     "ON CONFLICT (user_id, period, category_id) DO UPDATE SET " +
+                     "total_cents = total_cents + excluded.total_cents, row_count = row_count + excluded.row_count";
+        
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setString(2, period);
+            stmt.setInt(3, categoryId);
+            stmt.setLong(4, cents);
+            stmt.setLong(5, rows);
+            stmt.executeUpdate();
+        }
+        
+        if (rows < 0) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "DELETE FROM expense_monthly_agg WHERE user_id = ? AND period = ? AND category_id = ? AND row_count <= 0")) {
+                stmt.setInt(1, userId);
+                stmt.setString(2, period);
+                stmt.setInt(3, categoryId);
+                stmt.executeUpdate();
+            }
+        }
+    }
+    
+    private void applyIncomeDelta(Connection conn, int userId, String period, long cents, long rows) throws SQLException {
+        String sql = "INSERT INTO income_monthly_agg (user_id, period, total_cents, row_count) VALUES (?, ?, ?, ?) " +
+                     "ON CONFLICT (user_id, period) DO UPDATE SET " +
+                     "total_cents = total_cents + excluded.total_cents, row_count = row_count + excluded.row_count";
+        
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setString(2, period);
+            stmt.setLong(3, cents);
+            stmt.setLong(4, rows);
+            stmt.executeUpdate();
+        }
+        
+        if (rows < 0) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "DELETE FROM income_monthly_agg WHERE user_id = ? AND period = ? AND row_count <= 0")) {
+                stmt.setInt(1, userId);
+                stmt.setString(2, period);
+                stmt.executeUpdate();
+            }
+        }
+    }
+    
+    public double getTotalExpense(int userId, YearMonth period) {
+        String sql = "SELECT SUM(total_cents) FROM expense_monthly_agg WHERE user_id = ? AND period = ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setString(2, period.toString());
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return StorageFormat.fromCents(rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading total expense aggregate: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return 0.0;
+    }
+    
+    public double getExpenseTotal(int userId, String category, YearMonth period) {
+        String sql = "SELECT total_cents FROM expense_monthly_agg WHERE user_id = ? AND period = ? AND category_id = ?";
+        int categoryId = CategoryDictionary.findId(userId, category);
+        if (categoryId < 0) {
+            return 0.0;
+        }
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setString(2, period.toString());
+            stmt.setInt(3, categoryId);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return StorageFormat.fromCents(rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading category expense aggregate: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return 0.0;
+    }
+    
+    public Map<String, Double> getExpensesByCategory(int userId, YearMonth period) {
+        Map<String, Double> categoryExpenses = new HashMap<>();
+        String sql = "SELECT category_id, total_cents FROM expense_monthly_agg WHERE user_id = ? AND period = ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setString(2, period.toString());
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    categoryExpenses.put(CategoryDictionary.getName(rs.getInt("category_id")), StorageFormat.fromCents(rs.getLong("total_cents")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading expense aggregates by category: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return categoryExpenses;
+    }
+    
+    /**
+     * Spending per category and month over first..last: one range scan of the primary key.
+     * Periods are 'YYYY-MM' strings, so they sort like the months they name.
+     */
+    public Map<String, double[]> getMonthlyExpensesByCategory(int userId, YearMonth first, YearMonth last) {
+        int months = (int) first.until(last, ChronoUnit.MONTHS) + 1;
+        Map<String, long[]> cents = new HashMap<>();
+        String sql = "SELECT period, category_id, total_cents FROM expense_monthly_agg WHERE user_id = ? AND period >= ? AND period <= ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setString(2, first.toString());
+            stmt.setString(3, last.toString());
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int month = (int) first.until(YearMonth.parse(rs.getString("period")), ChronoUnit.MONTHS);
+                    String category = CategoryDictionary.getName(rs.getInt("category_id"));
+                    cents.computeIfAbsent(category, name -> new long[months])[month] += rs.getLong("total_cents");
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading monthly expense aggregates by category: " + e.getMessage());
+            e.printStackTrace();
+        }
+        
+        Map<String, double[]> monthlyExpenses = new HashMap<>();
+        cents.forEach((category, totals) -> monthlyExpenses.put(category, StorageFormat.fromCents(totals)));
+        return monthlyExpenses;
+    }
+    
+    public double getTotalIncome(int userId, YearMonth period) {
+        String sql = "SELECT total_cents FROM income_monthly_agg WHERE user_id = ? AND period = ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setString(2, period.toString());
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return StorageFormat.fromCents(rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading total income aggregate: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return 0.0;
+    }
+    
+    /**
+     * Ids of every user that has ledger rows or aggregate rows.
+     */
+    public List<Integer> findUserIds() throws SQLException {
+        Set<Integer> userIds = new TreeSet<>();
+        String sql = "SELECT user_id FROM expense UNION SELECT user_id FROM income " +
+                     "UNION SELECT user_id FROM expense_monthly_agg UNION SELECT user_id FROM income_monthly_agg";
+        
+        // Users are spread over the main database and the shards
+        for (int shard : ShardRouter.getDatabases()) {
+            try (Connection conn = DatabaseConnection.getShardReadConnection(shard);
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    userIds.add(rs.getInt(1));
+                }
+            }
+        }
+        return new ArrayList<>(userIds);
+    }
+    
+    /**
+     * Recompute a user's expense aggregates from the ledger, keyed "period|category" with values { cents, rows }.
+     */
+    public Map<String, long[]> computeExpenseAggregates(Connection conn, int userId) throws SQLException {
+        StorageFormat format = StorageFormat.current();
+        return namedCategories(queryTotals(conn, "SELECT " + format.periodSql("date") + " || '|' || category_id, SUM(" + format.centsSql("amount") + "), COUNT(*) " +
+                                                 "FROM expense WHERE user_id = ? GROUP BY 1", userId));
+    }
+    
+    public Map<String, long[]> loadExpenseAggregates(int userId) throws SQLException {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId)) {
+            return loadExpenseAggregates(conn, userId);
+        }
+    }
+    
+    public Map<String, long[]> loadExpenseAggregates(Connection conn, int userId) throws SQLException {
+        return namedCategories(queryTotals(conn, "SELECT period || '|' || category_id, total_cents, row_count FROM expense_monthly_agg WHERE user_id = ?", userId));
+    }
+    
+    // "period|category id" keys to "period|category"
+    private static Map<String, long[]> namedCategories(Map<String, long[]> totals) {
+        Map<String, long[]> named = new HashMap<>();
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            String[] key = entry.getKey().split("\\|", 2);
+            named.put(key[0] + "|" + CategoryDictionary.getName(Integer.parseInt(key[1])), entry.getValue());
+        }
+        return named;
+    }
+    
+    /**
+     * Recompute a user's income aggregates from the ledger, keyed by period with values { cents, rows }.
+     */
+    public Map<String, long[]> computeIncomeAggregates(Connection conn, int userId) throws SQLException {
+        StorageFormat format = StorageFormat.current();
+        return queryTotals(conn, "SELECT " + format.periodSql("date") + ", SUM(" + format.centsSql("amount") + "), COUNT(*) " +
+                                 "FROM income WHERE user_id = ? GROUP BY 1", userId);
+    }
+    
+    public Map<String, long[]> loadIncomeAggregates(Connection conn, int userId) throws SQLException {
+        return queryTotals(conn, "SELECT period, total_cents, row_count FROM income_monthly_agg WHERE user_id = ?", userId);
+    }
+    
+    private Map<String, long[]> queryTotals(Connection conn, String sql, int userId) throws SQLException {
+        Map<String, long[]> totals = new HashMap<>();
+        
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    totals.put(rs.getString(1), new long[] { rs.getLong(2), rs.getLong(3) });
+                }
+            }
+        }
+        return totals;
+    }
+    
+    /**
+     * Replace all of a user's aggregate rows with freshly computed ones. Must run on the
+     * writer inside a transaction, the one the totals were computed in.
+     * The maps are keyed as returned by {@link #computeExpenseAggregates} and {@link #computeIncomeAggregates}.
+     */
+    public void replaceAggregates(Connection conn, int userId, Map<String, long[]> expenseTotals, Map<String, long[]> incomeTotals) throws SQLException {
+        try (PreparedStatement deleteExpense = conn.prepareStatement("DELETE FROM expense_monthly_agg WHERE user_id = ?");
+             PreparedStatement deleteIncome = conn.prepareStatement("DELETE FROM income_monthly_agg WHERE user_id = ?")) {
+            deleteExpense.setInt(1, userId);
+            deleteExpense.executeUpdate();
+            deleteIncome.setInt(1, userId);
+            deleteIncome.executeUpdate();
+        }
+        
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO expense_monthly_agg (user_id, period, category_id, total_cents, row_count) VALUES (?, ?, ?, ?, ?)")) {
+            for (Map.Entry<String, long[]> entry : expenseTotals.entrySet()) {
+                String[] key = entry.getKey().split("\\|", 2);
+                stmt.setInt(1, userId);
+                stmt.setString(2, key[0]);
+                stmt.setInt(3, CategoryDictionary.findId(userId, key[1]));
+                stmt.setLong(4, entry.getValue()[0]);
+                stmt.setLong(5, entry.getValue()[1]);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO income_monthly_agg (user_id, period, total_cents, row_count) VALUES (?, ?, ?, ?)")) {
+            for (Map.Entry<String, long[]> entry : incomeTotals.entrySet()) {
+                stmt.setInt(1, userId);
+                stmt.setString(2, entry.getKey());
+                stmt.setLong(3, entry.getValue()[0]);
+                stmt.setLong(4, entry.getValue()[1]);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.personalbudgeting.dao;
 
 import com.personalbudgeting.model.Reminder;
+import com.personalbudgeting.repository.ReminderRepository;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -9,35 +10,41 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-public class ReminderDAO {
-    private Connection connection;
-    
+public class ReminderDAO implements ReminderRepository {
     public ReminderDAO() {
-        this.connection = DatabaseConnection.getConnection();
+        DatabaseConnection.getConnection();
     }
     
     public boolean add(Reminder reminder) {
         String sql = "INSERT INTO reminder (user_id, title, description, due_date, is_completed) VALUES (?, ?, ?, ?, ?)";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setInt(1, reminder.getUserId());
-            stmt.setString(2, reminder.getTitle());
-            stmt.setString(3, reminder.getDescription());
-            stmt.setString(4, reminder.getDueDate().toString());
-            stmt.setInt(5, reminder.isCompleted() ? 1 : 0);
-            
-            int rowsAffected = stmt.executeUpdate();
-            
-            if (rowsAffected > 0) {
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        reminder.setId(rs.getInt(1));
+        try {
+            return DatabaseConnection.write(reminder.getUserId(), conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    stmt.setInt(1, reminder.getUserId());
+                    stmt.setString(2, reminder.getTitle());
+                    stmt.setString(3, reminder.getDescription());
+                    stmt.setString(4, reminder.getDueDate().toString());
+                    stmt.setInt(5, reminder.isCompleted() ? 1 : 0);
+                    
+                    int rowsAffected = stmt.executeUpdate();
+                    
+                    if (rowsAffected > 0) {
+                        try (ResultSet rs = stmt.getGeneratedKeys()) {
+                            if (rs.next()) {
+                                reminder.setId(rs.getInt(1));
+                            }
+                        }
+                        return true;
                     }
+                    return false;
                 }
-                return true;
-            }
+            });
         } catch (SQLException e) {
             System.err.println("Error adding reminder: " + e.getMessage());
             e.printStackTrace();
@@ -48,15 +55,19 @@ public class ReminderDAO {
     public boolean update(Reminder reminder) {
         String sql = "UPDATE reminder SET title = ?, description = ?, due_date = ?, is_completed = ? WHERE id = ? AND user_id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, reminder.getTitle());
-            stmt.setString(2, reminder.getDescription());
-            stmt.setString(3, reminder.getDueDate().toString());
-            stmt.setInt(4, reminder.isCompleted() ? 1 : 0);
-            stmt.setInt(5, reminder.getId());
-            stmt.setInt(6, reminder.getUserId());
-            
-            return stmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.write(reminder.getUserId(), conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, reminder.getTitle());
+                    stmt.setString(2, reminder.getDescription());
+                    stmt.setString(3, reminder.getDueDate().toString());
+                    stmt.setInt(4, reminder.isCompleted() ? 1 : 0);
+                    stmt.setInt(5, reminder.getId());
+                    stmt.setInt(6, reminder.getUserId());
+                    
+                    return stmt.executeUpdate() > 0;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Error updating reminder: " + e.getMessage());
             e.printStackTrace();
@@ -67,11 +78,15 @@ public class ReminderDAO {
     public boolean markAsCompleted(int reminderId, int userId) {
         String sql = "UPDATE reminder SET is_completed = 1 WHERE id = ? AND user_id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, reminderId);
-            stmt.setInt(2, userId);
-            
-            return stmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.write(userId, conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, reminderId);
+                    stmt.setInt(2, userId);
+                    
+                    return stmt.executeUpdate() > 0;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Error marking reminder as completed: " + e.getMessage());
             e.printStackTrace();
@@ -82,11 +97,15 @@ public class ReminderDAO {
     public boolean delete(int reminderId, int userId) {
         String sql = "DELETE FROM reminder WHERE id = ? AND user_id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, reminderId);
-            stmt.setInt(2, userId);
-            
-            return stmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.write(userId, conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, reminderId);
+                    stmt.setInt(2, userId);
+                    
+                    return stmt.executeUpdate() > 0;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Error deleting reminder: " + e.getMessage());
             e.printStackTrace();
@@ -97,7 +116,8 @@ public class ReminderDAO {
     public Reminder findById(int reminderId, int userId) {
         String sql = "SELECT * FROM reminder WHERE id = ? AND user_id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, reminderId);
             stmt.setInt(2, userId);
             
@@ -117,7 +137,8 @@ public class ReminderDAO {
         List<Reminder> reminders = new ArrayList<>();
         String sql = "SELECT * FROM reminder WHERE user_id = ? ORDER BY due_date ASC";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
             
             try (ResultSet rs = stmt.executeQuery()) {
@@ -133,11 +154,46 @@ public class ReminderDAO {
         return reminders;
     }
     
+    /**
+     * Stream all reminders of a user, by due date, mapping rows lazily as they are consumed.
+     * The stream holds a pooled read connection until it is closed, so use it in try-with-resources.
+     */
+    public Stream<Reminder> streamAllByUserId(int userId) {
+        String sql = "SELECT * FROM reminder WHERE user_id = ? ORDER BY due_date ASC";
+        
+        try {
+            return ResultSetStream.query(DatabaseConnection.getReadConnection(userId), sql,
+                                         this::extractReminderFromResultSet, userId);
+        } catch (SQLException e) {
+            System.err.println("Error streaming reminders by user ID: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return Stream.empty();
+    }
+    
+    /**
+     * Visit all reminders of a user in constant memory.
+     *
+     * @return the number of reminders visited
+     */
+    public long forEachByUserId(int userId, Consumer<Reminder> visitor) {
+        long count = 0;
+        try (Stream<Reminder> reminders = streamAllByUserId(userId)) {
+            Iterator<Reminder> iterator = reminders.iterator();
+            while (iterator.hasNext()) {
+                visitor.accept(iterator.next());
+                count++;
+            }
+        }
+        return count;
+    }
+    
     public List<Reminder> findActiveReminders(int userId) {
         List<Reminder> reminders = new ArrayList<>();
         String sql = "SELECT * FROM reminder WHERE user_id = ? AND is_completed = 0 ORDER BY due_date ASC";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
             
             try (ResultSet rs = stmt.executeQuery()) {
@@ -157,7 +213,8 @@ public class ReminderDAO {
         List<Reminder> reminders = new ArrayList<>();
         String sql = "SELECT * FROM reminder WHERE user_id = ? AND is_completed = 0 AND due_date <= ? ORDER BY due_date ASC";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, userId);
             stmt.setString(2, currentDateTime.toString());
             
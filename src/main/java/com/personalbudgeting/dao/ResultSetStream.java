@@ -0,0 +1,104 @@
+package com.personalbudgeting.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Turns an open query into a lazy Stream. Rows are mapped one at a time as the
+ * consumer pulls them, so arbitrarily long results are processed in constant memory.
+ *
+ * The stream owns the connection, statement and result set and releases them
+ * when it is closed, so callers must use it in a try-with-resources block.
+ */
+public class ResultSetStream {
+    public static final int DEFAULT_FETCH_SIZE = 256;
+    
+    private ResultSetStream() {}
+    
+    /**
+     * Prepare and run a query on the given connection, binding the parameters in order,
+     * and stream its rows. The connection is closed if the query cannot be started.
+     */
+    public static <T> Stream<T> query(Connection connection, String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        PreparedStatement stmt = null;
+        try {
+            stmt = connection.prepareStatement(sql);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+        } catch (SQLException e) {
+            closeQuietly(null, stmt, connection);
+            throw e;
+        }
+        return of(connection, stmt, mapper);
+    }
+    
+    /**
+     * Execute the prepared query and stream its rows.
+     * If the query cannot be started, the statement and connection are closed and the exception rethrown.
+     */
+    public static <T> Stream<T> of(Connection connection, PreparedStatement stmt, RowMapper<T> mapper) throws SQLException {
+        ResultSet rs;
+        try {
+            stmt.setFetchSize(DEFAULT_FETCH_SIZE);
+            rs = stmt.executeQuery();
+        } catch (SQLException e) {
+            closeQuietly(null, stmt, connection);
+            throw e;
+        }
+        
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private boolean done;
+            
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (done) {
+                    return false;
+                }
+                try {
+                    if (!rs.next()) {
+                        done = true;
+                        return false;
+                    }
+                    action.accept(mapper.map(rs));
+                    return true;
+                } catch (SQLException e) {
+                    done = true;
+                    throw new IllegalStateException("Error reading row: " + e.getMessage(), e);
+                }
+            }
+        };
+        
+        return StreamSupport.stream(spliterator, false)
+                            .onClose(() -> closeQuietly(rs, stmt, connection));
+    }
+    
+    private static void closeQuietly(ResultSet rs, PreparedStatement stmt, Connection connection) {
+        try {
+            if (rs != null) {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error closing result set: " + e.getMessage());
+        }
+        try {
+            if (stmt != null) {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error closing statement: " + e.getMessage());
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+}
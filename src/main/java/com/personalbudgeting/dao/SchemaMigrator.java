@@ -0,0 +1,150 @@
+package com.personalbudgeting.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Applies ordered {@link Migration}s to a database, keyed on PRAGMA user_version.
+ *
+ * Regular migrations run in a single transaction together with the version bump,
+ * so a failure leaves the database at the previous version. Chunked migrations
+ * commit their own short transactions and only the version bump is done here.
+ */
+public class SchemaMigrator {
+    public static final int DEFAULT_CHUNK_SIZE = 10000;
+    
+    private final List<Migration> migrations;
+    
+    public SchemaMigrator(List<Migration> migrations) {
+        this.migrations = new ArrayList<>(migrations);
+        this.migrations.sort(Comparator.comparingInt(Migration::getVersion));
+        
+        for (int i = 1; i < this.migrations.size(); i++) {
+            if (this.migrations.get(i).getVersion() == this.migrations.get(i - 1).getVersion()) {
+                throw new IllegalArgumentException("Duplicate migration version: " + this.migrations.get(i).getVersion());
+            }
+        }
+    }
+    
+    public int getLatestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).getVersion();
+    }
+    
+    /**
+     * Bring the database up to the latest version.
+     *
+     * @return the number of migrations applied
+     */
+    public int migrate(Connection connection) throws SQLException {
+        int currentVersion = getCurrentVersion(connection);
+        int applied = 0;
+        
+        for (Migration migration : migrations) {
+            if (migration.getVersion() <= currentVersion) {
+                continue;
+            }
+            
+            long start = System.currentTimeMillis();
+            System.out.println("Applying schema migration " + migration.getVersion() + ": " + migration.getDescription());
+            
+            if (migration.isChunked()) {
+                migration.apply(connection);
+                setCurrentVersion(connection, migration.getVersion());
+            } else {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try {
+                    migration.apply(connection);
+                    setCurrentVersion(connection, migration.getVersion());
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw new SQLException("Schema migration " + migration.getVersion() + " failed: " + e.getMessage(), e);
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            }
+            
+            currentVersion = migration.getVersion();
+            applied++;
+            System.out.println("Schema migration " + migration.getVersion() + " done in " +
+                               (System.currentTimeMillis() - start) + " ms");
+        }
+        
+        return applied;
+    }
+    
+    public static int getCurrentVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+    
+    private static void setCurrentVersion(Connection connection, int version) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            // PRAGMA does not accept bind parameters
+            stmt.execute("PRAGMA user_version = " + version);
+        }
+    }
+    
+    /**
+     * Run a data migration over a large table in rowid ranges, committing each
+     * range separately so the writer lock is only held for one chunk at a time.
+     *
+     * @param sql statement with two parameters: the inclusive lower and exclusive upper rowid of the chunk
+     * @return the total number of rows changed
+     */
+    public static long executeInChunks(Connection connection, String table, String sql, int chunkSize) throws SQLException {
+        long minId;
+        long maxId;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(rowid), MAX(rowid) FROM " + table)) {
+            if (!rs.next() || rs.getObject(1) == null) {
+                return 0;
+            }
+            minId = rs.getLong(1);
+            maxId = rs.getLong(2);
+        }
+        
+        long changed = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (long lower = minId; lower <= maxId; lower += chunkSize) {
+                connection.setAutoCommit(false);
+                try {
+                    stmt.setLong(1, lower);
+                    stmt.setLong(2, lower + chunkSize);
+                    changed += stmt.executeUpdate();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            }
+        }
+        
+        System.out.println("Migrated " + changed + " rows of " + table + " in chunks of " + chunkSize);
+        return changed;
+    }
+    
+    /**
+     * Run each statement as its own short transaction. Used for DDL on big tables
+     * (such as index builds) that cannot be split further.
+     */
+    public static void executeEach(Connection connection, String... statements) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String sql : statements) {
+                stmt.execute(sql);
+            }
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.personalbudgeting.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves users' ledgers between the main database and the shards.
+ *
+ * A move copies the user's rows into the target inside one transaction (replacing
+ * any copy left there by an interrupted move), then points the directory at the
+ * target and finally deletes the rows from the source. Row ids are reassigned by
+ * the target. Whatever step an interrupted run stopped at, running it again, or
+ * {@link #purgeOrphans()}, leaves every row in exactly one place.
+ *
+ * Meant for offline use (ShardTool) while the application is not running.
+ */
+public class ShardMigrator {
+    // Every table holding per-user rows outside the main database's users table
+    private static final String[] USER_TABLES = {
+        "expense", "income", "budget", "reminder", "expense_monthly_agg", "income_monthly_agg",
+        "statement", "statement_line"
+    };
+    
+    /**
+     * Move a user's ledger to a shard, or back into the main database for ShardRouter.MAIN.
+     *
+     * @return the number of rows moved
+     */
+    public int moveUser(int userId, int target) throws SQLException {
+        int source = ShardRouter.shardOf(userId);
+        if (source == target) {
+            return 0;
+        }
+        
+        int copied = copyRows(userId, source, target);
+        
+        Connection main = DatabaseConnection.getShardConnection(ShardRouter.MAIN);
+        synchronized (main) {
+            ShardRouter.setHome(main, userId, target);
+        }
+        ShardRouter.remember(userId, target);
+        
+        deleteRows(DatabaseConnection.getShardConnection(source), userId);
+        System.out.println("Moved user " + userId + " (" + copied + " rows) from " + describe(source) + " to " + describe(target));
+        return copied;
+    }
+    
+    /**
+     * Move every user still in the main database onto the shards, filling the least used shard first.
+     *
+     * @return the number of users moved
+     */
+    public int migrateAll() throws SQLException {
+        if (!ShardRouter.isEnabled()) {
+            throw new SQLException("Sharding is off; set budget.db.shards first");
+        }
+        
+        int moved = 0;
+        for (int userId : findUsers()) {
+            if (ShardRouter.shardOf(userId) == ShardRouter.MAIN) {
+                moveUser(userId, leastUsedShard());
+                moved++;
+            }
+        }
+        return moved;
+    }
+    
+    /**
+     * Even out the number of users per shard. Users on shards beyond budget.db.shards
+     * (after the count was lowered) are moved onto the configured shards first.
+     *
+     * @return the number of users moved
+     */
+    public int rebalance() throws SQLException {
+        if (!ShardRouter.isEnabled()) {
+            throw new SQLException("Sharding is off; set budget.db.shards first");
+        }
+        
+        int moved = 0;
+        for (int shard : ShardRouter.getShards()) {
+            if (shard >= ShardRouter.getShardCount()) {
+                for (int userId : ShardRouter.getUsers(shard)) {
+                    moveUser(userId, leastUsedShard());
+                    moved++;
+                }
+            }
+        }
+        
+        while (true) {
+            int fullest = 0;
+            int emptiest = 0;
+            for (int shard = 1; shard < ShardRouter.getShardCount(); shard++) {
+                int users = ShardRouter.getUsers(shard).size();
+                if (users > ShardRouter.getUsers(fullest).size()) {
+                    fullest = shard;
+                }
+                if (users < ShardRouter.getUsers(emptiest).size()) {
+                    emptiest = shard;
+                }
+            }
+            
+            List<Integer> candidates = ShardRouter.getUsers(fullest);
+            if (candidates.size() - ShardRouter.getUsers(emptiest).size() <= 1) {
+                return moved;
+            }
+            // Newest users first; they tend to have the least history to copy
+            moveUser(candidates.get(candidates.size() - 1), emptiest);
+            moved++;
+        }
+    }
+    
+    /**
+     * Delete rows left behind in a database that is not their user's home.
+     *
+     * @return the number of rows deleted
+     */
+    public int purgeOrphans() throws SQLException {
+        int deleted = 0;
+        for (int database : ShardRouter.getDatabases()) {
+            Connection connection = DatabaseConnection.getShardConnection(database);
+            List<Integer> strays = new ArrayList<>();
+            
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery(unionOfUserIds())) {
+                while (rs.next()) {
+                    if (ShardRouter.shardOf(rs.getInt(1)) != database) {
+                        strays.add(rs.getInt(1));
+                    }
+                }
+            }
+            
+            for (int userId : strays) {
+                int rows = deleteRows(connection, userId);
+                System.out.println("Purged " + rows + " stray rows of user " + userId + " from " + describe(database));
+                deleted += rows;
+            }
+        }
+        return deleted;
+    }
+    
+    /**
+     * Users and ledger rows per database, for reporting.
+     */
+    public Map<String, String> getStatus() throws SQLException {
+        Map<String, String> status = new LinkedHashMap<>();
+        List<Integer> users = findUsers();
+        
+        for (int database : ShardRouter.getDatabases()) {
+            int homed = 0;
+            for (int userId : users) {
+                if (ShardRouter.shardOf(userId) == database) {
+                    homed++;
+                }
+            }
+            
+            StringBuilder line = new StringBuilder(homed + " users");
+            try (Connection conn = DatabaseConnection.getShardReadConnection(database);
+                 Statement stmt = conn.createStatement()) {
+                for (String table : new String[] { "expense", "income", "budget", "reminder" }) {
+                    try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                        line.append(", ").append(rs.getLong(1)).append(' ').append(table);
+                    }
+                }
+            }
+            status.put(describe(database), line.toString());
+        }
+        return status;
+    }
+    
+    private int copyRows(int userId, int source, int target) throws SQLException {
+        Connection connection = DatabaseConnection.getShardConnection(target);
+        String sourcePath = source == ShardRouter.MAIN ? DatabaseConnection.getDatabasePath() : ShardRouter.getShardPath(source);
+        
+        synchronized (connection) {
+            // ATTACH is not allowed inside a transaction
+            try (PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS source_db")) {
+                attach.setString(1, sourcePath);
+                attach.execute();
+            }
+            
+            int copied = 0;
+            try {
+                connection.setAutoCommit(false);
+                for (String table : USER_TABLES) {
+                    String columns = String.join(", ", getCopiedColumns(connection, table));
+                    
+                    try (PreparedStatement delete = connection.prepareStatement("DELETE FROM main." + table + " WHERE user_id = ?");
+                         PreparedStatement insert = connection.prepareStatement(
+                             "INSERT INTO main." + table + " (" + columns + ") SELECT " + columns +
+                             " FROM source_db." + table + " WHERE user_id = ?")) {
+                        delete.setInt(1, userId);
+                        delete.executeUpdate();
+                        insert.setInt(1, userId);
+                        copied += insert.executeUpdate();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+                try (Statement detach = connection.createStatement()) {
+                    detach.execute("DETACH DATABASE source_db");
+                }
+            }
+            return copied;
+        }
+    }
+    
+    private int deleteRows(Connection connection, int userId) throws SQLException {
+        synchronized (connection) {
+            int deleted = 0;
+            try {
+                connection.setAutoCommit(false);
+                for (String table : USER_TABLES) {
+                    try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM " + table + " WHERE user_id = ?")) {
+                        stmt.setInt(1, userId);
+                        deleted += stmt.executeUpdate();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            return deleted;
+        }
+    }
+    
+    // All columns except a generated id, which the target assigns anew
+    private static List<String> getCopiedColumns(Connection connection, String table) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA main.table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (!"id".equals(rs.getString("name"))) {
+                    columns.add(rs.getString("name"));
+                }
+            }
+        }
+        return columns;
+    }
+    
+    private static String unionOfUserIds() {
+        List<String> selects = new ArrayList<>();
+        for (String table : USER_TABLES) {
+            selects.add("SELECT user_id FROM " + table);
+        }
+        return String.join(" UNION ", selects);
+    }
+    
+    private List<Integer> findUsers() throws SQLException {
+        List<Integer> users = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM users ORDER BY id")) {
+            while (rs.next()) {
+                users.add(rs.getInt(1));
+            }
+        }
+        return users;
+    }
+    
+    private static int leastUsedShard() {
+        int chosen = 0;
+        for (int shard = 1; shard < ShardRouter.getShardCount(); shard++) {
+            if (ShardRouter.getUsers(shard).size() < ShardRouter.getUsers(chosen).size()) {
+                chosen = shard;
+            }
+        }
+        return chosen;
+    }
+    
+    private static String describe(int database) {
+        return database == ShardRouter.MAIN ? "main" : "shard " + database;
+    }
+}
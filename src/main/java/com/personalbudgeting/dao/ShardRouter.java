@@ -0,0 +1,204 @@
+package com.personalbudgeting.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Maps a user to the SQLite file that holds the user's ledger.
+ *
+ * The main database keeps the users table and the user_shard directory. A user
+ * with a directory row lives in shard file number n, next to the main file
+ * (budget-shard-0.db, budget-shard-1.db, ...); a user without one lives in the
+ * main database, which is where every user of an unsharded database is.
+ * New users are placed on the least used of the budget.db.shards shards when
+ * sharding is enabled; existing users are moved with ShardTool.
+ *
+ * The directory is small (one row per user), so it is loaded once at startup
+ * and lookups never touch the database.
+ */
+public final class ShardRouter {
+    public static final int MAIN = -1;
+    
+    private static final int SHARDS = Math.max(0, Integer.getInteger("budget.db.shards", 0));
+    
+    private static final Map<Integer, Integer> homes = new ConcurrentHashMap<>();
+    
+    private ShardRouter() {
+    }
+    
+    public static boolean isEnabled() {
+        return SHARDS > 0;
+    }
+    
+    /**
+     * Number of shards new users are spread over; 0 when sharding is off.
+     */
+    public static int getShardCount() {
+        return SHARDS;
+    }
+    
+    /**
+     * Path of a shard file, derived from the main database path.
+     */
+    public static String getShardPath(int shard) {
+        String path = DatabaseConnection.getDatabasePath();
+        String base = path.endsWith(".db") ? path.substring(0, path.length() - 3) : path;
+        return base + "-shard-" + shard + ".db";
+    }
+    
+    static void createDirectoryTable(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS user_shard (" +
+                         "user_id INTEGER PRIMARY KEY, " +
+                         "shard INTEGER NOT NULL" +
+                         ")");
+        }
+    }
+    
+    /**
+     * Load the directory from the main database, replacing what is cached.
+     */
+    static void load(Connection main) throws SQLException {
+        Map<Integer, Integer> loaded = new HashMap<>();
+        try (Statement stmt = main.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT user_id, shard FROM user_shard")) {
+            while (rs.next()) {
+                loaded.put(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        homes.clear();
+        homes.putAll(loaded);
+        
+        if (!isEnabled() && !loaded.isEmpty()) {
+            System.err.println("Sharding is off but " + loaded.size() + " users live in shards; they are still routed there");
+        }
+    }
+    
+    /**
+     * The shard holding a user's ledger, or MAIN.
+     */
+    public static int shardOf(int userId) {
+        Integer shard = homes.get(userId);
+        return shard == null ? MAIN : shard;
+    }
+    
+    /**
+     * Place a newly registered user on the shard with the fewest users.
+     * Runs in the registering transaction on the main writer; pass the result to
+     * {@link #remember} once that transaction has committed.
+     *
+     * @return the chosen shard, or MAIN if sharding is off
+     */
+    static int assign(Connection main, int userId) throws SQLException {
+        if (!isEnabled()) {
+            return MAIN;
+        }
+        
+        int[] users = new int[SHARDS];
+        try (Statement stmt = main.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT shard, COUNT(*) FROM user_shard GROUP BY shard")) {
+            while (rs.next()) {
+                int shard = rs.getInt(1);
+                if (shard >= 0 && shard < SHARDS) {
+                    users[shard] = rs.getInt(2);
+                }
+            }
+        }
+        
+        int chosen = 0;
+        for (int shard = 1; shard < SHARDS; shard++) {
+            if (users[shard] < users[chosen]) {
+                chosen = shard;
+            }
+        }
+        setHome(main, userId, chosen);
+        return chosen;
+    }
+    
+    /**
+     * Record where a user's ledger lives; MAIN removes the directory row. Lookups only
+     * follow the new row once {@link #remember} is called after it has committed, so a
+     * rolled back transaction never leaves a user routed to the wrong file.
+     */
+    public static void setHome(Connection main, int userId, int shard) throws SQLException {
+        String sql = shard == MAIN
+            ? "DELETE FROM user_shard WHERE user_id = ?"
+            : "INSERT OR REPLACE INTO user_shard (user_id, shard) VALUES (?, ?)";
+        
+        try (PreparedStatement stmt = main.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            if (shard != MAIN) {
+                stmt.setInt(2, shard);
+            }
+            stmt.executeUpdate();
+        }
+    }
+    
+    /**
+     * Route a user to the shard written by a committed {@link #assign} or {@link #setHome}.
+     */
+    static void remember(int userId, int shard) {
+        if (shard == MAIN) {
+            homes.remove(userId);
+        } else {
+            homes.put(userId, shard);
+        }
+    }
+    
+    /**
+     * Users whose directory row points at a shard, in id order.
+     */
+    public static List<Integer> getUsers(int shard) {
+        TreeSet<Integer> users = new TreeSet<>();
+        for (Map.Entry<Integer, Integer> entry : homes.entrySet()) {
+            if (entry.getValue() == shard) {
+                users.add(entry.getKey());
+            }
+        }
+        return new ArrayList<>(users);
+    }
+    
+    /**
+     * Every shard that is configured or still holds users, in order, without MAIN.
+     */
+    public static List<Integer> getShards() {
+        TreeSet<Integer> shards = new TreeSet<>(homes.values());
+        for (int shard = 0; shard < SHARDS; shard++) {
+            shards.add(shard);
+        }
+        return new ArrayList<>(shards);
+    }
+    
+    /**
+     * MAIN followed by every shard; the databases a query over all users must visit.
+     */
+    public static List<Integer> getDatabases() {
+        List<Integer> databases = new ArrayList<>();
+        databases.add(MAIN);
+        databases.addAll(getShards());
+        return databases;
+    }
+    
+    /**
+     * Group items by the shard of their user, keeping their order within each group.
+     */
+    public static <T> Map<Integer, List<T>> partition(Collection<T> items, ToIntFunction<T> userId) {
+        Map<Integer, List<T>> groups = new LinkedHashMap<>();
+        for (T item : items) {
+            groups.computeIfAbsent(shardOf(userId.applyAsInt(item)), k -> new ArrayList<>()).add(item);
+        }
+        return groups;
+    }
+}
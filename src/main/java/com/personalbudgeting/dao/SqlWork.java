@@ -0,0 +1,14 @@
+package com.personalbudgeting.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A unit of database work run against a connection supplied by the caller,
+ * typically inside a transaction (see {@link DatabaseConnection#write} and
+ * {@link DatabaseConnection#inTransaction}).
+ */
+@FunctionalInterface
+public interface SqlWork<T> {
+    T execute(Connection connection) throws SQLException;
+}
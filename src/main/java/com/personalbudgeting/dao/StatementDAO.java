@@ -0,0 +1,194 @@
+package com.personalbudgeting.dao;
+
+import com.personalbudgeting.model.BudgetSummary;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generated month-end statements, one per (user_id, period).
+ *
+ * statement holds the month's totals in cents and statement_line the spent and
+ * budgeted cents per category. Both live next to the user's ledger, so a shard
+ * holds the statements of its users. A statement row exists only once all of its
+ * lines are stored, so its presence marks the user as done for the period.
+ */
+public class StatementDAO {
+    
+    public StatementDAO() {
+        // Make sure the writer, and with it the database, is open
+        DatabaseConnection.getConnection();
+    }
+    
+    static void createTables(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS statement (" +
+                         "user_id INTEGER NOT NULL, " +
+                         "period TEXT NOT NULL, " +
+                         "income_cents INTEGER NOT NULL, " +
+                         "expense_cents INTEGER NOT NULL, " +
+                         "budget_cents INTEGER NOT NULL, " +
+                         "generated_at TEXT NOT NULL, " +
+                         "PRIMARY KEY (user_id, period)" +
+                         ") WITHOUT ROWID");
+            stmt.execute("CREATE TABLE IF NOT EXISTS statement_line (" +
+                         "user_id INTEGER NOT NULL, " +
+                         "period TEXT NOT NULL, " +
+                         "category_id INTEGER NOT NULL, " +
+                         "spent_cents INTEGER NOT NULL, " +
+                         "budget_cents INTEGER NOT NULL, " +
+                         "PRIMARY KEY (user_id, period, category_id)" +
+                         ") WITHOUT ROWID");
+            // Finding the users already done for a period
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_statement_period ON statement (period, user_id)");
+        }
+    }
+    
+    /**
+     * Ids of every registered user, in order. Users are kept in the main database only.
+     */
+    public List<Integer> findUserIds() throws SQLException {
+        List<Integer> userIds = new ArrayList<>();
+        try (Connection conn = DatabaseConnection.getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM users ORDER BY id")) {
+            while (rs.next()) {
+                userIds.add(rs.getInt(1));
+            }
+        }
+        return userIds;
+    }
+    
+    /**
+     * Ids of the users that already have a statement for the period, in any database.
+     */
+    public Set<Integer> findCompletedUserIds(YearMonth period) throws SQLException {
+        Set<Integer> userIds = new TreeSet<>();
+        for (int shard : ShardRouter.getDatabases()) {
+            try (Connection conn = DatabaseConnection.getShardReadConnection(shard);
+                 PreparedStatement stmt = conn.prepareStatement("SELECT user_id FROM statement WHERE period = ?")) {
+                stmt.setString(1, period.toString());
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        userIds.add(rs.getInt(1));
+                    }
+                }
+            }
+        }
+        return userIds;
+    }
+    
+    /**
+     * Store the statements of several users, replacing earlier ones of the same period.
+     * The statements of each database are written in one transaction.
+     *
+     * @param statements summaries keyed by user id
+     */
+    public void saveAll(Map<Integer, BudgetSummary> statements) throws SQLException {
+        Map<Integer, List<Integer>> byShard = ShardRouter.partition(statements.keySet(), Integer::intValue);
+        String generatedAt = LocalDateTime.now().withNano(0).toString();
+        
+        for (List<Integer> userIds : byShard.values()) {
+            DatabaseConnection.write(userIds.get(0), conn -> {
+                for (int userId : userIds) {
+                    save(conn, userId, statements.get(userId), generatedAt);
+                }
+                return null;
+            });
+        }
+    }
+    
+    private void save(Connection conn, int userId, BudgetSummary summary, String generatedAt) throws SQLException {
+        String period = summary.getPeriod().toString();
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM statement_line WHERE user_id = ? AND period = ?")) {
+            stmt.setInt(1, userId);
+            stmt.setString(2, period);
+            stmt.executeUpdate();
+        }
+        
+        // Every category spent in or budgeted for, with both amounts
+        Set<String> categories = new HashSet<>(summary.getExpensesByCategory().keySet());
+        categories.addAll(summary.getBudgetsByCategory().keySet());
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO statement_line (user_id, period, category_id, spent_cents, budget_cents) VALUES (?, ?, ?, ?, ?)")) {
+            for (String category : categories) {
+                stmt.setInt(1, userId);
+                stmt.setString(2, period);
+                stmt.setInt(3, CategoryDictionary.findId(userId, category));
+                stmt.setLong(4, StorageFormat.toCents(summary.getSpent(category)));
+                stmt.setLong(5, StorageFormat.toCents(summary.getBudget(category)));
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        
+        String sql = "INSERT OR REPLACE INTO statement (user_id, period, income_cents, expense_cents, budget_cents, generated_at) " +
+                     "VALUES (?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            stmt.setString(2, period);
+            stmt.setLong(3, StorageFormat.toCents(summary.getTotalIncome()));
+            stmt.setLong(4, StorageFormat.toCents(summary.getTotalExpenses()));
+            stmt.setLong(5, StorageFormat.toCents(summary.getTotalBudget()));
+            stmt.setString(6, generatedAt);
+            stmt.executeUpdate();
+        }
+    }
+    
+    /**
+     * A stored statement, or null if none was generated for the period.
+     */
+    public BudgetSummary find(int userId, YearMonth period) {
+        String sql = "SELECT income_cents, expense_cents, budget_cents FROM statement WHERE user_id = ? AND period = ?";
+        String linesSql = "SELECT category_id, spent_cents, budget_cents FROM statement_line WHERE user_id = ? AND period = ?";
+        
+        try (Connection conn = DatabaseConnection.getReadConnection(userId);
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             PreparedStatement lines = conn.prepareStatement(linesSql)) {
+            stmt.setInt(1, userId);
+            stmt.setString(2, period.toString());
+            lines.setInt(1, userId);
+            lines.setString(2, period.toString());
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Map<String, Double> expensesByCategory = new LinkedHashMap<>();
+                Map<String, Double> budgetsByCategory = new LinkedHashMap<>();
+                try (ResultSet lineRs = lines.executeQuery()) {
+                    while (lineRs.next()) {
+                        String category = CategoryDictionary.getName(lineRs.getInt("category_id"));
+                        if (lineRs.getLong("spent_cents") != 0) {
+                            expensesByCategory.put(category, StorageFormat.fromCents(lineRs.getLong("spent_cents")));
+                        }
+                        if (lineRs.getLong("budget_cents") != 0) {
+                            budgetsByCategory.put(category, StorageFormat.fromCents(lineRs.getLong("budget_cents")));
+                        }
+                    }
+                }
+                return new BudgetSummary(period, StorageFormat.fromCents(rs.getLong("income_cents")),
+                                         StorageFormat.fromCents(rs.getLong("expense_cents")),
+                                         StorageFormat.fromCents(rs.getLong("budget_cents")),
+                                         expensesByCategory, budgetsByCategory);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading statement: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
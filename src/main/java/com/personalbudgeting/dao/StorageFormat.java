@@ -0,0 +1,155 @@
+package com.personalbudgeting.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+/**
+ * How dates and amounts are stored in the expense, income and budget tables.
+ *
+ * TEXT is the original format: ISO-8601 date strings and REAL amounts.
+ * INTEGER stores dates as epoch days and amounts as whole cents, so range
+ * predicates are integer comparisons, SUM() is exact and rows decode without parsing.
+ * Column names are the same in both formats; only their types differ.
+ */
+public enum StorageFormat {
+    TEXT {
+        @Override
+        public void setDate(PreparedStatement stmt, int index, LocalDate date) throws SQLException {
+            stmt.setString(index, date.toString());
+        }
+        
+        @Override
+        public LocalDate getDate(ResultSet rs, String column) throws SQLException {
+            return LocalDate.parse(rs.getString(column));
+        }
+        
+        @Override
+        public void setAmount(PreparedStatement stmt, int index, double amount) throws SQLException {
+            stmt.setDouble(index, amount);
+        }
+        
+        @Override
+        public double getAmount(ResultSet rs, String column) throws SQLException {
+            return rs.getDouble(column);
+        }
+        
+        @Override
+        public String periodSql(String column) {
+            return "substr(" + column + ", 1, 7)";
+        }
+        
+        @Override
+        public String centsSql(String column) {
+            return "CAST(ROUND(" + column + " * 100) AS INTEGER)";
+        }
+    },
+    INTEGER {
+        @Override
+        public void setDate(PreparedStatement stmt, int index, LocalDate date) throws SQLException {
+            stmt.setLong(index, date.toEpochDay());
+        }
+        
+        @Override
+        public LocalDate getDate(ResultSet rs, String column) throws SQLException {
+            return LocalDate.ofEpochDay(rs.getLong(column));
+        }
+        
+        @Override
+        public void setAmount(PreparedStatement stmt, int index, double amount) throws SQLException {
+            stmt.setLong(index, toCents(amount));
+        }
+        
+        @Override
+        public double getAmount(ResultSet rs, String column) throws SQLException {
+            return fromCents(rs.getLong(column));
+        }
+        
+        @Override
+        public String periodSql(String column) {
+            return "strftime('%Y-%m', " + column + " * 86400, 'unixepoch')";
+        }
+        
+        @Override
+        public String centsSql(String column) {
+            return column;
+        }
+    };
+    
+    private static volatile StorageFormat current = TEXT;
+    
+    public abstract void setDate(PreparedStatement stmt, int index, LocalDate date) throws SQLException;
+    
+    public abstract LocalDate getDate(ResultSet rs, String column) throws SQLException;
+    
+    public abstract void setAmount(PreparedStatement stmt, int index, double amount) throws SQLException;
+    
+    public abstract double getAmount(ResultSet rs, String column) throws SQLException;
+    
+    /**
+     * SQL expression turning a stored date column into its "yyyy-MM" period, as YearMonth.toString() prints it.
+     */
+    public abstract String periodSql(String column);
+    
+    /**
+     * SQL expression turning a stored amount column into whole cents, rounded per row like {@link #toCents}.
+     */
+    public abstract String centsSql(String column);
+    
+    public static StorageFormat current() {
+        return current;
+    }
+    
+    static void setCurrent(StorageFormat format) {
+        current = format;
+    }
+    
+    /**
+     * The format requested with the budget.storage.format system property ("text" or "integer").
+     */
+    public static StorageFormat requested() {
+        String value = System.getProperty("budget.storage.format", "text");
+        return "integer".equalsIgnoreCase(value) ? INTEGER : TEXT;
+    }
+    
+    /**
+     * Detect the format of an existing database from the declared type of expense.amount.
+     */
+    public static StorageFormat detect(Connection connection) throws SQLException {
+        return detect(connection, "expense");
+    }
+    
+    /**
+     * Detect the format of one ledger table, which may differ from the others while a conversion is under way.
+     */
+    public static StorageFormat detect(Connection connection, String table) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if ("amount".equalsIgnoreCase(rs.getString("name"))) {
+                    return "INTEGER".equalsIgnoreCase(rs.getString("type")) ? INTEGER : TEXT;
+                }
+            }
+        }
+        return TEXT;
+    }
+    
+    public static long toCents(double amount) {
+        return Math.round(amount * 100.0);
+    }
+    
+    public static double fromCents(long cents) {
+        return cents / 100.0;
+    }
+    
+    public static double[] fromCents(long[] cents) {
+        double[] amounts = new double[cents.length];
+        for (int i = 0; i < cents.length; i++) {
+            amounts[i] = fromCents(cents[i]);
+        }
+        return amounts;
+    }
+}
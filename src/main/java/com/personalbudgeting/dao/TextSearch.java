@@ -0,0 +1,123 @@
+package com.personalbudgeting.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Full-text search over the expense description and the income source and description.
+ *
+ * expense_fts and income_fts are FTS5 indexes over the ledger tables themselves
+ * (external content), so the text is not stored twice. Triggers update them in the
+ * same transaction as every insert, update and delete, which also covers bulk
+ * inserts, shard moves and the table rebuilds of the storage format conversion.
+ * The owner's user_id is indexed as a token of its own column, so a search only
+ * walks the matches of one user instead of filtering everyone's.
+ *
+ * Search text is split into words the way the FTS5 tokenizer splits rows (letters
+ * and digits, case and accents ignored); every word must match the start of a word,
+ * so partially typed words already find their rows.
+ */
+public final class TextSearch {
+    // Words beyond this many are ignored rather than making the query ever slower
+    public static final int MAX_TERMS = 16;
+    
+    private TextSearch() {
+    }
+    
+    static void createTables(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            // prefix indexes serve the 2 and 3 letter prefixes typed first without scanning the vocabulary
+            stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS expense_fts USING fts5(" +
+                         "user_id, description, content='expense', content_rowid='id', prefix='2 3')");
+            stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS income_fts USING fts5(" +
+                         "user_id, source, description, content='income', content_rowid='id', prefix='2 3')");
+            
+            // External content indexes must be told the old values of a row to remove it
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS expense_fts_ai AFTER INSERT ON expense BEGIN " +
+                         "INSERT INTO expense_fts (rowid, user_id, description) VALUES (NEW.id, NEW.user_id, NEW.description); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS expense_fts_ad AFTER DELETE ON expense BEGIN " +
+                         "INSERT INTO expense_fts (expense_fts, rowid, user_id, description) VALUES ('delete', OLD.id, OLD.user_id, OLD.description); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS expense_fts_au AFTER UPDATE OF user_id, description ON expense BEGIN " +
+                         "INSERT INTO expense_fts (expense_fts, rowid, user_id, description) VALUES ('delete', OLD.id, OLD.user_id, OLD.description); " +
+                         "INSERT INTO expense_fts (rowid, user_id, description) VALUES (NEW.id, NEW.user_id, NEW.description); END");
+            
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS income_fts_ai AFTER INSERT ON income BEGIN " +
+                         "INSERT INTO income_fts (rowid, user_id, source, description) VALUES (NEW.id, NEW.user_id, NEW.source, NEW.description); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS income_fts_ad AFTER DELETE ON income BEGIN " +
+                         "INSERT INTO income_fts (income_fts, rowid, user_id, source, description) VALUES ('delete', OLD.id, OLD.user_id, OLD.source, OLD.description); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS income_fts_au AFTER UPDATE OF user_id, source, description ON income BEGIN " +
+                         "INSERT INTO income_fts (income_fts, rowid, user_id, source, description) VALUES ('delete', OLD.id, OLD.user_id, OLD.source, OLD.description); " +
+                         "INSERT INTO income_fts (rowid, user_id, source, description) VALUES (NEW.id, NEW.user_id, NEW.source, NEW.description); END");
+        }
+    }
+    
+    /**
+     * Index the rows already in the ledger tables.
+     */
+    static void backfill(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("INSERT INTO expense_fts (expense_fts) VALUES ('rebuild')");
+            stmt.execute("INSERT INTO income_fts (income_fts) VALUES ('rebuild')");
+        }
+    }
+    
+    /**
+     * The words of a text, lower case and without accents, as the index sees them.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFKD).toLowerCase(Locale.ROOT);
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+    
+    /**
+     * The search words of a query: its distinct words, at most {@link #MAX_TERMS}.
+     */
+    public static List<String> terms(String query) {
+        List<String> terms = new ArrayList<>();
+        for (String token : tokenize(query)) {
+            if (!terms.contains(token) && terms.size() < MAX_TERMS) {
+                terms.add(token);
+            }
+        }
+        return terms;
+    }
+    
+    /**
+     * An FTS5 query matching the rows of one user whose given columns contain a word
+     * starting with each term. Terms are quoted, so no search text is read as query syntax.
+     */
+    static String matchExpression(int userId, List<String> terms, String... columns) {
+        List<String> phrases = new ArrayList<>();
+        for (String term : terms) {
+            phrases.add("\"" + term + "\"*");
+        }
+        return "user_id : \"" + userId + "\" AND {" + String.join(" ", columns) + "} : (" +
+               String.join(" AND ", phrases) + ")";
+    }
+}
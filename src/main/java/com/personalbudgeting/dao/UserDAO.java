@@ -1,6 +1,7 @@
 package com.personalbudgeting.dao;
 
 import com.personalbudgeting.model.User;
+import com.personalbudgeting.repository.UserRepository;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -9,41 +10,52 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDateTime;
 
-public class UserDAO {
-    private Connection connection;
-    
+public class UserDAO implements UserRepository {
     public UserDAO() {
-        this.connection = DatabaseConnection.getConnection();
+        DatabaseConnection.getConnection();
     }
     
     public boolean register(User user) {
         String sql = "INSERT INTO users (username, email, password, otp_code, otp_expiry, verified) VALUES (?, ?, ?, ?, ?, ?)";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, user.getUsername());
-            stmt.setString(2, user.getEmail());
-            stmt.setString(3, user.getPassword());
-            stmt.setString(4, user.getOtpCode());
-            
-            if (user.getOtpExpiry() != null) {
-                stmt.setString(5, user.getOtpExpiry().toString());
-            } else {
-                stmt.setNull(5, java.sql.Types.VARCHAR);
-            }
-            
-            stmt.setInt(6, user.isVerified() ? 1 : 0);
-            
-            int rowsAffected = stmt.executeUpdate();
-            
-            if (rowsAffected > 0) {
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        user.setId(rs.getInt(1));
+        // The shard chosen inside the transaction; routed to only after it commits
+        int[] shard = { ShardRouter.MAIN };
+        try {
+            boolean registered = DatabaseConnection.write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    stmt.setString(1, user.getUsername());
+                    stmt.setString(2, user.getEmail());
+                    stmt.setString(3, user.getPassword());
+                    stmt.setString(4, user.getOtpCode());
+                    
+                    if (user.getOtpExpiry() != null) {
+                        stmt.setString(5, user.getOtpExpiry().toString());
+                    } else {
+                        stmt.setNull(5, java.sql.Types.VARCHAR);
+                    }
+                    
+                    stmt.setInt(6, user.isVerified() ? 1 : 0);
+                    
+                    int rowsAffected = stmt.executeUpdate();
+                    
+                    if (rowsAffected > 0) {
+                        try (ResultSet rs = stmt.getGeneratedKeys()) {
+                            if (rs.next()) {
+                                user.setId(rs.getInt(1));
+                            }
+                        }
+                        // The directory row commits together with the user
+                        shard[0] = ShardRouter.assign(conn, user.getId());
+                        System.out.println("DEBUG: User registered with OTP: " + user.getOtpCode() + ", expiry: " + user.getOtpExpiry());
+                        return true;
                     }
+                    return false;
                 }
-                System.out.println("DEBUG: User registered with OTP: " + user.getOtpCode() + ", expiry: " + user.getOtpExpiry());
-                return true;
+            });
+            if (registered) {
+                ShardRouter.remember(user.getId(), shard[0]);
             }
+            return registered;
         } catch (SQLException e) {
             System.err.println("Error registering user: " + e.getMessage());
             e.printStackTrace();
@@ -54,7 +66,8 @@ public class UserDAO {
     public User findByUsername(String username) {
         String sql = "SELECT * FROM users WHERE username = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, username);
             
             try (ResultSet rs = stmt.executeQuery()) {
@@ -87,7 +100,8 @@ public class UserDAO {
     public User findByEmail(String email) {
         String sql = "SELECT * FROM users WHERE email = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, email);
             
             try (ResultSet rs = stmt.executeQuery()) {
@@ -120,12 +134,16 @@ public class UserDAO {
     public boolean updateOtp(int userId, String otpCode, LocalDateTime otpExpiry) {
         String sql = "UPDATE users SET otp_code = ?, otp_expiry = ? WHERE id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, otpCode);
-            stmt.setString(2, otpExpiry.toString());
-            stmt.setInt(3, userId);
-            
-            return stmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, otpCode);
+                    stmt.setString(2, otpExpiry.toString());
+                    stmt.setInt(3, userId);
+                    
+                    return stmt.executeUpdate() > 0;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Error updating OTP: " + e.getMessage());
             e.printStackTrace();
@@ -137,10 +155,14 @@ public class UserDAO {
     public boolean verifyUser(int userId) {
         String sql = "UPDATE users SET verified = 1, otp_code = NULL, otp_expiry = NULL WHERE id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, userId);
-            
-            return stmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, userId);
+                    
+                    return stmt.executeUpdate() > 0;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Error verifying user: " + e.getMessage());
             e.printStackTrace();
@@ -152,11 +174,15 @@ public class UserDAO {
     public boolean updatePassword(int userId, String newPassword) {
         String sql = "UPDATE users SET password = ? WHERE id = ?";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, newPassword);
-            stmt.setInt(2, userId);
-            
-            return stmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.write(conn -> {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, newPassword);
+                    stmt.setInt(2, userId);
+                    
+                    return stmt.executeUpdate() > 0;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Error updating password: " + e.getMessage());
             e.printStackTrace();
@@ -0,0 +1,374 @@
+package com.personalbudgeting.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-writer queue that applies ledger mutations with group commit.
+ *
+ * Any thread may submit work. One writer thread takes the queued work and runs
+ * it on the writer connection in a shared transaction, each piece under its own
+ * savepoint, so a failing mutation is rolled back alone and the rest of the batch
+ * still commits. A batch ends when it holds maxBatch mutations or when no more
+ * work arrives within the window (0 means whatever is already queued), and each
+ * caller's future completes once the batch's commit returns.
+ *
+ * Work submitted from the writer thread itself, or by a thread already inside
+ * {@link DatabaseConnection#inTransaction}, runs inline in the current transaction.
+ * With no window, a caller of execute() that finds the writer idle and nothing
+ * queued commits its own work as a batch of one instead of handing it over,
+ * so a lone writer does not pay for the thread switch.
+ */
+public class WriteQueue {
+    private final Connection connection;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final BlockingQueue<Pending<?>> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile boolean busy;
+    private final AtomicBoolean inlineCommit = new AtomicBoolean();
+    
+    // Metrics
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong totalCommitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    
+    private static final class Pending<T> {
+        final SqlWork<T> work;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final long enqueuedNanos = System.nanoTime();
+        T result;
+        
+        Pending(SqlWork<T> work) {
+            this.work = work;
+        }
+        
+        void run(Connection connection) throws SQLException {
+            result = work.execute(connection);
+        }
+        
+        void complete() {
+            future.complete(result);
+        }
+    }
+    
+    public WriteQueue(Connection connection, long windowMillis, int maxBatch, int capacity) {
+        this(connection, "db-writer", windowMillis, maxBatch, capacity);
+    }
+    
+    public WriteQueue(Connection connection, String threadName, long windowMillis, int maxBatch, int capacity) {
+        this.connection = connection;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMillis));
+        this.maxBatch = Math.max(1, maxBatch);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.writer = new Thread(this::runWriter, threadName);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+    
+    /**
+     * Queue work for the writer. Blocks while the queue is full.
+     *
+     * @return a future completed with the work's result after its batch commits
+     */
+    public <T> CompletableFuture<T> submit(SqlWork<T> work) {
+        Pending<T> pending = new Pending<>(work);
+        if (!running) {
+            pending.future.completeExceptionally(new SQLException("Write queue is shut down"));
+            return pending.future;
+        }
+        
+        submitted.incrementAndGet();
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future.completeExceptionally(new SQLException("Interrupted while queueing a write", e));
+        }
+        return pending.future;
+    }
+    
+    /**
+     * Run work through the queue and wait for its batch to commit.
+     */
+    public <T> T execute(SqlWork<T> work) throws SQLException {
+        if (Thread.currentThread() == writer || Thread.holdsLock(connection)) {
+            return work.execute(connection);
+        }
+        
+        CompletableFuture<T> future = null;
+        // Only one caller at a time may take the shortcut; concurrent callers queue and are grouped
+        if (windowNanos == 0 && running && !busy && queue.isEmpty() && inlineCommit.compareAndSet(false, true)) {
+            try {
+                Pending<T> pending = new Pending<>(work);
+                submitted.incrementAndGet();
+                commit(Collections.singletonList(pending));
+                future = pending.future;
+            } finally {
+                inlineCommit.set(false);
+            }
+        }
+        
+        try {
+            return (future != null ? future : submit(work)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a write to commit", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException(cause);
+        }
+    }
+    
+    private void runWriter() {
+        List<Pending<?>> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                busy = true;
+                batch.add(first);
+                collect(batch);
+                commit(batch);
+            } catch (InterruptedException e) {
+                // Shutdown: the loop drains what is left
+            } finally {
+                busy = false;
+                batch.clear();
+            }
+        }
+    }
+    
+    private void collect(List<Pending<?>> batch) {
+        queue.drainTo(batch, maxBatch - batch.size());
+        
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatch && windowNanos > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            Pending<?> next;
+            try {
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                break; // Shutdown: commit what we have
+            }
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatch - batch.size());
+        }
+    }
+    
+    private void commit(List<Pending<?>> batch) {
+        long start = System.nanoTime();
+        List<Pending<?>> applied = new ArrayList<>(batch.size());
+        
+        // Same lock as inTransaction, so direct transactions never interleave with a batch
+        synchronized (connection) {
+            try {
+                connection.setAutoCommit(false);
+                for (Pending<?> pending : batch) {
+                    if (batch.size() == 1) {
+                        // Alone in the transaction, so no savepoint is needed to isolate it
+                        try {
+                            pending.run(connection);
+                            applied.add(pending);
+                        } catch (SQLException | RuntimeException e) {
+                            connection.rollback();
+                            failed.incrementAndGet();
+                            pending.future.completeExceptionally(e);
+                        }
+                        continue;
+                    }
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        pending.run(connection);
+                        connection.releaseSavepoint(savepoint);
+                        applied.add(pending);
+                    } catch (SQLException | RuntimeException e) {
+                        connection.rollback(savepoint);
+                        failed.incrementAndGet();
+                        pending.future.completeExceptionally(e);
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Error committing write batch of " + batch.size() + ": " + e.getMessage());
+                e.printStackTrace();
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackError) {
+                    System.err.println("Error rolling back write batch: " + rollbackError.getMessage());
+                }
+                // The whole batch is lost, including work that had already succeeded
+                for (Pending<?> pending : batch) {
+                    if (pending.future.completeExceptionally(e)) {
+                        failed.incrementAndGet();
+                    }
+                }
+                return;
+            } finally {
+                try {
+                    connection.setAutoCommit(true);
+                } catch (SQLException e) {
+                    System.err.println("Error restoring autocommit: " + e.getMessage());
+                }
+            }
+        }
+        
+        long end = System.nanoTime();
+        long commitNanos = end - start;
+        batches.incrementAndGet();
+        maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+        totalCommitNanos.addAndGet(commitNanos);
+        maxCommitNanos.accumulateAndGet(commitNanos, Math::max);
+        
+        for (Pending<?> pending : applied) {
+            long latency = end - pending.enqueuedNanos;
+            totalLatencyNanos.addAndGet(latency);
+            maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            committed.incrementAndGet();
+            pending.complete();
+        }
+    }
+    
+    /**
+     * Stop accepting work, commit what is queued and stop the writer thread.
+     */
+    public void shutdown() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(10000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        // Anything left could not be written before the timeout
+        Pending<?> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new SQLException("Write queue shut down before the write ran"));
+        }
+    }
+    
+    public WriteStats getStats() {
+        return new WriteStats(submitted.get(), committed.get(), failed.get(), batches.get(), maxBatchSize.get(),
+                              totalCommitNanos.get(), maxCommitNanos.get(), totalLatencyNanos.get(),
+                              maxLatencyNanos.get(), queue.size());
+    }
+    
+    /**
+     * Snapshot of the queue's throughput and latency, used to tune the commit window.
+     */
+    public static final class WriteStats {
+        private final long submitted;
+        private final long committed;
+        private final long failed;
+        private final long batches;
+        private final long maxBatchSize;
+        private final long totalCommitNanos;
+        private final long maxCommitNanos;
+        private final long totalLatencyNanos;
+        private final long maxLatencyNanos;
+        private final int queued;
+        
+        WriteStats(long submitted, long committed, long failed, long batches, long maxBatchSize,
+                   long totalCommitNanos, long maxCommitNanos, long totalLatencyNanos, long maxLatencyNanos, int queued) {
+            this.submitted = submitted;
+            this.committed = committed;
+            this.failed = failed;
+            this.batches = batches;
+            this.maxBatchSize = maxBatchSize;
+            this.totalCommitNanos = totalCommitNanos;
+            this.maxCommitNanos = maxCommitNanos;
+            this.totalLatencyNanos = totalLatencyNanos;
+            this.maxLatencyNanos = maxLatencyNanos;
+            this.queued = queued;
+        }
+        
+        public long getSubmitted() {
+            return submitted;
+        }
+        
+        public long getCommitted() {
+            return committed;
+        }
+        
+        public long getFailed() {
+            return failed;
+        }
+        
+        // Number of transactions the committed writes were grouped into
+        public long getBatches() {
+            return batches;
+        }
+        
+        public double getAverageBatchSize() {
+            return batches == 0 ? 0.0 : committed / (double) batches;
+        }
+        
+        public long getMaxBatchSize() {
+            return maxBatchSize;
+        }
+        
+        // Time to run a batch's work and commit it
+        public double getAverageCommitMillis() {
+            return batches == 0 ? 0.0 : (totalCommitNanos / (double) batches) / 1_000_000.0;
+        }
+        
+        public double getMaxCommitMillis() {
+            return maxCommitNanos / 1_000_000.0;
+        }
+        
+        // Time from submit until the write's batch committed
+        public double getAverageLatencyMillis() {
+            return committed == 0 ? 0.0 : (totalLatencyNanos / (double) committed) / 1_000_000.0;
+        }
+        
+        public double getMaxLatencyMillis() {
+            return maxLatencyNanos / 1_000_000.0;
+        }
+        
+        public int getQueued() {
+            return queued;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("WriteStats{submitted=%d, committed=%d, failed=%d, batches=%d, avgBatch=%.1f, maxBatch=%d, " +
+                                 "avgCommit=%.2fms, maxCommit=%.2fms, avgLatency=%.2fms, maxLatency=%.2fms, queued=%d}",
+                                 submitted, committed, failed, batches, getAverageBatchSize(), maxBatchSize,
+                                 getAverageCommitMillis(), getMaxCommitMillis(), getAverageLatencyMillis(),
+                                 getMaxLatencyMillis(), queued);
+        }
+    }
+}
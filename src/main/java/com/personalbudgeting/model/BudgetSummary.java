@@ -0,0 +1,89 @@
+package com.personalbudgeting.model;
+
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable budget overview of one user and month: income, spending and
+ * budgets, in total and per category.
+ */
+public final class BudgetSummary {
+    private final YearMonth period;
+    private final double totalIncome;
+    private final double totalExpenses;
+    private final double totalBudget;
+    private final Map<String, Double> expensesByCategory;
+    private final Map<String, Double> budgetsByCategory;
+    
+    public BudgetSummary(YearMonth period, double totalIncome, double totalExpenses, double totalBudget,
+                         Map<String, Double> expensesByCategory, Map<String, Double> budgetsByCategory) {
+        this.period = period;
+        this.totalIncome = totalIncome;
+        this.totalExpenses = totalExpenses;
+        this.totalBudget = totalBudget;
+        this.expensesByCategory = Collections.unmodifiableMap(new LinkedHashMap<>(expensesByCategory));
+        this.budgetsByCategory = Collections.unmodifiableMap(new LinkedHashMap<>(budgetsByCategory));
+    }
+    
+    public static BudgetSummary empty(YearMonth period) {
+        return new BudgetSummary(period, 0.0, 0.0, 0.0, Collections.emptyMap(), Collections.emptyMap());
+    }
+    
+    public YearMonth getPeriod() {
+        return period;
+    }
+    
+    public double getTotalIncome() {
+        return totalIncome;
+    }
+    
+    public double getTotalExpenses() {
+        return totalExpenses;
+    }
+    
+    public double getTotalBudget() {
+        return totalBudget;
+    }
+    
+    public double getSavings() {
+        return totalIncome - totalExpenses;
+    }
+    
+    // Percentage of the total budget spent, 0 when no budget is set
+    public double getBudgetUtilization() {
+        return totalBudget > 0 ? (totalExpenses / totalBudget) * 100 : 0;
+    }
+    
+    public Map<String, Double> getExpensesByCategory() {
+        return expensesByCategory;
+    }
+    
+    public Map<String, Double> getBudgetsByCategory() {
+        return budgetsByCategory;
+    }
+    
+    public double getSpent(String category) {
+        return expensesByCategory.getOrDefault(category, 0.0);
+    }
+    
+    public double getBudget(String category) {
+        return budgetsByCategory.getOrDefault(category, 0.0);
+    }
+    
+    public double getRemaining(String category) {
+        return getBudget(category) - getSpent(category);
+    }
+    
+    public double getPercentSpent(String category) {
+        return (getSpent(category) / getBudget(category)) * 100;
+    }
+    
+    @Override
+    public String toString() {
+        return "BudgetSummary{period=" + period + ", totalIncome=" + totalIncome + ", totalExpenses=" + totalExpenses +
+               ", totalBudget=" + totalBudget + ", expensesByCategory=" + expensesByCategory +
+               ", budgetsByCategory=" + budgetsByCategory + "}";
+    }
+}
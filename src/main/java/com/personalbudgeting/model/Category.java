@@ -0,0 +1,65 @@
+package com.personalbudgeting.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class Category {
+    // Owner of the built-in categories every user sees
+    public static final int BUILT_IN = 0;
+    
+    // The built-in categories, in display order; their ids are 1, 2, 3, ... in this order
+    public static final List<String> DEFAULTS = Collections.unmodifiableList(Arrays.asList(
+        "Food", "Rent", "Utilities", "Transportation", "Entertainment", "Healthcare",
+        "Education", "Shopping", "Personal Care", "Travel", "Other"));
+    
+    private int id;
+    private int userId;
+    private String name;
+    
+    // Constructors
+    public Category() {
+    }
+    
+    public Category(int userId, String name) {
+        this.userId = userId;
+        this.name = name;
+    }
+    
+    // Getters and Setters
+    public int getId() {
+        return id;
+    }
+    
+    public void setId(int id) {
+        this.id = id;
+    }
+    
+    public int getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * True for a category a user added, false for a built-in one.
+     */
+    public boolean isCustom() {
+        return userId != BUILT_IN;
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+}
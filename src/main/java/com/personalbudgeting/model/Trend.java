@@ -0,0 +1,101 @@
+package com.personalbudgeting.model;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable category x month matrix of one user's spending (or income per source)
+ * over consecutive months, for trend charts. Series are ordered by their total over
+ * the whole span, largest first; months without rows hold 0.
+ */
+public final class Trend {
+    private final YearMonth first;
+    private final int months;
+    private final Map<String, double[]> series;
+    private final double[] monthTotals;
+    
+    /**
+     * @param series one value per month for each category, the first month first
+     */
+    public Trend(YearMonth first, int months, Map<String, double[]> series) {
+        this.first = first;
+        this.months = months;
+        this.monthTotals = new double[months];
+        
+        List<Map.Entry<String, double[]>> entries = new ArrayList<>(series.entrySet());
+        entries.sort((a, b) -> Double.compare(sum(b.getValue()), sum(a.getValue())));
+        Map<String, double[]> ordered = new LinkedHashMap<>();
+        for (Map.Entry<String, double[]> entry : entries) {
+            double[] values = new double[months];
+            System.arraycopy(entry.getValue(), 0, values, 0, Math.min(months, entry.getValue().length));
+            for (int month = 0; month < months; month++) {
+                monthTotals[month] += values[month];
+            }
+            ordered.put(entry.getKey(), values);
+        }
+        this.series = ordered;
+    }
+    
+    public static Trend empty(YearMonth first) {
+        return new Trend(first, 0, Collections.emptyMap());
+    }
+    
+    public YearMonth getFirst() {
+        return first;
+    }
+    
+    public int getMonthCount() {
+        return months;
+    }
+    
+    public List<YearMonth> getMonths() {
+        List<YearMonth> list = new ArrayList<>(months);
+        for (int month = 0; month < months; month++) {
+            list.add(first.plusMonths(month));
+        }
+        return list;
+    }
+    
+    public List<String> getCategories() {
+        return new ArrayList<>(series.keySet());
+    }
+    
+    public boolean isEmpty() {
+        return series.isEmpty();
+    }
+    
+    /**
+     * The value of one category in the month at the given index, 0 for the first month.
+     */
+    public double getValue(String category, int month) {
+        double[] values = series.get(category);
+        return values == null ? 0.0 : values[month];
+    }
+    
+    // Copy of one category's values, all zero for an unknown category
+    public double[] getSeries(String category) {
+        double[] values = series.get(category);
+        return values == null ? new double[months] : values.clone();
+    }
+    
+    public double getMonthTotal(int month) {
+        return monthTotals[month];
+    }
+    
+    public double getTotal(String category) {
+        double[] values = series.get(category);
+        return values == null ? 0.0 : sum(values);
+    }
+    
+    private static double sum(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,39 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.model.Budget;
+
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage of monthly category budgets; at most one per user, category and month.
+ */
+public interface BudgetRepository {
+    
+    boolean add(Budget budget);
+    
+    /**
+     * Change the amount of an existing budget.
+     */
+    boolean update(Budget budget);
+    
+    boolean delete(int budgetId, int userId);
+    
+    Budget findById(int budgetId, int userId);
+    
+    Budget findByCategory(int userId, String category, YearMonth period);
+    
+    List<Budget> findByPeriod(int userId, YearMonth period);
+    
+    Map<String, Double> getBudgetsByCategory(int userId, YearMonth period);
+    
+    double getTotalBudget(int userId, YearMonth period);
+    
+    /**
+     * All budget amounts of a user, keyed "period|category".
+     * Failures are thrown rather than logged so callers can keep their previous state.
+     */
+    Map<String, Double> loadBudgetAmounts(int userId) throws SQLException;
+}
@@ -0,0 +1,16 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.model.BudgetSummary;
+
+import java.time.YearMonth;
+
+/**
+ * Source of the budget screen's monthly overview.
+ */
+public interface BudgetSummaryRepository {
+    
+    /**
+     * @return the summary, or null if it could not be computed
+     */
+    BudgetSummary getSummary(int userId, YearMonth period);
+}
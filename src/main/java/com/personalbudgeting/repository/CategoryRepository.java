@@ -0,0 +1,30 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.model.Category;
+
+import java.util.List;
+
+/**
+ * Storage of expense categories: the built-in ones every user sees plus each user's
+ * own. The categories a user sees have distinct names.
+ */
+public interface CategoryRepository {
+    
+    /**
+     * The built-in categories in display order, then the user's own by name.
+     */
+    List<Category> findByUserId(int userId);
+    
+    /**
+     * The category the user knows by this name, added as one of the user's own if there is none.
+     *
+     * @return null if the name is blank or the category could not be stored
+     */
+    Category findOrAdd(int userId, String name);
+    
+    /**
+     * Delete one of the user's own categories. Built-in categories and categories that
+     * an expense or budget of the user still uses are not deleted.
+     */
+    boolean delete(int categoryId, int userId);
+}
@@ -0,0 +1,119 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.model.Expense;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Storage of expenses. Lists are ordered newest first (date DESC, id DESC)
+ * unless stated otherwise; failures are logged and reported as false, null,
+ * zero or an empty result, like the SQLite implementation always did.
+ */
+public interface ExpenseRepository {
+    int DEFAULT_BATCH_SIZE = 500;
+    
+    boolean add(Expense expense);
+    
+    /**
+     * Insert many expenses at once. The generated ids are set on the expense objects
+     * and returned in the same order. Rows that could not be stored while others were,
+     * as when their users live on a shard whose transaction failed, get the id 0.
+     *
+     * @return the generated ids, or null if nothing was stored
+     */
+    int[] addAll(Collection<Expense> expenses, int batchSize);
+    
+    default int[] addAll(Collection<Expense> expenses) {
+        return addAll(expenses, DEFAULT_BATCH_SIZE);
+    }
+    
+    boolean update(Expense expense);
+    
+    boolean delete(int expenseId, int userId);
+    
+    Expense findById(int expenseId, int userId);
+    
+    List<Expense> findAllByUserId(int userId);
+    
+    int countByUserId(int userId);
+    
+    /**
+     * The page that follows the row identified by (afterDate, afterId), or the first page when afterDate is null.
+     */
+    List<Expense> findPageByUserId(int userId, LocalDate afterDate, int afterId, int limit);
+    
+    List<Expense> findPageAtOffset(int userId, int offset, int limit);
+    
+    /**
+     * Expenses whose description has a word starting with each word of the text, best
+     * match first and newest first among equals; empty if the text has no words.
+     */
+    List<Expense> search(int userId, String text, int offset, int limit);
+    
+    /**
+     * All expenses of a user; close the stream when done.
+     */
+    Stream<Expense> streamAllByUserId(int userId);
+    
+    /**
+     * Visit all expenses of a user.
+     *
+     * @return the number of expenses visited
+     */
+    long forEachByUserId(int userId, Consumer<Expense> visitor);
+    
+    /**
+     * Visit the expenses of a user whose id is above afterId, in no particular order.
+     * Ids only grow, so this visits the rows stored since the one with that id.
+     *
+     * @return the number of expenses visited
+     */
+    long forEachAfterId(int userId, int afterId, Consumer<Expense> visitor);
+    
+    List<Expense> findByPeriod(int userId, YearMonth period);
+    
+    List<Expense> findByCategory(int userId, String category, YearMonth period);
+    
+    /**
+     * Total spent on the days from..to, both inclusive.
+     */
+    double getTotalExpenseBetween(int userId, LocalDate from, LocalDate to);
+    
+    /**
+     * Spending per category on the days from..to, both inclusive.
+     */
+    Map<String, Double> getExpensesByCategoryBetween(int userId, LocalDate from, LocalDate to);
+    
+    default double getTotalExpenseByPeriod(int userId, YearMonth period) {
+        return getTotalExpenseBetween(userId, period.atDay(1), period.atEndOfMonth());
+    }
+    
+    default Map<String, Double> getExpensesByCategory(int userId, YearMonth period) {
+        return getExpensesByCategoryBetween(userId, period.atDay(1), period.atEndOfMonth());
+    }
+    
+    /**
+     * Spending per category and month over first..last, both inclusive, from one grouped
+     * read. Each value holds one total per month, the first month first; categories
+     * without spending in the span are left out.
+     */
+    Map<String, double[]> getMonthlyExpensesByCategory(int userId, YearMonth first, YearMonth last);
+    
+    /**
+     * Total spent in one category and month.
+     */
+    double getExpenseTotal(int userId, String category, YearMonth period);
+    
+    /**
+     * A user's monthly totals, keyed "period|category" with values { cents, rows }.
+     * Failures are thrown rather than logged so callers can keep their previous state.
+     */
+    Map<String, long[]> loadMonthlyTotals(int userId) throws SQLException;
+}
@@ -0,0 +1,200 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.dao.StorageFormat;
+import com.personalbudgeting.model.Budget;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Budgets held in memory, indexed per user by "period|category" in a skip list,
+ * so a month's budgets are one sub-map. Rows are copied on the way in and out.
+ */
+public class InMemoryBudgetRepository implements BudgetRepository {
+    private final AtomicInteger lastId = new AtomicInteger();
+    private final Map<Integer, NavigableMap<String, Budget>> users = new ConcurrentHashMap<>();
+    private final JournalSink<Budget> journal;
+    
+    public InMemoryBudgetRepository() {
+        this(JournalSink.none());
+    }
+    
+    InMemoryBudgetRepository(JournalSink<Budget> journal) {
+        this.journal = journal;
+    }
+    
+    private NavigableMap<String, Budget> budgets(int userId) {
+        return users.computeIfAbsent(userId, k -> new ConcurrentSkipListMap<>());
+    }
+    
+    public boolean add(Budget budget) {
+        if (budget.getCategory() == null || budget.getPeriod() == null) {
+            return false;
+        }
+        
+        NavigableMap<String, Budget> budgets = budgets(budget.getUserId());
+        synchronized (budgets) {
+            // UNIQUE(user_id, category, period)
+            if (budgets.containsKey(key(budget.getPeriod(), budget.getCategory()))) {
+                return false;
+            }
+            budget.setId(lastId.incrementAndGet());
+            Budget stored = copy(budget);
+            if (!journal.put(stored)) {
+                budget.setId(0);
+                return false;
+            }
+            budgets.put(key(budget.getPeriod(), budget.getCategory()), stored);
+        }
+        return true;
+    }
+    
+    public boolean update(Budget budget) {
+        NavigableMap<String, Budget> budgets = users.get(budget.getUserId());
+        if (budgets == null) {
+            return false;
+        }
+        
+        synchronized (budgets) {
+            Budget stored = find(budgets.values(), budget.getId());
+            if (stored == null) {
+                return false;
+            }
+            // Only the amount can change
+            Budget updated = copy(stored);
+            updated.setAmount(budget.getAmount());
+            if (!journal.put(updated)) {
+                return false;
+            }
+            budgets.put(key(stored.getPeriod(), stored.getCategory()), updated);
+        }
+        return true;
+    }
+    
+    public boolean delete(int budgetId, int userId) {
+        NavigableMap<String, Budget> budgets = users.get(userId);
+        if (budgets == null) {
+            return false;
+        }
+        
+        synchronized (budgets) {
+            Budget stored = find(budgets.values(), budgetId);
+            if (stored == null || !journal.delete(budgetId, userId)) {
+                return false;
+            }
+            budgets.remove(key(stored.getPeriod(), stored.getCategory()));
+        }
+        return true;
+    }
+    
+    public Budget findById(int budgetId, int userId) {
+        NavigableMap<String, Budget> budgets = users.get(userId);
+        Budget stored = budgets == null ? null : find(budgets.values(), budgetId);
+        return stored == null ? null : copy(stored);
+    }
+    
+    public Budget findByCategory(int userId, String category, YearMonth period) {
+        NavigableMap<String, Budget> budgets = users.get(userId);
+        Budget stored = budgets == null ? null : budgets.get(key(period, category));
+        return stored == null ? null : copy(stored);
+    }
+    
+    public List<Budget> findByPeriod(int userId, YearMonth period) {
+        List<Budget> result = new ArrayList<>();
+        for (Budget budget : view(userId, period)) {
+            result.add(copy(budget));
+        }
+        return result;
+    }
+    
+    public Map<String, Double> getBudgetsByCategory(int userId, YearMonth period) {
+        Map<String, Double> categoryBudgets = new HashMap<>();
+        for (Budget budget : view(userId, period)) {
+            categoryBudgets.put(budget.getCategory(), budget.getAmount());
+        }
+        return categoryBudgets;
+    }
+    
+    public double getTotalBudget(int userId, YearMonth period) {
+        long cents = 0;
+        for (Budget budget : view(userId, period)) {
+            cents += StorageFormat.toCents(budget.getAmount());
+        }
+        return StorageFormat.fromCents(cents);
+    }
+    
+    public Map<String, Double> loadBudgetAmounts(int userId) {
+        Map<String, Double> amounts = new HashMap<>();
+        NavigableMap<String, Budget> budgets = users.get(userId);
+        if (budgets != null) {
+            budgets.forEach((key, budget) -> amounts.put(key, budget.getAmount()));
+        }
+        return amounts;
+    }
+    
+    // Replay and snapshots of the journal engine
+    void restore(Budget budget) {
+        lastId.accumulateAndGet(budget.getId(), Math::max);
+        NavigableMap<String, Budget> budgets = budgets(budget.getUserId());
+        synchronized (budgets) {
+            budgets.put(key(budget.getPeriod(), budget.getCategory()), copy(budget));
+        }
+    }
+    
+    void forget(int budgetId, int userId) {
+        NavigableMap<String, Budget> budgets = users.get(userId);
+        if (budgets != null) {
+            synchronized (budgets) {
+                budgets.values().removeIf(budget -> budget.getId() == budgetId);
+            }
+        }
+    }
+    
+    void forEachRow(Consumer<Budget> visitor) {
+        // Under the writers' lock, never between journaling a change and making it
+        for (NavigableMap<String, Budget> budgets : users.values()) {
+            synchronized (budgets) {
+                budgets.values().forEach(visitor);
+            }
+        }
+    }
+    
+    private Collection<Budget> view(int userId, YearMonth period) {
+        NavigableMap<String, Budget> budgets = users.get(userId);
+        if (budgets == null) {
+            return Collections.emptyList();
+        }
+        // Every key of the month starts with "period|"
+        return budgets.subMap(period + "|", true, period + "|\uffff", true).values();
+    }
+    
+    // Users have a handful of budgets per month, so a scan is fine for lookups by id
+    private static Budget find(Collection<Budget> budgets, int budgetId) {
+        for (Budget budget : budgets) {
+            if (budget.getId() == budgetId) {
+                return budget;
+            }
+        }
+        return null;
+    }
+    
+    private static String key(YearMonth period, String category) {
+        return period + "|" + category;
+    }
+    
+    private static Budget copy(Budget budget) {
+        Budget copy = new Budget(budget.getUserId(), budget.getCategory(), budget.getAmount(), budget.getPeriod());
+        copy.setId(budget.getId());
+        return copy;
+    }
+}
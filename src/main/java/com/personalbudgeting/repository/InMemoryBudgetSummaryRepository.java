@@ -0,0 +1,32 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.model.BudgetSummary;
+
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds the budget summary from the in-memory repositories. Categories are
+ * ordered by name, as in the SQLite summary query.
+ */
+public class InMemoryBudgetSummaryRepository implements BudgetSummaryRepository {
+    private final ExpenseRepository expenses;
+    private final IncomeRepository incomes;
+    private final BudgetRepository budgets;
+    
+    public InMemoryBudgetSummaryRepository(ExpenseRepository expenses, IncomeRepository incomes, BudgetRepository budgets) {
+        this.expenses = expenses;
+        this.incomes = incomes;
+        this.budgets = budgets;
+    }
+    
+    public BudgetSummary getSummary(int userId, YearMonth period) {
+        Map<String, Double> expensesByCategory = new TreeMap<>(expenses.getExpensesByCategory(userId, period));
+        Map<String, Double> budgetsByCategory = new TreeMap<>(budgets.getBudgetsByCategory(userId, period));
+        
+        return new BudgetSummary(period, incomes.getTotalIncomeByPeriod(userId, period),
+                                 expenses.getTotalExpenseByPeriod(userId, period), budgets.getTotalBudget(userId, period),
+                                 expensesByCategory, budgetsByCategory);
+    }
+}
@@ -0,0 +1,147 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.model.Category;
+import com.personalbudgeting.model.Expense;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Categories held in memory: the built-in ones with the same ids as in the database,
+ * plus the users' own, indexed by owner and name. Changes are serialized.
+ */
+public class InMemoryCategoryRepository implements CategoryRepository {
+    private final ExpenseRepository expenses;
+    private final BudgetRepository budgets;
+    private final JournalSink<Category> journal;
+    
+    // Guarded by this
+    private final Map<Integer, Category> byId = new HashMap<>();
+    private final Map<String, Category> byOwnerAndName = new HashMap<>();
+    private int lastId;
+    
+    public InMemoryCategoryRepository(ExpenseRepository expenses, BudgetRepository budgets) {
+        this(expenses, budgets, JournalSink.none());
+    }
+    
+    InMemoryCategoryRepository(ExpenseRepository expenses, BudgetRepository budgets, JournalSink<Category> journal) {
+        this.expenses = expenses;
+        this.budgets = budgets;
+        this.journal = journal;
+        
+        for (String name : Category.DEFAULTS) {
+            Category category = new Category(Category.BUILT_IN, name);
+            category.setId(++lastId);
+            store(category);
+        }
+    }
+    
+    public synchronized List<Category> findByUserId(int userId) {
+        List<Category> builtIn = new ArrayList<>();
+        List<Category> custom = new ArrayList<>();
+        for (Category category : byId.values()) {
+            if (!category.isCustom()) {
+                builtIn.add(copy(category));
+            } else if (category.getUserId() == userId) {
+                custom.add(copy(category));
+            }
+        }
+        builtIn.sort(Comparator.comparingInt(Category::getId));
+        custom.sort(Comparator.comparing(Category::getName, String.CASE_INSENSITIVE_ORDER));
+        builtIn.addAll(custom);
+        return builtIn;
+    }
+    
+    public synchronized Category findOrAdd(int userId, String name) {
+        String trimmed = name == null ? "" : name.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        
+        Category category = byOwnerAndName.get(key(Category.BUILT_IN, trimmed));
+        if (category == null) {
+            category = byOwnerAndName.get(key(userId, trimmed));
+        }
+        if (category == null) {
+            category = new Category(userId, trimmed);
+            category.setId(++lastId);
+            if (!journal.put(category)) {
+                return null;
+            }
+            store(category);
+        }
+        return copy(category);
+    }
+    
+    public synchronized boolean delete(int categoryId, int userId) {
+        Category category = byId.get(categoryId);
+        if (category == null || !category.isCustom() || category.getUserId() != userId || isUsed(category) ||
+            !journal.delete(categoryId, userId)) {
+            return false;
+        }
+        byId.remove(categoryId);
+        byOwnerAndName.remove(key(userId, category.getName()));
+        return true;
+    }
+    
+    private boolean isUsed(Category category) {
+        String name = category.getName();
+        try (Stream<Expense> rows = expenses.streamAllByUserId(category.getUserId())) {
+            if (rows.anyMatch(expense -> name.equals(expense.getCategory()))) {
+                return true;
+            }
+        }
+        try {
+            // Keyed "period|category"
+            return budgets.loadBudgetAmounts(category.getUserId()).keySet().stream()
+                .anyMatch(key -> key.substring(key.indexOf('|') + 1).equals(name));
+        } catch (SQLException e) {
+            System.err.println("Error checking budgets of category: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return true;
+    }
+    
+    // Replay and snapshots of the journal engine
+    synchronized void restore(Category category) {
+        lastId = Math.max(lastId, category.getId());
+        store(copy(category));
+    }
+    
+    synchronized void forget(int categoryId, int userId) {
+        Category category = byId.remove(categoryId);
+        if (category != null) {
+            byOwnerAndName.remove(key(userId, category.getName()));
+        }
+    }
+    
+    // Only the users' own categories; the built-in ones are never journaled
+    synchronized void forEachRow(Consumer<Category> visitor) {
+        for (Category category : byId.values()) {
+            if (category.isCustom()) {
+                visitor.accept(category);
+            }
+        }
+    }
+    
+    private void store(Category category) {
+        byId.put(category.getId(), category);
+        byOwnerAndName.put(key(category.getUserId(), category.getName()), category);
+    }
+    
+    private static String key(int userId, String name) {
+        return userId + "|" + name;
+    }
+    
+    private static Category copy(Category category) {
+        Category copy = new Category(category.getUserId(), category.getName());
+        copy.setId(category.getId());
+        return copy;
+    }
+}
@@ -0,0 +1,193 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.dao.StorageFormat;
+import com.personalbudgeting.dao.TextSearch;
+import com.personalbudgeting.model.Expense;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Expenses held in memory; see {@link InMemoryLedger}. Totals are summed in cents,
+ * so they match the SQLite aggregates exactly.
+ */
+public class InMemoryExpenseRepository implements ExpenseRepository {
+    private final InMemoryLedger<Expense> ledger;
+    
+    public InMemoryExpenseRepository() {
+        this(JournalSink.none());
+    }
+    
+    InMemoryExpenseRepository(JournalSink<Expense> journal) {
+        ledger = new InMemoryLedger<>(Expense::getId, Expense::setId, Expense::getUserId, Expense::getDate,
+                                      Expense::getDescription, InMemoryExpenseRepository::copy, journal);
+    }
+    
+    public boolean add(Expense expense) {
+        if (!isStorable(expense)) {
+            return false;
+        }
+        return ledger.insert(expense);
+    }
+    
+    public int[] addAll(Collection<Expense> expenses, int batchSize) {
+        // Validated all or nothing, like the single SQLite transaction
+        for (Expense expense : expenses) {
+            if (!isStorable(expense)) {
+                return null;
+            }
+        }
+        return ledger.insertAll(expenses);
+    }
+    
+    public boolean update(Expense expense) {
+        return isStorable(expense) && ledger.replace(expense);
+    }
+    
+    public boolean delete(int expenseId, int userId) {
+        return ledger.remove(expenseId, userId);
+    }
+    
+    public Expense findById(int expenseId, int userId) {
+        return ledger.get(expenseId, userId);
+    }
+    
+    public List<Expense> findAllByUserId(int userId) {
+        return ledger.list(ledger.view(userId));
+    }
+    
+    public int countByUserId(int userId) {
+        return ledger.count(userId);
+    }
+    
+    public List<Expense> findPageByUserId(int userId, LocalDate afterDate, int afterId, int limit) {
+        return ledger.pageAfter(userId, afterDate, afterId, limit);
+    }
+    
+    public List<Expense> findPageAtOffset(int userId, int offset, int limit) {
+        return ledger.pageAt(userId, offset, limit);
+    }
+    
+    public List<Expense> search(int userId, String text, int offset, int limit) {
+        return ledger.search(userId, TextSearch.terms(text), offset, limit);
+    }
+    
+    public Stream<Expense> streamAllByUserId(int userId) {
+        return ledger.stream(userId);
+    }
+    
+    public long forEachByUserId(int userId, Consumer<Expense> visitor) {
+        long count = 0;
+        for (Expense expense : ledger.view(userId)) {
+            visitor.accept(copy(expense));
+            count++;
+        }
+        return count;
+    }
+    
+    public long forEachAfterId(int userId, int afterId, Consumer<Expense> visitor) {
+        long count = 0;
+        for (Expense expense : ledger.view(userId)) {
+            if (expense.getId() > afterId) {
+                visitor.accept(copy(expense));
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    public List<Expense> findByPeriod(int userId, YearMonth period) {
+        return ledger.list(ledger.view(userId, period));
+    }
+    
+    public List<Expense> findByCategory(int userId, String category, YearMonth period) {
+        return ledger.view(userId, period).stream()
+            .filter(expense -> expense.getCategory().equals(category))
+            .map(InMemoryExpenseRepository::copy)
+            .collect(Collectors.toList());
+    }
+    
+    public double getTotalExpenseBetween(int userId, LocalDate from, LocalDate to) {
+        long cents = 0;
+        for (Expense expense : ledger.view(userId, from, to)) {
+            cents += StorageFormat.toCents(expense.getAmount());
+        }
+        return StorageFormat.fromCents(cents);
+    }
+    
+    public Map<String, Double> getExpensesByCategoryBetween(int userId, LocalDate from, LocalDate to) {
+        Map<String, Long> cents = new HashMap<>();
+        for (Expense expense : ledger.view(userId, from, to)) {
+            cents.merge(expense.getCategory(), StorageFormat.toCents(expense.getAmount()), Long::sum);
+        }
+        
+        Map<String, Double> categoryExpenses = new HashMap<>();
+        cents.forEach((category, total) -> categoryExpenses.put(category, StorageFormat.fromCents(total)));
+        return categoryExpenses;
+    }
+    
+    public Map<String, double[]> getMonthlyExpensesByCategory(int userId, YearMonth first, YearMonth last) {
+        int months = (int) first.until(last, ChronoUnit.MONTHS) + 1;
+        Map<String, long[]> cents = new HashMap<>();
+        for (Expense expense : ledger.view(userId, first.atDay(1), last.atEndOfMonth())) {
+            int month = (int) first.until(YearMonth.from(expense.getDate()), ChronoUnit.MONTHS);
+            cents.computeIfAbsent(expense.getCategory(), category -> new long[months])[month] += StorageFormat.toCents(expense.getAmount());
+        }
+        
+        Map<String, double[]> monthlyExpenses = new HashMap<>();
+        cents.forEach((category, totals) -> monthlyExpenses.put(category, StorageFormat.fromCents(totals)));
+        return monthlyExpenses;
+    }
+    
+    public double getExpenseTotal(int userId, String category, YearMonth period) {
+        long cents = 0;
+        for (Expense expense : ledger.view(userId, period)) {
+            if (expense.getCategory().equals(category)) {
+                cents += StorageFormat.toCents(expense.getAmount());
+            }
+        }
+        return StorageFormat.fromCents(cents);
+    }
+    
+    public Map<String, long[]> loadMonthlyTotals(int userId) {
+        Map<String, long[]> totals = new HashMap<>();
+        for (Expense expense : ledger.view(userId)) {
+            long[] total = totals.computeIfAbsent(YearMonth.from(expense.getDate()) + "|" + expense.getCategory(), k -> new long[2]);
+            total[0] += StorageFormat.toCents(expense.getAmount());
+            total[1]++;
+        }
+        return totals;
+    }
+    
+    // Replay and snapshots of the journal engine
+    void restore(Expense expense) {
+        ledger.restore(copy(expense));
+    }
+    
+    void forget(int expenseId, int userId) {
+        ledger.forget(expenseId, userId);
+    }
+    
+    void forEachRow(Consumer<Expense> visitor) {
+        ledger.forEachRow(visitor);
+    }
+    
+    // The NOT NULL columns of the expense table
+    private static boolean isStorable(Expense expense) {
+        return expense.getCategory() != null && expense.getDate() != null;
+    }
+    
+    private static Expense copy(Expense expense) {
+        Expense copy = new Expense(expense.getUserId(), expense.getCategory(), expense.getAmount(), expense.getDate(), expense.getDescription());
+        copy.setId(expense.getId());
+        return copy;
+    }
+}
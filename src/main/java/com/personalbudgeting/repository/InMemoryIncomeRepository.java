@@ -0,0 +1,158 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.dao.StorageFormat;
+import com.personalbudgeting.dao.TextSearch;
+import com.personalbudgeting.model.Income;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Income entries held in memory; see {@link InMemoryLedger}.
+ */
+public class InMemoryIncomeRepository implements IncomeRepository {
+    private final InMemoryLedger<Income> ledger;
+    
+    public InMemoryIncomeRepository() {
+        this(JournalSink.none());
+    }
+    
+    InMemoryIncomeRepository(JournalSink<Income> journal) {
+        ledger = new InMemoryLedger<>(Income::getId, Income::setId, Income::getUserId, Income::getDate,
+                                      InMemoryIncomeRepository::searchText, InMemoryIncomeRepository::copy, journal);
+    }
+    
+    public boolean add(Income income) {
+        if (!isStorable(income)) {
+            return false;
+        }
+        return ledger.insert(income);
+    }
+    
+    public int[] addAll(Collection<Income> incomes, int batchSize) {
+        // Validated all or nothing, like the single SQLite transaction
+        for (Income income : incomes) {
+            if (!isStorable(income)) {
+                return null;
+            }
+        }
+        return ledger.insertAll(incomes);
+    }
+    
+    public boolean update(Income income) {
+        return isStorable(income) && ledger.replace(income);
+    }
+    
+    public boolean delete(int incomeId, int userId) {
+        return ledger.remove(incomeId, userId);
+    }
+    
+    public Income findById(int incomeId, int userId) {
+        return ledger.get(incomeId, userId);
+    }
+    
+    public List<Income> findAllByUserId(int userId) {
+        return ledger.list(ledger.view(userId));
+    }
+    
+    public int countByUserId(int userId) {
+        return ledger.count(userId);
+    }
+    
+    public List<Income> findPageByUserId(int userId, LocalDate afterDate, int afterId, int limit) {
+        return ledger.pageAfter(userId, afterDate, afterId, limit);
+    }
+    
+    public List<Income> findPageAtOffset(int userId, int offset, int limit) {
+        return ledger.pageAt(userId, offset, limit);
+    }
+    
+    public List<Income> search(int userId, String text, int offset, int limit) {
+        return ledger.search(userId, TextSearch.terms(text), offset, limit);
+    }
+    
+    public Stream<Income> streamAllByUserId(int userId) {
+        return ledger.stream(userId);
+    }
+    
+    public long forEachByUserId(int userId, Consumer<Income> visitor) {
+        long count = 0;
+        for (Income income : ledger.view(userId)) {
+            visitor.accept(copy(income));
+            count++;
+        }
+        return count;
+    }
+    
+    public long forEachAfterId(int userId, int afterId, Consumer<Income> visitor) {
+        long count = 0;
+        for (Income income : ledger.view(userId)) {
+            if (income.getId() > afterId) {
+                visitor.accept(copy(income));
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    public List<Income> findByPeriod(int userId, YearMonth period) {
+        return ledger.list(ledger.view(userId, period));
+    }
+    
+    public double getTotalIncomeBetween(int userId, LocalDate from, LocalDate to) {
+        long cents = 0;
+        for (Income income : ledger.view(userId, from, to)) {
+            cents += StorageFormat.toCents(income.getAmount());
+        }
+        return StorageFormat.fromCents(cents);
+    }
+    
+    public Map<String, double[]> getMonthlyIncomeBySource(int userId, YearMonth first, YearMonth last) {
+        int months = (int) first.until(last, ChronoUnit.MONTHS) + 1;
+        Map<String, long[]> cents = new HashMap<>();
+        for (Income income : ledger.view(userId, first.atDay(1), last.atEndOfMonth())) {
+            int month = (int) first.until(YearMonth.from(income.getDate()), ChronoUnit.MONTHS);
+            cents.computeIfAbsent(income.getSource(), source -> new long[months])[month] += StorageFormat.toCents(income.getAmount());
+        }
+        
+        Map<String, double[]> monthlyIncome = new HashMap<>();
+        cents.forEach((source, totals) -> monthlyIncome.put(source, StorageFormat.fromCents(totals)));
+        return monthlyIncome;
+    }
+    
+    // Replay and snapshots of the journal engine
+    void restore(Income income) {
+        ledger.restore(copy(income));
+    }
+    
+    void forget(int incomeId, int userId) {
+        ledger.forget(incomeId, userId);
+    }
+    
+    void forEachRow(Consumer<Income> visitor) {
+        ledger.forEachRow(visitor);
+    }
+    
+    // The NOT NULL columns of the income table
+    private static boolean isStorable(Income income) {
+        return income.getSource() != null && income.getDate() != null;
+    }
+    
+    // Both columns of income_fts
+    private static String searchText(Income income) {
+        return income.getDescription() == null ? income.getSource() : income.getSource() + " " + income.getDescription();
+    }
+    
+    private static Income copy(Income income) {
+        Income copy = new Income(income.getUserId(), income.getSource(), income.getAmount(), income.getDate(), income.getDescription());
+        copy.setId(income.getId());
+        return copy;
+    }
+}
@@ -0,0 +1,373 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.dao.TextSearch;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Dated ledger rows (expenses or income) kept in memory, indexed per user by
+ * (date DESC, id DESC) in a skip list, the order every ledger query returns.
+ *
+ * The index key packs the epoch day into the high and the id into the low 32 bits
+ * of a long, so period and keyset lookups are sub-map views. Callers only ever see
+ * copies: rows are copied on the way in and out and never modified in place, so
+ * readers need no locks. Writers of the same user serialize on that user's index,
+ * and report every change to the {@link JournalSink} before making it; a change the
+ * journal could not record is not made.
+ *
+ * Each user also has a word index of the rows' searchable text, sorted so that all
+ * words starting with a search term are one sub-map, like the prefix matches of the
+ * SQLite full-text index.
+ */
+class InMemoryLedger<T> {
+    private final ToIntFunction<T> idOf;
+    private final ObjIntConsumer<T> setId;
+    private final ToIntFunction<T> userOf;
+    private final Function<T, LocalDate> dateOf;
+    private final Function<T, String> textOf;
+    private final UnaryOperator<T> copy;
+    private final JournalSink<T> journal;
+    
+    private final AtomicInteger lastId = new AtomicInteger();
+    private final Map<Integer, UserRows<T>> users = new ConcurrentHashMap<>();
+    
+    private static final class UserRows<T> {
+        final NavigableMap<Long, T> byDate = new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+        final Map<Integer, T> byId = new ConcurrentHashMap<>();
+        final NavigableMap<String, Set<Integer>> byWord = new ConcurrentSkipListMap<>();
+    }
+    
+    /**
+     * @param textOf the searchable text of a row, e.g. its description
+     */
+    InMemoryLedger(ToIntFunction<T> idOf, ObjIntConsumer<T> setId, ToIntFunction<T> userOf,
+                   Function<T, LocalDate> dateOf, Function<T, String> textOf, UnaryOperator<T> copy, JournalSink<T> journal) {
+        this.idOf = idOf;
+        this.setId = setId;
+        this.userOf = userOf;
+        this.dateOf = dateOf;
+        this.textOf = textOf;
+        this.copy = copy;
+        this.journal = journal;
+    }
+    
+    private static long key(LocalDate date, int id) {
+        return (date.toEpochDay() << 32) | (id & 0xFFFFFFFFL);
+    }
+    
+    private long keyOf(T row) {
+        return key(dateOf.apply(row), idOf.applyAsInt(row));
+    }
+    
+    private UserRows<T> rows(int userId) {
+        return users.computeIfAbsent(userId, k -> new UserRows<>());
+    }
+    
+    /**
+     * Store a new row and set its generated id.
+     *
+     * @return false if the journal could not record it; its id is then 0
+     */
+    boolean insert(T row) {
+        setId.accept(row, lastId.incrementAndGet());
+        T stored = copy.apply(row);
+        UserRows<T> rows = rows(userOf.applyAsInt(stored));
+        synchronized (rows) {
+            if (!journal.put(stored)) {
+                setId.accept(row, 0);
+                return false;
+            }
+            rows.byId.put(idOf.applyAsInt(stored), stored);
+            rows.byDate.put(keyOf(stored), stored);
+            indexWords(rows, stored);
+        }
+        return true;
+    }
+    
+    /**
+     * Store new rows, each like {@link #insert}.
+     *
+     * @return the generated ids, 0 for the rows not stored, or null if none was stored
+     */
+    int[] insertAll(Collection<T> newRows) {
+        int[] ids = new int[newRows.size()];
+        int i = 0;
+        boolean stored = newRows.isEmpty();
+        for (T row : newRows) {
+            stored |= insert(row);
+            ids[i++] = idOf.applyAsInt(row);
+        }
+        return stored ? ids : null;
+    }
+    
+    /**
+     * Replace the row with the same id and user.
+     *
+     * @return false if there is no such row
+     */
+    boolean replace(T row) {
+        UserRows<T> rows = users.get(userOf.applyAsInt(row));
+        if (rows == null) {
+            return false;
+        }
+        
+        T stored = copy.apply(row);
+        synchronized (rows) {
+            T previous = rows.byId.get(idOf.applyAsInt(row));
+            if (previous == null || !journal.put(stored)) {
+                return false;
+            }
+            rows.byDate.remove(keyOf(previous));
+            unindexWords(rows, previous);
+            rows.byId.put(idOf.applyAsInt(stored), stored);
+            rows.byDate.put(keyOf(stored), stored);
+            indexWords(rows, stored);
+        }
+        return true;
+    }
+    
+    boolean remove(int id, int userId) {
+        UserRows<T> rows = users.get(userId);
+        if (rows == null) {
+            return false;
+        }
+        
+        synchronized (rows) {
+            T previous = rows.byId.get(id);
+            if (previous == null || !journal.delete(id, userId)) {
+                return false;
+            }
+            rows.byId.remove(id);
+            rows.byDate.remove(keyOf(previous));
+            unindexWords(rows, previous);
+        }
+        return true;
+    }
+    
+    /**
+     * Put back a row read from the journal, keeping its id. Not journaled again.
+     */
+    void restore(T row) {
+        int id = idOf.applyAsInt(row);
+        lastId.accumulateAndGet(id, Math::max);
+        UserRows<T> rows = rows(userOf.applyAsInt(row));
+        synchronized (rows) {
+            T previous = rows.byId.put(id, row);
+            if (previous != null) {
+                rows.byDate.remove(keyOf(previous));
+                unindexWords(rows, previous);
+            }
+            rows.byDate.put(keyOf(row), row);
+            indexWords(rows, row);
+        }
+    }
+    
+    /**
+     * Drop a row deleted in the journal. Not journaled again.
+     */
+    void forget(int id, int userId) {
+        UserRows<T> rows = users.get(userId);
+        if (rows == null) {
+            return;
+        }
+        synchronized (rows) {
+            T previous = rows.byId.remove(id);
+            if (previous != null) {
+                rows.byDate.remove(keyOf(previous));
+                unindexWords(rows, previous);
+            }
+        }
+    }
+    
+    // Callers hold the lock of rows
+    private void indexWords(UserRows<T> rows, T row) {
+        int id = idOf.applyAsInt(row);
+        for (String word : TextSearch.tokenize(textOf.apply(row))) {
+            rows.byWord.computeIfAbsent(word, k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+    
+    private void unindexWords(UserRows<T> rows, T row) {
+        int id = idOf.applyAsInt(row);
+        for (String word : TextSearch.tokenize(textOf.apply(row))) {
+            Set<Integer> ids = rows.byWord.get(word);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                rows.byWord.remove(word);
+            }
+        }
+    }
+    
+    /**
+     * Visit every stored row of every user, without copying; for snapshots. Each
+     * user's rows are visited under their lock, never between journaling a change
+     * and making it.
+     */
+    void forEachRow(Consumer<T> visitor) {
+        for (UserRows<T> rows : users.values()) {
+            synchronized (rows) {
+                rows.byId.values().forEach(visitor);
+            }
+        }
+    }
+    
+    T get(int id, int userId) {
+        UserRows<T> rows = users.get(userId);
+        T row = rows == null ? null : rows.byId.get(id);
+        return row == null ? null : copy.apply(row);
+    }
+    
+    int count(int userId) {
+        UserRows<T> rows = users.get(userId);
+        return rows == null ? 0 : rows.byId.size();
+    }
+    
+    /**
+     * All rows of a user, newest first, as a live view of the index.
+     */
+    Collection<T> view(int userId) {
+        UserRows<T> rows = users.get(userId);
+        return rows == null ? Collections.emptyList() : rows.byDate.values();
+    }
+    
+    /**
+     * Rows of a user within one month, newest first, as a live view of the index.
+     */
+    Collection<T> view(int userId, YearMonth period) {
+        return view(userId, period.atDay(1), period.atEndOfMonth());
+    }
+    
+    /**
+     * Rows of a user dated from..to, both inclusive, newest first, as a live view of the index.
+     */
+    Collection<T> view(int userId, LocalDate from, LocalDate to) {
+        UserRows<T> rows = users.get(userId);
+        if (rows == null || from.isAfter(to)) {
+            return Collections.emptyList();
+        }
+        // Descending order: the last day comes first
+        return rows.byDate.subMap(key(to, -1), true, key(from, 0), true).values();
+    }
+    
+    List<T> list(Collection<T> view) {
+        List<T> result = new ArrayList<>();
+        for (T row : view) {
+            result.add(copy.apply(row));
+        }
+        return result;
+    }
+    
+    List<T> pageAfter(int userId, LocalDate afterDate, int afterId, int limit) {
+        UserRows<T> rows = users.get(userId);
+        if (rows == null) {
+            return new ArrayList<>();
+        }
+        Collection<T> view = afterDate == null
+            ? rows.byDate.values()
+            : rows.byDate.tailMap(key(afterDate, afterId), false).values();
+        return page(view.iterator(), 0, limit);
+    }
+    
+    List<T> pageAt(int userId, int offset, int limit) {
+        return page(view(userId).iterator(), offset, limit);
+    }
+    
+    private List<T> page(Iterator<T> iterator, int offset, int limit) {
+        for (int i = 0; i < offset && iterator.hasNext(); i++) {
+            iterator.next();
+        }
+        List<T> page = new ArrayList<>();
+        while (page.size() < limit && iterator.hasNext()) {
+            page.add(copy.apply(iterator.next()));
+        }
+        return page;
+    }
+    
+    /**
+     * Rows of a user whose text has a word starting with each search term. Rows matching
+     * more terms as whole words rank first, then rows with shorter text, then the newest.
+     */
+    List<T> search(int userId, List<String> terms, int offset, int limit) {
+        UserRows<T> rows = users.get(userId);
+        if (rows == null || terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        Set<Integer> matches = null;
+        for (String term : terms) {
+            Set<Integer> ids = new HashSet<>();
+            for (Set<Integer> wordIds : rows.byWord.subMap(term, true, term + Character.MAX_VALUE, true).values()) {
+                ids.addAll(wordIds);
+            }
+            if (matches == null) {
+                matches = ids;
+            } else {
+                matches.retainAll(ids);
+            }
+            if (matches.isEmpty()) {
+                return new ArrayList<>();
+            }
+        }
+        
+        List<Ranked<T>> ranked = new ArrayList<>();
+        for (int id : matches) {
+            T row = rows.byId.get(id);
+            if (row != null) {
+                List<String> words = TextSearch.tokenize(textOf.apply(row));
+                int wholeWords = 0;
+                for (String term : terms) {
+                    if (words.contains(term)) {
+                        wholeWords++;
+                    }
+                }
+                ranked.add(new Ranked<>(row, wholeWords, words.size(), keyOf(row)));
+            }
+        }
+        ranked.sort(Comparator.<Ranked<T>>comparingInt(r -> -r.wholeWords)
+                              .thenComparingInt(r -> r.words)
+                              .thenComparing(r -> r.key, Comparator.reverseOrder()));
+        
+        List<T> page = new ArrayList<>();
+        for (int i = Math.max(0, offset); i < ranked.size() && page.size() < limit; i++) {
+            page.add(copy.apply(ranked.get(i).row));
+        }
+        return page;
+    }
+    
+    private static final class Ranked<T> {
+        final T row;
+        final int wholeWords;
+        final int words;
+        final long key;
+        
+        Ranked(T row, int wholeWords, int words, long key) {
+            this.row = row;
+            this.wholeWords = wholeWords;
+            this.words = words;
+            this.key = key;
+        }
+    }
+    
+    Stream<T> stream(int userId) {
+        return view(userId).stream().map(copy);
+    }
+}
@@ -0,0 +1,223 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.model.Reminder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reminders held in memory, indexed per user by (due date, id) in a skip list,
+ * so due reminders are a head-map view. Rows are copied on the way in and out.
+ */
+public class InMemoryReminderRepository implements ReminderRepository {
+    private final AtomicInteger lastId = new AtomicInteger();
+    private final Map<Integer, UserReminders> users = new ConcurrentHashMap<>();
+    private final JournalSink<Reminder> journal;
+    
+    private static final class Key implements Comparable<Key> {
+        final LocalDateTime dueDate;
+        final int id;
+        
+        Key(LocalDateTime dueDate, int id) {
+            this.dueDate = dueDate;
+            this.id = id;
+        }
+        
+        @Override
+        public int compareTo(Key other) {
+            int byDate = dueDate.compareTo(other.dueDate);
+            return byDate != 0 ? byDate : Integer.compare(id, other.id);
+        }
+    }
+    
+    private static final class UserReminders {
+        final NavigableMap<Key, Reminder> byDueDate = new ConcurrentSkipListMap<>();
+        final Map<Integer, Reminder> byId = new ConcurrentHashMap<>();
+    }
+    
+    public InMemoryReminderRepository() {
+        this(JournalSink.none());
+    }
+    
+    InMemoryReminderRepository(JournalSink<Reminder> journal) {
+        this.journal = journal;
+    }
+    
+    public boolean add(Reminder reminder) {
+        if (reminder.getTitle() == null || reminder.getDueDate() == null) {
+            return false;
+        }
+        
+        reminder.setId(lastId.incrementAndGet());
+        Reminder stored = copy(reminder);
+        UserReminders reminders = users.computeIfAbsent(stored.getUserId(), k -> new UserReminders());
+        synchronized (reminders) {
+            if (!journal.put(stored)) {
+                reminder.setId(0);
+                return false;
+            }
+            reminders.byId.put(stored.getId(), stored);
+            reminders.byDueDate.put(keyOf(stored), stored);
+        }
+        return true;
+    }
+    
+    public boolean update(Reminder reminder) {
+        if (reminder.getTitle() == null || reminder.getDueDate() == null) {
+            return false;
+        }
+        return replace(reminder.getId(), reminder.getUserId(), previous -> copy(reminder));
+    }
+    
+    public boolean markAsCompleted(int reminderId, int userId) {
+        return replace(reminderId, userId, previous -> {
+            Reminder updated = copy(previous);
+            updated.setCompleted(true);
+            return updated;
+        });
+    }
+    
+    private boolean replace(int reminderId, int userId, UnaryOperator<Reminder> change) {
+        UserReminders reminders = users.get(userId);
+        if (reminders == null) {
+            return false;
+        }
+        
+        synchronized (reminders) {
+            Reminder previous = reminders.byId.get(reminderId);
+            if (previous == null) {
+                return false;
+            }
+            Reminder updated = change.apply(previous);
+            if (!journal.put(updated)) {
+                return false;
+            }
+            reminders.byDueDate.remove(keyOf(previous));
+            reminders.byId.put(reminderId, updated);
+            reminders.byDueDate.put(keyOf(updated), updated);
+        }
+        return true;
+    }
+    
+    public boolean delete(int reminderId, int userId) {
+        UserReminders reminders = users.get(userId);
+        if (reminders == null) {
+            return false;
+        }
+        
+        synchronized (reminders) {
+            Reminder previous = reminders.byId.get(reminderId);
+            if (previous == null || !journal.delete(reminderId, userId)) {
+                return false;
+            }
+            reminders.byId.remove(reminderId);
+            reminders.byDueDate.remove(keyOf(previous));
+        }
+        return true;
+    }
+    
+    public Reminder findById(int reminderId, int userId) {
+        UserReminders reminders = users.get(userId);
+        Reminder stored = reminders == null ? null : reminders.byId.get(reminderId);
+        return stored == null ? null : copy(stored);
+    }
+    
+    public List<Reminder> findAllByUserId(int userId) {
+        return list(view(userId), false);
+    }
+    
+    public Stream<Reminder> streamAllByUserId(int userId) {
+        return view(userId).stream().map(InMemoryReminderRepository::copy);
+    }
+    
+    public long forEachByUserId(int userId, Consumer<Reminder> visitor) {
+        long count = 0;
+        for (Reminder reminder : view(userId)) {
+            visitor.accept(copy(reminder));
+            count++;
+        }
+        return count;
+    }
+    
+    public List<Reminder> findActiveReminders(int userId) {
+        return list(view(userId), true);
+    }
+    
+    public List<Reminder> findDueReminders(int userId, LocalDateTime currentDateTime) {
+        UserReminders reminders = users.get(userId);
+        if (reminders == null) {
+            return new ArrayList<>();
+        }
+        return list(reminders.byDueDate.headMap(new Key(currentDateTime, Integer.MAX_VALUE), true).values(), true);
+    }
+    
+    // Replay and snapshots of the journal engine
+    void restore(Reminder reminder) {
+        lastId.accumulateAndGet(reminder.getId(), Math::max);
+        Reminder stored = copy(reminder);
+        UserReminders reminders = users.computeIfAbsent(stored.getUserId(), k -> new UserReminders());
+        synchronized (reminders) {
+            Reminder previous = reminders.byId.put(stored.getId(), stored);
+            if (previous != null) {
+                reminders.byDueDate.remove(keyOf(previous));
+            }
+            reminders.byDueDate.put(keyOf(stored), stored);
+        }
+    }
+    
+    void forget(int reminderId, int userId) {
+        UserReminders reminders = users.get(userId);
+        if (reminders == null) {
+            return;
+        }
+        synchronized (reminders) {
+            Reminder previous = reminders.byId.remove(reminderId);
+            if (previous != null) {
+                reminders.byDueDate.remove(keyOf(previous));
+            }
+        }
+    }
+    
+    void forEachRow(Consumer<Reminder> visitor) {
+        // Under the writers' lock, never between journaling a change and making it
+        for (UserReminders reminders : users.values()) {
+            synchronized (reminders) {
+                reminders.byId.values().forEach(visitor);
+            }
+        }
+    }
+    
+    private Collection<Reminder> view(int userId) {
+        UserReminders reminders = users.get(userId);
+        return reminders == null ? new ArrayList<>() : reminders.byDueDate.values();
+    }
+    
+    private static List<Reminder> list(Collection<Reminder> reminders, boolean activeOnly) {
+        return reminders.stream()
+            .filter(reminder -> !activeOnly || !reminder.isCompleted())
+            .map(InMemoryReminderRepository::copy)
+            .collect(Collectors.toList());
+    }
+    
+    private static Key keyOf(Reminder reminder) {
+        return new Key(reminder.getDueDate(), reminder.getId());
+    }
+    
+    private static Reminder copy(Reminder reminder) {
+        Reminder copy = new Reminder(reminder.getUserId(), reminder.getTitle(), reminder.getDescription(), reminder.getDueDate());
+        copy.setId(reminder.getId());
+        copy.setCompleted(reminder.isCompleted());
+        return copy;
+    }
+}
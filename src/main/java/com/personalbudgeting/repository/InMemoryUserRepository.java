@@ -0,0 +1,113 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.model.User;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * User accounts held in memory, indexed by id, username and email.
+ * Registration is serialized so the unique checks and inserts cannot interleave.
+ */
+public class InMemoryUserRepository implements UserRepository {
+    private final Map<Integer, User> byId = new ConcurrentHashMap<>();
+    private final Map<String, User> byUsername = new ConcurrentHashMap<>();
+    private final Map<String, User> byEmail = new ConcurrentHashMap<>();
+    private final JournalSink<User> journal;
+    private int lastId;
+    
+    public InMemoryUserRepository() {
+        this(JournalSink.none());
+    }
+    
+    InMemoryUserRepository(JournalSink<User> journal) {
+        this.journal = journal;
+    }
+    
+    public synchronized boolean register(User user) {
+        if (user.getUsername() == null || user.getEmail() == null || user.getPassword() == null ||
+            byUsername.containsKey(user.getUsername()) || byEmail.containsKey(user.getEmail())) {
+            return false;
+        }
+        
+        user.setId(++lastId);
+        User stored = copy(user);
+        if (!journal.put(stored)) {
+            user.setId(0);
+            return false;
+        }
+        store(stored);
+        return true;
+    }
+    
+    public User findByUsername(String username) {
+        User user = username == null ? null : byUsername.get(username);
+        return user == null ? null : copy(user);
+    }
+    
+    public User findByEmail(String email) {
+        User user = email == null ? null : byEmail.get(email);
+        return user == null ? null : copy(user);
+    }
+    
+    public boolean updateOtp(int userId, String otpCode, LocalDateTime otpExpiry) {
+        return change(userId, user -> {
+            user.setOtpCode(otpCode);
+            user.setOtpExpiry(otpExpiry);
+        });
+    }
+    
+    public boolean verifyUser(int userId) {
+        return change(userId, user -> {
+            user.setVerified(true);
+            user.setOtpCode(null);
+            user.setOtpExpiry(null);
+        });
+    }
+    
+    public boolean updatePassword(int userId, String newPassword) {
+        return change(userId, user -> user.setPassword(newPassword));
+    }
+    
+    // Stored users are replaced, never modified, so readers never see half an update
+    private synchronized boolean change(int userId, Consumer<User> change) {
+        User stored = byId.get(userId);
+        if (stored == null) {
+            return false;
+        }
+        User updated = copy(stored);
+        change.accept(updated);
+        if (!journal.put(updated)) {
+            return false;
+        }
+        store(updated);
+        return true;
+    }
+    
+    // Replay and snapshots of the journal engine
+    synchronized void restore(User user) {
+        lastId = Math.max(lastId, user.getId());
+        store(copy(user));
+    }
+    
+    synchronized void forEachRow(Consumer<User> visitor) {
+        byId.values().forEach(visitor);
+    }
+    
+    private void store(User user) {
+        byId.put(user.getId(), user);
+        byUsername.put(user.getUsername(), user);
+        byEmail.put(user.getEmail(), user);
+    }
+    
+    private static User copy(User user) {
+        User copy = new User(user.getUsername(), user.getEmail(), user.getPassword());
+        copy.setId(user.getId());
+        copy.setOtpCode(user.getOtpCode());
+        copy.setOtpExpiry(user.getOtpExpiry());
+        copy.setVerified(user.isVerified());
+        return copy;
+    }
+}
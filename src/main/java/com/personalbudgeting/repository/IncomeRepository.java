@@ -0,0 +1,93 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.model.Income;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Storage of income entries, ordered and reporting failures like {@link ExpenseRepository}.
+ */
+public interface IncomeRepository {
+    int DEFAULT_BATCH_SIZE = 500;
+    
+    boolean add(Income income);
+    
+    /**
+     * Insert many income entries at once. The generated ids are set on the objects
+     * and returned in the same order. Rows that could not be stored while others were,
+     * as when their users live on a shard whose transaction failed, get the id 0.
+     *
+     * @return the generated ids, or null if nothing was stored
+     */
+    int[] addAll(Collection<Income> incomes, int batchSize);
+    
+    default int[] addAll(Collection<Income> incomes) {
+        return addAll(incomes, DEFAULT_BATCH_SIZE);
+    }
+    
+    boolean update(Income income);
+    
+    boolean delete(int incomeId, int userId);
+    
+    Income findById(int incomeId, int userId);
+    
+    List<Income> findAllByUserId(int userId);
+    
+    int countByUserId(int userId);
+    
+    /**
+     * The page that follows the row identified by (afterDate, afterId), or the first page when afterDate is null.
+     */
+    List<Income> findPageByUserId(int userId, LocalDate afterDate, int afterId, int limit);
+    
+    List<Income> findPageAtOffset(int userId, int offset, int limit);
+    
+    /**
+     * Income entries whose source or description has a word starting with each word of
+     * the text, ordered like {@link ExpenseRepository#search}.
+     */
+    List<Income> search(int userId, String text, int offset, int limit);
+    
+    /**
+     * All income entries of a user; close the stream when done.
+     */
+    Stream<Income> streamAllByUserId(int userId);
+    
+    /**
+     * Visit all income entries of a user.
+     *
+     * @return the number of entries visited
+     */
+    long forEachByUserId(int userId, Consumer<Income> visitor);
+    
+    /**
+     * Visit the income entries of a user whose id is above afterId; see
+     * {@link ExpenseRepository#forEachAfterId}.
+     *
+     * @return the number of entries visited
+     */
+    long forEachAfterId(int userId, int afterId, Consumer<Income> visitor);
+    
+    List<Income> findByPeriod(int userId, YearMonth period);
+    
+    /**
+     * Total income of the days from..to, both inclusive.
+     */
+    double getTotalIncomeBetween(int userId, LocalDate from, LocalDate to);
+    
+    default double getTotalIncomeByPeriod(int userId, YearMonth period) {
+        return getTotalIncomeBetween(userId, period.atDay(1), period.atEndOfMonth());
+    }
+    
+    /**
+     * Income per source and month over first..last, laid out like
+     * {@link ExpenseRepository#getMonthlyExpensesByCategory}.
+     */
+    Map<String, double[]> getMonthlyIncomeBySource(int userId, YearMonth first, YearMonth last);
+}
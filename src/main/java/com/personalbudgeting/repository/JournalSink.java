@@ -0,0 +1,36 @@
+package com.personalbudgeting.repository;
+
+/**
+ * Where an in-memory repository reports each change before it makes it, while
+ * holding the lock of the changed row, so the reports of one row arrive in the
+ * order the changes are made. Every report carries the full new state of the row.
+ * A change the sink could not record is not made, and the repository reports a failure.
+ */
+interface JournalSink<T> {
+    /**
+     * @return false if the change could not be recorded
+     */
+    boolean put(T row);
+    
+    /**
+     * @return false if the change could not be recorded
+     */
+    boolean delete(int id, int userId);
+    
+    /**
+     * A sink that drops every report, for the plain memory engine.
+     */
+    static <T> JournalSink<T> none() {
+        return new JournalSink<T>() {
+            @Override
+            public boolean put(T row) {
+                return true;
+            }
+            
+            @Override
+            public boolean delete(int id, int userId) {
+                return true;
+            }
+        };
+    }
+}
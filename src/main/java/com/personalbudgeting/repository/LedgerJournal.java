@@ -0,0 +1,655 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.model.Budget;
+import com.personalbudgeting.model.Category;
+import com.personalbudgeting.model.Expense;
+import com.personalbudgeting.model.Income;
+import com.personalbudgeting.model.Reminder;
+import com.personalbudgeting.model.User;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of every change made to the in-memory repositories, with
+ * periodic snapshots, behind the "journal" storage engine.
+ *
+ * Changes are appended to memory-mapped segment files named after the sequence
+ * number of their first change. A record is [length][CRC32][sequence, kind, change, row]
+ * and holds the full new state of one row or its deletion, so applying a record
+ * twice is harmless. A snapshot rolls over to a new segment, writes every stored
+ * row to snapshot.bin through a temporary file and an atomic rename, tagged with
+ * the last change it covers, and deletes the older segments. The repositories walk
+ * their rows for it under the locks their writers hold from journaling a change to
+ * making it, so every change the snapshot covers is in it. Rows changed while the
+ * snapshot is written may already be in it too; their records are simply applied
+ * again on replay.
+ *
+ * At startup the snapshot is loaded and only the records after it are replayed,
+ * stopping at the first torn or corrupt record of a segment. The mapped pages are
+ * forced to disk every budget.journal.flushMs milliseconds (0 forces every change):
+ * a crash of the application loses nothing, a crash of the machine at most that interval.
+ */
+class LedgerJournal {
+    private static final int FLUSH_MS = Math.max(0, Integer.getInteger("budget.journal.flushMs", 200));
+    private static final long SNAPSHOT_EVERY = Long.getLong("budget.journal.snapshotEvery", 100_000);
+    private static final int SEGMENT_SIZE = Math.max(1, Integer.getInteger("budget.journal.segmentMb", 64)) << 20;
+    
+    private static final int SNAPSHOT_MAGIC = 0x424A534E; // "BJSN"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String SNAPSHOT = "snapshot.bin";
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    
+    private static final byte EXPENSE = 1;
+    private static final byte INCOME = 2;
+    private static final byte BUDGET = 3;
+    private static final byte REMINDER = 4;
+    private static final byte USER = 5;
+    private static final byte CATEGORY = 6;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    
+    private final Path directory;
+    private final AtomicLong sinceSnapshot = new AtomicLong();
+    private final Object snapshotLock = new Object();
+    
+    private InMemoryExpenseRepository expenses;
+    private InMemoryIncomeRepository incomes;
+    private InMemoryBudgetRepository budgets;
+    private InMemoryReminderRepository reminders;
+    private InMemoryUserRepository users;
+    private InMemoryCategoryRepository categories;
+    private ScheduledExecutorService flusher;
+    
+    // Guarded by this
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long nextSequence = 1;
+    private long snapshotCovers;
+    private boolean closed;
+    
+    private interface RowWriter<T> {
+        void write(DataOutputStream out, T row) throws IOException;
+    }
+    
+    LedgerJournal(Path directory) {
+        this.directory = directory;
+    }
+    
+    JournalSink<Expense> expenseSink() {
+        return sink(EXPENSE, Expense::getId, LedgerJournal::writeExpense);
+    }
+    
+    JournalSink<Income> incomeSink() {
+        return sink(INCOME, Income::getId, LedgerJournal::writeIncome);
+    }
+    
+    JournalSink<Budget> budgetSink() {
+        return sink(BUDGET, Budget::getId, LedgerJournal::writeBudget);
+    }
+    
+    JournalSink<Reminder> reminderSink() {
+        return sink(REMINDER, Reminder::getId, LedgerJournal::writeReminder);
+    }
+    
+    JournalSink<User> userSink() {
+        return sink(USER, User::getId, LedgerJournal::writeUser);
+    }
+    
+    JournalSink<Category> categorySink() {
+        return sink(CATEGORY, Category::getId, LedgerJournal::writeCategory);
+    }
+    
+    private <T> JournalSink<T> sink(byte kind, ToIntFunction<T> idOf, RowWriter<T> writer) {
+        return new JournalSink<T>() {
+            @Override
+            public boolean put(T row) {
+                try {
+                    append(encode(kind, PUT, row, writer));
+                    return true;
+                } catch (IOException e) {
+                    System.err.println("Error journaling row " + idOf.applyAsInt(row) + ": " + e.getMessage());
+                    e.printStackTrace();
+                }
+                return false;
+            }
+            
+            @Override
+            public boolean delete(int id, int userId) {
+                try {
+                    append(encode(kind, DELETE, null, (out, ignored) -> {
+                        out.writeInt(id);
+                        out.writeInt(userId);
+                    }));
+                    return true;
+                } catch (IOException e) {
+                    System.err.println("Error journaling deletion of row " + id + ": " + e.getMessage());
+                    e.printStackTrace();
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Load the snapshot, replay the journal after it into the (empty) repositories
+     * and start journaling into a new segment.
+     */
+    void open(InMemoryExpenseRepository expenses, InMemoryIncomeRepository incomes, InMemoryBudgetRepository budgets,
+              InMemoryReminderRepository reminders, InMemoryUserRepository users,
+              InMemoryCategoryRepository categories) throws IOException {
+        this.expenses = expenses;
+        this.incomes = incomes;
+        this.budgets = budgets;
+        this.reminders = reminders;
+        this.users = users;
+        this.categories = categories;
+        
+        long start = System.currentTimeMillis();
+        Files.createDirectories(directory);
+        long covered = loadSnapshot();
+        long last = covered;
+        long replayed = 0;
+        
+        for (Path path : listSegments()) {
+            try (FileChannel segmentChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = segmentChannel.map(FileChannel.MapMode.READ_ONLY, 0, segmentChannel.size());
+                byte[] payload;
+                while ((payload = nextRecord(buffer)) != null) {
+                    long sequence = sequenceOf(payload);
+                    if (sequence > covered) {
+                        apply(payload);
+                        replayed++;
+                    }
+                    last = Math.max(last, sequence);
+                }
+            }
+        }
+        
+        synchronized (this) {
+            nextSequence = last + 1;
+            snapshotCovers = covered;
+            startSegment();
+        }
+        System.out.println("Journal loaded from " + directory + ": snapshot up to change " + covered + ", replayed " +
+                           replayed + " changes in " + (System.currentTimeMillis() - start) + " ms");
+        
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushAndMaybeSnapshot, 1000, Math.max(FLUSH_MS, 100), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Take a final snapshot and stop journaling.
+     */
+    void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        snapshot();
+        synchronized (this) {
+            closed = true;
+            closeSegment();
+        }
+    }
+    
+    /**
+     * Write every stored row to a new snapshot and drop the segments it covers.
+     */
+    void snapshot() {
+        synchronized (snapshotLock) {
+            long covered;
+            synchronized (this) {
+                covered = nextSequence - 1;
+                if (closed || segment == null || covered == snapshotCovers) {
+                    return;
+                }
+                closeSegment();
+                try {
+                    startSegment();
+                } catch (IOException e) {
+                    // The next change tries again
+                    System.err.println("Error starting a journal segment: " + e.getMessage());
+                    e.printStackTrace();
+                    return;
+                }
+            }
+            sinceSnapshot.set(0);
+            
+            long start = System.currentTimeMillis();
+            Path temp = directory.resolve(SNAPSHOT + ".tmp");
+            try {
+                long rows = writeSnapshot(temp, covered);
+                Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                synchronized (this) {
+                    snapshotCovers = covered;
+                }
+                
+                for (Path path : listSegments()) {
+                    if (firstSequenceOf(path) <= covered) {
+                        Files.delete(path);
+                    }
+                }
+                System.out.println("Journal snapshot of " + rows + " rows up to change " + covered + " written in " +
+                                   (System.currentTimeMillis() - start) + " ms");
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Error writing journal snapshot: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    private synchronized void append(byte[] payload) throws IOException {
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+        
+        // Roll over first, so the new segment is named after the record it starts with
+        if (segment == null || segment.remaining() < 8 + payload.length) {
+            closeSegment();
+            startSegment(8 + payload.length);
+        }
+        
+        long sequence = nextSequence++;
+        for (int i = 0; i < 8; i++) {
+            payload[i] = (byte) (sequence >>> (56 - 8 * i));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        
+        segment.putInt(payload.length);
+        segment.putInt((int) crc.getValue());
+        segment.put(payload);
+        
+        if (FLUSH_MS == 0) {
+            segment.force();
+        }
+        sinceSnapshot.incrementAndGet();
+    }
+    
+    private void flushAndMaybeSnapshot() {
+        MappedByteBuffer current;
+        synchronized (this) {
+            current = segment;
+        }
+        // Forcing may take a while; appends carry on meanwhile
+        if (current != null) {
+            current.force();
+        }
+        if (SNAPSHOT_EVERY > 0 && sinceSnapshot.get() >= SNAPSHOT_EVERY) {
+            snapshot();
+        }
+    }
+    
+    private void startSegment() throws IOException {
+        startSegment(0);
+    }
+    
+    // Called with the lock held; the new segment starts at nextSequence
+    private void startSegment(int minimumSize) throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX));
+        if (Files.exists(path)) {
+            // Left by a run that stopped before its first record was complete; anything more is a bug
+            if (holdsRecord(path)) {
+                throw new IOException("Journal segment " + path + " already holds change " + nextSequence);
+            }
+            Files.delete(path);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(SEGMENT_SIZE, minimumSize));
+    }
+    
+    private static boolean holdsRecord(Path path) throws IOException {
+        try (FileChannel existing = FileChannel.open(path, StandardOpenOption.READ)) {
+            return nextRecord(existing.map(FileChannel.MapMode.READ_ONLY, 0, existing.size())) != null;
+        }
+    }
+    
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        segment.force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing journal segment: " + e.getMessage());
+            e.printStackTrace();
+        }
+        segment = null;
+        channel = null;
+    }
+    
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX) &&
+                                path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                .sorted()
+                .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+    
+    private static long firstSequenceOf(Path segmentPath) {
+        String name = segmentPath.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+    
+    // The next intact record, or null at the end of the written part or at a torn record
+    private static byte[] nextRecord(MappedByteBuffer buffer) {
+        if (buffer.remaining() < 8) {
+            return null;
+        }
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length < 10 || length > buffer.remaining()) {
+            return null;
+        }
+        
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == checksum ? payload : null;
+    }
+    
+    private static long sequenceOf(byte[] payload) {
+        long sequence = 0;
+        for (int i = 0; i < 8; i++) {
+            sequence = (sequence << 8) | (payload[i] & 0xFF);
+        }
+        return sequence;
+    }
+    
+    private long writeSnapshot(Path temp, long covered) throws IOException {
+        long[] rows = new long[1];
+        try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(tempChannel), 1 << 16));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(covered);
+            
+            users.forEachRow(user -> writeSnapshotRow(out, encode(USER, PUT, user, LedgerJournal::writeUser), rows));
+            categories.forEachRow(category -> writeSnapshotRow(out, encode(CATEGORY, PUT, category, LedgerJournal::writeCategory), rows));
+            expenses.forEachRow(expense -> writeSnapshotRow(out, encode(EXPENSE, PUT, expense, LedgerJournal::writeExpense), rows));
+            incomes.forEachRow(income -> writeSnapshotRow(out, encode(INCOME, PUT, income, LedgerJournal::writeIncome), rows));
+            budgets.forEachRow(budget -> writeSnapshotRow(out, encode(BUDGET, PUT, budget, LedgerJournal::writeBudget), rows));
+            reminders.forEachRow(reminder -> writeSnapshotRow(out, encode(REMINDER, PUT, reminder, LedgerJournal::writeReminder), rows));
+            
+            out.writeInt(0); // End marker
+            out.flush();
+            tempChannel.force(true);
+        }
+        return rows[0];
+    }
+    
+    private static void writeSnapshotRow(DataOutputStream out, byte[] payload, long[] rows) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        try {
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        rows[0]++;
+    }
+    
+    /**
+     * Load snapshot.bin, if there is one.
+     *
+     * @return the last change the snapshot covers, 0 without a snapshot
+     */
+    private long loadSnapshot() throws IOException {
+        Path path = directory.resolve(SNAPSHOT);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Not a journal snapshot: " + path);
+            }
+            long covered = in.readLong();
+            
+            int length;
+            while ((length = in.readInt()) != 0) {
+                int checksum = in.readInt();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Corrupt row in journal snapshot " + path);
+                }
+                apply(payload);
+            }
+            return covered;
+        } catch (EOFException e) {
+            throw new IOException("Truncated journal snapshot " + path, e);
+        }
+    }
+    
+    // Payload: sequence (filled in by append), kind, change, row
+    private static <T> byte[] encode(byte kind, byte change, T row, RowWriter<T> writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(0);
+            out.writeByte(kind);
+            out.writeByte(change);
+            writer.write(out, row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Never happens for an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+    
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 8, payload.length - 8));
+        byte kind = in.readByte();
+        boolean put = in.readByte() == PUT;
+        
+        switch (kind) {
+            case EXPENSE:
+                if (put) {
+                    expenses.restore(readExpense(in));
+                } else {
+                    expenses.forget(in.readInt(), in.readInt());
+                }
+                break;
+            case INCOME:
+                if (put) {
+                    incomes.restore(readIncome(in));
+                } else {
+                    incomes.forget(in.readInt(), in.readInt());
+                }
+                break;
+            case BUDGET:
+                if (put) {
+                    budgets.restore(readBudget(in));
+                } else {
+                    budgets.forget(in.readInt(), in.readInt());
+                }
+                break;
+            case REMINDER:
+                if (put) {
+                    reminders.restore(readReminder(in));
+                } else {
+                    reminders.forget(in.readInt(), in.readInt());
+                }
+                break;
+            case USER:
+                users.restore(readUser(in));
+                break;
+            case CATEGORY:
+                if (put) {
+                    categories.restore(readCategory(in));
+                } else {
+                    categories.forget(in.readInt(), in.readInt());
+                }
+                break;
+            default:
+                throw new IOException("Unknown journal record kind " + kind);
+        }
+    }
+    
+    private static void writeExpense(DataOutputStream out, Expense expense) throws IOException {
+        out.writeInt(expense.getId());
+        out.writeInt(expense.getUserId());
+        writeString(out, expense.getCategory());
+        out.writeDouble(expense.getAmount());
+        out.writeLong(expense.getDate().toEpochDay());
+        writeString(out, expense.getDescription());
+    }
+    
+    private static Expense readExpense(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        Expense expense = new Expense(in.readInt(), readString(in), in.readDouble(), LocalDate.ofEpochDay(in.readLong()), readString(in));
+        expense.setId(id);
+        return expense;
+    }
+    
+    private static void writeIncome(DataOutputStream out, Income income) throws IOException {
+        out.writeInt(income.getId());
+        out.writeInt(income.getUserId());
+        writeString(out, income.getSource());
+        out.writeDouble(income.getAmount());
+        out.writeLong(income.getDate().toEpochDay());
+        writeString(out, income.getDescription());
+    }
+    
+    private static Income readIncome(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        Income income = new Income(in.readInt(), readString(in), in.readDouble(), LocalDate.ofEpochDay(in.readLong()), readString(in));
+        income.setId(id);
+        return income;
+    }
+    
+    private static void writeBudget(DataOutputStream out, Budget budget) throws IOException {
+        out.writeInt(budget.getId());
+        out.writeInt(budget.getUserId());
+        writeString(out, budget.getCategory());
+        out.writeDouble(budget.getAmount());
+        writeString(out, budget.getPeriod().toString());
+    }
+    
+    private static Budget readBudget(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        Budget budget = new Budget(in.readInt(), readString(in), in.readDouble(), YearMonth.parse(readString(in)));
+        budget.setId(id);
+        return budget;
+    }
+    
+    private static void writeReminder(DataOutputStream out, Reminder reminder) throws IOException {
+        out.writeInt(reminder.getId());
+        out.writeInt(reminder.getUserId());
+        writeString(out, reminder.getTitle());
+        writeString(out, reminder.getDescription());
+        writeString(out, reminder.getDueDate().toString());
+        out.writeBoolean(reminder.isCompleted());
+    }
+    
+    private static Reminder readReminder(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        Reminder reminder = new Reminder(in.readInt(), readString(in), readString(in), LocalDateTime.parse(readString(in)));
+        reminder.setId(id);
+        reminder.setCompleted(in.readBoolean());
+        return reminder;
+    }
+    
+    private static void writeUser(DataOutputStream out, User user) throws IOException {
+        out.writeInt(user.getId());
+        writeString(out, user.getUsername());
+        writeString(out, user.getEmail());
+        writeString(out, user.getPassword());
+        writeString(out, user.getOtpCode());
+        writeString(out, user.getOtpExpiry() == null ? null : user.getOtpExpiry().toString());
+        out.writeBoolean(user.isVerified());
+    }
+    
+    private static User readUser(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        User user = new User(readString(in), readString(in), readString(in));
+        user.setId(id);
+        user.setOtpCode(readString(in));
+        String otpExpiry = readString(in);
+        user.setOtpExpiry(otpExpiry == null ? null : LocalDateTime.parse(otpExpiry));
+        user.setVerified(in.readBoolean());
+        return user;
+    }
+    
+    private static void writeCategory(DataOutputStream out, Category category) throws IOException {
+        out.writeInt(category.getId());
+        out.writeInt(category.getUserId());
+        writeString(out, category.getName());
+    }
+    
+    private static Category readCategory(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        Category category = new Category(in.readInt(), readString(in));
+        category.setId(id);
+        return category;
+    }
+    
+    // UTF-8 with a length prefix, -1 for null; writeUTF would cap strings at 64 KB
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
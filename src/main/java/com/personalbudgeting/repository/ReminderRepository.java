@@ -0,0 +1,45 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.model.Reminder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Storage of reminders. Lists are ordered by due date, earliest first.
+ */
+public interface ReminderRepository {
+    
+    boolean add(Reminder reminder);
+    
+    boolean update(Reminder reminder);
+    
+    boolean markAsCompleted(int reminderId, int userId);
+    
+    boolean delete(int reminderId, int userId);
+    
+    Reminder findById(int reminderId, int userId);
+    
+    List<Reminder> findAllByUserId(int userId);
+    
+    /**
+     * All reminders of a user; close the stream when done.
+     */
+    Stream<Reminder> streamAllByUserId(int userId);
+    
+    /**
+     * Visit all reminders of a user.
+     *
+     * @return the number of reminders visited
+     */
+    long forEachByUserId(int userId, Consumer<Reminder> visitor);
+    
+    List<Reminder> findActiveReminders(int userId);
+    
+    /**
+     * Reminders that are not completed and due at or before the given time.
+     */
+    List<Reminder> findDueReminders(int userId, LocalDateTime currentDateTime);
+}
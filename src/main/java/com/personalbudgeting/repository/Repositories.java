@@ -0,0 +1,145 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.dao.BudgetDAO;
+import com.personalbudgeting.dao.BudgetSummaryDAO;
+import com.personalbudgeting.dao.CategoryDAO;
+import com.personalbudgeting.dao.DatabaseConnection;
+import com.personalbudgeting.dao.DatabaseInitializer;
+import com.personalbudgeting.dao.ExpenseDAO;
+import com.personalbudgeting.dao.IncomeDAO;
+import com.personalbudgeting.dao.ReminderDAO;
+import com.personalbudgeting.dao.UserDAO;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.function.Function;
+
+/**
+ * The repositories the services use, chosen once with the budget.storage.engine
+ * system property: "sqlite" (the default) stores everything in the database through
+ * the DAOs, "memory" keeps everything in concurrent in-memory indexes and loses it
+ * on exit, for benchmarks, demos and checking services without disk I/O, and
+ * "journal" keeps the same indexes but records every change in an append-only
+ * {@link LedgerJournal} under budget.journal.dir, rebuilding them at startup from
+ * the latest snapshot and the changes after it.
+ */
+public final class Repositories {
+    public enum Engine { SQLITE, MEMORY, JOURNAL }
+    
+    private static final Engine ENGINE = parseEngine(System.getProperty("budget.storage.engine", "sqlite"));
+    private static final LedgerJournal JOURNAL = ENGINE == Engine.JOURNAL
+        ? new LedgerJournal(Paths.get(System.getProperty("budget.journal.dir", "budget-journal"))) : null;
+    
+    private static ExpenseRepository expenses;
+    private static IncomeRepository incomes;
+    private static BudgetRepository budgets;
+    private static ReminderRepository reminders;
+    private static UserRepository users;
+    private static BudgetSummaryRepository summaries;
+    private static CategoryRepository categories;
+    
+    private Repositories() {
+    }
+    
+    public static Engine getEngine() {
+        return ENGINE;
+    }
+    
+    private static Engine parseEngine(String name) {
+        if ("memory".equalsIgnoreCase(name)) {
+            return Engine.MEMORY;
+        }
+        return "journal".equalsIgnoreCase(name) ? Engine.JOURNAL : Engine.SQLITE;
+    }
+    
+    /**
+     * Prepare the storage at startup: migrate the database, replay the journal,
+     * or nothing for the memory engine.
+     *
+     * @throws IllegalStateException if the journal cannot be read; starting empty
+     *         would overwrite it with the next snapshot
+     */
+    public static void initialize() {
+        if (ENGINE == Engine.SQLITE) {
+            DatabaseInitializer.initialize();
+        } else if (ENGINE == Engine.JOURNAL) {
+            try {
+                JOURNAL.open((InMemoryExpenseRepository) expenses(), (InMemoryIncomeRepository) incomes(),
+                             (InMemoryBudgetRepository) budgets(), (InMemoryReminderRepository) reminders(),
+                             (InMemoryUserRepository) users(), (InMemoryCategoryRepository) categories());
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error loading the ledger journal: " + e.getMessage());
+                e.printStackTrace();
+                throw new IllegalStateException("Cannot load the ledger journal", e);
+            }
+        } else {
+            System.out.println("Using the in-memory storage engine; nothing is saved on exit.");
+        }
+    }
+    
+    public static void shutdown() {
+        if (ENGINE == Engine.SQLITE) {
+            DatabaseConnection.closeConnection();
+        } else if (ENGINE == Engine.JOURNAL) {
+            JOURNAL.close();
+        }
+    }
+    
+    // Changes of the in-memory repositories go to the journal, if the engine keeps one
+    private static <T> JournalSink<T> sink(Function<LedgerJournal, JournalSink<T>> of) {
+        return JOURNAL == null ? JournalSink.none() : of.apply(JOURNAL);
+    }
+    
+    public static synchronized ExpenseRepository expenses() {
+        if (expenses == null) {
+            expenses = ENGINE == Engine.SQLITE ? new ExpenseDAO() : new InMemoryExpenseRepository(sink(LedgerJournal::expenseSink));
+        }
+        return expenses;
+    }
+    
+    public static synchronized IncomeRepository incomes() {
+        if (incomes == null) {
+            incomes = ENGINE == Engine.SQLITE ? new IncomeDAO() : new InMemoryIncomeRepository(sink(LedgerJournal::incomeSink));
+        }
+        return incomes;
+    }
+    
+    public static synchronized BudgetRepository budgets() {
+        if (budgets == null) {
+            budgets = ENGINE == Engine.SQLITE ? new BudgetDAO() : new InMemoryBudgetRepository(sink(LedgerJournal::budgetSink));
+        }
+        return budgets;
+    }
+    
+    public static synchronized ReminderRepository reminders() {
+        if (reminders == null) {
+            reminders = ENGINE == Engine.SQLITE ? new ReminderDAO() : new InMemoryReminderRepository(sink(LedgerJournal::reminderSink));
+        }
+        return reminders;
+    }
+    
+    public static synchronized UserRepository users() {
+        if (users == null) {
+            users = ENGINE == Engine.SQLITE ? new UserDAO() : new InMemoryUserRepository(sink(LedgerJournal::userSink));
+        }
+        return users;
+    }
+    
+    public static synchronized BudgetSummaryRepository summaries() {
+        if (summaries == null) {
+            summaries = ENGINE == Engine.SQLITE
+                ? new BudgetSummaryDAO()
+                : new InMemoryBudgetSummaryRepository(expenses(), incomes(), budgets());
+        }
+        return summaries;
+    }
+    
+    public static synchronized CategoryRepository categories() {
+        if (categories == null) {
+            categories = ENGINE == Engine.SQLITE
+                ? new CategoryDAO()
+                : new InMemoryCategoryRepository(expenses(), budgets(), sink(LedgerJournal::categorySink));
+        }
+        return categories;
+    }
+}
@@ -0,0 +1,31 @@
+package com.personalbudgeting.repository;
+
+import com.personalbudgeting.model.User;
+
+import java.time.LocalDateTime;
+
+/**
+ * Storage of user accounts. Usernames and emails are unique.
+ */
+public interface UserRepository {
+    
+    /**
+     * Store a new user and set its generated id.
+     *
+     * @return false if the username or email is taken
+     */
+    boolean register(User user);
+    
+    User findByUsername(String username);
+    
+    User findByEmail(String email);
+    
+    boolean updateOtp(int userId, String otpCode, LocalDateTime otpExpiry);
+    
+    /**
+     * Mark the user as verified and clear the one-time code.
+     */
+    boolean verifyUser(int userId);
+    
+    boolean updatePassword(int userId, String newPassword);
+}
@@ -0,0 +1,127 @@
+package com.personalbudgeting.service;
+
+/**
+ * Parses amounts as banks write them: currency symbols and spaces are ignored, a
+ * leading minus or enclosing parentheses make it negative, and an empty field is 0.
+ *
+ * With a known decimal separator, the other one of '.' and ',' is taken as a
+ * thousands separator, but only where it groups three digits, so that "12,50" of a
+ * file written with decimal commas is rejected instead of read as 1250. Formats that
+ * do not declare the separator, QIF and OFX, have it told from each amount instead:
+ * the last of '.' and ',' is the decimal separator unless it occurs more than once.
+ * In QIF a single separator before three digits, as in "1,234", could be either and
+ * is rejected; OFX writes no thousands separators, so there it is decimal.
+ */
+final class AmountParser {
+    static final AmountParser POINT = new AmountParser('.');
+    static final AmountParser COMMA = new AmountParser(',');
+    static final AmountParser DETECT = new AmountParser('\0', true);
+    static final AmountParser DETECT_UNGROUPED = new AmountParser('\0', false);
+    
+    private final char decimalSeparator;
+    private final char groupSeparator;
+    private final boolean grouping;
+    
+    private AmountParser(char decimalSeparator) {
+        this(decimalSeparator, true);
+    }
+    
+    private AmountParser(char decimalSeparator, boolean grouping) {
+        this.decimalSeparator = decimalSeparator;
+        this.groupSeparator = decimalSeparator == '.' ? ',' : '.';
+        this.grouping = grouping;
+    }
+    
+    /**
+     * @throws IllegalArgumentException if the separator is neither '.' nor ','
+     */
+    static AmountParser forDecimalSeparator(char separator) {
+        if (separator == '.') {
+            return POINT;
+        } else if (separator == ',') {
+            return COMMA;
+        }
+        throw new IllegalArgumentException("The decimal separator must be '.' or ',': " + separator);
+    }
+    
+    /**
+     * The decimal separator, or '\0' if it is told from each amount.
+     */
+    char getDecimalSeparator() {
+        return decimalSeparator;
+    }
+    
+    /**
+     * @throws NumberFormatException if the text is not an amount, or groups digits other than by three
+     */
+    double parse(String text) {
+        if (decimalSeparator == '\0') {
+            return detect(text).parse(text);
+        }
+        
+        StringBuilder digits = new StringBuilder(text.length());
+        boolean negative = false;
+        boolean decimal = false;
+        boolean grouped = false;
+        int run = 0; // Digits since the last separator
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+                run++;
+            } else if (c == decimalSeparator) {
+                if (decimal || (grouped && run != 3)) {
+                    throw new NumberFormatException("Invalid amount: " + text);
+                }
+                digits.append('.');
+                decimal = true;
+                run = 0;
+            } else if (c == groupSeparator) {
+                if (decimal || (grouped ? run != 3 : run == 0 || run > 3)) {
+                    throw new NumberFormatException("Ambiguous amount: " + text);
+                }
+                grouped = true;
+                run = 0;
+            } else if (c == '-' || c == '(') {
+                negative = true;
+            } else if (c != ')' && c != '+' && !Character.isWhitespace(c) && Character.getType(c) != Character.CURRENCY_SYMBOL) {
+                throw new NumberFormatException("Invalid amount: " + text);
+            }
+        }
+        if (grouped && !decimal && run != 3) {
+            throw new NumberFormatException("Ambiguous amount: " + text);
+        }
+        if (digits.length() == 0) {
+            return 0.0;
+        }
+        double amount = Double.parseDouble(digits.toString());
+        return negative ? -amount : amount;
+    }
+    
+    // The parser with the decimal separator this amount was written with
+    private AmountParser detect(String text) {
+        int point = text.lastIndexOf('.');
+        int comma = text.lastIndexOf(',');
+        int last = Math.max(point, comma);
+        if (last < 0) {
+            return POINT;
+        }
+        char separator = text.charAt(last);
+        if (point >= 0 && comma >= 0) {
+            return forDecimalSeparator(separator);
+        }
+        if (text.indexOf(separator) != last) {
+            // Only a thousands separator occurs more than once
+            return separator == '.' ? COMMA : POINT;
+        }
+        
+        int digits = 0;
+        for (int i = last + 1; i < text.length() && text.charAt(i) >= '0' && text.charAt(i) <= '9'; i++) {
+            digits++;
+        }
+        if (grouping && digits == 3) {
+            throw new NumberFormatException("Ambiguous amount: " + text);
+        }
+        return forDecimalSeparator(separator);
+    }
+}
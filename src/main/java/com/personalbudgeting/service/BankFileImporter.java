@@ -0,0 +1,240 @@
+package com.personalbudgeting.service;
+
+import com.personalbudgeting.model.Expense;
+import com.personalbudgeting.model.Income;
+import com.personalbudgeting.model.User;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Import of OFX, QFX and QIF bank statements into the current user's ledger.
+ *
+ * The statement is parsed incrementally by an {@link OfxParser} or {@link QifParser}
+ * and its transactions are collected into batches written in one transaction each
+ * through {@link ExpenseService#addExpenses} and {@link IncomeService#addIncomes}, so
+ * at most one batch is in memory however many years the statement covers. Debits
+ * become expenses, in the statement's category or the Other category, and credits
+ * become income from the payee. Transactions failing the usual validation, such as
+ * zero amounts, are counted as rejected, and those the ledger already has, where the
+ * statement overlaps one imported before, as duplicates (see
+ * {@link DuplicateDetector.Session}).
+ */
+public class BankFileImporter {
+    private static final int HEADER_BYTES = 1024;
+    private static final int MAX_ERRORS = 20;
+    // Sizes the duplicate checks of an import from the file size; QIF is the densest format
+    private static final int BYTES_PER_TRANSACTION = 64;
+    
+    private final ExpenseService expenseService;
+    private final IncomeService incomeService;
+    private final int batchSize;
+    
+    public BankFileImporter() {
+        this(new ExpenseService(), new IncomeService(), CsvImporter.DEFAULT_BATCH_SIZE);
+    }
+    
+    public BankFileImporter(ExpenseService expenseService, IncomeService incomeService, int batchSize) {
+        this.expenseService = expenseService;
+        this.incomeService = incomeService;
+        this.batchSize = Math.max(1, batchSize);
+    }
+    
+    /**
+     * Whether the file is a statement this importer reads, by its extension.
+     */
+    public static boolean supports(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".ofx") || name.endsWith(".qfx") || name.endsWith(".qif");
+    }
+    
+    /**
+     * The parser for a file, by its extension.
+     */
+    public static StatementParser parserFor(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".qif") ? new QifParser() : new OfxParser();
+    }
+    
+    /**
+     * Import a statement for the logged-in user.
+     *
+     * @return the statistics of the import, or null if no user is logged in
+     * @throws IOException if the file cannot be read
+     */
+    public ImportStats importFile(Path file, ImportStats.ProgressListener listener) throws IOException {
+        User user = UserService.getCurrentUser();
+        if (user == null) {
+            return null;
+        }
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Charset charset = detectCharset(channel);
+            Reader reader = Channels.newReader(channel, charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE), -1);
+            
+            Run run = new Run(channel, listener, user.getId());
+            parserFor(file).parse(reader, run);
+            run.flushExpenses();
+            run.flushIncomes();
+            ImportStats stats = run.snapshot(false);
+            if (listener != null) {
+                listener.onProgress(stats);
+            }
+            return stats;
+        }
+    }
+    
+    public CompletableFuture<ImportStats> importFileAsync(Path file) {
+        return ServiceExecutor.submit(() -> {
+            try {
+                return importFile(file, null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+    
+    // OFX 1.x headers name the encoding; XML OFX and QIF files are read as UTF-8
+    private static Charset detectCharset(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        channel.read(header, 0);
+        String text = new String(header.array(), 0, header.position(), StandardCharsets.ISO_8859_1);
+        if (text.contains("CHARSET:1252")) {
+            return Charset.forName("windows-1252");
+        } else if (text.contains("CHARSET:ISO-8859-1")) {
+            return StandardCharsets.ISO_8859_1;
+        }
+        return StandardCharsets.UTF_8;
+    }
+    
+    // Maps and batches the parsed transactions of one import
+    private final class Run implements StatementParser.Handler {
+        final FileChannel channel;
+        final ImportStats.ProgressListener listener;
+        final long start = System.currentTimeMillis();
+        final List<Expense> expenses = new ArrayList<>();
+        final List<Income> incomes = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+        final DuplicateDetector<Expense>.Session expenseDuplicates;
+        final DuplicateDetector<Income>.Session incomeDuplicates;
+        long rows;
+        long storedExpenses;
+        long storedIncomes;
+        long rejected;
+        long duplicates;
+        long failed;
+        
+        Run(FileChannel channel, ImportStats.ProgressListener listener, int userId) throws IOException {
+            this.channel = channel;
+            this.listener = listener;
+            this.expenseDuplicates = DuplicateDetector.expenses().session(userId, channel.size() / BYTES_PER_TRANSACTION);
+            this.incomeDuplicates = DuplicateDetector.incomes().session(userId, channel.size() / BYTES_PER_TRANSACTION);
+        }
+        
+        @Override
+        public void transaction(LocalDate date, double amount, String payee, String memo, String category) {
+            rows++;
+            String description = memo.isEmpty() || memo.equals(payee) ? payee
+                               : payee.isEmpty() ? memo : payee + " - " + memo;
+            if (amount < 0) {
+                String name = category.isEmpty() ? CsvProfile.DEFAULT_CATEGORY : category;
+                if (ExpenseService.isValid(name, -amount, date)) {
+                    Expense expense = new Expense(0, name, -amount, date, description);
+                    if (expenseDuplicates.isDuplicate(expense)) {
+                        duplicates++;
+                        return;
+                    }
+                    expenses.add(expense);
+                    if (expenses.size() >= batchSize) {
+                        flushExpenses();
+                    }
+                    return;
+                }
+            } else {
+                String source = payee.isEmpty() ? CsvProfile.DEFAULT_SOURCE : payee;
+                if (IncomeService.isValid(source, amount, date)) {
+                    Income income = new Income(0, source, amount, date, memo);
+                    if (incomeDuplicates.isDuplicate(income)) {
+                        duplicates++;
+                        return;
+                    }
+                    incomes.add(income);
+                    if (incomes.size() >= batchSize) {
+                        flushIncomes();
+                    }
+                    return;
+                }
+            }
+            rejected++;
+            error("transaction " + rows + ": invalid amount " + amount + " on " + date);
+        }
+        
+        @Override
+        public void reject(long line, String reason) {
+            rows++;
+            rejected++;
+            error("line " + line + ": " + reason);
+        }
+        
+        private void error(String message) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(message);
+            }
+        }
+        
+        void flushExpenses() {
+            if (!expenses.isEmpty()) {
+                int added = expenseService.addExpenses(expenses);
+                storedExpenses += added;
+                failed += expenses.size() - added;
+                expenses.clear();
+                progress();
+            }
+        }
+        
+        void flushIncomes() {
+            if (!incomes.isEmpty()) {
+                int added = incomeService.addIncomes(incomes);
+                storedIncomes += added;
+                failed += incomes.size() - added;
+                incomes.clear();
+                progress();
+            }
+        }
+        
+        private void progress() {
+            if (listener != null) {
+                listener.onProgress(snapshot(true));
+            }
+        }
+        
+        ImportStats snapshot(boolean running) {
+            long size;
+            long position;
+            try {
+                size = channel.size();
+                position = channel.isOpen() ? Math.min(channel.position(), size) : size;
+            } catch (IOException e) {
+                size = 0;
+                position = 0;
+            }
+            return new ImportStats(size, running ? position : size, rows, storedExpenses, storedIncomes, rejected, duplicates, failed,
+                                   running, false, System.currentTimeMillis() - start, new ArrayList<>(errors));
+        }
+    }
+}
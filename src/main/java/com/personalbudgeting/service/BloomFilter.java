@@ -0,0 +1,64 @@
+package com.personalbudgeting.service;
+
+/**
+ * Bloom filter of 64-bit fingerprints: mightContain is never false for an added
+ * fingerprint and is true for about 1% of the others while no more than the expected
+ * number of fingerprints were added. The fingerprints are already well mixed hashes,
+ * so the bit positions are derived from their two halves by double hashing.
+ *
+ * Not thread-safe; {@link FingerprintIndex} and {@link DuplicateDetector} guard it.
+ */
+final class BloomFilter {
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int HASHES = 7;
+    private static final int MIN_BITS = 1 << 10;
+    private static final int MAX_BITS = 1 << 28;
+    
+    private final long[] words;
+    private final int mask;
+    private final long capacity;
+    
+    BloomFilter(long expectedEntries) {
+        long wanted = Math.max(MIN_BITS, Math.min(MAX_BITS, expectedEntries * BITS_PER_ENTRY));
+        int bits = Long.highestOneBit(wanted) == wanted ? (int) wanted : (int) Long.highestOneBit(wanted) << 1;
+        words = new long[bits >>> 6];
+        mask = bits - 1;
+        capacity = bits / BITS_PER_ENTRY;
+    }
+    
+    /**
+     * The number of entries the filter holds at the intended false positive rate.
+     */
+    long getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Whether the filter is as large as it gets; past its capacity it only lets more
+     * fingerprints through.
+     */
+    boolean isMaxSize() {
+        return mask == MAX_BITS - 1;
+    }
+    
+    void add(long fingerprint) {
+        int h1 = (int) fingerprint;
+        int h2 = (int) (fingerprint >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            words[bit >>> 6] |= 1L << bit;
+        }
+    }
+    
+    boolean mightContain(long fingerprint) {
+        int h1 = (int) fingerprint;
+        int h2 = (int) (fingerprint >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
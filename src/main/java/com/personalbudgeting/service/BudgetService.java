@@ -1,25 +1,35 @@
 package com.personalbudgeting.service;
 
-import com.personalbudgeting.dao.BudgetDAO;
-import com.personalbudgeting.dao.ExpenseDAO;
-import com.personalbudgeting.dao.IncomeDAO;
 import com.personalbudgeting.model.Budget;
+import com.personalbudgeting.model.BudgetSummary;
 import com.personalbudgeting.model.User;
+import com.personalbudgeting.repository.BudgetRepository;
+import com.personalbudgeting.repository.BudgetSummaryRepository;
+import com.personalbudgeting.repository.ExpenseRepository;
+import com.personalbudgeting.repository.Repositories;
 
 import java.time.YearMonth;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class BudgetService {
-    private BudgetDAO budgetDAO;
-    private ExpenseDAO expenseDAO;
-    private IncomeDAO incomeDAO;
+    private BudgetRepository budgetRepository;
+    private ExpenseRepository expenseRepository;
+    private BudgetSummaryRepository summaryRepository;
+    private CategoryService categoryService;
     
     public BudgetService() {
-        this.budgetDAO = new BudgetDAO();
-        this.expenseDAO = new ExpenseDAO();
-        this.incomeDAO = new IncomeDAO();
+        this(Repositories.budgets(), Repositories.expenses(), Repositories.summaries(), new CategoryService());
+    }
+    
+    public BudgetService(BudgetRepository budgetRepository, ExpenseRepository expenseRepository,
+                         BudgetSummaryRepository summaryRepository, CategoryService categoryService) {
+        this.budgetRepository = budgetRepository;
+        this.expenseRepository = expenseRepository;
+        this.summaryRepository = summaryRepository;
+        this.categoryService = categoryService;
     }
     
     public boolean setBudget(String category, double amount, YearMonth period) {
@@ -33,18 +43,30 @@ public class BudgetService {
             return false;
         }
         
+        category = categoryService.resolveCategory(category);
+        if (category == null) {
+            return false;
+        }
+        
         // Check if budget already exists for this category and period
-        Budget existingBudget = budgetDAO.findByCategory(currentUser.getId(), category, period);
+        Budget existingBudget = budgetRepository.findByCategory(currentUser.getId(), category, period);
         
+        boolean success;
         if (existingBudget != null) {
             // Update existing budget
             existingBudget.setAmount(amount);
-            return budgetDAO.update(existingBudget);
+            success = budgetRepository.update(existingBudget);
         } else {
             // Create new budget
             Budget budget = new Budget(currentUser.getId(), category, amount, period);
-            return budgetDAO.add(budget);
+            success = budgetRepository.add(budget);
         }
+        
+        if (success) {
+            SpendTracker.getInstance().recordBudget(currentUser.getId(), category, period, amount);
+            SummaryCache.getInstance().invalidate(currentUser.getId(), period);
+        }
+        return success;
     }
     
     public boolean deleteBudget(int budgetId) {
@@ -53,7 +75,15 @@ public class BudgetService {
             return false;
         }
         
-        return budgetDAO.delete(budgetId, currentUser.getId());
+        // Needed to drop the in-memory counter after the delete
+        Budget budget = budgetRepository.findById(budgetId, currentUser.getId());
+        
+        boolean success = budgetRepository.delete(budgetId, currentUser.getId());
+        if (success && budget != null) {
+            SpendTracker.getInstance().removeBudget(currentUser.getId(), budget.getCategory(), budget.getPeriod());
+            SummaryCache.getInstance().invalidate(currentUser.getId(), budget.getPeriod());
+        }
+        return success;
     }
     
     public List<Budget> getBudgetsForPeriod(YearMonth period) {
@@ -62,47 +92,30 @@ public class BudgetService {
             return null;
         }
         
-        return budgetDAO.findByPeriod(currentUser.getId(), period);
+        return budgetRepository.findByPeriod(currentUser.getId(), period);
     }
     
     public Map<String, Double> getBudgetVsActualSpending(YearMonth period) {
-        User currentUser = UserService.getCurrentUser();
-        if (currentUser == null) {
+        BudgetSummary summary = getBudgetSummary(period);
+        if (summary == null) {
             return null;
         }
-        //We need to save the budget in my data base to control the data
-        // Get budgets by category
-        Map<String, Double> budgets = budgetDAO.getBudgetsByCategory(currentUser.getId(), period);
-        
-        // Get expenses by category
-        Map<String, Double> expenses = expenseDAO.getExpensesByCategory(currentUser.getId(), period);
         
         // Combine into a result map showing budget vs. actual and percentage
         Map<String, Double> result = new HashMap<>();
         
-        for (String category : budgets.keySet()) {
-            double budgetAmount = budgets.get(category);
-            double expenseAmount = expenses.getOrDefault(category, 0.0);
-            double remainingAmount = budgetAmount - expenseAmount;
-            
-            result.put(category + "_budget", budgetAmount);
-            result.put(category + "_spent", expenseAmount);
-            result.put(category + "_remaining", remainingAmount);
-            
-            // Calculate percentage spent
-            double percentSpent = (expenseAmount / budgetAmount) * 100;
-            result.put(category + "_percent_spent", percentSpent);
+        for (String category : summary.getBudgetsByCategory().keySet()) {
+            result.put(category + "_budget", summary.getBudget(category));
+            result.put(category + "_spent", summary.getSpent(category));
+            result.put(category + "_remaining", summary.getRemaining(category));
+            result.put(category + "_percent_spent", summary.getPercentSpent(category));
         }
         
         // Add total income, total budget, and total expenses
-        double totalIncome = incomeDAO.getTotalIncomeByPeriod(currentUser.getId(), period);
-        double totalBudget = budgetDAO.getTotalBudget(currentUser.getId(), period);
-        double totalExpenses = expenseDAO.getTotalExpenseByPeriod(currentUser.getId(), period);
-        
-        result.put("total_income", totalIncome);
-        result.put("total_budget", totalBudget);
-        result.put("total_expenses", totalExpenses);
-        result.put("remaining_income", totalIncome - totalExpenses);
+        result.put("total_income", summary.getTotalIncome());
+        result.put("total_budget", summary.getTotalBudget());
+        result.put("total_expenses", summary.getTotalExpenses());
+        result.put("remaining_income", summary.getSavings());
         
         return result;
     }
@@ -113,58 +126,51 @@ public class BudgetService {
             return false;
         }
         
-        Budget budget = budgetDAO.findByCategory(currentUser.getId(), category, period);
+        // O(1) and no database reads once the user's counters are loaded
+        SpendTracker tracker = SpendTracker.getInstance();
+        if (tracker.isLoaded(currentUser.getId())) {
+            return tracker.isBudgetExceeded(category, period);
+        }
+        
+        Budget budget = budgetRepository.findByCategory(currentUser.getId(), category, period);
         if (budget == null) {
             return false; // No budget set, can't exceed
         }
         
-        double expenses = 0.0;
-        List<com.personalbudgeting.model.Expense> categoryExpenses = 
-            expenseDAO.findByCategory(currentUser.getId(), category, period);
-            
-        for (com.personalbudgeting.model.Expense expense : categoryExpenses) {
-            expenses += expense.getAmount();
-        }
+        double expenses = expenseRepository.getExpenseTotal(currentUser.getId(), category, period);
         
         return expenses > budget.getAmount();
     }
     
-    public Map<String, Object> getBudgetSummary(YearMonth period) {
+    /**
+     * Income, spending and budgets of the current user for one month, computed with a single query
+     * and cached until a change touches that month (see SummaryCache).
+     */
+    public BudgetSummary getBudgetSummary(YearMonth period) {
         User currentUser = UserService.getCurrentUser();
         if (currentUser == null) {
             return null;
         }
         
-        Map<String, Object> summary = new HashMap<>();
-        
-        // Get total income
-        double totalIncome = incomeDAO.getTotalIncomeByPeriod(currentUser.getId(), period);
-        summary.put("totalIncome", totalIncome);
-        
-        // Get total expenses
-        double totalExpenses = expenseDAO.getTotalExpenseByPeriod(currentUser.getId(), period);
-        summary.put("totalExpenses", totalExpenses);
-        
-        // Get total budget
-        double totalBudget = budgetDAO.getTotalBudget(currentUser.getId(), period);
-        summary.put("totalBudget", totalBudget);
-        
-        // Calculate savings
-        double savings = totalIncome - totalExpenses;
-        summary.put("savings", savings);
-        
-        // Calculate budget utilization
-        double budgetUtilization = totalBudget > 0 ? (totalExpenses / totalBudget) * 100 : 0;
-        summary.put("budgetUtilization", budgetUtilization);
-        
-        // Get category breakdown
-        Map<String, Double> expensesByCategory = expenseDAO.getExpensesByCategory(currentUser.getId(), period);
-        summary.put("expensesByCategory", expensesByCategory);
-        
-        // Get budgets by category
-        Map<String, Double> budgetsByCategory = budgetDAO.getBudgetsByCategory(currentUser.getId(), period);
-        summary.put("budgetsByCategory", budgetsByCategory);
-        
-        return summary;
+        return SummaryCache.getInstance().get(SummaryCache.Kind.BUDGET_SUMMARY, currentUser.getId(), period,
+                () -> summaryRepository.getSummary(currentUser.getId(), period));
+    }
+    
+    // Asynchronous variants for the UI; futures complete on the FX thread (see ServiceExecutor)
+    
+    public CompletableFuture<Boolean> setBudgetAsync(String category, double amount, YearMonth period) {
+        return ServiceExecutor.submit(() -> setBudget(category, amount, period));
+    }
+    
+    public CompletableFuture<Boolean> deleteBudgetAsync(int budgetId) {
+        return ServiceExecutor.submit(() -> deleteBudget(budgetId));
+    }
+    
+    public CompletableFuture<List<Budget>> getBudgetsForPeriodAsync(YearMonth period) {
+        return ServiceExecutor.submit(() -> getBudgetsForPeriod(period));
+    }
+    
+    public CompletableFuture<BudgetSummary> getBudgetSummaryAsync(YearMonth period) {
+        return ServiceExecutor.submit(() -> getBudgetSummary(period));
     }
 } 
@@ -0,0 +1,82 @@
+package com.personalbudgeting.service;
+
+import com.personalbudgeting.model.Category;
+import com.personalbudgeting.model.User;
+import com.personalbudgeting.repository.CategoryRepository;
+import com.personalbudgeting.repository.Repositories;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class CategoryService {
+    private CategoryRepository categoryRepository;
+    
+    public CategoryService() {
+        this(Repositories.categories());
+    }
+    
+    public CategoryService(CategoryRepository categoryRepository) {
+        this.categoryRepository = categoryRepository;
+    }
+    
+    /**
+     * The current user's categories: the built-in ones, then the user's own.
+     * Categories are held in memory, so this is cheap enough for the FX thread.
+     */
+    public List<Category> getCategories() {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return Collections.emptyList();
+        }
+        return categoryRepository.findByUserId(currentUser.getId());
+    }
+    
+    public List<String> getCategoryNames() {
+        List<String> names = new ArrayList<>();
+        for (Category category : getCategories()) {
+            names.add(category.getName());
+        }
+        return names;
+    }
+    
+    /**
+     * Whether the name, trimmed, is one of the current user's categories, so that
+     * resolving it will not add a new one.
+     */
+    public boolean isKnownCategory(String name) {
+        return name != null && getCategoryNames().contains(name.trim());
+    }
+    
+    /**
+     * The stored name of the category the current user means by this name, adding
+     * it as one of the user's own categories if it is new.
+     *
+     * @return null if the name is blank or the category could not be stored
+     */
+    public String resolveCategory(String name) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return null;
+        }
+        Category category = categoryRepository.findOrAdd(currentUser.getId(), name);
+        return category == null ? null : category.getName();
+    }
+    
+    /**
+     * Delete one of the current user's own categories that no expense or budget uses.
+     */
+    public boolean deleteCategory(String name) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null || name == null) {
+            return false;
+        }
+        
+        for (Category category : categoryRepository.findByUserId(currentUser.getId())) {
+            if (category.isCustom() && category.getName().equals(name.trim())) {
+                return categoryRepository.delete(category.getId(), currentUser.getId());
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,284 @@
+package com.personalbudgeting.service;
+
+import com.personalbudgeting.dao.StorageFormat;
+import com.personalbudgeting.model.Expense;
+import com.personalbudgeting.model.Income;
+import com.personalbudgeting.repository.ExpenseRepository;
+import com.personalbudgeting.repository.IncomeRepository;
+import com.personalbudgeting.repository.Repositories;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Columnar copies ({@link LedgerColumns}) of the expense or income ledgers of the
+ * most recently used users, for analytics that would otherwise walk lists of rows.
+ *
+ * A user's columns are loaded from the repository on first use and adjusted by the
+ * services after every successful change, like the SpendTracker counters. Categories
+ * (income sources) are dictionary-encoded into short codes shared by all users.
+ * A load that overlaps a change of the same user, or that does not see every row,
+ * is thrown away and the caller falls back to the repository. A row stored before
+ * a load but recorded after it is already in the loaded columns and is not added
+ * again.
+ */
+public class ColumnarLedger<T> {
+    private static final int MAX_USERS = Math.max(1, Integer.getInteger("budget.columnar.maxUsers", 4));
+    
+    private static ColumnarLedger<Expense> expenses;
+    private static ColumnarLedger<Income> incomes;
+    
+    private final ToIntFunction<T> idOf;
+    private final ToIntFunction<T> userOf;
+    private final Function<T, LocalDate> dateOf;
+    private final ToDoubleFunction<T> amountOf;
+    private final Function<T, String> categoryOf;
+    private final Loader<T> loader;
+    
+    // All state below is guarded by this
+    private final Map<Integer, LedgerColumns> users = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Short> codes = new HashMap<>();
+    private final List<String> categories = new ArrayList<>();
+    private final Map<Integer, Long> changes = new HashMap<>();
+    
+    private interface Loader<T> {
+        long forEach(int userId, Consumer<T> visitor);
+        
+        int count(int userId);
+        
+        String description(int id, int userId);
+    }
+    
+    private ColumnarLedger(ToIntFunction<T> idOf, ToIntFunction<T> userOf, Function<T, LocalDate> dateOf,
+                           ToDoubleFunction<T> amountOf, Function<T, String> categoryOf, Loader<T> loader) {
+        this.idOf = idOf;
+        this.userOf = userOf;
+        this.dateOf = dateOf;
+        this.amountOf = amountOf;
+        this.categoryOf = categoryOf;
+        this.loader = loader;
+    }
+    
+    public static synchronized ColumnarLedger<Expense> expenses() {
+        if (expenses == null) {
+            ExpenseRepository repository = Repositories.expenses();
+            expenses = new ColumnarLedger<>(Expense::getId, Expense::getUserId, Expense::getDate, Expense::getAmount,
+                                            Expense::getCategory, new Loader<Expense>() {
+                @Override
+                public long forEach(int userId, Consumer<Expense> visitor) {
+                    return repository.forEachByUserId(userId, visitor);
+                }
+                
+                @Override
+                public int count(int userId) {
+                    return repository.countByUserId(userId);
+                }
+                
+                @Override
+                public String description(int id, int userId) {
+                    Expense expense = repository.findById(id, userId);
+                    return expense == null ? null : expense.getDescription();
+                }
+            });
+        }
+        return expenses;
+    }
+    
+    public static synchronized ColumnarLedger<Income> incomes() {
+        if (incomes == null) {
+            IncomeRepository repository = Repositories.incomes();
+            incomes = new ColumnarLedger<>(Income::getId, Income::getUserId, Income::getDate, Income::getAmount,
+                                           Income::getSource, new Loader<Income>() {
+                @Override
+                public long forEach(int userId, Consumer<Income> visitor) {
+                    return repository.forEachByUserId(userId, visitor);
+                }
+                
+                @Override
+                public int count(int userId) {
+                    return repository.countByUserId(userId);
+                }
+                
+                @Override
+                public String description(int id, int userId) {
+                    Income income = repository.findById(id, userId);
+                    return income == null ? null : income.getDescription();
+                }
+            });
+        }
+        return incomes;
+    }
+    
+    /**
+     * The columns of a user, loading them if needed.
+     *
+     * @return null if they could not be loaded consistently; use the repository instead
+     */
+    public LedgerColumns getColumns(int userId) {
+        long changesBefore;
+        synchronized (this) {
+            LedgerColumns columns = users.get(userId);
+            if (columns != null) {
+                return columns;
+            }
+            changesBefore = changes.getOrDefault(userId, 0L);
+        }
+        
+        // Load without holding the lock; a change meanwhile invalidates the result
+        IntFunction<String> descriptions = id -> loader.description(id, userId);
+        LedgerColumns columns = new LedgerColumns(descriptions);
+        long loaded = loader.forEach(userId, row ->
+            columns.append(idOf.applyAsInt(row), dateOf.apply(row), StorageFormat.toCents(amountOf.applyAsDouble(row)),
+                           code(categoryOf.apply(row))));
+        columns.sortByDay();
+        if (loaded != loader.count(userId)) {
+            System.err.println("Columnar ledger load of user " + userId + " saw " + loaded + " rows; using the repository");
+            return null;
+        }
+        
+        synchronized (this) {
+            if (changes.getOrDefault(userId, 0L) != changesBefore) {
+                return null;
+            }
+            users.put(userId, columns);
+            if (users.size() > MAX_USERS) {
+                Integer eldest = users.keySet().iterator().next();
+                users.remove(eldest);
+            }
+        }
+        return columns;
+    }
+    
+    /**
+     * Record a row that was stored.
+     */
+    public synchronized void recordAdded(T row) {
+        int userId = userOf.applyAsInt(row);
+        changes.merge(userId, 1L, Long::sum);
+        LedgerColumns columns = users.get(userId);
+        if (columns != null) {
+            columns.insert(idOf.applyAsInt(row), dateOf.apply(row), StorageFormat.toCents(amountOf.applyAsDouble(row)),
+                           code(categoryOf.apply(row)));
+        }
+    }
+    
+    /**
+     * Record a row that was deleted; updates count as a removal of the old row plus an addition.
+     */
+    public synchronized void recordRemoved(int userId, int id, LocalDate date) {
+        changes.merge(userId, 1L, Long::sum);
+        LedgerColumns columns = users.get(userId);
+        if (columns != null && !columns.remove(id, date)) {
+            // Out of step with the repository; load again on next use
+            users.remove(userId);
+        }
+    }
+    
+    /**
+     * Totals in cents per category of a user's rows dated from..to, both inclusive.
+     *
+     * @return null if the columns could not be loaded; use the repository instead
+     */
+    public Map<String, Long> sumByCategory(int userId, LocalDate from, LocalDate to) {
+        LedgerColumns columns = getColumns(userId);
+        if (columns == null) {
+            return null;
+        }
+        
+        long[] totals;
+        synchronized (this) {
+            // No new code can show up in the columns while we hold the dictionary
+            totals = new long[categories.size()];
+            columns.sumByCategory(from, to, totals);
+        }
+        
+        Map<String, Long> byCategory = new HashMap<>();
+        for (int code = 0; code < totals.length; code++) {
+            if (totals[code] != 0) {
+                byCategory.put(getCategory(code), totals[code]);
+            }
+        }
+        return byCategory;
+    }
+    
+    /**
+     * Totals in cents per category and month of a user's rows over the given number of
+     * months from first, the first month first. Categories without rows in the span are
+     * left out.
+     *
+     * @return null if the columns could not be loaded; use the repository instead
+     */
+    public Map<String, long[]> sumByMonth(int userId, YearMonth first, int months) {
+        LedgerColumns columns = getColumns(userId);
+        if (columns == null) {
+            return null;
+        }
+        
+        Map<String, long[]> byCategory = new HashMap<>();
+        synchronized (this) {
+            // Only the codes with rows in the span need a row of the matrix
+            long[] totals = new long[categories.size()];
+            columns.sumByCategory(first.atDay(1), first.plusMonths(months - 1).atEndOfMonth(), totals);
+            for (int code = 0; code < totals.length; code++) {
+                if (totals[code] != 0) {
+                    long[] monthly = new long[months];
+                    columns.sumByMonth(first, code, monthly);
+                    byCategory.put(categories.get(code), monthly);
+                }
+            }
+        }
+        return byCategory;
+    }
+    
+    /**
+     * The code of a category, assigning the next one to a new category.
+     */
+    public synchronized short code(String category) {
+        Short code = codes.get(category);
+        if (code == null) {
+            if (categories.size() > Short.MAX_VALUE) {
+                throw new IllegalStateException("More than " + (Short.MAX_VALUE + 1) + " distinct categories");
+            }
+            code = (short) categories.size();
+            codes.put(category, code);
+            categories.add(category);
+        }
+        return code;
+    }
+    
+    /**
+     * The code of a category, or -1 if no row has ever used it.
+     */
+    public synchronized int findCode(String category) {
+        Short code = codes.get(category);
+        return code == null ? -1 : code;
+    }
+    
+    public synchronized String getCategory(int code) {
+        return categories.get(code);
+    }
+    
+    /**
+     * Number of codes in use; the length totals arrays indexed by code need.
+     */
+    public synchronized int getCategoryCount() {
+        return categories.size();
+    }
+    
+    /**
+     * Drop all cached columns, e.g. at logout. The category dictionary is kept.
+     */
+    public synchronized void clear() {
+        users.clear();
+    }
+}
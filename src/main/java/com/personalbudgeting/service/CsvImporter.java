@@ -0,0 +1,560 @@
+package com.personalbudgeting.service;
+
+import com.personalbudgeting.model.Expense;
+import com.personalbudgeting.model.Income;
+import com.personalbudgeting.model.User;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming import of expenses and income from a CSV file into the current user's ledger.
+ *
+ * The import is a pipeline of three stages joined by bounded queues:
+ * a reader thread fills a buffer from a FileChannel and cuts it into chunks of whole
+ * records, parser threads decode the chunks and map their rows through a
+ * {@link CsvProfile}, validating them with the rules of {@link ExpenseService} and
+ * {@link IncomeService}, and the calling thread writes the valid rows in batches, one
+ * transaction each, through {@link ExpenseService#addExpenses} and
+ * {@link IncomeService#addIncomes}. A full queue blocks the stage feeding it, so at
+ * most a few chunks and batches are in memory whatever the size of the file.
+ *
+ * Chunks are parsed in parallel, so rows are stored in batch order rather than in the
+ * order of the file. Rows that fail validation are counted and skipped; the first
+ * few are kept with their line numbers for the report. Rows the ledger already has,
+ * such as those of a file imported before, are counted as duplicates and skipped
+ * (see {@link DuplicateDetector.Session}).
+ */
+public class CsvImporter {
+    public static final int DEFAULT_CHUNK_BYTES = 1 << 20;
+    public static final int DEFAULT_BATCH_SIZE = 5000;
+    public static final int MAX_PARSERS = 4;
+    public static final int MAX_RECORD_BYTES = 16 << 20;
+    private static final int MAX_ERRORS = 20;
+    private static final long POLL_MILLIS = 100;
+    // Sizes the duplicate checks of an import from the file size
+    private static final int BYTES_PER_ROW = 32;
+    
+    private final ExpenseService expenseService;
+    private final IncomeService incomeService;
+    private final int parsers;
+    private final int chunkBytes;
+    private final int batchSize;
+    private volatile Run current;
+    
+    public CsvImporter() {
+        // The single writer is the bottleneck, more parsers only hold more rows in memory
+        this(new ExpenseService(), new IncomeService(), Math.min(MAX_PARSERS, Runtime.getRuntime().availableProcessors() - 1),
+             DEFAULT_CHUNK_BYTES, DEFAULT_BATCH_SIZE);
+    }
+    
+    public CsvImporter(ExpenseService expenseService, IncomeService incomeService, int parsers, int chunkBytes, int batchSize) {
+        this.expenseService = expenseService;
+        this.incomeService = incomeService;
+        this.parsers = Math.max(1, parsers);
+        this.chunkBytes = Math.max(1024, chunkBytes);
+        this.batchSize = Math.max(1, batchSize);
+    }
+    
+    /**
+     * Import a file for the logged-in user. Blocks until the whole file is written,
+     * the import fails or it is cancelled.
+     *
+     * @return the statistics of the import, or null if no user is logged in
+     * @throws IOException if the file cannot be read or its header does not fit the profile
+     */
+    public ImportStats importFile(Path file, CsvProfile profile, ImportStats.ProgressListener listener) throws IOException {
+        User user = UserService.getCurrentUser();
+        if (user == null) {
+            return null;
+        }
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Run run = new Run(profile, channel.size(), user.getId());
+            current = run;
+            List<Thread> threads = new ArrayList<>();
+            threads.add(new Thread(() -> read(run, channel), "csv-reader"));
+            for (int i = 1; i <= parsers; i++) {
+                threads.add(new Thread(() -> parse(run), "csv-parser-" + i));
+            }
+            for (Thread thread : threads) {
+                thread.setDaemon(true);
+                thread.start();
+            }
+            
+            try {
+                write(run, listener);
+            } finally {
+                run.stopped = true;
+                for (Thread thread : threads) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                current = null;
+            }
+            
+            Throwable failure = run.failure.get();
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure != null) {
+                throw new IOException("Import of " + file + " failed: " + failure.getMessage(), failure);
+            }
+            return run.snapshot(false);
+        }
+    }
+    
+    /**
+     * Import a file off the FX thread; the future fails with an UncheckedIOException
+     * if the file cannot be read. Progress is not reported.
+     */
+    public CompletableFuture<ImportStats> importFileAsync(Path file, CsvProfile profile) {
+        return ServiceExecutor.submit(() -> {
+            try {
+                return importFile(file, profile, null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+    
+    /**
+     * Stop the running import after the batch being written. Rows already written stay.
+     */
+    public void cancel() {
+        Run run = current;
+        if (run != null) {
+            run.cancelled = true;
+            run.stopped = true;
+        }
+    }
+    
+    // Reader stage: whole records only, carrying a partial record over to the next chunk
+    private void read(Run run, FileChannel channel) {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(chunkBytes);
+            long line = 1;
+            boolean header = true;
+            boolean eof = false;
+            
+            while (!eof && !run.stopped) {
+                if (!buffer.hasRemaining()) {
+                    if (buffer.capacity() >= MAX_RECORD_BYTES) {
+                        throw new IOException("Record at line " + line + " is longer than " + MAX_RECORD_BYTES + " bytes");
+                    }
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+                eof = channel.read(buffer) < 0;
+                buffer.flip();
+                
+                int end = eof ? buffer.limit() : lastRecordEnd(buffer);
+                byte[] bytes = new byte[end];
+                buffer.get(bytes);
+                buffer.compact();
+                run.bytesRead.addAndGet(end);
+                
+                int from = 0;
+                if (header && (end > 0 || eof)) {
+                    from = readHeader(run, bytes);
+                    line++;
+                    header = false;
+                }
+                if (from < bytes.length) {
+                    if (!put(run, run.chunks, new Chunk(bytes, from, line))) {
+                        return;
+                    }
+                    line += countLines(bytes, from);
+                }
+            }
+        } catch (Exception e) {
+            run.fail(e);
+        } finally {
+            for (int i = 0; i < parsers; i++) {
+                put(run, run.chunks, Chunk.END);
+            }
+        }
+    }
+    
+    // Index after the last newline outside quotes, 0 if the buffer holds no whole record
+    private static int lastRecordEnd(ByteBuffer buffer) {
+        boolean quoted = false;
+        int end = 0;
+        for (int i = 0; i < buffer.limit(); i++) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted) {
+                end = i + 1;
+            }
+        }
+        return end;
+    }
+    
+    private static int countLines(byte[] bytes, int from) {
+        int lines = 0;
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+    
+    // Resolve the columns from the first record and return the offset of the next one
+    private int readHeader(Run run, byte[] bytes) throws IOException {
+        int from = 0;
+        if (bytes.length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            from = 3; // Byte order mark
+        }
+        int end = from;
+        while (end < bytes.length && bytes[end] != '\n') {
+            end++;
+        }
+        
+        List<List<String>> records = new ArrayList<>();
+        parseRecords(new String(bytes, from, end - from, StandardCharsets.UTF_8), run.profile.getDelimiter(), 1,
+                     (record, line) -> records.add(record));
+        if (records.isEmpty()) {
+            throw new IOException("The file has no header row");
+        }
+        try {
+            run.columns = run.profile.resolve(records.get(0));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return Math.min(end + 1, bytes.length);
+    }
+    
+    // Parser stage: one batch of mapped rows per chunk
+    private void parse(Run run) {
+        try {
+            while (true) {
+                Chunk chunk = take(run, run.chunks);
+                if (chunk == null || chunk == Chunk.END) {
+                    break;
+                }
+                
+                Batch batch = new Batch();
+                String text = new String(chunk.bytes, chunk.from, chunk.bytes.length - chunk.from, StandardCharsets.UTF_8);
+                parseRecords(text, run.profile.getDelimiter(), chunk.firstLine, (record, line) -> map(run, record, line, batch));
+                if (!put(run, run.batches, batch)) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            run.fail(e);
+        } finally {
+            put(run, run.batches, Batch.DONE);
+        }
+    }
+    
+    interface RecordHandler {
+        void accept(List<String> record, long line);
+    }
+    
+    /**
+     * Split text into records of fields. Quoted fields may hold delimiters, newlines
+     * and doubled quotes; blank lines are skipped.
+     */
+    static void parseRecords(String text, char delimiter, long firstLine, RecordHandler handler) {
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean empty = true;
+        long line = firstLine;
+        long recordLine = firstLine;
+        
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                empty = false;
+            } else if (c == delimiter) {
+                record.add(field.toString());
+                field.setLength(0);
+                empty = false;
+            } else if (c == '\n') {
+                if (!empty || field.length() > 0) {
+                    record.add(field.toString());
+                    handler.accept(record, recordLine);
+                    record = new ArrayList<>();
+                }
+                field.setLength(0);
+                empty = true;
+                recordLine = ++line;
+            } else if (c != '\r') {
+                field.append(c);
+                empty = false;
+            }
+        }
+        if (!empty || field.length() > 0) {
+            record.add(field.toString());
+            handler.accept(record, recordLine);
+        }
+    }
+    
+    // Map one record onto an expense or income entry, or count it as rejected
+    private void map(Run run, List<String> record, long line, Batch batch) {
+        batch.rows++;
+        CsvProfile profile = run.profile;
+        CsvProfile.Columns columns = run.columns;
+        AmountParser amounts = profile.getAmountParser();
+        try {
+            LocalDate date = LocalDate.parse(field(record, columns.date), profile.getDateFormat());
+            double amount;
+            if (columns.amount >= 0) {
+                amount = amounts.parse(field(record, columns.amount));
+            } else {
+                // Separate columns, debits paid out and credits received
+                amount = amounts.parse(field(record, columns.credit)) - amounts.parse(field(record, columns.debit));
+            }
+            String description = field(record, columns.description);
+            
+            CsvProfile.Kind kind = profile.getKind();
+            if (kind == CsvProfile.Kind.SIGNED) {
+                kind = amount < 0 ? CsvProfile.Kind.EXPENSE : CsvProfile.Kind.INCOME;
+                amount = Math.abs(amount);
+            }
+            
+            if (kind == CsvProfile.Kind.EXPENSE) {
+                String category = columns.category >= 0 ? field(record, columns.category) : profile.getDefaultCategory();
+                if (category.isEmpty() && profile.getKind() == CsvProfile.Kind.SIGNED) {
+                    category = profile.getDefaultCategory();
+                }
+                if (ExpenseService.isValid(category, amount, date)) {
+                    batch.expenses.add(new Expense(0, category.trim(), amount, date, description));
+                    return;
+                }
+            } else {
+                String source = columns.source >= 0 ? field(record, columns.source) : "";
+                if (source.isEmpty() && profile.getKind() == CsvProfile.Kind.SIGNED) {
+                    source = description;
+                }
+                if (source.isEmpty()) {
+                    source = CsvProfile.DEFAULT_SOURCE;
+                }
+                if (IncomeService.isValid(source, amount, date)) {
+                    batch.incomes.add(new Income(0, source.trim(), amount, date, description));
+                    return;
+                }
+            }
+            run.reject(line, "invalid category, source, amount or date");
+        } catch (DateTimeParseException | NumberFormatException e) {
+            run.reject(line, e.getMessage());
+        }
+        batch.rejected++;
+    }
+    
+    private static String field(List<String> record, int index) {
+        return index >= 0 && index < record.size() ? record.get(index).trim() : "";
+    }
+    
+    // Writer stage, on the calling thread
+    private void write(Run run, ImportStats.ProgressListener listener) {
+        List<Expense> expenses = new ArrayList<>();
+        List<Income> incomes = new ArrayList<>();
+        int done = 0;
+        
+        while (done < parsers) {
+            Batch batch = take(run, run.batches);
+            if (batch == null) {
+                break; // Cancelled or failed
+            }
+            if (batch == Batch.DONE) {
+                done++;
+                continue;
+            }
+            
+            run.rows += batch.rows;
+            run.rejected += batch.rejected;
+            for (Expense expense : batch.expenses) {
+                if (run.expenseDuplicates.isDuplicate(expense)) {
+                    run.duplicates++;
+                } else {
+                    expenses.add(expense);
+                }
+            }
+            for (Income income : batch.incomes) {
+                if (run.incomeDuplicates.isDuplicate(income)) {
+                    run.duplicates++;
+                } else {
+                    incomes.add(income);
+                }
+            }
+            if (expenses.size() >= batchSize) {
+                writeExpenses(run, expenses);
+            }
+            if (incomes.size() >= batchSize) {
+                writeIncomes(run, incomes);
+            }
+            if (listener != null) {
+                listener.onProgress(run.snapshot(true));
+            }
+        }
+        
+        if (run.failure.get() == null) {
+            writeExpenses(run, expenses);
+            writeIncomes(run, incomes);
+            if (listener != null) {
+                listener.onProgress(run.snapshot(false));
+            }
+        }
+    }
+    
+    private void writeExpenses(Run run, List<Expense> expenses) {
+        if (!expenses.isEmpty()) {
+            int added = expenseService.addExpenses(expenses);
+            run.expenses += added;
+            run.failed += expenses.size() - added;
+            expenses.clear();
+        }
+    }
+    
+    private void writeIncomes(Run run, List<Income> incomes) {
+        if (!incomes.isEmpty()) {
+            int added = incomeService.addIncomes(incomes);
+            run.incomes += added;
+            run.failed += incomes.size() - added;
+            incomes.clear();
+        }
+    }
+    
+    // Blocks while the queue is full; false if the import stopped meanwhile
+    private static <T> boolean put(Run run, BlockingQueue<T> queue, T item) {
+        try {
+            while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (run.stopped) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    // Blocks while the queue is empty; null if the import stopped meanwhile
+    private static <T> T take(Run run, BlockingQueue<T> queue) {
+        try {
+            T item;
+            while ((item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                if (run.stopped) {
+                    return null;
+                }
+            }
+            return item;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+    
+    private static final class Chunk {
+        static final Chunk END = new Chunk(new byte[0], 0, 0);
+        
+        final byte[] bytes;
+        final int from;
+        final long firstLine;
+        
+        Chunk(byte[] bytes, int from, long firstLine) {
+            this.bytes = bytes;
+            this.from = from;
+            this.firstLine = firstLine;
+        }
+    }
+    
+    private static final class Batch {
+        static final Batch DONE = new Batch();
+        
+        final List<Expense> expenses = new ArrayList<>();
+        final List<Income> incomes = new ArrayList<>();
+        int rows;
+        int rejected;
+    }
+    
+    // State of one import; the counters are written by the importing thread only
+    private final class Run {
+        final CsvProfile profile;
+        final long size;
+        final long start = System.currentTimeMillis();
+        final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(parsers);
+        final BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(parsers);
+        final AtomicLong bytesRead = new AtomicLong();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        volatile CsvProfile.Columns columns;
+        volatile boolean stopped;
+        volatile boolean cancelled;
+        final DuplicateDetector<Expense>.Session expenseDuplicates;
+        final DuplicateDetector<Income>.Session incomeDuplicates;
+        long rows;
+        long expenses;
+        long incomes;
+        long rejected;
+        long duplicates;
+        long failed;
+        
+        Run(CsvProfile profile, long size, int userId) {
+            this.profile = profile;
+            this.size = size;
+            this.expenseDuplicates = DuplicateDetector.expenses().session(userId, size / BYTES_PER_ROW);
+            this.incomeDuplicates = DuplicateDetector.incomes().session(userId, size / BYTES_PER_ROW);
+        }
+        
+        void fail(Throwable t) {
+            failure.compareAndSet(null, t);
+            stopped = true;
+        }
+        
+        void reject(long line, String reason) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add("line " + line + ": " + reason);
+            }
+        }
+        
+        ImportStats snapshot(boolean running) {
+            List<String> sample;
+            synchronized (errors) {
+                sample = new ArrayList<>(errors);
+            }
+            return new ImportStats(size, bytesRead.get(), rows, expenses, incomes, rejected, duplicates, failed, running, cancelled,
+                                   System.currentTimeMillis() - start, sample);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.personalbudgeting.service;
+
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * How the columns of a CSV file map onto expenses and income, for {@link CsvImporter}.
+ *
+ * Columns are found by their header name, ignoring case. A profile either imports
+ * every row as one kind (the expenses and income profiles, matching the export
+ * format) or, like a bank export, decides by the sign of the amount or by separate
+ * debit and credit columns: debits become expenses of the default category and
+ * credits income from the row's description.
+ *
+ * Custom profiles are written as "field=Header Name" pairs separated by ';', e.g.
+ * "date=Posting Date;amount=Amount;description=Payee;dateFormat=MM/dd/yyyy".
+ * Fields: date, amount, debit, credit, category, source, description, dateFormat,
+ * delimiter, decimal (the decimal separator, '.' or ','), kind (expense, income or
+ * signed) and defaultCategory.
+ */
+public final class CsvProfile {
+    public enum Kind { EXPENSE, INCOME, SIGNED }
+    
+    public static final String DEFAULT_CATEGORY = "Other";
+    public static final String DEFAULT_SOURCE = "Imported";
+    
+    private final String name;
+    private final Kind kind;
+    private final char delimiter;
+    private final DateTimeFormatter dateFormat;
+    private final AmountParser amountParser;
+    private final String defaultCategory;
+    // Field name to header name
+    private final Map<String, String> columns;
+    
+    private CsvProfile(String name, Kind kind, char delimiter, DateTimeFormatter dateFormat, AmountParser amountParser,
+                       String defaultCategory, Map<String, String> columns) {
+        this.name = name;
+        this.kind = kind;
+        this.delimiter = delimiter;
+        this.dateFormat = dateFormat;
+        this.amountParser = amountParser;
+        this.defaultCategory = defaultCategory;
+        this.columns = columns;
+    }
+    
+    /**
+     * date, category, amount, description: one expense per row.
+     */
+    public static CsvProfile expenses() {
+        return new CsvProfile("expenses", Kind.EXPENSE, ',', DateTimeFormatter.ISO_LOCAL_DATE, AmountParser.POINT,
+                              DEFAULT_CATEGORY, columns("date", "date", "amount", "amount", "category", "category", "description", "description"));
+    }
+    
+    /**
+     * date, source, amount, description: one income entry per row.
+     */
+    public static CsvProfile income() {
+        return new CsvProfile("income", Kind.INCOME, ',', DateTimeFormatter.ISO_LOCAL_DATE, AmountParser.POINT,
+                              DEFAULT_CATEGORY, columns("date", "date", "amount", "amount", "source", "source", "description", "description"));
+    }
+    
+    /**
+     * date, description, amount: negative amounts are expenses, positive ones income.
+     */
+    public static CsvProfile bank() {
+        return new CsvProfile("bank", Kind.SIGNED, ',', DateTimeFormatter.ISO_LOCAL_DATE, AmountParser.POINT,
+                              DEFAULT_CATEGORY, columns("date", "date", "amount", "amount", "description", "description"));
+    }
+    
+    /**
+     * A built-in profile by name, or a custom profile specification.
+     *
+     * @throws IllegalArgumentException if the specification is malformed
+     */
+    public static CsvProfile forName(String spec) {
+        if ("expenses".equalsIgnoreCase(spec)) {
+            return expenses();
+        } else if ("income".equalsIgnoreCase(spec)) {
+            return income();
+        } else if ("bank".equalsIgnoreCase(spec)) {
+            return bank();
+        }
+        
+        Kind kind = Kind.SIGNED;
+        char delimiter = ',';
+        DateTimeFormatter dateFormat = DateTimeFormatter.ISO_LOCAL_DATE;
+        AmountParser amountParser = AmountParser.POINT;
+        String defaultCategory = DEFAULT_CATEGORY;
+        Map<String, String> columns = new LinkedHashMap<>();
+        for (String pair : spec.split(";")) {
+            int equals = pair.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected field=value in profile: " + pair);
+            }
+            String field = pair.substring(0, equals).trim();
+            String value = pair.substring(equals + 1).trim();
+            switch (field) {
+                case "kind":
+                    kind = Kind.valueOf(value.toUpperCase(Locale.ROOT));
+                    break;
+                case "delimiter":
+                    delimiter = "tab".equalsIgnoreCase(value) ? '\t' : value.charAt(0);
+                    break;
+                case "dateFormat":
+                    dateFormat = DateTimeFormatter.ofPattern(value);
+                    break;
+                case "decimal":
+                    if (value.length() != 1) {
+                        throw new IllegalArgumentException("The decimal separator must be '.' or ',': " + value);
+                    }
+                    amountParser = AmountParser.forDecimalSeparator(value.charAt(0));
+                    break;
+                case "defaultCategory":
+                    defaultCategory = value;
+                    break;
+                case "date": case "amount": case "debit": case "credit": case "category": case "source": case "description":
+                    columns.put(field, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown profile field: " + field);
+            }
+        }
+        if (!columns.containsKey("date") || !(columns.containsKey("amount") || columns.containsKey("debit") || columns.containsKey("credit"))) {
+            throw new IllegalArgumentException("A profile needs a date column and an amount, debit or credit column");
+        }
+        return new CsvProfile("custom", kind, delimiter, dateFormat, amountParser, defaultCategory, columns);
+    }
+    
+    private static Map<String, String> columns(String... pairs) {
+        Map<String, String> columns = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            columns.put(pairs[i], pairs[i + 1]);
+        }
+        return columns;
+    }
+    
+    /**
+     * The index of each mapped field in a header row, -1 where the header lacks it.
+     *
+     * @throws IllegalArgumentException if the date or every amount column is missing
+     */
+    Columns resolve(List<String> header) {
+        List<String> names = new ArrayList<>();
+        for (String column : header) {
+            names.add(column.trim().toLowerCase(Locale.ROOT));
+        }
+        Columns resolved = new Columns(indexOf(names, "date"), indexOf(names, "amount"), indexOf(names, "debit"),
+                                       indexOf(names, "credit"), indexOf(names, "category"), indexOf(names, "source"),
+                                       indexOf(names, "description"));
+        if (resolved.date < 0 || (resolved.amount < 0 && resolved.debit < 0 && resolved.credit < 0)) {
+            throw new IllegalArgumentException("The header " + header + " lacks the columns of the " + name + " profile " + columns);
+        }
+        return resolved;
+    }
+    
+    private int indexOf(List<String> names, String field) {
+        String column = columns.get(field);
+        return column == null ? -1 : names.indexOf(column.toLowerCase(Locale.ROOT));
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Kind getKind() {
+        return kind;
+    }
+    
+    public char getDelimiter() {
+        return delimiter;
+    }
+    
+    public DateTimeFormatter getDateFormat() {
+        return dateFormat;
+    }
+    
+    public char getDecimalSeparator() {
+        return amountParser.getDecimalSeparator();
+    }
+    
+    AmountParser getAmountParser() {
+        return amountParser;
+    }
+    
+    public String getDefaultCategory() {
+        return defaultCategory;
+    }
+    
+    // Column indexes of one file, -1 for absent columns
+    static final class Columns {
+        final int date;
+        final int amount;
+        final int debit;
+        final int credit;
+        final int category;
+        final int source;
+        final int description;
+        
+        Columns(int date, int amount, int debit, int credit, int category, int source, int description) {
+            this.date = date;
+            this.amount = amount;
+            this.debit = debit;
+            this.credit = credit;
+            this.category = category;
+            this.source = source;
+            this.description = description;
+        }
+    }
+}
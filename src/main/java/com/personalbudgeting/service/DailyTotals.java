@@ -0,0 +1,132 @@
+package com.personalbudgeting.service;
+
+import java.util.Arrays;
+
+/**
+ * Daily totals in cents of one ledger, overall and per category code, as Fenwick
+ * (binary indexed) trees over consecutive days. Adding an amount and summing any
+ * range of days are both O(log days), however many rows the ledger has.
+ *
+ * The trees cover the days from the first to the last one seen and grow (at least
+ * doubling) when a row falls outside them. Trees of a category are allocated the
+ * first time a row uses it. Not thread-safe; {@link LedgerColumns} guards it.
+ */
+final class DailyTotals {
+    private static final int INITIAL_DAYS = 64;
+    
+    private int firstDay;
+    private int days;
+    private long[] all = new long[1];
+    private long[][] byCode = new long[0][];
+    
+    /**
+     * Add cents to the total of one day and category; negative to take a row out.
+     */
+    void add(int day, int code, long cents) {
+        cover(day);
+        int index = day - firstDay + 1;
+        update(all, index, cents);
+        if (code >= byCode.length) {
+            byCode = Arrays.copyOf(byCode, Math.max(code + 1, byCode.length * 2));
+        }
+        if (byCode[code] == null) {
+            byCode[code] = new long[days + 1];
+        }
+        update(byCode[code], index, cents);
+    }
+    
+    /**
+     * Total of the days fromDay..toDay, both inclusive.
+     */
+    long sum(int fromDay, int toDay) {
+        return rangeSum(all, fromDay, toDay);
+    }
+    
+    /**
+     * Total of one category over the days fromDay..toDay, both inclusive.
+     */
+    long sum(int fromDay, int toDay, int code) {
+        return code < 0 || code >= byCode.length ? 0 : rangeSum(byCode[code], fromDay, toDay);
+    }
+    
+    /**
+     * Add the total of each category over fromDay..toDay to totals[code].
+     */
+    void sumByCode(int fromDay, int toDay, long[] totals) {
+        int codes = Math.min(totals.length, byCode.length);
+        for (int code = 0; code < codes; code++) {
+            totals[code] += rangeSum(byCode[code], fromDay, toDay);
+        }
+    }
+    
+    private long rangeSum(long[] tree, int fromDay, int toDay) {
+        if (tree == null || days == 0) {
+            return 0;
+        }
+        int from = Math.max(fromDay, firstDay) - firstDay + 1;
+        int to = Math.min(toDay, firstDay + days - 1) - firstDay + 1;
+        return from > to ? 0 : prefix(tree, to) - prefix(tree, from - 1);
+    }
+    
+    private static long prefix(long[] tree, int index) {
+        long total = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            total += tree[i];
+        }
+        return total;
+    }
+    
+    private static void update(long[] tree, int index, long cents) {
+        for (int i = index; i < tree.length; i += i & -i) {
+            tree[i] += cents;
+        }
+    }
+    
+    // Grow the trees so that they include the given day
+    private void cover(int day) {
+        if (days == 0) {
+            firstDay = day - INITIAL_DAYS / 2;
+            days = INITIAL_DAYS;
+            all = new long[days + 1];
+            return;
+        }
+        int lastDay = firstDay + days - 1;
+        if (day >= firstDay && day <= lastDay) {
+            return;
+        }
+        
+        int newDays = Math.max(days * 2, Math.max(lastDay, day) - Math.min(firstDay, day) + 1);
+        // Grow towards the side the new day is on
+        int newFirstDay = day < firstDay ? lastDay - newDays + 1 : firstDay;
+        int shift = firstDay - newFirstDay;
+        
+        all = rebuild(all, shift, newDays);
+        for (int code = 0; code < byCode.length; code++) {
+            if (byCode[code] != null) {
+                byCode[code] = rebuild(byCode[code], shift, newDays);
+            }
+        }
+        firstDay = newFirstDay;
+        days = newDays;
+    }
+    
+    // The same daily values, moved by shift days, in a tree of newDays days
+    private long[] rebuild(long[] tree, int shift, int newDays) {
+        long[] values = new long[newDays + 1];
+        long previous = 0;
+        for (int index = 1; index <= days; index++) {
+            long current = prefix(tree, index);
+            values[index + shift] = current - previous;
+            previous = current;
+        }
+        
+        // Linear construction: push each node's partial sum to its parent
+        for (int index = 1; index <= newDays; index++) {
+            int parent = index + (index & -index);
+            if (parent <= newDays) {
+                values[parent] += values[index];
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,361 @@
+package com.personalbudgeting.service;
+
+import com.personalbudgeting.dao.StorageFormat;
+import com.personalbudgeting.model.Expense;
+import com.personalbudgeting.model.Income;
+import com.personalbudgeting.repository.ExpenseRepository;
+import com.personalbudgeting.repository.IncomeRepository;
+import com.personalbudgeting.repository.Repositories;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Duplicate checks of new expenses or income entries against the ledgers of the most
+ * recently used users, without reading the repository.
+ *
+ * A transaction is fingerprinted by its user, date, amount and normalized text: the
+ * description of an expense, the source and description of an income entry, lower
+ * case with everything but letters and digits collapsed to single spaces. Each user
+ * has a {@link FingerprintIndex} of the fingerprints of their rows, loaded at login
+ * and adjusted by the services after every successful change, like the ColumnarLedger
+ * columns. Indexes are kept across logins; the next login only reads the rows stored
+ * since the highest id seen and reloads everything if the row count then disagrees,
+ * which catches rows deleted by another process. Rows edited by another process keep
+ * their old fingerprint until the next full load. A row stored before a load but
+ * recorded after it was read by the load, as row ids grow with every commit, so it is
+ * not added again.
+ */
+public class DuplicateDetector<T> {
+    private static final int MAX_USERS = Math.max(1, Integer.getInteger("budget.duplicates.maxUsers", 4));
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    private static DuplicateDetector<Expense> expenses;
+    private static DuplicateDetector<Income> incomes;
+    
+    private final ToIntFunction<T> idOf;
+    private final ToIntFunction<T> userOf;
+    private final Function<T, LocalDate> dateOf;
+    private final ToDoubleFunction<T> amountOf;
+    private final Function<T, String> textOf;
+    private final Loader<T> loader;
+    
+    // Held while loading, so concurrent callers wait for one load instead of each reading the ledger
+    private final Object loading = new Object();
+    
+    // All state below is guarded by this
+    private final Map<Integer, FingerprintIndex> users = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Integer, Long> changes = new HashMap<>();
+    
+    private interface Loader<T> {
+        long forEachAfter(int userId, int afterId, Consumer<T> visitor);
+        
+        int count(int userId);
+    }
+    
+    private DuplicateDetector(ToIntFunction<T> idOf, ToIntFunction<T> userOf, Function<T, LocalDate> dateOf,
+                              ToDoubleFunction<T> amountOf, Function<T, String> textOf, Loader<T> loader) {
+        this.idOf = idOf;
+        this.userOf = userOf;
+        this.dateOf = dateOf;
+        this.amountOf = amountOf;
+        this.textOf = textOf;
+        this.loader = loader;
+    }
+    
+    public static synchronized DuplicateDetector<Expense> expenses() {
+        if (expenses == null) {
+            ExpenseRepository repository = Repositories.expenses();
+            expenses = new DuplicateDetector<>(Expense::getId, Expense::getUserId, Expense::getDate, Expense::getAmount,
+                                               Expense::getDescription, new Loader<Expense>() {
+                @Override
+                public long forEachAfter(int userId, int afterId, Consumer<Expense> visitor) {
+                    return repository.forEachAfterId(userId, afterId, visitor);
+                }
+                
+                @Override
+                public int count(int userId) {
+                    return repository.countByUserId(userId);
+                }
+            });
+        }
+        return expenses;
+    }
+    
+    public static synchronized DuplicateDetector<Income> incomes() {
+        if (incomes == null) {
+            IncomeRepository repository = Repositories.incomes();
+            incomes = new DuplicateDetector<>(Income::getId, Income::getUserId, Income::getDate, Income::getAmount,
+                                              DuplicateDetector::incomeText, new Loader<Income>() {
+                @Override
+                public long forEachAfter(int userId, int afterId, Consumer<Income> visitor) {
+                    return repository.forEachAfterId(userId, afterId, visitor);
+                }
+                
+                @Override
+                public int count(int userId) {
+                    return repository.countByUserId(userId);
+                }
+            });
+        }
+        return incomes;
+    }
+    
+    // The source names most income, so it counts like the description of an expense
+    private static String incomeText(Income income) {
+        String description = income.getDescription();
+        return description == null || description.isEmpty() ? income.getSource() : income.getSource() + " " + description;
+    }
+    
+    /**
+     * The fingerprint of a transaction. A new transaction takes the fingerprint of
+     * one of a million stored ones with a chance of about one in 18 trillion.
+     */
+    public static long fingerprint(int userId, LocalDate date, double amount, String text) {
+        // FNV-1a of the normalized text, without building it
+        long hash = FNV_OFFSET;
+        boolean separator = false;
+        boolean started = false;
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (!Character.isLetterOrDigit(c)) {
+                    separator = true;
+                    continue;
+                }
+                if (separator && started) {
+                    hash = (hash ^ ' ') * FNV_PRIME;
+                }
+                hash = (hash ^ Character.toLowerCase(c)) * FNV_PRIME;
+                separator = false;
+                started = true;
+            }
+        }
+        
+        hash = mix(hash + userId);
+        hash = mix(hash + date.toEpochDay());
+        return mix(hash + StorageFormat.toCents(amount));
+    }
+    
+    public long fingerprint(T row) {
+        return fingerprint(userOf.applyAsInt(row), dateOf.apply(row), amountOf.applyAsDouble(row), textOf.apply(row));
+    }
+    
+    // The SplitMix64 finalizer; every input bit affects every output bit
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+    
+    /**
+     * Bring the index of a user who just logged in up to date with the repository.
+     */
+    public void load(int userId) {
+        getIndex(userId);
+    }
+    
+    /**
+     * Keep the indexes but read the repository again before their next use, e.g. at
+     * logout, since another process may change the ledger meanwhile.
+     */
+    public synchronized void markStale() {
+        for (FingerprintIndex index : users.values()) {
+            index.setStale(true);
+        }
+    }
+    
+    /**
+     * The number of a user's rows with the fingerprint, loading the index if needed.
+     *
+     * @return -1 if the index could not be loaded consistently; nothing is known then
+     */
+    public int count(int userId, long fingerprint) {
+        synchronized (this) {
+            FingerprintIndex index = users.get(userId);
+            if (index != null && !index.isStale()) {
+                return index.count(fingerprint);
+            }
+        }
+        
+        FingerprintIndex index = getIndex(userId);
+        if (index == null) {
+            return -1;
+        }
+        synchronized (this) {
+            return index.count(fingerprint);
+        }
+    }
+    
+    /**
+     * Whether a row with the same fingerprint is stored; false if that cannot be told.
+     */
+    public boolean isDuplicate(T row) {
+        return count(userOf.applyAsInt(row), fingerprint(row)) > 0;
+    }
+    
+    /**
+     * Start the duplicate checks of one import for a user.
+     *
+     * @param expectedRows about how many rows the import has
+     */
+    public Session session(int userId, long expectedRows) {
+        return new Session(userId, expectedRows);
+    }
+    
+    /**
+     * Record a row that was stored; one a load already read is not counted again.
+     */
+    public synchronized void recordAdded(T row) {
+        int userId = userOf.applyAsInt(row);
+        changes.merge(userId, 1L, Long::sum);
+        FingerprintIndex index = users.get(userId);
+        int id = idOf.applyAsInt(row);
+        if (index != null && id > index.getLoadedMaxId()) {
+            index.add(fingerprint(row), id);
+        }
+    }
+    
+    /**
+     * Record a row that was updated, by the fingerprint it had before. Its id is
+     * an old one, so unlike a new row it is always added again.
+     */
+    public synchronized void recordUpdated(long oldFingerprint, T row) {
+        int userId = userOf.applyAsInt(row);
+        changes.merge(userId, 1L, Long::sum);
+        FingerprintIndex index = users.get(userId);
+        if (index == null) {
+            return;
+        }
+        if (!index.remove(oldFingerprint)) {
+            // Out of step with the repository; load again on next use
+            users.remove(userId);
+            return;
+        }
+        index.add(fingerprint(row), idOf.applyAsInt(row));
+    }
+    
+    /**
+     * Record a row that was deleted, by the fingerprint it had.
+     */
+    public synchronized void recordRemoved(int userId, long fingerprint) {
+        changes.merge(userId, 1L, Long::sum);
+        FingerprintIndex index = users.get(userId);
+        if (index != null && !index.remove(fingerprint)) {
+            // Out of step with the repository; load again on next use
+            users.remove(userId);
+        }
+    }
+    
+    private FingerprintIndex getIndex(int userId) {
+        synchronized (loading) {
+            FingerprintIndex index;
+            long changesBefore;
+            synchronized (this) {
+                index = users.get(userId);
+                if (index != null && !index.isStale()) {
+                    return index; // Loaded while we waited
+                }
+                // Out of reach of recordAdded while it catches up; a change meanwhile invalidates the result
+                users.remove(userId);
+                changesBefore = changes.getOrDefault(userId, 0L);
+            }
+            
+            long start = System.currentTimeMillis();
+            boolean full = index == null;
+            if (full) {
+                index = new FingerprintIndex(loader.count(userId));
+            }
+            long read = catchUp(userId, index);
+            int count = loader.count(userId);
+            if (index.size() != count && !full) {
+                // Rows were deleted outside this process; start over
+                full = true;
+                index = new FingerprintIndex(count);
+                read = catchUp(userId, index);
+                count = loader.count(userId);
+            }
+            if (index.size() != count) {
+                System.err.println("Duplicate index load of user " + userId + " saw " + index.size() + " of " + count + " rows");
+                return null;
+            }
+            index.setLoaded();
+            
+            synchronized (this) {
+                if (changes.getOrDefault(userId, 0L) != changesBefore) {
+                    return null;
+                }
+                users.put(userId, index);
+                if (users.size() > MAX_USERS) {
+                    Integer eldest = users.keySet().iterator().next();
+                    users.remove(eldest);
+                }
+            }
+            System.out.println("Duplicate index of user " + userId + (full ? " loaded " : " caught up with ") + read
+                               + " rows, " + index.size() + " in all, in " + (System.currentTimeMillis() - start) + " ms");
+            return index;
+        }
+    }
+    
+    private long catchUp(int userId, FingerprintIndex index) {
+        return loader.forEachAfter(userId, index.getMaxId(), row -> index.add(fingerprint(row), idOf.applyAsInt(row)));
+    }
+    
+    /**
+     * The duplicate checks of one import. A row is a duplicate when the ledger held a
+     * row with its fingerprint before the import started and that row has not already
+     * been matched by an earlier row of the import, so a statement that overlaps one
+     * imported before is skipped where it overlaps, while repeated rows within a file
+     * (two coffees on one day) are kept.
+     *
+     * The rows the import stores go into the index as well, so a fingerprint is looked
+     * up once, the first time the import meets it. The ones not in the ledger then are
+     * remembered in a Bloom filter of the import, which errs towards importing a
+     * duplicate and never skips a new row; the matched ones, which are few unless the
+     * file was imported before, are counted down exactly. Not thread-safe.
+     */
+    public final class Session {
+        private final int userId;
+        private final BloomFilter fresh;
+        private final Map<Long, Integer> unmatched = new HashMap<>();
+        
+        private Session(int userId, long expectedRows) {
+            this.userId = userId;
+            this.fresh = new BloomFilter(expectedRows);
+        }
+        
+        /**
+         * Whether a row of the import duplicates one already in the ledger; the row's
+         * own user id is not used.
+         */
+        public boolean isDuplicate(T row) {
+            long fingerprint = fingerprint(userId, dateOf.apply(row), amountOf.applyAsDouble(row), textOf.apply(row));
+            Integer left = unmatched.get(fingerprint);
+            if (left != null) {
+                if (left == 0) {
+                    return false;
+                }
+                unmatched.put(fingerprint, left - 1);
+                return true;
+            }
+            if (fresh.mightContain(fingerprint)) {
+                return false; // Met before and new to the ledger, or rarely a false positive
+            }
+            
+            int stored = count(userId, fingerprint);
+            if (stored > 0) {
+                unmatched.put(fingerprint, stored - 1);
+                return true;
+            }
+            fresh.add(fingerprint);
+            return false;
+        }
+    }
+}
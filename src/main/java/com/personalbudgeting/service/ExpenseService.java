@@ -1,21 +1,46 @@
 package com.personalbudgeting.service;
 
-import com.personalbudgeting.dao.ExpenseDAO;
+import com.personalbudgeting.dao.StorageFormat;
+import com.personalbudgeting.repository.ExpenseRepository;
+import com.personalbudgeting.repository.Repositories;
 import com.personalbudgeting.model.Expense;
+import com.personalbudgeting.model.Trend;
 import com.personalbudgeting.model.User;
 
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class ExpenseService {
-    private ExpenseDAO expenseDAO;
+    /**
+     * The dates a ledger row may have. The daily totals of a ledger span its first to
+     * last date, so a mistyped year such as 0026 would otherwise cost megabytes.
+     */
+    public static final LocalDate EARLIEST_DATE = LocalDate.of(1900, 1, 1);
+    public static final LocalDate LATEST_DATE = LocalDate.of(2099, 12, 31);
+    
+    private ExpenseRepository expenseRepository;
     private BudgetService budgetService;
+    private CategoryService categoryService;
     
     public ExpenseService() {
-        this.expenseDAO = new ExpenseDAO();
-        this.budgetService = new BudgetService();
+        this(Repositories.expenses(), new BudgetService(), new CategoryService());
+    }
+    
+    public ExpenseService(ExpenseRepository expenseRepository, BudgetService budgetService, CategoryService categoryService) {
+        this.expenseRepository = expenseRepository;
+        this.budgetService = budgetService;
+        this.categoryService = categoryService;
     }
     
     public boolean addExpense(String category, double amount, LocalDate date, String description) {
@@ -25,14 +50,25 @@ public class ExpenseService {
         }
         
         // Validate input
-        if (category == null || category.trim().isEmpty() || amount <= 0 || date == null) {
+        if (!isValid(category, amount, date)) {
+            return false;
+        }
+        
+        // A name the user has not used before becomes one of their own categories
+        category = categoryService.resolveCategory(category);
+        if (category == null) {
             return false;
         }
         
         Expense expense = new Expense(currentUser.getId(), category, amount, date, description);
-        boolean success = expenseDAO.add(expense);
+        boolean success = expenseRepository.add(expense);
         
         if (success) {
+            SpendTracker.getInstance().recordExpense(currentUser.getId(), category, date, amount, 1);
+            ColumnarLedger.expenses().recordAdded(expense);
+            DuplicateDetector.expenses().recordAdded(expense);
+            SummaryCache.getInstance().invalidate(currentUser.getId(), date);
+            
             // Check if this expense exceeds the budget for the category
             YearMonth period = YearMonth.from(date);
             if (budgetService.isBudgetExceeded(category, period)) {
@@ -44,6 +80,94 @@ public class ExpenseService {
         return success;
     }
     
+    /**
+     * Add many expenses for the current user in one batched transaction.
+     * Invalid entries are skipped. The budget check runs once per touched
+     * category and month instead of once per expense.
+     *
+     * @return the number of expenses stored
+     */
+    public int addExpenses(Collection<Expense> expenses) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null || expenses == null) {
+            return 0;
+        }
+        
+        List<Expense> valid = new ArrayList<>();
+        for (Expense expense : expenses) {
+            if (isValid(expense.getCategory(), expense.getAmount(), expense.getDate())) {
+                String category = categoryService.resolveCategory(expense.getCategory());
+                if (category != null) {
+                    expense.setUserId(currentUser.getId());
+                    expense.setCategory(category);
+                    valid.add(expense);
+                }
+            }
+        }
+        
+        if (valid.size() < expenses.size()) {
+            System.out.println("Skipped " + (expenses.size() - valid.size()) + " invalid expenses in bulk add");
+        }
+        
+        if (valid.isEmpty() || expenseRepository.addAll(valid) == null) {
+            return 0;
+        }
+        // Rows that were not stored, on a shard whose transaction failed, have no id
+        valid.removeIf(expense -> expense.getId() == 0);
+        
+        SpendTracker tracker = SpendTracker.getInstance();
+        ColumnarLedger<Expense> columns = ColumnarLedger.expenses();
+        DuplicateDetector<Expense> duplicates = DuplicateDetector.expenses();
+        Set<YearMonth> periods = new HashSet<>();
+        for (Expense expense : valid) {
+            tracker.recordExpense(currentUser.getId(), expense.getCategory(), expense.getDate(), expense.getAmount(), 1);
+            columns.recordAdded(expense);
+            duplicates.recordAdded(expense);
+            periods.add(YearMonth.from(expense.getDate()));
+        }
+        for (YearMonth period : periods) {
+            SummaryCache.getInstance().invalidate(currentUser.getId(), period);
+        }
+        
+        // Check each touched (category, period) budget once
+        Set<String> checked = new HashSet<>();
+        for (Expense expense : valid) {
+            YearMonth period = YearMonth.from(expense.getDate());
+            if (checked.add(expense.getCategory() + "|" + period)
+                    && budgetService.isBudgetExceeded(expense.getCategory(), period)) {
+                System.out.println("ALERT: Budget exceeded for category: " + expense.getCategory() + " in " + period);
+            }
+        }
+        
+        return valid.size();
+    }
+    
+    /**
+     * The validation rules applied to every new or updated expense.
+     */
+    public static boolean isValid(String category, double amount, LocalDate date) {
+        return category != null && !category.trim().isEmpty() && amount > 0 && isValidDate(date);
+    }
+    
+    public static boolean isValidDate(LocalDate date) {
+        return date != null && !date.isBefore(EARLIEST_DATE) && !date.isAfter(LATEST_DATE);
+    }
+    
+    /**
+     * Whether the current user already has an expense of the amount on the date with
+     * the same description, ignoring case, spacing and punctuation. Answered from memory
+     * (see {@link DuplicateDetector}); false if that cannot be told.
+     */
+    public boolean isDuplicate(double amount, LocalDate date, String description) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null || date == null) {
+            return false;
+        }
+        
+        long fingerprint = DuplicateDetector.fingerprint(currentUser.getId(), date, amount, description);
+        return DuplicateDetector.expenses().count(currentUser.getId(), fingerprint) > 0;
+    }
+    
     public boolean updateExpense(int expenseId, String category, double amount, LocalDate date, String description) {
         User currentUser = UserService.getCurrentUser();
         if (currentUser == null) {
@@ -51,12 +175,17 @@ public class ExpenseService {
         }
         
         // Validate input
-        if (category == null || category.trim().isEmpty() || amount <= 0 || date == null) {
+        if (!isValid(category, amount, date)) {
+            return false;
+        }
+        
+        category = categoryService.resolveCategory(category);
+        if (category == null) {
             return false;
         }
         
         // Get the expense to update
-        Expense expense = expenseDAO.findById(expenseId, currentUser.getId());
+        Expense expense = expenseRepository.findById(expenseId, currentUser.getId());
         if (expense == null) {
             return false;
         }
@@ -64,6 +193,8 @@ public class ExpenseService {
         // Store old values for comparison
         String oldCategory = expense.getCategory();
         LocalDate oldDate = expense.getDate();
+        double oldAmount = expense.getAmount();
+        long oldFingerprint = DuplicateDetector.expenses().fingerprint(expense);
         
         // Update the expense
         expense.setCategory(category);
@@ -71,9 +202,18 @@ public class ExpenseService {
         expense.setDate(date);
         expense.setDescription(description);
         
-        boolean success = expenseDAO.update(expense);
+        boolean success = expenseRepository.update(expense);
         
         if (success) {
+            SpendTracker tracker = SpendTracker.getInstance();
+            tracker.recordExpense(currentUser.getId(), oldCategory, oldDate, oldAmount, -1);
+            tracker.recordExpense(currentUser.getId(), category, date, amount, 1);
+            ColumnarLedger.expenses().recordRemoved(currentUser.getId(), expenseId, oldDate);
+            ColumnarLedger.expenses().recordAdded(expense);
+            DuplicateDetector.expenses().recordUpdated(oldFingerprint, expense);
+            SummaryCache.getInstance().invalidate(currentUser.getId(), oldDate);
+            SummaryCache.getInstance().invalidate(currentUser.getId(), date);
+            
             // Check if this expense exceeds the budget for the new category
             YearMonth newPeriod = YearMonth.from(date);
             if (budgetService.isBudgetExceeded(category, newPeriod)) {
@@ -101,12 +241,19 @@ public class ExpenseService {
         }
         
         // Get the expense before deleting to check budgets after deletion
-        Expense expense = expenseDAO.findById(expenseId, currentUser.getId());
+        Expense expense = expenseRepository.findById(expenseId, currentUser.getId());
         if (expense == null) {
             return false;
         }
         
-        boolean success = expenseDAO.delete(expenseId, currentUser.getId());
+        boolean success = expenseRepository.delete(expenseId, currentUser.getId());
+        
+        if (success) {
+            SpendTracker.getInstance().recordExpense(currentUser.getId(), expense.getCategory(), expense.getDate(), expense.getAmount(), -1);
+            ColumnarLedger.expenses().recordRemoved(currentUser.getId(), expenseId, expense.getDate());
+            DuplicateDetector.expenses().recordRemoved(currentUser.getId(), DuplicateDetector.expenses().fingerprint(expense));
+            SummaryCache.getInstance().invalidate(currentUser.getId(), expense.getDate());
+        }
         
         return success;
     }
@@ -117,7 +264,82 @@ public class ExpenseService {
             return null;
         }
         
-        return expenseDAO.findAllByUserId(currentUser.getId());
+        return expenseRepository.findAllByUserId(currentUser.getId());
+    }
+    
+    public int countExpenses() {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return 0;
+        }
+        
+        return expenseRepository.countByUserId(currentUser.getId());
+    }
+    
+    /**
+     * Get the page of expenses that follows the given one, newest first.
+     * Pass null to get the first page.
+     */
+    public List<Expense> getExpensesAfter(Expense last, int limit) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return new ArrayList<>();
+        }
+        
+        if (last == null) {
+            return expenseRepository.findPageByUserId(currentUser.getId(), null, 0, limit);
+        }
+        return expenseRepository.findPageByUserId(currentUser.getId(), last.getDate(), last.getId(), limit);
+    }
+    
+    public List<Expense> getExpensesAt(int offset, int limit) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return new ArrayList<>();
+        }
+        
+        return expenseRepository.findPageAtOffset(currentUser.getId(), offset, limit);
+    }
+    
+    /**
+     * Search the descriptions of the current user's expenses: every word of the text must
+     * start a word of the description. Results are ranked best match first and paged by
+     * offset; an empty list if the text has no words.
+     */
+    public List<Expense> searchExpenses(String text, int offset, int limit) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null || text == null) {
+            return new ArrayList<>();
+        }
+        
+        return expenseRepository.search(currentUser.getId(), text, offset, limit);
+    }
+    
+    /**
+     * Stream all expenses of the current user without materializing them.
+     * Close the stream when done (try-with-resources) to release its database connection.
+     */
+    public Stream<Expense> streamAllExpenses() {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return Stream.empty();
+        }
+        
+        return expenseRepository.streamAllByUserId(currentUser.getId());
+    }
+    
+    /**
+     * Visit all expenses of the current user in constant memory.
+     *
+     * @return the number of expenses visited
+     */
+    public long forEachExpense(Consumer<Expense> visitor) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return 0;
+        }
+        
+        return expenseRepository.forEachByUserId(currentUser.getId(), visitor);
     }
     
     public List<Expense> getExpensesForPeriod(YearMonth period) {
@@ -126,7 +348,7 @@ public class ExpenseService {
             return null;
         }
         
-        return expenseDAO.findByPeriod(currentUser.getId(), period);
+        return expenseRepository.findByPeriod(currentUser.getId(), period);
     }
     
     public List<Expense> getExpensesByCategory(String category, YearMonth period) {
@@ -135,24 +357,149 @@ public class ExpenseService {
             return null;
         }
         
-        return expenseDAO.findByCategory(currentUser.getId(), category, period);
+        return expenseRepository.findByCategory(currentUser.getId(), category, period);
     }
     
     public double getTotalExpensesForPeriod(YearMonth period) {
+        return getTotalExpensesBetween(period.atDay(1), period.atEndOfMonth());
+    }
+    
+    /**
+     * Total spending of the current user on the days from..to, both inclusive: a quarter,
+     * a year, the last 30 days or any other range. Answered in O(log days) from the
+     * daily totals of the columnar ledger once the user's columns are loaded.
+     */
+    public double getTotalExpensesBetween(LocalDate from, LocalDate to) {
         User currentUser = UserService.getCurrentUser();
-        if (currentUser == null) {
+        if (currentUser == null || from == null || to == null || from.isAfter(to)) {
             return 0.0;
         }
         
-        return expenseDAO.getTotalExpenseByPeriod(currentUser.getId(), period);
+        LedgerColumns columns = ColumnarLedger.expenses().getColumns(currentUser.getId());
+        if (columns != null) {
+            return StorageFormat.fromCents(columns.sumCents(from, to));
+        }
+        return expenseRepository.getTotalExpenseBetween(currentUser.getId(), from, to);
     }
     
+    /**
+     * Spending of the current user per category for one month. Results are cached
+     * (see SummaryCache), so the caller gets its own copy.
+     */
     public Map<String, Double> getExpensesByCategory(YearMonth period) {
         User currentUser = UserService.getCurrentUser();
         if (currentUser == null) {
             return null;
         }
         
-        return expenseDAO.getExpensesByCategory(currentUser.getId(), period);
+        Map<String, Double> categoryExpenses = SummaryCache.getInstance().get(SummaryCache.Kind.EXPENSES_BY_CATEGORY,
+                currentUser.getId(), period, () -> loadExpensesByCategory(currentUser.getId(), period.atDay(1), period.atEndOfMonth()));
+        return categoryExpenses == null ? null : new HashMap<>(categoryExpenses);
+    }
+    
+    /**
+     * Spending of the current user per category on the days from..to, both inclusive.
+     */
+    public Map<String, Double> getExpensesByCategoryBetween(LocalDate from, LocalDate to) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return null;
+        }
+        if (from == null || to == null || from.isAfter(to)) {
+            return new HashMap<>();
+        }
+        
+        return loadExpensesByCategory(currentUser.getId(), from, to);
+    }
+    
+    private Map<String, Double> loadExpensesByCategory(int userId, LocalDate from, LocalDate to) {
+        Map<String, Long> cents = ColumnarLedger.expenses().sumByCategory(userId, from, to);
+        if (cents == null) {
+            return expenseRepository.getExpensesByCategoryBetween(userId, from, to);
+        }
+        
+        Map<String, Double> categoryExpenses = new HashMap<>();
+        cents.forEach((category, total) -> categoryExpenses.put(category, StorageFormat.fromCents(total)));
+        return categoryExpenses;
+    }
+    
+    /**
+     * Spending of the current user per category and month over first..last, both
+     * inclusive, for trend charts. Read from the daily totals of the columnar ledger
+     * once the user's columns are loaded, otherwise from one grouped read of the
+     * monthly aggregates, so a span of years costs about as much as a single month.
+     */
+    public Trend getExpenseTrend(YearMonth first, YearMonth last) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return null;
+        }
+        if (first == null || last == null || last.isBefore(first)) {
+            return Trend.empty(first);
+        }
+        
+        int months = (int) first.until(last, ChronoUnit.MONTHS) + 1;
+        Map<String, long[]> cents = ColumnarLedger.expenses().sumByMonth(currentUser.getId(), first, months);
+        if (cents == null) {
+            return new Trend(first, months, expenseRepository.getMonthlyExpensesByCategory(currentUser.getId(), first, last));
+        }
+        
+        Map<String, double[]> monthlyExpenses = new HashMap<>();
+        cents.forEach((category, totals) -> monthlyExpenses.put(category, StorageFormat.fromCents(totals)));
+        return new Trend(first, months, monthlyExpenses);
+    }
+    
+    // Asynchronous variants for the UI; futures complete on the FX thread (see ServiceExecutor)
+    
+    public CompletableFuture<Boolean> addExpenseAsync(String category, double amount, LocalDate date, String description) {
+        return ServiceExecutor.submit(() -> addExpense(category, amount, date, description));
+    }
+    
+    public CompletableFuture<Boolean> isDuplicateAsync(double amount, LocalDate date, String description) {
+        return ServiceExecutor.submit(() -> isDuplicate(amount, date, description));
+    }
+    
+    public CompletableFuture<Boolean> updateExpenseAsync(int expenseId, String category, double amount, LocalDate date, String description) {
+        return ServiceExecutor.submit(() -> updateExpense(expenseId, category, amount, date, description));
+    }
+    
+    public CompletableFuture<Boolean> deleteExpenseAsync(int expenseId) {
+        return ServiceExecutor.submit(() -> deleteExpense(expenseId));
+    }
+    
+    public CompletableFuture<Integer> countExpensesAsync() {
+        return ServiceExecutor.submit(this::countExpenses);
+    }
+    
+    public CompletableFuture<List<Expense>> getExpensesAfterAsync(Expense last, int limit) {
+        return ServiceExecutor.submit(() -> getExpensesAfter(last, limit));
+    }
+    
+    public CompletableFuture<List<Expense>> getExpensesAtAsync(int offset, int limit) {
+        return ServiceExecutor.submit(() -> getExpensesAt(offset, limit));
+    }
+    
+    public CompletableFuture<List<Expense>> searchExpensesAsync(String text, int offset, int limit) {
+        return ServiceExecutor.submit(() -> searchExpenses(text, offset, limit));
+    }
+    
+    public CompletableFuture<List<Expense>> getExpensesForPeriodAsync(YearMonth period) {
+        return ServiceExecutor.submit(() -> getExpensesForPeriod(period));
+    }
+    
+    public CompletableFuture<Double> getTotalExpensesBetweenAsync(LocalDate from, LocalDate to) {
+        return ServiceExecutor.submit(() -> getTotalExpensesBetween(from, to));
+    }
+    
+    public CompletableFuture<Map<String, Double>> getExpensesByCategoryBetweenAsync(LocalDate from, LocalDate to) {
+        return ServiceExecutor.submit(() -> getExpensesByCategoryBetween(from, to));
+    }
+    
+    public CompletableFuture<Map<String, Double>> getExpensesByCategoryAsync(YearMonth period) {
+        return ServiceExecutor.submit(() -> getExpensesByCategory(period));
+    }
+    
+    public CompletableFuture<Trend> getExpenseTrendAsync(YearMonth first, YearMonth last) {
+        return ServiceExecutor.submit(() -> getExpenseTrend(first, last));
     }
 } 
\ No newline at end of file
@@ -0,0 +1,164 @@
+package com.personalbudgeting.service;
+
+import com.personalbudgeting.dao.ExportDAO;
+import com.personalbudgeting.dao.ExportWriter;
+import com.personalbudgeting.model.User;
+import com.personalbudgeting.repository.Repositories;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Export of the current user's expenses, income, budgets and reminders to CSV or
+ * JSON files, streamed from the database through {@link ExportDAO}.
+ *
+ * Each file is written under a temporary name and moved into place once complete,
+ * so an interrupted export never leaves a truncated file behind. Exports read the
+ * SQLite database and are not available with the memory and journal engines.
+ */
+public class ExportService {
+    
+    /**
+     * Told the rows written so far, from the exporting thread.
+     */
+    public interface ProgressListener {
+        void onProgress(ExportDAO.Dataset dataset, long rows);
+    }
+    
+    private final ExportDAO exportDAO;
+    
+    public ExportService() {
+        this(Repositories.getEngine() == Repositories.Engine.SQLITE ? new ExportDAO() : null);
+    }
+    
+    public ExportService(ExportDAO exportDAO) {
+        this.exportDAO = exportDAO;
+    }
+    
+    /**
+     * Export one dataset to a file, replacing it if it exists.
+     *
+     * @return the statistics of the export, or null if no user is logged in or the export failed
+     */
+    public ExportStats export(ExportDAO.Dataset dataset, ExportWriter.Format format, Path file, ProgressListener listener) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return null;
+        }
+        if (exportDAO == null) {
+            System.err.println("Export needs the sqlite storage engine, not " + Repositories.getEngine());
+            return null;
+        }
+        
+        long start = System.currentTimeMillis();
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        try {
+            long rows;
+            ExportWriter out;
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING);
+                 ExportWriter writer = new ExportWriter(channel, format, dataset.getColumns())) {
+                out = writer;
+                rows = exportDAO.export(currentUser.getId(), dataset, out,
+                                        listener == null ? null : done -> listener.onProgress(dataset, done));
+            }
+            // Counted after close, which writes out the rest of the buffer
+            long bytes = out.getBytesWritten();
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+            if (listener != null) {
+                listener.onProgress(dataset, rows);
+            }
+            return new ExportStats(dataset, file, rows, bytes, System.currentTimeMillis() - start);
+        } catch (SQLException | IOException e) {
+            System.err.println("Error exporting " + dataset.getFileName() + " to " + file + ": " + e.getMessage());
+            e.printStackTrace();
+            try {
+                Files.deleteIfExists(partial);
+            } catch (IOException ignored) {
+                // Left for the next export to overwrite
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Export every dataset into a directory as expenses.csv, income.csv, budgets.csv
+     * and reminders.csv (or .json).
+     *
+     * @return the statistics of each file, or null if any export failed
+     */
+    public List<ExportStats> exportAll(ExportWriter.Format format, Path directory, ProgressListener listener) {
+        List<ExportStats> results = new ArrayList<>();
+        for (ExportDAO.Dataset dataset : ExportDAO.Dataset.values()) {
+            Path file = directory.resolve(dataset.getFileName() + "." + format.getExtension());
+            ExportStats stats = export(dataset, format, file, listener);
+            if (stats == null) {
+                return null;
+            }
+            results.add(stats);
+        }
+        return results;
+    }
+    
+    public CompletableFuture<List<ExportStats>> exportAllAsync(ExportWriter.Format format, Path directory) {
+        return ServiceExecutor.submit(() -> exportAll(format, directory, null));
+    }
+    
+    public static final class ExportStats {
+        private final ExportDAO.Dataset dataset;
+        private final Path file;
+        private final long rows;
+        private final long bytes;
+        private final long elapsedMillis;
+        
+        ExportStats(ExportDAO.Dataset dataset, Path file, long rows, long bytes, long elapsedMillis) {
+            this.dataset = dataset;
+            this.file = file;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+        
+        public ExportDAO.Dataset getDataset() {
+            return dataset;
+        }
+        
+        public Path getFile() {
+            return file;
+        }
+        
+        public long getRows() {
+            return rows;
+        }
+        
+        public long getBytes() {
+            return bytes;
+        }
+        
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+        
+        public double getRowsPerSecond() {
+            return elapsedMillis == 0 ? rows : rows * 1000.0 / elapsedMillis;
+        }
+        
+        public double getMegabytesPerSecond() {
+            return elapsedMillis == 0 ? 0.0 : bytes / 1048576.0 * 1000.0 / elapsedMillis;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("ExportStats{dataset=%s, file=%s, rows=%d, bytes=%d, elapsed=%dms, throughput=%.0f rows/s (%.1f MB/s)}",
+                                 dataset.getFileName(), file, rows, bytes, elapsedMillis, getRowsPerSecond(), getMegabytesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.personalbudgeting.service;
+
+import java.util.Arrays;
+
+/**
+ * The transaction fingerprints of one user's ledger, as a {@link BloomFilter} in front
+ * of an exact multiset of the fingerprints. Most lookups are of new transactions and
+ * are answered by the filter alone; only the ones it lets through search the multiset.
+ *
+ * The multiset is a sorted array with one entry per row, 8 bytes a row, so rows with
+ * the same fingerprint are counted. New fingerprints go to a small unsorted buffer
+ * that is sorted and merged into the array from the back when it fills up; removals
+ * close the gap, as they are rare. The filter keeps the bits of removed fingerprints,
+ * which only costs a search, and is rebuilt twice as large from the array when the
+ * rows outgrow it, until it reaches its largest size (about 26.8 million rows), past
+ * which it lets more lookups through to the array. Not thread-safe;
+ * {@link DuplicateDetector} guards it.
+ */
+final class FingerprintIndex {
+    private static final int PENDING = 4096;
+    
+    private long[] sorted;
+    private int sortedSize;
+    private final long[] pending = new long[PENDING];
+    private int pendingSize;
+    private BloomFilter filter;
+    private int maxId;
+    private int loadedMaxId;
+    private boolean stale;
+    
+    /**
+     * @param expectedRows the rows about to be added, so that loading them does not grow the array
+     */
+    FingerprintIndex(int expectedRows) {
+        sorted = new long[Math.max(PENDING, expectedRows)];
+        filter = new BloomFilter(Math.max(PENDING, expectedRows));
+    }
+    
+    /**
+     * Add the fingerprint of a stored row.
+     */
+    void add(long fingerprint, int id) {
+        if (pendingSize == PENDING) {
+            merge();
+        }
+        pending[pendingSize++] = fingerprint;
+        maxId = Math.max(maxId, id);
+        
+        if (size() > filter.getCapacity() && !filter.isMaxSize()) {
+            rebuildFilter();
+        } else {
+            filter.add(fingerprint);
+        }
+    }
+    
+    /**
+     * Take out one row with the fingerprint.
+     *
+     * @return false if there was none
+     */
+    boolean remove(long fingerprint) {
+        for (int i = 0; i < pendingSize; i++) {
+            if (pending[i] == fingerprint) {
+                pending[i] = pending[--pendingSize];
+                return true;
+            }
+        }
+        int i = Arrays.binarySearch(sorted, 0, sortedSize, fingerprint);
+        if (i < 0) {
+            return false;
+        }
+        System.arraycopy(sorted, i + 1, sorted, i, sortedSize - i - 1);
+        sortedSize--;
+        return true;
+    }
+    
+    /**
+     * The number of rows with the fingerprint.
+     */
+    int count(long fingerprint) {
+        if (!filter.mightContain(fingerprint)) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < pendingSize; i++) {
+            if (pending[i] == fingerprint) {
+                count++;
+            }
+        }
+        int i = Arrays.binarySearch(sorted, 0, sortedSize, fingerprint);
+        if (i >= 0) {
+            // Equal entries are adjacent; the search may land on any of them
+            int first = i;
+            while (first > 0 && sorted[first - 1] == fingerprint) {
+                first--;
+            }
+            int last = i;
+            while (last + 1 < sortedSize && sorted[last + 1] == fingerprint) {
+                last++;
+            }
+            count += last - first + 1;
+        }
+        return count;
+    }
+    
+    int size() {
+        return sortedSize + pendingSize;
+    }
+    
+    /**
+     * The highest row id added; rows stored later have higher ids.
+     */
+    int getMaxId() {
+        return maxId;
+    }
+    
+    /**
+     * The highest row id when the index was last loaded from the repository; a row
+     * with an id up to it was read by that load.
+     */
+    int getLoadedMaxId() {
+        return loadedMaxId;
+    }
+    
+    /**
+     * Note that the index is now up to date with the repository.
+     */
+    void setLoaded() {
+        loadedMaxId = maxId;
+        stale = false;
+    }
+    
+    /**
+     * Whether rows may have changed outside this process since the index was loaded.
+     */
+    boolean isStale() {
+        return stale;
+    }
+    
+    void setStale(boolean stale) {
+        this.stale = stale;
+    }
+    
+    // Sort the buffer and merge it into the array, largest first from the back
+    private void merge() {
+        Arrays.sort(pending, 0, pendingSize);
+        int total = sortedSize + pendingSize;
+        if (total > sorted.length) {
+            sorted = Arrays.copyOf(sorted, Math.max(total, sorted.length + (sorted.length >> 2)));
+        }
+        int i = sortedSize - 1;
+        int j = pendingSize - 1;
+        for (int k = total - 1; j >= 0; k--) {
+            sorted[k] = i >= 0 && sorted[i] > pending[j] ? sorted[i--] : pending[j--];
+        }
+        sortedSize = total;
+        pendingSize = 0;
+    }
+    
+    private void rebuildFilter() {
+        filter = new BloomFilter(size() * 2L);
+        for (int i = 0; i < sortedSize; i++) {
+            filter.add(sorted[i]);
+        }
+        for (int i = 0; i < pendingSize; i++) {
+            filter.add(pending[i]);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.personalbudgeting.service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counters of one import run, by {@link CsvImporter} and {@link BankFileImporter}.
+ */
+public final class ImportStats {
+    
+    /**
+     * Told about every written batch, from the importing thread.
+     */
+    public interface ProgressListener {
+        void onProgress(ImportStats stats);
+    }
+    
+    private final long fileBytes;
+    private final long bytesRead;
+    private final long rows;
+    private final long expenses;
+    private final long incomes;
+    private final long rejected;
+    private final long duplicates;
+    private final long failed;
+    private final boolean running;
+    private final boolean cancelled;
+    private final long elapsedMillis;
+    private final List<String> errors;
+    
+    ImportStats(long fileBytes, long bytesRead, long rows, long expenses, long incomes, long rejected, long duplicates,
+                long failed, boolean running, boolean cancelled, long elapsedMillis, List<String> errors) {
+        this.fileBytes = fileBytes;
+        this.bytesRead = bytesRead;
+        this.rows = rows;
+        this.expenses = expenses;
+        this.incomes = incomes;
+        this.rejected = rejected;
+        this.duplicates = duplicates;
+        this.failed = failed;
+        this.running = running;
+        this.cancelled = cancelled;
+        this.elapsedMillis = elapsedMillis;
+        this.errors = Collections.unmodifiableList(errors);
+    }
+    
+    public long getFileBytes() {
+        return fileBytes;
+    }
+    
+    public long getBytesRead() {
+        return bytesRead;
+    }
+    
+    // Data rows parsed, not counting the header and blank lines
+    public long getRows() {
+        return rows;
+    }
+    
+    public long getExpenses() {
+        return expenses;
+    }
+    
+    public long getIncomes() {
+        return incomes;
+    }
+    
+    // Rows that could not be parsed or failed validation
+    public long getRejected() {
+        return rejected;
+    }
+    
+    // Valid rows skipped because the ledger already had them (see DuplicateDetector.Session)
+    public long getDuplicates() {
+        return duplicates;
+    }
+    
+    // Valid rows the database did not store
+    public long getFailed() {
+        return failed;
+    }
+    
+    public boolean isRunning() {
+        return running;
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+    
+    // The first rejected rows, as "line N: reason"
+    public List<String> getErrors() {
+        return errors;
+    }
+    
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? rows : rows * 1000.0 / elapsedMillis;
+    }
+    
+    public double getMegabytesPerSecond() {
+        return elapsedMillis == 0 ? 0.0 : bytesRead / 1048576.0 * 1000.0 / elapsedMillis;
+    }
+    
+    public double getPercentDone() {
+        return fileBytes == 0 ? 100.0 : bytesRead * 100.0 / fileBytes;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("ImportStats{rows=%d, expenses=%d, incomes=%d, rejected=%d, duplicates=%d, failed=%d, bytes=%d, elapsed=%dms, throughput=%.0f rows/s (%.1f MB/s)%s}",
+                             rows, expenses, incomes, rejected, duplicates, failed, bytesRead, elapsedMillis, getRowsPerSecond(),
+                             getMegabytesPerSecond(), cancelled ? ", cancelled" : "");
+    }
+}
@@ -1,18 +1,35 @@
 package com.personalbudgeting.service;
 
-import com.personalbudgeting.dao.IncomeDAO;
+import com.personalbudgeting.dao.StorageFormat;
+import com.personalbudgeting.repository.IncomeRepository;
+import com.personalbudgeting.repository.Repositories;
 import com.personalbudgeting.model.Income;
+import com.personalbudgeting.model.Trend;
 import com.personalbudgeting.model.User;
 
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class IncomeService {
-    private IncomeDAO incomeDAO;
+    private IncomeRepository incomeRepository;
     
     public IncomeService() {
-        this.incomeDAO = new IncomeDAO();
+        this(Repositories.incomes());
+    }
+    
+    public IncomeService(IncomeRepository incomeRepository) {
+        this.incomeRepository = incomeRepository;
     }
     
     public boolean addIncome(String source, double amount, LocalDate date, String description) {
@@ -22,12 +39,83 @@ public class IncomeService {
         }
         
         // Validate input
-        if (source == null || source.trim().isEmpty() || amount <= 0 || date == null) {
+        if (!isValid(source, amount, date)) {
+            return false;
+        }
+        
+        Income income = new Income(currentUser.getId(), source, amount, date, description);
+        boolean success = incomeRepository.add(income);
+        if (success) {
+            ColumnarLedger.incomes().recordAdded(income);
+            DuplicateDetector.incomes().recordAdded(income);
+            SummaryCache.getInstance().invalidate(currentUser.getId(), date);
+        }
+        return success;
+    }
+    
+    /**
+     * Add many income entries for the current user in one batched transaction.
+     * Invalid entries are skipped.
+     *
+     * @return the number of income entries stored
+     */
+    public int addIncomes(Collection<Income> incomes) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null || incomes == null) {
+            return 0;
+        }
+        
+        List<Income> valid = new ArrayList<>();
+        for (Income income : incomes) {
+            if (isValid(income.getSource(), income.getAmount(), income.getDate())) {
+                income.setUserId(currentUser.getId());
+                valid.add(income);
+            }
+        }
+        
+        if (valid.size() < incomes.size()) {
+            System.out.println("Skipped " + (incomes.size() - valid.size()) + " invalid income entries in bulk add");
+        }
+        
+        if (valid.isEmpty() || incomeRepository.addAll(valid) == null) {
+            return 0;
+        }
+        // Rows that were not stored, on a shard whose transaction failed, have no id
+        valid.removeIf(income -> income.getId() == 0);
+        
+        ColumnarLedger<Income> columns = ColumnarLedger.incomes();
+        DuplicateDetector<Income> duplicates = DuplicateDetector.incomes();
+        Set<YearMonth> periods = new HashSet<>();
+        for (Income income : valid) {
+            columns.recordAdded(income);
+            duplicates.recordAdded(income);
+            periods.add(YearMonth.from(income.getDate()));
+        }
+        for (YearMonth period : periods) {
+            SummaryCache.getInstance().invalidate(currentUser.getId(), period);
+        }
+        return valid.size();
+    }
+    
+    /**
+     * The validation rules applied to every new or updated income entry.
+     */
+    public static boolean isValid(String source, double amount, LocalDate date) {
+        return source != null && !source.trim().isEmpty() && amount > 0 && ExpenseService.isValidDate(date);
+    }
+    
+    /**
+     * Whether the current user already has income of the amount on the date with the
+     * same source and description; see {@link ExpenseService#isDuplicate}.
+     */
+    public boolean isDuplicate(String source, double amount, LocalDate date, String description) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null || source == null || date == null) {
             return false;
         }
         
         Income income = new Income(currentUser.getId(), source, amount, date, description);
-        return incomeDAO.add(income);
+        return DuplicateDetector.incomes().isDuplicate(income);
     }
     
     public boolean updateIncome(int incomeId, String source, double amount, LocalDate date, String description) {
@@ -37,23 +125,34 @@ public class IncomeService {
         }
         
         // Validate input
-        if (source == null || source.trim().isEmpty() || amount <= 0 || date == null) {
+        if (!isValid(source, amount, date)) {
             return false;
         }
         
         // Get the income to update
-        Income income = incomeDAO.findById(incomeId, currentUser.getId());
+        Income income = incomeRepository.findById(incomeId, currentUser.getId());
         if (income == null) {
             return false;
         }
         
+        LocalDate oldDate = income.getDate();
+        long oldFingerprint = DuplicateDetector.incomes().fingerprint(income);
+        
         // Update the income
         income.setSource(source);
         income.setAmount(amount);
         income.setDate(date);
         income.setDescription(description);
         
-        return incomeDAO.update(income);
+        boolean success = incomeRepository.update(income);
+        if (success) {
+            ColumnarLedger.incomes().recordRemoved(currentUser.getId(), incomeId, oldDate);
+            ColumnarLedger.incomes().recordAdded(income);
+            DuplicateDetector.incomes().recordUpdated(oldFingerprint, income);
+            SummaryCache.getInstance().invalidate(currentUser.getId(), oldDate);
+            SummaryCache.getInstance().invalidate(currentUser.getId(), date);
+        }
+        return success;
     }
     
     public boolean deleteIncome(int incomeId) {
@@ -62,7 +161,19 @@ public class IncomeService {
             return false;
         }
         
-        return incomeDAO.delete(incomeId, currentUser.getId());
+        // Get the income before deleting; the columnar ledger needs its date
+        Income income = incomeRepository.findById(incomeId, currentUser.getId());
+        if (income == null) {
+            return false;
+        }
+        
+        boolean success = incomeRepository.delete(incomeId, currentUser.getId());
+        if (success) {
+            ColumnarLedger.incomes().recordRemoved(currentUser.getId(), incomeId, income.getDate());
+            DuplicateDetector.incomes().recordRemoved(currentUser.getId(), DuplicateDetector.incomes().fingerprint(income));
+            SummaryCache.getInstance().invalidate(currentUser.getId(), income.getDate());
+        }
+        return success;
     }
     
     public List<Income> getAllIncome() {
@@ -71,7 +182,81 @@ public class IncomeService {
             return null;
         }
         
-        return incomeDAO.findAllByUserId(currentUser.getId());
+        return incomeRepository.findAllByUserId(currentUser.getId());
+    }
+    
+    public int countIncome() {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return 0;
+        }
+        
+        return incomeRepository.countByUserId(currentUser.getId());
+    }
+    
+    /**
+     * Get the page of income entries that follows the given one, newest first.
+     * Pass null to get the first page.
+     */
+    public List<Income> getIncomeAfter(Income last, int limit) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return new ArrayList<>();
+        }
+        
+        if (last == null) {
+            return incomeRepository.findPageByUserId(currentUser.getId(), null, 0, limit);
+        }
+        return incomeRepository.findPageByUserId(currentUser.getId(), last.getDate(), last.getId(), limit);
+    }
+    
+    public List<Income> getIncomeAt(int offset, int limit) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return new ArrayList<>();
+        }
+        
+        return incomeRepository.findPageAtOffset(currentUser.getId(), offset, limit);
+    }
+    
+    /**
+     * Search the source and description of the current user's income entries, ranked
+     * and paged like {@link ExpenseService#searchExpenses}.
+     */
+    public List<Income> searchIncome(String text, int offset, int limit) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null || text == null) {
+            return new ArrayList<>();
+        }
+        
+        return incomeRepository.search(currentUser.getId(), text, offset, limit);
+    }
+    
+    /**
+     * Stream all income entries of the current user without materializing them.
+     * Close the stream when done (try-with-resources) to release its database connection.
+     */
+    public Stream<Income> streamAllIncome() {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return Stream.empty();
+        }
+        
+        return incomeRepository.streamAllByUserId(currentUser.getId());
+    }
+    
+    /**
+     * Visit all income entries of the current user in constant memory.
+     *
+     * @return the number of income entries visited
+     */
+    public long forEachIncome(Consumer<Income> visitor) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return 0;
+        }
+        
+        return incomeRepository.forEachByUserId(currentUser.getId(), visitor);
     }
     
     public List<Income> getIncomeForPeriod(YearMonth period) {
@@ -80,7 +265,7 @@ public class IncomeService {
             return null;
         }
         
-        return incomeDAO.findByPeriod(currentUser.getId(), period);
+        return incomeRepository.findByPeriod(currentUser.getId(), period);
     }
     
     public double getTotalIncomeForPeriod(YearMonth period) {
@@ -89,6 +274,99 @@ public class IncomeService {
             return 0.0;
         }
         
-        return incomeDAO.getTotalIncomeByPeriod(currentUser.getId(), period);
+        return SummaryCache.getInstance().get(SummaryCache.Kind.INCOME_TOTAL, currentUser.getId(), period,
+                () -> loadTotalIncome(currentUser.getId(), period.atDay(1), period.atEndOfMonth()));
+    }
+    
+    /**
+     * Total income of the current user on the days from..to, both inclusive; see
+     * {@link ExpenseService#getTotalExpensesBetween}.
+     */
+    public double getTotalIncomeBetween(LocalDate from, LocalDate to) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null || from == null || to == null || from.isAfter(to)) {
+            return 0.0;
+        }
+        
+        return loadTotalIncome(currentUser.getId(), from, to);
+    }
+    
+    private Double loadTotalIncome(int userId, LocalDate from, LocalDate to) {
+        LedgerColumns columns = ColumnarLedger.incomes().getColumns(userId);
+        if (columns != null) {
+            return StorageFormat.fromCents(columns.sumCents(from, to));
+        }
+        return incomeRepository.getTotalIncomeBetween(userId, from, to);
+    }
+    
+    /**
+     * Income of the current user per source and month over first..last, both inclusive;
+     * see {@link ExpenseService#getExpenseTrend}. Without loaded columns this is one
+     * grouped query over the ledger rows of the span, as the aggregates have no source.
+     */
+    public Trend getIncomeTrend(YearMonth first, YearMonth last) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return null;
+        }
+        if (first == null || last == null || last.isBefore(first)) {
+            return Trend.empty(first);
+        }
+        
+        int months = (int) first.until(last, ChronoUnit.MONTHS) + 1;
+        Map<String, long[]> cents = ColumnarLedger.incomes().sumByMonth(currentUser.getId(), first, months);
+        if (cents == null) {
+            return new Trend(first, months, incomeRepository.getMonthlyIncomeBySource(currentUser.getId(), first, last));
+        }
+        
+        Map<String, double[]> monthlyIncome = new HashMap<>();
+        cents.forEach((source, totals) -> monthlyIncome.put(source, StorageFormat.fromCents(totals)));
+        return new Trend(first, months, monthlyIncome);
+    }
+    
+    // Asynchronous variants for the UI; futures complete on the FX thread (see ServiceExecutor)
+    
+    public CompletableFuture<Boolean> addIncomeAsync(String source, double amount, LocalDate date, String description) {
+        return ServiceExecutor.submit(() -> addIncome(source, amount, date, description));
+    }
+    
+    public CompletableFuture<Boolean> isDuplicateAsync(String source, double amount, LocalDate date, String description) {
+        return ServiceExecutor.submit(() -> isDuplicate(source, amount, date, description));
+    }
+    
+    public CompletableFuture<Boolean> updateIncomeAsync(int incomeId, String source, double amount, LocalDate date, String description) {
+        return ServiceExecutor.submit(() -> updateIncome(incomeId, source, amount, date, description));
+    }
+    
+    public CompletableFuture<Boolean> deleteIncomeAsync(int incomeId) {
+        return ServiceExecutor.submit(() -> deleteIncome(incomeId));
+    }
+    
+    public CompletableFuture<Integer> countIncomeAsync() {
+        return ServiceExecutor.submit(this::countIncome);
+    }
+    
+    public CompletableFuture<List<Income>> getIncomeAfterAsync(Income last, int limit) {
+        return ServiceExecutor.submit(() -> getIncomeAfter(last, limit));
+    }
+    
+    public CompletableFuture<List<Income>> getIncomeAtAsync(int offset, int limit) {
+        return ServiceExecutor.submit(() -> getIncomeAt(offset, limit));
+    }
+    
+    public CompletableFuture<List<Income>> searchIncomeAsync(String text, int offset, int limit) {
+        return ServiceExecutor.submit(() -> searchIncome(text, offset, limit));
+    }
+    
+    public CompletableFuture<Double> getTotalIncomeBetweenAsync(LocalDate from, LocalDate to) {
+        return ServiceExecutor.submit(() -> getTotalIncomeBetween(from, to));
+    }
+    
+    public CompletableFuture<Double> getTotalIncomeForPeriodAsync(YearMonth period) {
+        return ServiceExecutor.submit(() -> getTotalIncomeForPeriod(period));
+    }
+    
+    public CompletableFuture<Trend> getIncomeTrendAsync(YearMonth first, YearMonth last) {
+        return ServiceExecutor.submit(() -> getIncomeTrend(first, last));
     }
 } 
\ No newline at end of file
@@ -0,0 +1,242 @@
+package com.personalbudgeting.service;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * One user's expense or income ledger as parallel primitive columns, sorted by
+ * day: ids, epoch days, amounts in cents and the dictionary codes of the
+ * categories (income sources for income). Descriptions are a lazily filled
+ * column, loaded by id the first time they are asked for.
+ *
+ * Totals over a range of days come from a {@link DailyTotals} index kept next to
+ * the columns, so any range, from one day to the whole ledger, is answered in
+ * O(log days) per category without touching the rows. All access is synchronized
+ * on the instance.
+ */
+public class LedgerColumns {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final String NOT_LOADED = new String("not loaded"); // Compared by identity
+    
+    private final IntFunction<String> descriptionLoader;
+    
+    private int size;
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] days = new int[INITIAL_CAPACITY];
+    private long[] cents = new long[INITIAL_CAPACITY];
+    private short[] codes = new short[INITIAL_CAPACITY];
+    private String[] descriptions = new String[INITIAL_CAPACITY];
+    private final DailyTotals totals = new DailyTotals();
+    
+    LedgerColumns(IntFunction<String> descriptionLoader) {
+        this.descriptionLoader = descriptionLoader;
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    /**
+     * Add a row in day order.
+     *
+     * @return false if a row with this id and date is already there, e.g. one a load saw
+     *         committed before its change was recorded
+     */
+    synchronized boolean insert(int id, LocalDate date, long amountCents, short code) {
+        // Rows of the same day are in no particular order
+        int day = (int) date.toEpochDay();
+        int row = upperBound(day);
+        for (int i = lowerBound(day); i < row; i++) {
+            if (ids[i] == id) {
+                return false;
+            }
+        }
+        
+        if (size == ids.length) {
+            grow();
+        }
+        int tail = size - row;
+        System.arraycopy(ids, row, ids, row + 1, tail);
+        System.arraycopy(days, row, days, row + 1, tail);
+        System.arraycopy(cents, row, cents, row + 1, tail);
+        System.arraycopy(codes, row, codes, row + 1, tail);
+        System.arraycopy(descriptions, row, descriptions, row + 1, tail);
+        
+        ids[row] = id;
+        days[row] = day;
+        cents[row] = amountCents;
+        codes[row] = code;
+        descriptions[row] = NOT_LOADED;
+        size++;
+        totals.add(day, code, amountCents);
+        return true;
+    }
+    
+    /**
+     * Add a row at the end, for bulk loading; call {@link #sortByDay()} afterwards.
+     */
+    synchronized void append(int id, LocalDate date, long amountCents, short code) {
+        if (size == ids.length) {
+            grow();
+        }
+        ids[size] = id;
+        days[size] = (int) date.toEpochDay();
+        cents[size] = amountCents;
+        codes[size] = code;
+        descriptions[size] = NOT_LOADED;
+        totals.add(days[size], code, amountCents);
+        size++;
+    }
+    
+    synchronized void sortByDay() {
+        // Sort (day, row) pairs packed into longs, then permute every column once
+        long[] order = new long[size];
+        for (int row = 0; row < size; row++) {
+            order[row] = ((long) days[row] << 32) | row;
+        }
+        Arrays.sort(order);
+        
+        int capacity = ids.length;
+        int[] sortedIds = new int[capacity];
+        int[] sortedDays = new int[capacity];
+        long[] sortedCents = new long[capacity];
+        short[] sortedCodes = new short[capacity];
+        String[] sortedDescriptions = new String[capacity];
+        for (int i = 0; i < size; i++) {
+            int row = (int) order[i];
+            sortedIds[i] = ids[row];
+            sortedDays[i] = days[row];
+            sortedCents[i] = cents[row];
+            sortedCodes[i] = codes[row];
+            sortedDescriptions[i] = descriptions[row];
+        }
+        ids = sortedIds;
+        days = sortedDays;
+        cents = sortedCents;
+        codes = sortedCodes;
+        descriptions = sortedDescriptions;
+    }
+    
+    /**
+     * Remove the row with the given id and date.
+     *
+     * @return false if there is no such row
+     */
+    synchronized boolean remove(int id, LocalDate date) {
+        int day = (int) date.toEpochDay();
+        int row = lowerBound(day);
+        int end = upperBound(day);
+        while (row < end && ids[row] != id) {
+            row++;
+        }
+        if (row == end) {
+            return false;
+        }
+        totals.add(day, codes[row], -cents[row]);
+        
+        int tail = size - row - 1;
+        System.arraycopy(ids, row + 1, ids, row, tail);
+        System.arraycopy(days, row + 1, days, row, tail);
+        System.arraycopy(cents, row + 1, cents, row, tail);
+        System.arraycopy(codes, row + 1, codes, row, tail);
+        System.arraycopy(descriptions, row + 1, descriptions, row, tail);
+        size--;
+        descriptions[size] = null;
+        return true;
+    }
+    
+    /**
+     * Total in cents of the rows dated from..to, both inclusive.
+     */
+    public synchronized long sumCents(LocalDate from, LocalDate to) {
+        return totals.sum((int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+    
+    /**
+     * Total in cents of one category's rows dated from..to, both inclusive.
+     */
+    public synchronized long sumCents(LocalDate from, LocalDate to, int code) {
+        return totals.sum((int) from.toEpochDay(), (int) to.toEpochDay(), code);
+    }
+    
+    /**
+     * Add the totals in cents of the rows dated from..to, both inclusive, to
+     * totals[code] for each category code.
+     *
+     * @param totals indexed by category code; at least as long as the dictionary
+     */
+    public synchronized void sumByCategory(LocalDate from, LocalDate to, long[] totals) {
+        this.totals.sumByCode((int) from.toEpochDay(), (int) to.toEpochDay(), totals);
+    }
+    
+    /**
+     * Add the monthly totals in cents of one category (or all, for code -1) to
+     * totals[i] for the month i months after first, for as many months as totals holds.
+     */
+    public synchronized void sumByMonth(YearMonth first, int code, long[] totals) {
+        for (int i = 0; i < totals.length; i++) {
+            YearMonth month = first.plusMonths(i);
+            int from = (int) month.atDay(1).toEpochDay();
+            int to = (int) month.atEndOfMonth().toEpochDay();
+            totals[i] += code < 0 ? this.totals.sum(from, to) : this.totals.sum(from, to, code);
+        }
+    }
+    
+    /**
+     * The description of a row, loaded on first use.
+     *
+     * @return null if the row has no description or does not exist
+     */
+    public synchronized String getDescription(int id) {
+        for (int row = 0; row < size; row++) {
+            if (ids[row] == id) {
+                if (descriptions[row] == NOT_LOADED) {
+                    descriptions[row] = descriptionLoader.apply(id);
+                }
+                return descriptions[row];
+            }
+        }
+        return null;
+    }
+    
+    // First row of the given day or later
+    private int lowerBound(int day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    // First row after the given day
+    private int upperBound(int day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] <= day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        days = Arrays.copyOf(days, capacity);
+        cents = Arrays.copyOf(cents, capacity);
+        codes = Arrays.copyOf(codes, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+    }
+}
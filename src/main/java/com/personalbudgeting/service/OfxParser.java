@@ -0,0 +1,250 @@
+package com.personalbudgeting.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Streaming parser of OFX and QFX statements, both the SGML form of OFX 1.x, whose
+ * leaf elements have no end tags, and the XML form of OFX 2.x.
+ *
+ * The file is read through a fixed character buffer and scanned tag by tag; only the
+ * text of the transaction fields is turned into Strings. Every STMTTRN aggregate of
+ * bank and credit card statements becomes one transaction: DTPOSTED gives the date,
+ * TRNAMT the signed amount, NAME the payee and MEMO the memo. A DEBIT, CHECK, FEE or
+ * SRVCHG transaction with a positive amount is taken as a debit, as some banks write
+ * them unsigned.
+ */
+public class OfxParser implements StatementParser {
+    private static final int BUFFER_CHARS = 64 * 1024;
+    private static final String[] FIELDS = { "DTPOSTED", "TRNAMT", "TRNTYPE", "NAME", "MEMO" };
+    
+    private Reader in;
+    private final char[] buffer = new char[BUFFER_CHARS];
+    private int position;
+    private int limit;
+    private long line;
+    
+    // The transaction being read, null outside STMTTRN
+    private Transaction current;
+    
+    @Override
+    public void parse(Reader in, Handler handler) throws IOException {
+        this.in = in;
+        position = 0;
+        limit = 0;
+        line = 1;
+        current = null;
+        
+        StringBuilder tag = new StringBuilder();
+        StringBuilder text = new StringBuilder();
+        int c;
+        while ((c = read()) >= 0) {
+            if (c != '<') {
+                continue; // Header lines of the SGML form and whitespace
+            }
+            
+            tag.setLength(0);
+            while ((c = read()) >= 0 && c != '>') {
+                tag.append((char) c);
+            }
+            if (tag.length() == 0 || tag.charAt(0) == '?' || tag.charAt(0) == '!') {
+                continue; // XML declaration, OFX processing instruction or comment
+            }
+            
+            if (tag.charAt(0) == '/') {
+                if (isTag(tag, 1, "STMTTRN")) {
+                    finish(handler);
+                } else if (isTag(tag, 1, "BANKTRANLIST")) {
+                    finish(handler); // An SGML file that never closed its last transaction
+                }
+                continue;
+            }
+            
+            if (isTag(tag, 0, "STMTTRN")) {
+                finish(handler);
+                current = new Transaction(line);
+                continue;
+            }
+            if (current == null) {
+                continue;
+            }
+            
+            String field = fieldName(tag);
+            if (field == null) {
+                continue; // Not a field we read, its text is skipped by the main loop
+            }
+            text.setLength(0);
+            while ((c = peek()) >= 0 && c != '<') {
+                text.append((char) read());
+            }
+            current.set(field, decode(text));
+        }
+        finish(handler);
+    }
+    
+    private void finish(Handler handler) {
+        Transaction transaction = current;
+        current = null;
+        if (transaction == null) {
+            return;
+        }
+        if (transaction.date == null || transaction.amount == null) {
+            handler.reject(transaction.line, "transaction without DTPOSTED or TRNAMT");
+            return;
+        }
+        
+        LocalDate date;
+        double amount;
+        try {
+            String posted = transaction.date;
+            if (posted.length() < 8) {
+                throw new DateTimeException("Invalid DTPOSTED: " + posted);
+            }
+            date = LocalDate.of(Integer.parseInt(posted.substring(0, 4)), Integer.parseInt(posted.substring(4, 6)),
+                                Integer.parseInt(posted.substring(6, 8)));
+            // Some European banks write a decimal comma
+            amount = AmountParser.DETECT_UNGROUPED.parse(transaction.amount);
+        } catch (DateTimeException | NumberFormatException e) {
+            handler.reject(transaction.line, e.getMessage());
+            return;
+        }
+        
+        if (amount > 0 && transaction.type != null) {
+            switch (transaction.type.toUpperCase(Locale.ROOT)) {
+                case "DEBIT": case "CHECK": case "FEE": case "SRVCHG":
+                    amount = -amount;
+                    break;
+                default:
+                    break;
+            }
+        }
+        handler.transaction(date, amount, nonNull(transaction.name), nonNull(transaction.memo), "");
+    }
+    
+    // The upper-case name of the transaction fields read, null for the others
+    private static String fieldName(CharSequence tag) {
+        for (String name : FIELDS) {
+            if (isTag(tag, 0, name)) {
+                return name;
+            }
+        }
+        return null;
+    }
+    
+    private static boolean isTag(CharSequence tag, int offset, String name) {
+        if (tag.length() - offset != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.toUpperCase(tag.charAt(offset + i)) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Trimmed text with the XML and SGML character entities replaced
+    private static String decode(StringBuilder text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (text.indexOf("&", start) < 0) {
+            return text.substring(start, end);
+        }
+        
+        StringBuilder decoded = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            int semicolon = c == '&' ? text.indexOf(";", i) : -1;
+            if (semicolon < 0 || semicolon >= end || semicolon - i > 8) {
+                decoded.append(c);
+                continue;
+            }
+            String entity = text.substring(i + 1, semicolon);
+            switch (entity) {
+                case "amp": decoded.append('&'); break;
+                case "lt": decoded.append('<'); break;
+                case "gt": decoded.append('>'); break;
+                case "quot": decoded.append('"'); break;
+                case "apos": decoded.append('\''); break;
+                case "nbsp": decoded.append(' '); break;
+                default:
+                    try {
+                        decoded.appendCodePoint(entity.startsWith("#x") ? Integer.parseInt(entity.substring(2), 16)
+                                                                         : Integer.parseInt(entity.substring(1)));
+                    } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+                        decoded.append(text, i, semicolon + 1);
+                    }
+                    break;
+            }
+            i = semicolon;
+        }
+        return decoded.toString();
+    }
+    
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+    
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        char c = buffer[position++];
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+    
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+    
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        position = 0;
+        limit = Math.max(n, 0);
+        return n > 0;
+    }
+    
+    private static final class Transaction {
+        final long line;
+        String type;
+        String date;
+        String amount;
+        String name;
+        String memo;
+        
+        Transaction(long line) {
+            this.line = line;
+        }
+        
+        void set(String field, String value) {
+            if (value.isEmpty()) {
+                return;
+            }
+            switch (field) {
+                case "DTPOSTED": date = value; break;
+                case "TRNAMT": amount = value; break;
+                case "TRNTYPE": type = value; break;
+                case "NAME": name = value; break;
+                default: memo = value; break;
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.personalbudgeting.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Streaming parser of QIF (Quicken Interchange Format) files, one line at a time
+ * through a fixed character buffer.
+ *
+ * Records of the Bank, Cash, CCard, Oth A and Oth L sections become transactions:
+ * D is the date, T (or U) the signed amount, P the payee, M the memo and L the
+ * category, of which the top level is kept; transfers to other accounts ([Account])
+ * have no category. Split lines are ignored, the total amount stands. Records of
+ * account lists, categories, classes, memorized transactions and investment
+ * accounts are skipped.
+ *
+ * Dates are month first (1/5'24, 01/05/2024) unless the parser is built for day-first
+ * files; dates with dots are always day first and yyyy-MM-dd is read as such. Two-digit
+ * years are in 2000-2049 or 1950-1999. Amounts may have a decimal point or comma; see
+ * {@link AmountParser#DETECT}.
+ */
+public class QifParser implements StatementParser {
+    private static final int BUFFER_CHARS = 64 * 1024;
+    
+    private final boolean dayFirst;
+    private Reader in;
+    private final char[] buffer = new char[BUFFER_CHARS];
+    private int position;
+    private int limit;
+    
+    public QifParser() {
+        this(false);
+    }
+    
+    public QifParser(boolean dayFirst) {
+        this.dayFirst = dayFirst;
+    }
+    
+    @Override
+    public void parse(Reader in, Handler handler) throws IOException {
+        this.in = in;
+        position = 0;
+        limit = 0;
+        
+        StringBuilder text = new StringBuilder();
+        // Files without a !Type header hold bank transactions
+        boolean transactions = true;
+        long line = 0;
+        long recordLine = 1;
+        String date = null;
+        String amount = null;
+        String payee = "";
+        String memo = "";
+        String category = "";
+        boolean empty = true;
+        
+        while (readLine(text)) {
+            if (++line == 1 && text.length() > 0 && text.charAt(0) == '\uFEFF') {
+                text.deleteCharAt(0); // Byte order mark
+            }
+            if (text.length() == 0) {
+                continue;
+            }
+            char code = text.charAt(0);
+            if (code == '!') {
+                String header = text.toString().trim().toLowerCase(Locale.ROOT);
+                if (header.startsWith("!type:")) {
+                    String type = header.substring(6).trim();
+                    transactions = type.equals("bank") || type.equals("cash") || type.equals("ccard")
+                                   || type.equals("oth a") || type.equals("oth l");
+                } else if (header.equals("!account")) {
+                    transactions = false;
+                } // !Option and !Clear lines change nothing we read
+                continue;
+            }
+            
+            if (code == '^') {
+                if (transactions && !empty) {
+                    emit(handler, recordLine, date, amount, payee, memo, category);
+                }
+                date = null;
+                amount = null;
+                payee = "";
+                memo = "";
+                category = "";
+                empty = true;
+                continue;
+            }
+            if (!transactions) {
+                continue;
+            }
+            
+            if (empty) {
+                recordLine = line;
+                empty = false;
+            }
+            switch (code) {
+                case 'D':
+                    date = value(text);
+                    break;
+                case 'T':
+                    amount = value(text);
+                    break;
+                case 'U':
+                    if (amount == null) {
+                        amount = value(text);
+                    }
+                    break;
+                case 'P':
+                    payee = value(text);
+                    break;
+                case 'M':
+                    memo = value(text);
+                    break;
+                case 'L':
+                    category = topCategory(value(text));
+                    break;
+                default:
+                    break; // Check number, cleared status, address and split lines
+            }
+        }
+        if (transactions && !empty) {
+            emit(handler, recordLine, date, amount, payee, memo, category);
+        }
+    }
+    
+    private void emit(Handler handler, long line, String date, String amount, String payee, String memo, String category) {
+        if (date == null || amount == null) {
+            handler.reject(line, "record without D or T line");
+            return;
+        }
+        try {
+            handler.transaction(parseDate(date), AmountParser.DETECT.parse(amount), payee, memo, category);
+        } catch (DateTimeException | NumberFormatException e) {
+            handler.reject(line, e.getMessage());
+        }
+    }
+    
+    private static String value(StringBuilder text) {
+        return text.substring(1).trim();
+    }
+    
+    // "Food:Groceries" is Food, "[Savings]" is a transfer without a category
+    private static String topCategory(String category) {
+        if (category.startsWith("[")) {
+            return "";
+        }
+        int colon = category.indexOf(':');
+        int slash = category.indexOf('/'); // Class after the category
+        int end = category.length();
+        if (colon >= 0) {
+            end = colon;
+        }
+        if (slash >= 0 && slash < end) {
+            end = slash;
+        }
+        return category.substring(0, end).trim();
+    }
+    
+    private LocalDate parseDate(String text) {
+        int[] parts = new int[3];
+        char[] separators = new char[3];
+        int count = 0;
+        int value = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : '\0';
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+            } else if (value >= 0 || c == '\0') {
+                if (value < 0 || count == 3) {
+                    throw new DateTimeException("Invalid date: " + text);
+                }
+                parts[count] = value;
+                separators[count++] = c;
+                value = -1;
+            }
+        }
+        if (count != 3) {
+            throw new DateTimeException("Invalid date: " + text);
+        }
+        
+        if (parts[0] > 31) {
+            return LocalDate.of(parts[0], parts[1], parts[2]); // yyyy-MM-dd
+        }
+        int year = parts[2];
+        if (year < 100) {
+            year += year < 50 ? 2000 : 1900;
+        }
+        boolean dayMonth = dayFirst || separators[0] == '.';
+        return dayMonth ? LocalDate.of(year, parts[1], parts[0]) : LocalDate.of(year, parts[0], parts[1]);
+    }
+    
+    // The next line without its terminator, false at the end of the input
+    private boolean readLine(StringBuilder text) throws IOException {
+        text.setLength(0);
+        while (true) {
+            if (position == limit) {
+                int n;
+                do {
+                    n = in.read(buffer, 0, buffer.length);
+                } while (n == 0);
+                if (n < 0) {
+                    return text.length() > 0;
+                }
+                position = 0;
+                limit = n;
+            }
+            
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            text.append(buffer, start, position - start);
+            if (position < limit) {
+                position++; // The newline
+                int length = text.length();
+                if (length > 0 && text.charAt(length - 1) == '\r') {
+                    text.setLength(length - 1);
+                }
+                return true;
+            }
+        }
+    }
+}
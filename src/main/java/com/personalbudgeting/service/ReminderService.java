@@ -1,8 +1,9 @@
 package com.personalbudgeting.service;
 
-import com.personalbudgeting.dao.ReminderDAO;
 import com.personalbudgeting.model.Reminder;
 import com.personalbudgeting.model.User;
+import com.personalbudgeting.repository.ReminderRepository;
+import com.personalbudgeting.repository.Repositories;
 import com.personalbudgeting.service.NotificationService;
 
 import java.time.LocalDateTime;
@@ -12,17 +13,23 @@ import java.util.List;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class ReminderService {
-    private ReminderDAO reminderDAO;
+    private ReminderRepository reminderRepository;
     private Timer reminderTimer;
     private List<Reminder> activeReminders;
     private Set<Integer> processedReminderIds;
     private static Consumer<Void> uiRefreshCallback;
     
     public ReminderService() {
-        this.reminderDAO = new ReminderDAO();
+        this(Repositories.reminders());
+    }
+    
+    public ReminderService(ReminderRepository reminderRepository) {
+        this.reminderRepository = reminderRepository;
         this.activeReminders = new ArrayList<>();
         this.processedReminderIds = new HashSet<>();
         this.reminderTimer = new Timer(true); // Daemon timer
@@ -67,7 +74,7 @@ public class ReminderService {
         }
         
         Reminder reminder = new Reminder(currentUser.getId(), title, description, dueDate);
-        boolean success = reminderDAO.add(reminder);
+        boolean success = reminderRepository.add(reminder);
         
         if (success) {
             // Add to active reminders
@@ -89,7 +96,7 @@ public class ReminderService {
         }
         
         // Get the reminder to update
-        Reminder reminder = reminderDAO.findById(reminderId, currentUser.getId());
+        Reminder reminder = reminderRepository.findById(reminderId, currentUser.getId());
         if (reminder == null) {
             return false;
         }
@@ -99,7 +106,7 @@ public class ReminderService {
         reminder.setDescription(description);
         reminder.setDueDate(dueDate);
         
-        boolean success = reminderDAO.update(reminder);
+        boolean success = reminderRepository.update(reminder);
         
         if (success) {
             // Refresh active reminders
@@ -119,8 +126,8 @@ public class ReminderService {
         }
         
         // Get the reminder to update its status in the notification history
-        Reminder reminder = reminderDAO.findById(reminderId, currentUser.getId());
-        boolean success = reminderDAO.markAsCompleted(reminderId, currentUser.getId());
+        Reminder reminder = reminderRepository.findById(reminderId, currentUser.getId());
+        boolean success = reminderRepository.markAsCompleted(reminderId, currentUser.getId());
         
         if (success) {
             // Update notification history if the reminder was found
@@ -146,7 +153,7 @@ public class ReminderService {
             return false;
         }
         
-        boolean success = reminderDAO.delete(reminderId, currentUser.getId());
+        boolean success = reminderRepository.delete(reminderId, currentUser.getId());
         
         if (success) {
             // Refresh active reminders
@@ -165,7 +172,34 @@ public class ReminderService {
             return null;
         }
         
-        return reminderDAO.findAllByUserId(currentUser.getId());
+        return reminderRepository.findAllByUserId(currentUser.getId());
+    }
+    
+    /**
+     * Stream all reminders of the current user without materializing them.
+     * Close the stream when done (try-with-resources) to release its database connection.
+     */
+    public Stream<Reminder> streamAllReminders() {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return Stream.empty();
+        }
+        
+        return reminderRepository.streamAllByUserId(currentUser.getId());
+    }
+    
+    /**
+     * Visit all reminders of the current user in constant memory.
+     *
+     * @return the number of reminders visited
+     */
+    public long forEachReminder(Consumer<Reminder> visitor) {
+        User currentUser = UserService.getCurrentUser();
+        if (currentUser == null) {
+            return 0;
+        }
+        
+        return reminderRepository.forEachByUserId(currentUser.getId(), visitor);
     }
     
     public List<Reminder> getActiveReminders() {
@@ -174,7 +208,7 @@ public class ReminderService {
             return null;
         }
         
-        return reminderDAO.findActiveReminders(currentUser.getId());
+        return reminderRepository.findActiveReminders(currentUser.getId());
     }
     
     private void refreshActiveReminders() {
@@ -185,7 +219,7 @@ public class ReminderService {
             return;
         }
         
-        List<Reminder> newActiveReminders = reminderDAO.findActiveReminders(currentUser.getId());
+        List<Reminder> newActiveReminders = reminderRepository.findActiveReminders(currentUser.getId());
         
         // Clear processed reminder IDs that are no longer in the active reminders list
         Set<Integer> currentActiveIds = new HashSet<>();
@@ -206,7 +240,7 @@ public class ReminderService {
             return;
         }
         
-        List<Reminder> dueReminders = reminderDAO.findDueReminders(currentUser.getId(), LocalDateTime.now());
+        List<Reminder> dueReminders = reminderRepository.findDueReminders(currentUser.getId(), LocalDateTime.now());
         
         for (Reminder reminder : dueReminders) {
             // Skip if we've already processed this reminder
@@ -238,4 +272,30 @@ public class ReminderService {
             reminderTimer = null;
         }
     }
+    
+    // Asynchronous variants for the UI; futures complete on the FX thread (see ServiceExecutor)
+    
+    public CompletableFuture<Boolean> addReminderAsync(String title, String description, LocalDateTime dueDate) {
+        return ServiceExecutor.submit(() -> addReminder(title, description, dueDate));
+    }
+    
+    public CompletableFuture<Boolean> updateReminderAsync(int reminderId, String title, String description, LocalDateTime dueDate) {
+        return ServiceExecutor.submit(() -> updateReminder(reminderId, title, description, dueDate));
+    }
+    
+    public CompletableFuture<Boolean> markReminderAsCompletedAsync(int reminderId) {
+        return ServiceExecutor.submit(() -> markReminderAsCompleted(reminderId));
+    }
+    
+    public CompletableFuture<Boolean> deleteReminderAsync(int reminderId) {
+        return ServiceExecutor.submit(() -> deleteReminder(reminderId));
+    }
+    
+    public CompletableFuture<List<Reminder>> getAllRemindersAsync() {
+        return ServiceExecutor.submit(this::getAllReminders);
+    }
+    
+    public CompletableFuture<List<Reminder>> getActiveRemindersAsync() {
+        return ServiceExecutor.submit(this::getActiveReminders);
+    }
 } 
\ No newline at end of file
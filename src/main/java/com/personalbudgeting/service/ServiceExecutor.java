@@ -0,0 +1,105 @@
+package com.personalbudgeting.service;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs service calls off the JavaFX Application Thread for the *Async service methods.
+ *
+ * Work runs on a small pool of daemon threads with a bounded queue, and each
+ * future is completed through Platform.runLater, so callbacks attached with
+ * thenAccept and friends run on the FX thread and may touch controls directly.
+ * A future cancelled before its task starts never runs the task. When the queue
+ * is full the future fails with a RejectedExecutionException instead of blocking
+ * the caller.
+ */
+public final class ServiceExecutor {
+    private static final int THREADS = Math.max(1, Integer.getInteger("budget.async.threads", 2));
+    private static final int QUEUE_SIZE = Math.max(1, Integer.getInteger("budget.async.queueSize", 64));
+    
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+        THREADS, THREADS, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(QUEUE_SIZE),
+        new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "service-async-" + count.incrementAndGet());
+                thread.setDaemon(true); // Never keeps the application alive
+                return thread;
+            }
+        });
+    
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+    
+    private ServiceExecutor() {
+    }
+    
+    /**
+     * Run work on the service pool.
+     *
+     * @return a future completed on the FX thread with the work's result or exception
+     */
+    public static <T> CompletableFuture<T> submit(Supplier<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable task = () -> {
+            if (future.isDone()) {
+                return; // Cancelled while queued
+            }
+            try {
+                T result = work.get();
+                deliver(() -> future.complete(result));
+            } catch (Throwable t) {
+                deliver(() -> future.completeExceptionally(t));
+            }
+        };
+        
+        try {
+            EXECUTOR.execute(task);
+        } catch (RejectedExecutionException e) {
+            System.err.println("Service queue full, rejecting request: " + e.getMessage());
+            future.completeExceptionally(e);
+            return future;
+        }
+        
+        // Free the queue slot of a request cancelled before it started
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                EXECUTOR.remove(task);
+            }
+        });
+        return future;
+    }
+    
+    private static void deliver(Runnable completion) {
+        try {
+            Platform.runLater(completion);
+        } catch (IllegalStateException e) {
+            // No FX toolkit (headless tools): complete on the worker thread
+            completion.run();
+        }
+    }
+    
+    public static int getActiveCount() {
+        return EXECUTOR.getActiveCount();
+    }
+    
+    public static int getQueuedCount() {
+        return EXECUTOR.getQueue().size();
+    }
+    
+    public static long getCompletedCount() {
+        return EXECUTOR.getCompletedTaskCount();
+    }
+}
@@ -0,0 +1,219 @@
+package com.personalbudgeting.service;
+
+import com.personalbudgeting.dao.StorageFormat;
+import com.personalbudgeting.repository.BudgetRepository;
+import com.personalbudgeting.repository.ExpenseRepository;
+import com.personalbudgeting.repository.Repositories;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * In-memory spend and budget counters of the logged-in user, keyed by
+ * (category, month), so budget-exceeded checks need no database reads.
+ *
+ * The counters are loaded from the monthly aggregates at login and adjusted by
+ * the services after every successful expense or budget change. A background
+ * task reloads them from the database periodically and logs any drift it corrects.
+ */
+public class SpendTracker {
+    private static final long RECONCILE_MINUTES = Long.getLong("budget.spendTracker.reconcileMinutes", 5L);
+    
+    private static SpendTracker instance;
+    
+    private final ExpenseRepository expenseRepository;
+    private final BudgetRepository budgetRepository;
+    private Timer reconcileTimer;
+    
+    // All state below is guarded by this
+    private int userId = -1;
+    private Map<String, Long> spentCents = new HashMap<>();
+    private Map<String, Long> budgetCents = new HashMap<>();
+    private long changes;
+    
+    // Private constructor to enforce singleton pattern
+    private SpendTracker() {
+        this.expenseRepository = Repositories.expenses();
+        this.budgetRepository = Repositories.budgets();
+    }
+    
+    public static synchronized SpendTracker getInstance() {
+        if (instance == null) {
+            instance = new SpendTracker();
+        }
+        return instance;
+    }
+    
+    /**
+     * Load the counters of a user who just logged in and start periodic reconciliation.
+     */
+    public void load(int userId) {
+        try {
+            Map<String, Long> spent = loadSpent(userId);
+            Map<String, Long> budgets = loadBudgets(userId);
+            synchronized (this) {
+                this.userId = userId;
+                this.spentCents = spent;
+                this.budgetCents = budgets;
+                this.changes = 0;
+            }
+            System.out.println("Spend tracker loaded " + spent.size() + " spend and " + budgets.size() + " budget counters");
+        } catch (SQLException e) {
+            // Without counters the services fall back to querying the database
+            System.err.println("Error loading spend counters: " + e.getMessage());
+            e.printStackTrace();
+            clear();
+            return;
+        }
+        
+        startReconciliation();
+    }
+    
+    public synchronized void clear() {
+        userId = -1;
+        spentCents = new HashMap<>();
+        budgetCents = new HashMap<>();
+    }
+    
+    public synchronized boolean isLoaded(int userId) {
+        return this.userId == userId;
+    }
+    
+    /**
+     * Record that an expense was added (sign 1) or removed (sign -1). Updates count as a removal plus an addition.
+     */
+    public synchronized void recordExpense(int userId, String category, LocalDate date, double amount, int sign) {
+        if (this.userId != userId) {
+            return;
+        }
+        spentCents.merge(key(category, YearMonth.from(date)), sign * StorageFormat.toCents(amount), Long::sum);
+        changes++;
+    }
+    
+    public synchronized void recordBudget(int userId, String category, YearMonth period, double amount) {
+        if (this.userId != userId) {
+            return;
+        }
+        budgetCents.put(key(category, period), StorageFormat.toCents(amount));
+        changes++;
+    }
+    
+    public synchronized void removeBudget(int userId, String category, YearMonth period) {
+        if (this.userId != userId) {
+            return;
+        }
+        budgetCents.remove(key(category, period));
+        changes++;
+    }
+    
+    public synchronized double getSpent(String category, YearMonth period) {
+        return StorageFormat.fromCents(spentCents.getOrDefault(key(category, period), 0L));
+    }
+    
+    public synchronized boolean isBudgetExceeded(String category, YearMonth period) {
+        Long budget = budgetCents.get(key(category, period));
+        if (budget == null) {
+            return false; // No budget set, can't exceed
+        }
+        return spentCents.getOrDefault(key(category, period), 0L) > budget;
+    }
+    
+    /**
+     * Reload the counters from the database and replace the in-memory ones.
+     * A run that overlaps a recorded change is skipped, since the database read
+     * may or may not include it; the next run picks it up.
+     *
+     * @return the number of counters that had drifted, or -1 if the run was skipped
+     */
+    public int reconcile() {
+        int user;
+        long changesBefore;
+        synchronized (this) {
+            user = userId;
+            changesBefore = changes;
+        }
+        if (user < 0) {
+            return -1;
+        }
+        
+        Map<String, Long> spent;
+        Map<String, Long> budgets;
+        try {
+            spent = loadSpent(user);
+            budgets = loadBudgets(user);
+        } catch (SQLException e) {
+            System.err.println("Error reconciling spend counters: " + e.getMessage());
+            return -1;
+        }
+        
+        synchronized (this) {
+            if (userId != user || changes != changesBefore) {
+                return -1;
+            }
+            int drifted = countDrift(spentCents, spent) + countDrift(budgetCents, budgets);
+            spentCents = spent;
+            budgetCents = budgets;
+            if (drifted > 0) {
+                System.err.println("Spend tracker corrected " + drifted + " drifted counters");
+            }
+            return drifted;
+        }
+    }
+    
+    private synchronized void startReconciliation() {
+        if (reconcileTimer != null || RECONCILE_MINUTES <= 0) {
+            return;
+        }
+        
+        long period = RECONCILE_MINUTES * 60 * 1000;
+        reconcileTimer = new Timer("spend-tracker-reconcile", true); // Daemon timer
+        reconcileTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                reconcile();
+            }
+        }, period, period);
+    }
+    
+    private Map<String, Long> loadSpent(int userId) throws SQLException {
+        Map<String, Long> spent = new HashMap<>();
+        // Aggregate keys are "period|category", the same as ours
+        for (Map.Entry<String, long[]> entry : expenseRepository.loadMonthlyTotals(userId).entrySet()) {
+            spent.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return spent;
+    }
+    
+    private Map<String, Long> loadBudgets(int userId) throws SQLException {
+        Map<String, Long> budgets = new HashMap<>();
+        for (Map.Entry<String, Double> entry : budgetRepository.loadBudgetAmounts(userId).entrySet()) {
+            budgets.put(entry.getKey(), StorageFormat.toCents(entry.getValue()));
+        }
+        return budgets;
+    }
+    
+    private static int countDrift(Map<String, Long> current, Map<String, Long> actual) {
+        Set<String> keys = new HashSet<>(current.keySet());
+        keys.addAll(actual.keySet());
+        
+        int drifted = 0;
+        for (String key : keys) {
+            // A zero counter and a missing one mean the same thing
+            if (current.getOrDefault(key, 0L).longValue() != actual.getOrDefault(key, 0L).longValue()) {
+                drifted++;
+            }
+        }
+        return drifted;
+    }
+    
+    private static String key(String category, YearMonth period) {
+        return period + "|" + category;
+    }
+}
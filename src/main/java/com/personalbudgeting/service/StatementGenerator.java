@@ -0,0 +1,212 @@
+package com.personalbudgeting.service;
+
+import com.personalbudgeting.dao.BudgetSummaryDAO;
+import com.personalbudgeting.dao.DatabaseConnection;
+import com.personalbudgeting.dao.StatementDAO;
+import com.personalbudgeting.model.BudgetSummary;
+import com.personalbudgeting.repository.BudgetSummaryRepository;
+
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batch generator of the month-end statements (income, spending and budget per
+ * category, savings) of every user, independent of the logged-in user.
+ *
+ * The users are split in halves on a ForkJoinPool down to chunks of chunkSize
+ * users. Each user's {@link BudgetSummary} is computed on a pooled read connection
+ * and a chunk's statements are stored in one write transaction per database. The
+ * pool is no larger than the read pool, so workers never queue for a connection.
+ *
+ * Statements are committed chunk by chunk and a later run for the same period
+ * skips the users that already have one, so an interrupted run resumes where it
+ * stopped; regenerating recomputes them all.
+ */
+public class StatementGenerator {
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+    
+    /**
+     * Told about every stored chunk, from the worker thread that stored it.
+     */
+    public interface ProgressListener {
+        void onProgress(int done, int total, long elapsedMillis);
+    }
+    
+    private final BudgetSummaryRepository summaries;
+    private final StatementDAO statementDAO;
+    private final int parallelism;
+    private final int chunkSize;
+    
+    public StatementGenerator() {
+        this(new BudgetSummaryDAO(), new StatementDAO(),
+             Math.max(1, DatabaseConnection.getPoolStats().getMaxReadConnections()), DEFAULT_CHUNK_SIZE);
+    }
+    
+    public StatementGenerator(BudgetSummaryRepository summaries, StatementDAO statementDAO, int parallelism, int chunkSize) {
+        this.summaries = summaries;
+        this.statementDAO = statementDAO;
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+    
+    /**
+     * Generate the statements of one month for every user that has none yet, or for
+     * every user when regenerate is set. A user whose statement cannot be computed or
+     * stored is counted as failed and picked up again by the next run.
+     */
+    public RunStats generate(YearMonth period, boolean regenerate, ProgressListener listener) throws SQLException {
+        long start = System.currentTimeMillis();
+        List<Integer> userIds = statementDAO.findUserIds();
+        int users = userIds.size();
+        if (!regenerate) {
+            Set<Integer> completed = statementDAO.findCompletedUserIds(period);
+            userIds.removeIf(completed::contains);
+        }
+        
+        Run run = new Run(period, userIds, listener, start);
+        if (!userIds.isEmpty()) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new ChunkTask(this, run, 0, userIds.size()));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return new RunStats(period, users, users - userIds.size(), run.generated.get(), run.failed.get(),
+                            parallelism, System.currentTimeMillis() - start);
+    }
+    
+    // State shared by the tasks of one run
+    private static final class Run {
+        final YearMonth period;
+        final List<Integer> userIds;
+        final ProgressListener listener;
+        final long start;
+        final AtomicInteger generated = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        
+        Run(YearMonth period, List<Integer> userIds, ProgressListener listener, long start) {
+            this.period = period;
+            this.userIds = userIds;
+            this.listener = listener;
+            this.start = start;
+        }
+    }
+    
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final StatementGenerator generator;
+        private final Run run;
+        private final int from;
+        private final int to;
+        
+        ChunkTask(StatementGenerator generator, Run run, int from, int to) {
+            this.generator = generator;
+            this.run = run;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from > generator.chunkSize) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(generator, run, from, middle), new ChunkTask(generator, run, middle, to));
+                return;
+            }
+            
+            Map<Integer, BudgetSummary> statements = new LinkedHashMap<>();
+            for (int userId : run.userIds.subList(from, to)) {
+                BudgetSummary summary = generator.summaries.getSummary(userId, run.period);
+                if (summary == null) {
+                    run.failed.incrementAndGet();
+                } else {
+                    statements.put(userId, summary);
+                }
+            }
+            
+            try {
+                if (!statements.isEmpty()) {
+                    generator.statementDAO.saveAll(statements);
+                }
+                run.generated.addAndGet(statements.size());
+            } catch (SQLException e) {
+                System.err.println("Error storing " + statements.size() + " statements: " + e.getMessage());
+                e.printStackTrace();
+                run.failed.addAndGet(statements.size());
+            }
+            
+            if (run.listener != null) {
+                run.listener.onProgress(run.generated.get() + run.failed.get(), run.userIds.size(),
+                                        System.currentTimeMillis() - run.start);
+            }
+        }
+    }
+    
+    public static final class RunStats {
+        private final YearMonth period;
+        private final int users;
+        private final int skipped;
+        private final int generated;
+        private final int failed;
+        private final int threads;
+        private final long elapsedMillis;
+        
+        RunStats(YearMonth period, int users, int skipped, int generated, int failed, int threads, long elapsedMillis) {
+            this.period = period;
+            this.users = users;
+            this.skipped = skipped;
+            this.generated = generated;
+            this.failed = failed;
+            this.threads = threads;
+            this.elapsedMillis = elapsedMillis;
+        }
+        
+        public YearMonth getPeriod() {
+            return period;
+        }
+        
+        public int getUsers() {
+            return users;
+        }
+        
+        // Users that already had a statement from an earlier run
+        public int getSkipped() {
+            return skipped;
+        }
+        
+        public int getGenerated() {
+            return generated;
+        }
+        
+        public int getFailed() {
+            return failed;
+        }
+        
+        public int getThreads() {
+            return threads;
+        }
+        
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+        
+        public double getUsersPerSecond() {
+            return elapsedMillis == 0 ? generated : generated * 1000.0 / elapsedMillis;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("RunStats{period=%s, users=%d, skipped=%d, generated=%d, failed=%d, threads=%d, elapsed=%dms, throughput=%.1f users/s}",
+                                 period, users, skipped, generated, failed, threads, elapsedMillis, getUsersPerSecond());
+        }
+    }
+}
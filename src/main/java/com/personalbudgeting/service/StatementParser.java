@@ -0,0 +1,33 @@
+package com.personalbudgeting.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+
+/**
+ * Incremental parser of a bank statement file. Transactions are handed to the
+ * handler as soon as they are complete, so only the current one is held in memory
+ * however long the statement is.
+ */
+public interface StatementParser {
+    
+    /**
+     * Receives the transactions of a statement in file order.
+     */
+    interface Handler {
+        /**
+         * @param amount negative for a debit (money paid out), positive for a credit
+         * @param payee the payee or transaction name, empty if the file has none
+         * @param memo free text of the transaction, empty if the file has none
+         * @param category the bank's or the user's category, empty if the file has none
+         */
+        void transaction(LocalDate date, double amount, String payee, String memo, String category);
+        
+        /**
+         * A transaction that could not be read, with the line where it starts.
+         */
+        void reject(long line, String reason);
+    }
+    
+    void parse(Reader in, Handler handler) throws IOException;
+}
@@ -0,0 +1,181 @@
+package com.personalbudgeting.service;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Read-through LRU cache of the per-month results the budget, expense and income
+ * screens ask for again and again, keyed by (kind, user, month).
+ *
+ * The services invalidate exactly the (user, month) pairs a successful change
+ * touches, so every other month stays cached. A result whose load overlapped an
+ * invalidation is returned but not kept, as it may predate the change. Null results
+ * (no user, failed query) are never cached. Holds at most budget.summaryCache.maxEntries
+ * results; 0 turns caching off.
+ */
+public class SummaryCache {
+    private static final int MAX_ENTRIES = Math.max(0, Integer.getInteger("budget.summaryCache.maxEntries", 64));
+    
+    private static SummaryCache instance;
+    
+    public enum Kind { BUDGET_SUMMARY, EXPENSES_BY_CATEGORY, INCOME_TOTAL }
+    
+    // All state below is guarded by this
+    private final Map<Key, Object> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long invalidations;
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    private SummaryCache() {
+    }
+    
+    public static synchronized SummaryCache getInstance() {
+        if (instance == null) {
+            instance = new SummaryCache();
+        }
+        return instance;
+    }
+    
+    /**
+     * The cached result, or the loader's result, cached if nothing changed meanwhile.
+     * Callers must not modify the result; copy mutable values on the way out.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Kind kind, int userId, YearMonth period, Supplier<T> loader) {
+        Key key = new Key(kind, userId, period);
+        long invalidationsBefore;
+        synchronized (this) {
+            Object value = entries.get(key);
+            if (value != null) {
+                hits++;
+                return (T) value;
+            }
+            misses++;
+            invalidationsBefore = invalidations;
+        }
+        
+        // Load without holding the lock; the repositories may be slow
+        T value = loader.get();
+        if (value == null || MAX_ENTRIES == 0) {
+            return value;
+        }
+        
+        synchronized (this) {
+            if (invalidations == invalidationsBefore) {
+                entries.put(key, value);
+                if (entries.size() > MAX_ENTRIES) {
+                    Key eldest = entries.keySet().iterator().next();
+                    entries.remove(eldest);
+                    evictions++;
+                }
+            }
+        }
+        return value;
+    }
+    
+    /**
+     * Drop every result of one user and month, after a change dated in that month.
+     */
+    public synchronized void invalidate(int userId, LocalDate date) {
+        invalidations++;
+        YearMonth period = YearMonth.from(date);
+        for (Kind kind : Kind.values()) {
+            entries.remove(new Key(kind, userId, period));
+        }
+    }
+    
+    public synchronized void invalidate(int userId, YearMonth period) {
+        invalidate(userId, period.atDay(1));
+    }
+    
+    /**
+     * Drop all results, e.g. at logout. The statistics are kept.
+     */
+    public synchronized void clear() {
+        invalidations++;
+        entries.clear();
+    }
+    
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, invalidations, entries.size());
+    }
+    
+    private static final class Key {
+        private final Kind kind;
+        private final int userId;
+        private final YearMonth period;
+        
+        Key(Kind kind, int userId, YearMonth period) {
+            this.kind = kind;
+            this.userId = userId;
+            this.period = period;
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return kind == key.kind && userId == key.userId && period.equals(key.period);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, userId, period);
+        }
+    }
+    
+    public static final class CacheStats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final int size;
+        
+        CacheStats(long hits, long misses, long evictions, long invalidations, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.size = size;
+        }
+        
+        public long getHits() {
+            return hits;
+        }
+        
+        public long getMisses() {
+            return misses;
+        }
+        
+        public double getHitRate() {
+            return hits + misses == 0 ? 0.0 : hits / (double) (hits + misses);
+        }
+        
+        // Results dropped to stay within the size bound
+        public long getEvictions() {
+            return evictions;
+        }
+        
+        // Changes (and logouts) that dropped results
+        public long getInvalidations() {
+            return invalidations;
+        }
+        
+        public int getSize() {
+            return size;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("CacheStats{hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d, invalidations=%d, size=%d}",
+                                 hits, misses, getHitRate() * 100, evictions, invalidations, size);
+        }
+    }
+}
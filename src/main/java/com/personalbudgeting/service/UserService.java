@@ -1,18 +1,23 @@
 package com.personalbudgeting.service;
 
-import com.personalbudgeting.dao.UserDAO;
 import com.personalbudgeting.model.User;
+import com.personalbudgeting.repository.Repositories;
+import com.personalbudgeting.repository.UserRepository;
 
 import java.time.LocalDateTime;
 import java.util.Random;
 import org.apache.commons.validator.routines.EmailValidator;
 
 public class UserService {
-    private UserDAO userDAO;
+    private UserRepository userRepository;
     private static User currentUser;
     
     public UserService() {
-        this.userDAO = new UserDAO();
+        this(Repositories.users());
+    }
+    
+    public UserService(UserRepository userRepository) {
+        this.userRepository = userRepository;
     }
     
     public boolean register(String username, String email, String password, String confirmPassword) {
@@ -35,12 +40,12 @@ public class UserService {
         }
         
         // Check if username already exists
-        if (userDAO.findByUsername(username) != null) {
+        if (userRepository.findByUsername(username) != null) {
             return false;
         }
         
         // Check if email already exists
-        if (userDAO.findByEmail(email) != null) {
+        if (userRepository.findByEmail(email) != null) {
             return false;
         }
         
@@ -53,7 +58,7 @@ public class UserService {
         user.setOtpCode(otpCode);
         user.setOtpExpiry(otpExpiry);
         
-        boolean success = userDAO.register(user);
+        boolean success = userRepository.register(user);
         
         if (success) {
             // Display OTP in console
@@ -70,7 +75,7 @@ public class UserService {
         System.out.println("DEBUG: Starting OTP verification for user: " + username);
         System.out.println("DEBUG: Input OTP: " + otpCode);
         
-        User user = userDAO.findByUsername(username);
+        User user = userRepository.findByUsername(username);
         
         if (user == null) {
             System.out.println("DEBUG: User not found in database");
@@ -101,7 +106,7 @@ public class UserService {
         
         // Check if OTP matches and is not expired
         if (otpMatches && notExpired) {
-            boolean verified = userDAO.verifyUser(user.getId());
+            boolean verified = userRepository.verifyUser(user.getId());
             System.out.println("DEBUG: User verification result: " + verified);
             return verified;
         }
@@ -111,10 +116,20 @@ public class UserService {
     }
     
     public boolean login(String username, String password) {
-        User user = userDAO.findByUsername(username);
+        User user = userRepository.findByUsername(username);
         
         if (user != null && user.getPassword().equals(password) && user.isVerified()) {
             currentUser = user;
+            
+            // Budget checks run against in-memory counters for the rest of the session
+            SpendTracker.getInstance().load(user.getId());
+            
+            // Duplicate checks answer from memory; catching up reads only the rows stored since the last login
+            ServiceExecutor.submit(() -> {
+                DuplicateDetector.expenses().load(user.getId());
+                DuplicateDetector.incomes().load(user.getId());
+                return null;
+            });
             return true;
         }
         
@@ -123,6 +138,12 @@ public class UserService {
     
     public void logout() {
         currentUser = null;
+        SpendTracker.getInstance().clear();
+        ColumnarLedger.expenses().clear();
+        ColumnarLedger.incomes().clear();
+        SummaryCache.getInstance().clear();
+        DuplicateDetector.expenses().markStale();
+        DuplicateDetector.incomes().markStale();
     }
     
     public static User getCurrentUser() {
@@ -159,7 +180,7 @@ public class UserService {
         }
         
         // Update password
-        boolean success = userDAO.updatePassword(currentUser.getId(), newPassword);
+        boolean success = userRepository.updatePassword(currentUser.getId(), newPassword);
         
         if (success) {
             // Update current user
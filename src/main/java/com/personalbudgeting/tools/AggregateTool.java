@@ -0,0 +1,135 @@
+package com.personalbudgeting.tools;
+
+import com.personalbudgeting.dao.DatabaseConnection;
+import com.personalbudgeting.dao.DatabaseInitializer;
+import com.personalbudgeting.dao.MonthlyAggregateDAO;
+import com.personalbudgeting.dao.ShardRouter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless maintenance command for the monthly aggregate tables.
+ *
+ * Usage: java -cp PersonalBudgeting-1.0-SNAPSHOT.jar com.personalbudgeting.tools.AggregateTool [verify|rebuild]
+ *
+ * verify recomputes every user's aggregates from the ledger and reports each
+ * (user, period, category) whose stored sum or count has drifted; rebuild also
+ * rewrites the aggregates of the users that drifted. Each user is checked in one
+ * transaction of the writer of their database, so the ledger and the aggregates
+ * are read at the same point and no write can come between the check and the
+ * rewrite; users of different shards are checked in parallel.
+ * The exit code is 1 if drift was found and not repaired.
+ */
+public class AggregateTool {
+    
+    public static void main(String[] args) {
+        String command = args.length > 0 ? args[0] : "verify";
+        if (!"verify".equals(command) && !"rebuild".equals(command)) {
+            System.err.println("Usage: AggregateTool [verify|rebuild]");
+            System.exit(2);
+        }
+        
+        DatabaseInitializer.initialize();
+        int exitCode = 0;
+        try {
+            boolean rebuild = "rebuild".equals(command);
+            List<String> drift = run(new MonthlyAggregateDAO(), rebuild);
+            if (!drift.isEmpty() && !rebuild) {
+                exitCode = 1;
+            }
+        } catch (Exception e) {
+            System.err.println("Error checking aggregates: " + e.getMessage());
+            e.printStackTrace();
+            exitCode = 2;
+        } finally {
+            DatabaseConnection.closeConnection();
+        }
+        System.exit(exitCode);
+    }
+    
+    /**
+     * Check (and optionally repair) the aggregates of every user.
+     *
+     * @return one line per drifted aggregate row
+     */
+    public static List<String> run(MonthlyAggregateDAO aggregateDAO, boolean rebuild) throws Exception {
+        long start = System.currentTimeMillis();
+        List<Integer> userIds = aggregateDAO.findUserIds();
+        
+        // One task per user; the writers serialize the users of one database, so one thread per database is enough
+        int threads = Math.max(1, ShardRouter.getDatabases().size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<String> drift = new ArrayList<>();
+        int driftedUsers = 0;
+        
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int userId : userIds) {
+                results.add(executor.submit(() -> checkUser(aggregateDAO, userId, rebuild)));
+            }
+            
+            for (Future<List<String>> result : results) {
+                List<String> userDrift;
+                try {
+                    userDrift = result.get();
+                } catch (ExecutionException e) {
+                    throw (Exception) e.getCause();
+                }
+                if (!userDrift.isEmpty()) {
+                    driftedUsers++;
+                    drift.addAll(userDrift);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        for (String line : drift) {
+            System.out.println(line);
+        }
+        System.out.println("Checked " + userIds.size() + " users with " + threads + " threads in " +
+                           (System.currentTimeMillis() - start) + " ms: " + drift.size() + " drifted aggregates in " +
+                           driftedUsers + " users" + (rebuild && driftedUsers > 0 ? ", rebuilt" : ""));
+        return drift;
+    }
+    
+    // Computed, compared and replaced in one write transaction, so no ledger write falls in between
+    private static List<String> checkUser(MonthlyAggregateDAO aggregateDAO, int userId, boolean rebuild) throws Exception {
+        return DatabaseConnection.write(userId, conn -> {
+            Map<String, long[]> expenseExpected = aggregateDAO.computeExpenseAggregates(conn, userId);
+            Map<String, long[]> incomeExpected = aggregateDAO.computeIncomeAggregates(conn, userId);
+            
+            List<String> drift = new ArrayList<>();
+            compare("expense", userId, expenseExpected, aggregateDAO.loadExpenseAggregates(conn, userId), drift);
+            compare("income", userId, incomeExpected, aggregateDAO.loadIncomeAggregates(conn, userId), drift);
+            
+            if (rebuild && !drift.isEmpty()) {
+                aggregateDAO.replaceAggregates(conn, userId, expenseExpected, incomeExpected);
+            }
+            return drift;
+        });
+    }
+    
+    private static void compare(String ledger, int userId, Map<String, long[]> expected, Map<String, long[]> stored, List<String> drift) {
+        Set<String> keys = new HashSet<>(expected.keySet());
+        keys.addAll(stored.keySet());
+        
+        for (String key : new TreeSet<>(keys)) {
+            long[] want = expected.getOrDefault(key, new long[2]);
+            long[] have = stored.getOrDefault(key, new long[2]);
+            if (want[0] != have[0] || want[1] != have[1]) {
+                drift.add(String.format("DRIFT %s user=%d key=%s expected=%d cents/%d rows stored=%d cents/%d rows",
+                                        ledger, userId, key, want[0], want[1], have[0], have[1]));
+            }
+        }
+    }
+}
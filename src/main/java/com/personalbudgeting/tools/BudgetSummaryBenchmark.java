@@ -0,0 +1,120 @@
+package com.personalbudgeting.tools;
+
+import com.personalbudgeting.dao.BudgetDAO;
+import com.personalbudgeting.dao.BudgetSummaryDAO;
+import com.personalbudgeting.dao.DatabaseConnection;
+import com.personalbudgeting.dao.DatabaseInitializer;
+import com.personalbudgeting.dao.ExpenseDAO;
+import com.personalbudgeting.dao.IncomeDAO;
+import com.personalbudgeting.dao.UserDAO;
+import com.personalbudgeting.model.Budget;
+import com.personalbudgeting.model.Category;
+import com.personalbudgeting.model.Expense;
+import com.personalbudgeting.model.Income;
+import com.personalbudgeting.model.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the budget screen's old data access (five DAO queries, run twice by
+ * BudgetController) with the single CTE summary query.
+ *
+ * Usage: java -cp PersonalBudgeting-1.0-SNAPSHOT.jar com.personalbudgeting.tools.BudgetSummaryBenchmark [expenses] [iterations]
+ *
+ * A synthetic user with the given number of expenses spread over twelve months is
+ * created in a temporary database unless budget.db.path is set. Queries are counted
+ * as read pool checkouts.
+ */
+public class BudgetSummaryBenchmark {
+    private static final List<String> CATEGORIES = Category.DEFAULTS;
+    
+    public static void main(String[] args) throws IOException {
+        int expenses = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        
+        if (System.getProperty("budget.db.path") == null) {
+            File file = File.createTempFile("budget-benchmark", ".db");
+            file.deleteOnExit();
+            System.setProperty("budget.db.path", file.getAbsolutePath());
+        }
+        
+        DatabaseInitializer.initialize();
+        try {
+            YearMonth period = YearMonth.now();
+            int userId = seed(expenses, period);
+            
+            ExpenseDAO expenseDAO = new ExpenseDAO();
+            IncomeDAO incomeDAO = new IncomeDAO();
+            BudgetDAO budgetDAO = new BudgetDAO();
+            BudgetSummaryDAO summaryDAO = new BudgetSummaryDAO();
+            
+            Runnable legacy = () -> {
+                // loadBudgetData and updateBudgetAnalysis each fetched the summary map
+                for (int i = 0; i < 2; i++) {
+                    incomeDAO.getTotalIncomeByPeriod(userId, period);
+                    expenseDAO.getTotalExpenseByPeriod(userId, period);
+                    budgetDAO.getTotalBudget(userId, period);
+                    expenseDAO.getExpensesByCategory(userId, period);
+                    budgetDAO.getBudgetsByCategory(userId, period);
+                }
+            };
+            Runnable summary = () -> summaryDAO.getSummary(userId, period);
+            
+            report("legacy (5 queries x 2)", legacy, iterations);
+            report("single CTE summary", summary, iterations);
+        } finally {
+            DatabaseConnection.closeConnection();
+        }
+    }
+    
+    private static int seed(int count, YearMonth period) {
+        UserDAO userDAO = new UserDAO();
+        String name = "benchmark" + System.nanoTime();
+        User user = new User(name, name + "@example.com", "benchmark");
+        userDAO.register(user);
+        
+        List<Expense> expenses = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LocalDate date = period.minusMonths(i % 12).atDay(1 + i % 28);
+            expenses.add(new Expense(user.getId(), CATEGORIES.get(i % CATEGORIES.size()), 1 + (i % 5000) / 100.0, date, "benchmark"));
+        }
+        new ExpenseDAO().addAll(expenses);
+        
+        List<Income> incomes = new ArrayList<>();
+        for (int month = 0; month < 12; month++) {
+            incomes.add(new Income(user.getId(), "Salary", 5000, period.minusMonths(month).atDay(1), "benchmark"));
+        }
+        new IncomeDAO().addAll(incomes);
+        
+        BudgetDAO budgetDAO = new BudgetDAO();
+        for (String category : CATEGORIES) {
+            budgetDAO.add(new Budget(user.getId(), category, 1000, period));
+        }
+        
+        System.out.println("Seeded user " + user.getId() + " with " + count + " expenses");
+        return user.getId();
+    }
+    
+    private static void report(String name, Runnable work, int iterations) {
+        // Warm up statement caches and the page cache
+        for (int i = 0; i < Math.min(20, iterations); i++) {
+            work.run();
+        }
+        
+        long checkouts = DatabaseConnection.getPoolStats().getCheckouts();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            work.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long queries = DatabaseConnection.getPoolStats().getCheckouts() - checkouts;
+        
+        System.out.printf("%-24s %5.1f queries/page  %8.3f ms/page%n",
+                          name, queries / (double) iterations, elapsed / 1_000_000.0 / iterations);
+    }
+}
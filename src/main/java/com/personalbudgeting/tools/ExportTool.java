@@ -0,0 +1,91 @@
+package com.personalbudgeting.tools;
+
+import com.personalbudgeting.dao.DatabaseConnection;
+import com.personalbudgeting.dao.DatabaseInitializer;
+import com.personalbudgeting.dao.ExportDAO;
+import com.personalbudgeting.dao.ExportWriter;
+import com.personalbudgeting.service.ExportService;
+import com.personalbudgeting.service.UserService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Headless command exporting one user's ledger to CSV or JSON files.
+ *
+ * Usage: java -cp PersonalBudgeting-1.0-SNAPSHOT.jar com.personalbudgeting.tools.ExportTool
+ *        &lt;username&gt; &lt;password&gt; &lt;directory&gt; [--format csv|json] [expenses|income|budgets|reminders ...]
+ *
+ * Every dataset is exported when none is named, each to &lt;dataset&gt;.csv or .json
+ * in the directory, which is created if needed. Rows written are printed about once
+ * a second, then the rows, bytes and throughput of each file.
+ */
+public class ExportTool {
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+    
+    public static void main(String[] args) {
+        ExportWriter.Format format = ExportWriter.Format.CSV;
+        List<ExportDAO.Dataset> datasets = new ArrayList<>();
+        try {
+            if (args.length < 3) {
+                throw new IllegalArgumentException("Expected at least 3 arguments");
+            }
+            for (int i = 3; i < args.length; i++) {
+                if ("--format".equals(args[i]) && i + 1 < args.length) {
+                    format = ExportWriter.Format.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                } else {
+                    datasets.add(ExportDAO.Dataset.valueOf(args[i].toUpperCase(Locale.ROOT)));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: ExportTool <username> <password> <directory> [--format csv|json] [expenses|income|budgets|reminders ...]");
+            System.exit(2);
+        }
+        if (datasets.isEmpty()) {
+            datasets.addAll(Arrays.asList(ExportDAO.Dataset.values()));
+        }
+        Path directory = Paths.get(args[2]);
+        
+        DatabaseInitializer.initialize();
+        int exitCode = 0;
+        try {
+            Files.createDirectories(directory);
+            if (!new UserService().login(args[0], args[1])) {
+                System.err.println("Invalid username or password");
+                exitCode = 2;
+            } else {
+                ExportService exportService = new ExportService();
+                long start = System.currentTimeMillis();
+                long[] lastReport = {start};
+                for (ExportDAO.Dataset dataset : datasets) {
+                    Path file = directory.resolve(dataset.getFileName() + "." + format.getExtension());
+                    ExportService.ExportStats stats = exportService.export(dataset, format, file, (exported, rows) -> {
+                        long now = System.currentTimeMillis();
+                        if (now - lastReport[0] >= PROGRESS_INTERVAL_MILLIS) {
+                            lastReport[0] = now;
+                            System.out.println(String.format("Exported %d %s", rows, exported.getFileName()));
+                        }
+                    });
+                    if (stats == null) {
+                        exitCode = 1;
+                        break;
+                    }
+                    System.out.println(stats);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error exporting to " + directory + ": " + e.getMessage());
+            e.printStackTrace();
+            exitCode = 2;
+        } finally {
+            DatabaseConnection.closeConnection();
+        }
+        System.exit(exitCode);
+    }
+}
@@ -0,0 +1,86 @@
+package com.personalbudgeting.tools;
+
+import com.personalbudgeting.repository.Repositories;
+import com.personalbudgeting.service.BankFileImporter;
+import com.personalbudgeting.service.CsvImporter;
+import com.personalbudgeting.service.CsvProfile;
+import com.personalbudgeting.service.ImportStats;
+import com.personalbudgeting.service.UserService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Headless command importing a CSV file or an OFX, QFX or QIF bank statement of
+ * expenses and income into one user's ledger.
+ *
+ * Usage: java -cp PersonalBudgeting-1.0-SNAPSHOT.jar com.personalbudgeting.tools.ImportTool
+ *        &lt;username&gt; &lt;password&gt; &lt;file&gt; [--profile expenses|income|bank|&lt;spec&gt;]
+ *
+ * Statements are recognized by their extension; other files are read as CSV with the
+ * profile, which defaults to bank. Progress and rows per second are printed about once
+ * a second, then the totals and the first rejected rows. Rows the ledger already has
+ * are skipped and counted as duplicates, so an overlapping file can be imported again.
+ * The exit code is 1 if any row was rejected or could not be stored.
+ */
+public class ImportTool {
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+    
+    public static void main(String[] args) {
+        CsvProfile profile = CsvProfile.bank();
+        try {
+            if (args.length == 5 && "--profile".equals(args[3])) {
+                profile = CsvProfile.forName(args[4]);
+            } else if (args.length != 3) {
+                throw new IllegalArgumentException("Expected 3 or 5 arguments");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: ImportTool <username> <password> <file> [--profile expenses|income|bank|<spec>]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[2]);
+        if (!Files.isRegularFile(file)) {
+            System.err.println("No such file: " + file);
+            System.exit(2);
+        }
+        
+        // The storage engine of budget.storage.engine, like the application
+        Repositories.initialize();
+        int exitCode = 0;
+        try {
+            if (!new UserService().login(args[0], args[1])) {
+                System.err.println("Invalid username or password");
+                exitCode = 2;
+            } else {
+                long[] lastReport = {0};
+                ImportStats.ProgressListener listener = progress -> {
+                    if (progress.isRunning() && progress.getElapsedMillis() - lastReport[0] >= PROGRESS_INTERVAL_MILLIS) {
+                        lastReport[0] = progress.getElapsedMillis();
+                        System.out.println(String.format("Imported %d rows (%.1f%%), %.0f rows/s, %.1f MB/s", progress.getRows(),
+                                                         progress.getPercentDone(), progress.getRowsPerSecond(),
+                                                         progress.getMegabytesPerSecond()));
+                    }
+                };
+                ImportStats stats = BankFileImporter.supports(file)
+                    ? new BankFileImporter().importFile(file, listener)
+                    : new CsvImporter().importFile(file, profile, listener);
+                System.out.println(stats);
+                for (String error : stats.getErrors()) {
+                    System.out.println("  rejected " + error);
+                }
+                if (stats.getRejected() > 0 || stats.getFailed() > 0) {
+                    exitCode = 1;
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error importing " + file + ": " + e.getMessage());
+            e.printStackTrace();
+            exitCode = 2;
+        } finally {
+            Repositories.shutdown();
+        }
+        System.exit(exitCode);
+    }
+}
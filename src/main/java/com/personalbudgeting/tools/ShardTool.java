@@ -0,0 +1,61 @@
+package com.personalbudgeting.tools;
+
+import com.personalbudgeting.dao.DatabaseConnection;
+import com.personalbudgeting.dao.DatabaseInitializer;
+import com.personalbudgeting.dao.ShardMigrator;
+import com.personalbudgeting.dao.ShardRouter;
+
+import java.util.Map;
+
+/**
+ * Headless maintenance command for the per-user shard files.
+ *
+ * Usage: java -Dbudget.db.shards=N -cp PersonalBudgeting-1.0-SNAPSHOT.jar com.personalbudgeting.tools.ShardTool
+ *        [status|migrate|rebalance|purge|move &lt;userId&gt; &lt;shard&gt;]
+ *
+ * status prints the users and ledger rows of every database; migrate moves every
+ * user still in the main database onto the shards; rebalance evens out the users
+ * per shard; purge deletes rows left behind by an interrupted move; move puts one
+ * user on a shard (-1 for the main database). Every command except status ends with
+ * a purge. Run it while the application is closed.
+ */
+public class ShardTool {
+    
+    public static void main(String[] args) {
+        String command = args.length > 0 ? args[0] : "status";
+        if (!"status".equals(command) && !"migrate".equals(command) && !"rebalance".equals(command) &&
+            !"purge".equals(command) && !("move".equals(command) && args.length == 3)) {
+            System.err.println("Usage: ShardTool [status|migrate|rebalance|purge|move <userId> <shard>]");
+            System.exit(2);
+        }
+        
+        DatabaseInitializer.initialize();
+        int exitCode = 0;
+        try {
+            ShardMigrator migrator = new ShardMigrator();
+            long start = System.currentTimeMillis();
+            
+            if ("migrate".equals(command)) {
+                System.out.println("Moved " + migrator.migrateAll() + " users onto " + ShardRouter.getShardCount() + " shards");
+            } else if ("rebalance".equals(command)) {
+                System.out.println("Moved " + migrator.rebalance() + " users");
+            } else if ("move".equals(command)) {
+                migrator.moveUser(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            }
+            if (!"status".equals(command)) {
+                System.out.println("Purged " + migrator.purgeOrphans() + " stray rows in " + (System.currentTimeMillis() - start) + " ms");
+            }
+            
+            for (Map.Entry<String, String> entry : migrator.getStatus().entrySet()) {
+                System.out.println(entry.getKey() + ": " + entry.getValue());
+            }
+        } catch (Exception e) {
+            System.err.println("Error maintaining shards: " + e.getMessage());
+            e.printStackTrace();
+            exitCode = 1;
+        } finally {
+            DatabaseConnection.closeConnection();
+        }
+        System.exit(exitCode);
+    }
+}
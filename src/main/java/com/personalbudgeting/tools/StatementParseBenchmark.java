@@ -0,0 +1,126 @@
+package com.personalbudgeting.tools;
+
+import com.personalbudgeting.service.OfxParser;
+import com.personalbudgeting.service.QifParser;
+import com.personalbudgeting.service.StatementParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Measures the parse throughput of the OFX (SGML and XML) and QIF statement parsers,
+ * without touching the database.
+ *
+ * Usage: java -cp PersonalBudgeting-1.0-SNAPSHOT.jar com.personalbudgeting.tools.StatementParseBenchmark [transactions] [iterations]
+ *
+ * A synthetic statement with the given number of transactions over several years is
+ * written in each format to a temporary file, then parsed the given number of times
+ * after one warm-up pass. The heap in use after each format shows that a statement is
+ * never held in memory as a whole.
+ */
+public class StatementParseBenchmark {
+    private static final String[] PAYEES = { "Grocery Store", "Coffee & Co", "Electric Utility", "Payroll ACME", "Book Shop" };
+    
+    public static void main(String[] args) throws IOException {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        
+        System.out.println(String.format("Parsing %d transactions, %d iterations", transactions, iterations));
+        run("OFX SGML", write(transactions, ".ofx", false), new OfxParser(), iterations);
+        run("OFX XML", write(transactions, ".ofx", true), new OfxParser(), iterations);
+        run("QIF", write(transactions, ".qif", false), new QifParser(), iterations);
+    }
+    
+    private static void run(String name, Path file, StatementParser parser, int iterations) throws IOException {
+        try {
+            long bytes = Files.size(file);
+            long[] counts = new long[2];
+            StatementParser.Handler handler = new StatementParser.Handler() {
+                @Override
+                public void transaction(LocalDate date, double amount, String payee, String memo, String category) {
+                    counts[0]++;
+                }
+                
+                @Override
+                public void reject(long line, String reason) {
+                    counts[1]++;
+                }
+            };
+            
+            parse(file, parser, handler); // Warm-up
+            counts[0] = 0;
+            counts[1] = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                parse(file, parser, handler);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            
+            Runtime runtime = Runtime.getRuntime();
+            System.out.println(String.format("%-9s %,d bytes: %,.0f transactions/s, %.1f MB/s, %d rejected, heap in use %d MB",
+                                             name, bytes, counts[0] / seconds, bytes * (double) iterations / 1048576.0 / seconds,
+                                             counts[1] / iterations, (runtime.totalMemory() - runtime.freeMemory()) / 1048576));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+    
+    private static void parse(Path file, StatementParser parser, StatementParser.Handler handler) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            parser.parse(reader, handler);
+        }
+    }
+    
+    private static Path write(int transactions, String suffix, boolean xml) throws IOException {
+        File file = File.createTempFile("statement-benchmark", suffix);
+        file.deleteOnExit();
+        DateTimeFormatter ofxDate = DateTimeFormatter.BASIC_ISO_DATE;
+        DateTimeFormatter qifDate = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+        LocalDate first = LocalDate.now().minusYears(5);
+        
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            boolean qif = suffix.equals(".qif");
+            if (qif) {
+                out.write("!Type:Bank\n");
+            } else if (xml) {
+                out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<?OFX OFXHEADER=\"200\" VERSION=\"220\"?>\n");
+                out.write("<OFX><BANKMSGSRSV1><STMTTRNRS><STMTRS><BANKTRANLIST>\n");
+            } else {
+                out.write("OFXHEADER:100\nDATA:OFXSGML\nVERSION:102\nCHARSET:1252\n\n");
+                out.write("<OFX>\n<BANKMSGSRSV1>\n<STMTTRNRS>\n<STMTRS>\n<BANKTRANLIST>\n");
+            }
+            
+            for (int i = 0; i < transactions; i++) {
+                LocalDate date = first.plusDays(i % 1825);
+                String payee = PAYEES[i % PAYEES.length];
+                boolean credit = i % 5 == 3;
+                String amount = (credit ? "" : "-") + (1 + i % 500) + "." + (10 + i % 90);
+                if (qif) {
+                    out.write("D" + qifDate.format(date) + "\nT" + amount + "\nP" + payee + "\nMRef " + i + "\nLFood:Groceries\n^\n");
+                } else if (xml) {
+                    out.write("<STMTTRN><TRNTYPE>" + (credit ? "CREDIT" : "DEBIT") + "</TRNTYPE><DTPOSTED>" + ofxDate.format(date)
+                              + "120000</DTPOSTED><TRNAMT>" + amount + "</TRNAMT><FITID>" + i + "</FITID><NAME>"
+                              + payee.replace("&", "&amp;") + "</NAME><MEMO>Ref " + i + "</MEMO></STMTTRN>\n");
+                } else {
+                    out.write("<STMTTRN>\n<TRNTYPE>" + (credit ? "CREDIT" : "DEBIT") + "\n<DTPOSTED>" + ofxDate.format(date)
+                              + "120000[-5:EST]\n<TRNAMT>" + amount + "\n<FITID>" + i + "\n<NAME>" + payee.replace("&", "&amp;")
+                              + "\n<MEMO>Ref " + i + "\n</STMTTRN>\n");
+                }
+            }
+            
+            if (xml) {
+                out.write("</BANKTRANLIST></STMTRS></STMTTRNRS></BANKMSGSRSV1></OFX>\n");
+            } else if (!qif) {
+                out.write("</BANKTRANLIST>\n</STMTRS>\n</STMTTRNRS>\n</BANKMSGSRSV1>\n</OFX>\n");
+            }
+        }
+        return file.toPath();
+    }
+}
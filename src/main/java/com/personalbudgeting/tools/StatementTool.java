@@ -0,0 +1,65 @@
+package com.personalbudgeting.tools;
+
+import com.personalbudgeting.dao.DatabaseConnection;
+import com.personalbudgeting.dao.DatabaseInitializer;
+import com.personalbudgeting.service.StatementGenerator;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless command generating the month-end statements of every user.
+ *
+ * Usage: java -cp PersonalBudgeting-1.0-SNAPSHOT.jar com.personalbudgeting.tools.StatementTool [YYYY-MM] [--regenerate]
+ *
+ * The period defaults to the previous month. Users that already have a statement
+ * for the period are skipped, so an interrupted run is resumed by running the same
+ * command again; --regenerate recomputes every statement. Progress and throughput
+ * are printed about once a second. The exit code is 1 if any statement failed.
+ */
+public class StatementTool {
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+    
+    public static void main(String[] args) {
+        YearMonth period = YearMonth.now().minusMonths(1);
+        boolean regenerate = false;
+        try {
+            for (String arg : args) {
+                if ("--regenerate".equals(arg)) {
+                    regenerate = true;
+                } else {
+                    period = YearMonth.parse(arg);
+                }
+            }
+        } catch (DateTimeParseException e) {
+            System.err.println("Usage: StatementTool [YYYY-MM] [--regenerate]");
+            System.exit(2);
+        }
+        
+        DatabaseInitializer.initialize();
+        int exitCode = 0;
+        try {
+            AtomicLong lastReport = new AtomicLong();
+            YearMonth reported = period;
+            StatementGenerator.RunStats stats = new StatementGenerator().generate(period, regenerate, (done, total, elapsed) -> {
+                long last = lastReport.get();
+                if ((elapsed - last >= PROGRESS_INTERVAL_MILLIS || done == total) && lastReport.compareAndSet(last, elapsed)) {
+                    System.out.println(String.format("Statements %s: %d/%d users (%.1f%%), %.1f users/s", reported, done, total,
+                                                     done * 100.0 / total, elapsed == 0 ? done : done * 1000.0 / elapsed));
+                }
+            });
+            System.out.println(stats);
+            if (stats.getFailed() > 0) {
+                exitCode = 1;
+            }
+        } catch (Exception e) {
+            System.err.println("Error generating statements: " + e.getMessage());
+            e.printStackTrace();
+            exitCode = 2;
+        } finally {
+            DatabaseConnection.closeConnection();
+        }
+        System.exit(exitCode);
+    }
+}
@@ -0,0 +1,91 @@
+package com.personalbudgeting.tools;
+
+import com.personalbudgeting.dao.DatabaseConnection;
+import com.personalbudgeting.dao.DatabaseInitializer;
+import com.personalbudgeting.dao.ExpenseDAO;
+import com.personalbudgeting.dao.ShardRouter;
+import com.personalbudgeting.dao.UserDAO;
+import com.personalbudgeting.model.Expense;
+import com.personalbudgeting.model.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures single-expense inserts through the group-commit write queue, to tune
+ * budget.db.groupCommitWindowMs and budget.db.groupCommitMaxBatch.
+ *
+ * Usage: java -cp PersonalBudgeting-1.0-SNAPSHOT.jar com.personalbudgeting.tools.WriteQueueBenchmark [threads] [writesPerThread]
+ *
+ * Each thread adds expenses of its own user one at a time, as the screens and the
+ * reminder timer do; with budget.db.shards set the users are spread over the shards.
+ * Runs against a temporary database unless budget.db.path is set.
+ */
+public class WriteQueueBenchmark {
+    
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int writesPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        
+        if (System.getProperty("budget.db.path") == null) {
+            File file = File.createTempFile("budget-writes", ".db");
+            file.deleteOnExit();
+            System.setProperty("budget.db.path", file.getAbsolutePath());
+            for (int shard = 0; shard < ShardRouter.getShardCount(); shard++) {
+                new File(ShardRouter.getShardPath(shard)).deleteOnExit();
+            }
+        }
+        
+        DatabaseInitializer.initialize();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            ExpenseDAO expenseDAO = new ExpenseDAO();
+            
+            long start = System.nanoTime();
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                int userId = createUser();
+                results.add(executor.submit(() -> {
+                    int stored = 0;
+                    for (int i = 0; i < writesPerThread; i++) {
+                        Expense expense = new Expense(userId, "Food", 1 + i % 100, LocalDate.now().minusDays(i % 90), "writer " + thread);
+                        if (expenseDAO.add(expense)) {
+                            stored++;
+                        }
+                    }
+                    return stored;
+                }));
+            }
+            
+            int stored = 0;
+            for (Future<Integer> result : results) {
+                stored += result.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            
+            System.out.printf("%d threads stored %d expenses in %.2f s: %.0f writes/s%n",
+                              threads, stored, seconds, stored / seconds);
+            if (!ShardRouter.isEnabled()) {
+                // Shard queues report their statistics on close
+                System.out.println(DatabaseConnection.getWriteStats());
+            }
+        } finally {
+            executor.shutdownNow();
+            DatabaseConnection.closeConnection();
+        }
+    }
+    
+    private static int createUser() {
+        String name = "writes" + System.nanoTime();
+        User user = new User(name, name + "@example.com", "benchmark");
+        new UserDAO().register(user);
+        return user.getId();
+    }
+}
@@ -0,0 +1,177 @@
+package com.personalbudgeting.util;
+
+import javafx.collections.ObservableListBase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Read-only list that loads its rows page by page on demand, for use as the
+ * items of a TableView. The table only asks for the rows in its viewport, so
+ * only those pages are fetched; the least recently used pages are dropped once
+ * more than a fixed number are cached, keeping memory flat for any ledger size.
+ *
+ * Pages are fetched by keyset from the last row of the previous page whenever
+ * that row is known, and by offset only when jumping to an unvisited region.
+ * The list is a snapshot: create a new one to pick up changes to the data.
+ *
+ * Pages load asynchronously. Rows of a page that has not arrived yet read as
+ * null, and the list reports them as replaced once it arrives, so the table
+ * redraws them without the FX thread ever waiting on the database.
+ */
+public class LazyPagedList<T> extends ObservableListBase<T> {
+    public static final int DEFAULT_PAGE_SIZE = 200;
+    public static final int DEFAULT_MAX_CACHED_PAGES = 10;
+    
+    // Page ends remembered per cached page; enough to seek around the recently viewed region
+    private static final int PAGE_ENDS_PER_PAGE = 8;
+    
+    /**
+     * Supplies the rows of a LazyPagedList in a stable order.
+     */
+    public interface PageSource<T> {
+        /**
+         * Load up to limit rows following the given row (keyset pagination).
+         * The future must complete on the FX thread.
+         */
+        CompletableFuture<List<T>> loadAfter(T last, int limit);
+        
+        /**
+         * Load up to limit rows starting at the given row offset.
+         * The future must complete on the FX thread.
+         */
+        CompletableFuture<List<T>> loadAt(int offset, int limit);
+    }
+    
+    private final PageSource<T> source;
+    private final int pageSize;
+    private final int size;
+    private final Map<Integer, List<T>> pages;
+    
+    // Last row of the most recently seen pages; kept after eviction so revisits can still seek
+    private final Map<Integer, T> pageEnds;
+    
+    // Pages requested but not yet arrived
+    private final Map<Integer, CompletableFuture<List<T>>> loading = new HashMap<>();
+    
+    private long pageLoads;
+    private long keysetLoads;
+    
+    /**
+     * @param size the row count, fetched by the caller beforehand
+     */
+    public LazyPagedList(int size, PageSource<T> source) {
+        this(size, source, DEFAULT_PAGE_SIZE, DEFAULT_MAX_CACHED_PAGES);
+    }
+    
+    public LazyPagedList(int size, PageSource<T> source, int pageSize, int maxCachedPages) {
+        this.source = source;
+        this.pageSize = Math.max(1, pageSize);
+        this.size = Math.max(0, size);
+        this.pages = new LinkedHashMap<Integer, List<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+                return size() > Math.max(2, maxCachedPages);
+            }
+        };
+        int maxPageEnds = Math.max(2, maxCachedPages) * PAGE_ENDS_PER_PAGE;
+        this.pageEnds = new LinkedHashMap<Integer, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+                return size() > maxPageEnds;
+            }
+        };
+    }
+    
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        
+        List<T> page = getPage(index / pageSize);
+        int offset = index % pageSize;
+        
+        // Not loaded yet, or the data shrank since the count was taken; show an empty row rather than fail
+        return page != null && offset < page.size() ? page.get(offset) : null;
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    private List<T> getPage(int pageIndex) {
+        List<T> page = pages.get(pageIndex);
+        if (page == null && !loading.containsKey(pageIndex)) {
+            requestPage(pageIndex);
+        }
+        return page;
+    }
+    
+    private void requestPage(int pageIndex) {
+        CompletableFuture<List<T>> request;
+        T previousEnd = pageIndex == 0 ? null : pageEnds.get(pageIndex - 1);
+        if (pageIndex == 0 || previousEnd != null) {
+            request = source.loadAfter(previousEnd, pageSize);
+            keysetLoads++;
+        } else {
+            request = source.loadAt(pageIndex * pageSize, pageSize);
+        }
+        pageLoads++;
+        
+        loading.put(pageIndex, request);
+        request.whenComplete((page, error) -> {
+            loading.remove(pageIndex, request);
+            if (error == null) {
+                pageArrived(pageIndex, page == null ? new ArrayList<>() : page);
+            }
+            // A failed or cancelled page stays unloaded and is requested again when next shown
+        });
+    }
+    
+    private void pageArrived(int pageIndex, List<T> page) {
+        if (!page.isEmpty()) {
+            pageEnds.put(pageIndex, page.get(page.size() - 1));
+        }
+        pages.put(pageIndex, page);
+        
+        // Tell the table the placeholder rows now have content
+        int from = pageIndex * pageSize;
+        int to = Math.min(size, from + pageSize);
+        if (from < to) {
+            beginChange();
+            for (int i = from; i < to; i++) {
+                nextSet(i, null);
+            }
+            endChange();
+        }
+    }
+    
+    /**
+     * Cancel the page loads still in flight, e.g. when the list is replaced.
+     */
+    public void cancelLoads() {
+        for (CompletableFuture<List<T>> request : new ArrayList<>(loading.values())) {
+            request.cancel(false);
+        }
+        loading.clear();
+    }
+    
+    public int getCachedPageCount() {
+        return pages.size();
+    }
+    
+    public long getPageLoads() {
+        return pageLoads;
+    }
+    
+    // Page loads that used a keyset seek instead of an offset scan
+    public long getKeysetLoads() {
+        return keysetLoads;
+    }
+}
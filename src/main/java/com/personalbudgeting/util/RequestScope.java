@@ -0,0 +1,109 @@
+package com.personalbudgeting.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Pending asynchronous requests of one view, so results that arrive after the
+ * user has moved on are dropped instead of being applied to stale controls.
+ *
+ * A request tracked under a key replaces, and cancels, the previous request
+ * with the same key (e.g. the data of the previously picked month). The pending
+ * requests of every scope are cancelled when Main switches to another view.
+ * Scopes stay usable afterwards, since Main reuses cached views.
+ */
+public class RequestScope {
+    // Weak so that scopes of discarded views do not pin their controllers
+    private static final Set<RequestScope> scopes = Collections.newSetFromMap(new WeakHashMap<>());
+    
+    private final String name;
+    private final Map<String, CompletableFuture<?>> keyed = new HashMap<>();
+    private final Set<CompletableFuture<?>> unkeyed = new HashSet<>();
+    
+    public RequestScope(String name) {
+        this.name = name;
+        synchronized (RequestScope.class) {
+            scopes.add(this);
+        }
+    }
+    
+    /**
+     * Track a request, cancelling the pending request with the same key.
+     */
+    public synchronized <T> CompletableFuture<T> track(String key, CompletableFuture<T> future) {
+        CompletableFuture<?> previous = keyed.put(key, future);
+        if (previous != null && previous != future) {
+            previous.cancel(false);
+        }
+        future.whenComplete((result, error) -> {
+            synchronized (this) {
+                keyed.remove(key, future);
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * Track a request that only needs cancelling with the rest of the scope.
+     */
+    public synchronized <T> CompletableFuture<T> add(CompletableFuture<T> future) {
+        unkeyed.add(future);
+        future.whenComplete((result, error) -> {
+            synchronized (this) {
+                unkeyed.remove(future);
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * Cancel every pending request of this scope.
+     *
+     * @return the number of requests cancelled
+     */
+    public int cancelAll() {
+        List<CompletableFuture<?>> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(keyed.values());
+            pending.addAll(unkeyed);
+            keyed.clear();
+            unkeyed.clear();
+        }
+        
+        int cancelled = 0;
+        for (CompletableFuture<?> future : pending) {
+            if (future.cancel(false)) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+    
+    public synchronized int getPendingCount() {
+        return keyed.size() + unkeyed.size();
+    }
+    
+    /**
+     * Cancel the pending requests of every scope; called on navigation.
+     */
+    public static void cancelAllScopes() {
+        List<RequestScope> live;
+        synchronized (RequestScope.class) {
+            live = new ArrayList<>(scopes);
+        }
+        
+        for (RequestScope scope : live) {
+            int cancelled = scope.cancelAll();
+            if (cancelled > 0) {
+                System.out.println("Cancelled " + cancelled + " pending requests of " + scope.name);
+            }
+        }
+    }
+}